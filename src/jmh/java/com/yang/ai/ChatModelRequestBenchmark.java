@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi;
+import com.yang.ai.api.ChatCompletionCodec;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.SystemMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.prompt.Prompt;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per call overhead of {@link ByteDanceChatModel} around the HTTP exchange: building
+ * the request, where runtime and default options go through
+ * {@link ChatCompletionRequestMerger}, and mapping every streamed chunk with
+ * {@link ByteDanceChatModel#chunkToChatCompletion}. Run with {@code -prof gc} for
+ * {@code gc.alloc.rate.norm}.
+ *
+ * @author yang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChatModelRequestBenchmark {
+
+	private static final String CHUNK = "{\"id\":\"021718067849899d92fcbe0865fdffdde\",\"object\":\"chat.completion.chunk\","
+			+ "\"created\":1718067849,\"model\":\"doubao-pro-32k-240515\",\"choices\":[{\"index\":0,"
+			+ "\"delta\":{\"role\":\"assistant\",\"content\":\"你好\"},\"logprobs\":null,\"finish_reason\":null}],"
+			+ "\"usage\":null}";
+
+	private final ByteDanceChatModel chatModel = new ByteDanceChatModel(new ByteDanceChatApi("benchmark-key"),
+			ByteDanceChatOptions.builder().withModel("ep-20240611-benchmark").withTemperature(0.7f).build());
+
+	private final Prompt defaultOptionsPrompt = new Prompt(messages());
+
+	private final Prompt runtimeOptionsPrompt = new Prompt(messages(),
+			ByteDanceChatOptions.builder().withTemperature(0.2f).withMaxTokens(512).withTopP(0.9f).build());
+
+	private ByteDanceChatApi.ChatCompletionChunk chunk;
+
+	@Setup
+	public void setup() throws IOException {
+		this.chunk = ChatCompletionCodec.chunkReader().readValue(CHUNK.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static List<Message> messages() {
+		return List.of(new SystemMessage("你是一个乐于助人的助手。"), new UserMessage("讲一个关于海盗的笑话。"),
+				new AssistantMessage("为什么海盗不会玩扑克？因为他总是坐在甲板上。"), new UserMessage("再讲一个。"));
+	}
+
+	@Benchmark
+	public ByteDanceChatApi.ChatCompletionRequest createRequestWithDefaultOptions() {
+		return this.chatModel.createRequest(this.defaultOptionsPrompt, false);
+	}
+
+	@Benchmark
+	public ByteDanceChatApi.ChatCompletionRequest createRequestWithRuntimeOptions() {
+		return this.chatModel.createRequest(this.runtimeOptionsPrompt, true);
+	}
+
+	@Benchmark
+	public ByteDanceChatApi.ChatCompletion chunkToChatCompletion() {
+		return this.chatModel.chunkToChatCompletion(this.chunk);
+	}
+
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionChunk;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.metadata.ByteDanceChatResponseMetadata;
+import com.yang.ai.metadata.ByteDanceRateLimit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.http.ResponseEntity;
+import reactor.core.publisher.Flux;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former mapping of the chunks in {@link ByteDanceChatModel#stream}, where
+ * every chunk was converted to a {@code ChatCompletion}, wrapped in a
+ * {@link ResponseEntity}, passed through {@code switchMap} and given a fresh
+ * {@code Map.of} of properties with the role looked up in a {@link ConcurrentHashMap},
+ * with {@link ChatCompletionChunkMapper}. A stream of {@value #TOKENS} tokens, the
+ * finish reason and the usage is mapped per invocation. Run with {@code -prof gc},
+ * {@code gc.alloc.rate.norm} is reported per token.
+ *
+ * @author yang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ChatStreamMappingBenchmark.TOKENS)
+public class ChatStreamMappingBenchmark {
+
+	static final int TOKENS = 256;
+
+	private static final String ID = "021718067849899d92fcbe0865fdffdde";
+
+	private static final String MODEL = "doubao-pro-32k-240515";
+
+	private final ByteDanceChatModel chatModel = new ByteDanceChatModel(new ByteDanceChatApi("benchmark-key"));
+
+	private final RateLimit rateLimit = new ByteDanceRateLimit(1000L, 999L, null, 100000L, 99000L, null);
+
+	private List<ChatCompletionChunk> chunks;
+
+	@Setup
+	public void setup() {
+		this.chunks = new ArrayList<>(TOKENS + 2);
+		this.chunks.add(chunk(new ChatCompletionMessage("你", ChatCompletionMessage.Role.ASSISTANT), null));
+		for (int i = 1; i < TOKENS; i++) {
+			this.chunks.add(chunk(new ChatCompletionMessage("好", null), null));
+		}
+		this.chunks.add(chunk(new ChatCompletionMessage("", null), ByteDanceChatApi.ChatCompletionFinishReason.STOP));
+		this.chunks.add(new ChatCompletionChunk(ID, List.of(), 1718067849L, MODEL,
+				new ByteDanceChatApi.Usage(TOKENS, 24, TOKENS + 24), "chat.completion.chunk"));
+	}
+
+	private static ChatCompletionChunk chunk(ChatCompletionMessage delta,
+			ByteDanceChatApi.ChatCompletionFinishReason finishReason) {
+		return new ChatCompletionChunk(ID, List.of(new ChatCompletionChunk.ChunkChoice(finishReason, 0, delta, null)),
+				1718067849L, MODEL, null, "chat.completion.chunk");
+	}
+
+	/**
+	 * The former path, without the function call handling, which passed every chunk
+	 * through unchanged.
+	 */
+	@Benchmark
+	public void chunkToChatCompletion(Blackhole blackhole) {
+		ConcurrentHashMap<String, String> roleMap = new ConcurrentHashMap<>();
+		Flux.fromIterable(this.chunks)
+			.map(this.chatModel::chunkToChatCompletion)
+			.switchMap(cc -> Flux.just(ResponseEntity.of(Optional.of(cc))))
+			.map(ResponseEntity::getBody)
+			.map(chatCompletion -> {
+				String id = chatCompletion.id();
+				List<Generation> generations = chatCompletion.choices().stream().map(choice -> {
+					if (choice.message().role() != null) {
+						roleMap.putIfAbsent(id, choice.message().role().name());
+					}
+					String finish = (choice.finishReason() != null ? choice.finishReason().name() : "");
+					int index = choice.index() != null ? choice.index() : 0;
+					var generation = new Generation(choice.message().content(),
+							Map.of("id", id, "role", roleMap.get(id), "finishReason", finish, "index", index));
+					if (choice.finishReason() != null) {
+						generation = generation
+							.withGenerationMetadata(ChatGenerationMetadata.from(choice.finishReason().name(), null));
+					}
+					return generation;
+				}).toList();
+				return new ChatResponse(generations,
+						ByteDanceChatResponseMetadata.from(chatCompletion).withRateLimit(this.rateLimit));
+			})
+			.subscribe(blackhole::consume);
+	}
+
+	@Benchmark
+	public void chunkMapper(Blackhole blackhole) {
+		Flux.defer(() -> {
+			ChatCompletionChunkMapper mapper = new ChatCompletionChunkMapper();
+			return Flux.fromIterable(this.chunks).map(chunk -> mapper.map(chunk, this.rateLimit));
+		}).subscribe(blackhole::consume);
+	}
+
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import com.yang.ai.api.common.ServerSentEventDecoder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former {@code String} based chunk parsing of
+ * {@link ByteDanceChatApi#chatCompletionStream} with {@link ServerSentEventDecoder}. Run
+ * with {@code -prof gc}, {@code gc.alloc.rate.norm} is reported per chunk.
+ *
+ * @author yang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@OperationsPerInvocation(ChatCompletionChunkDecodingBenchmark.CHUNKS)
+public class ChatCompletionChunkDecodingBenchmark {
+
+	static final int CHUNKS = 64;
+
+	private static final String CHUNK = "data: {\"id\":\"021718067849899d92fcbe0865fdffdde\",\"object\":\"chat.completion.chunk\","
+			+ "\"created\":1718067849,\"model\":\"doubao-pro-32k-240515\",\"choices\":[{\"index\":0,"
+			+ "\"delta\":{\"role\":\"assistant\",\"content\":\"你好\"},\"logprobs\":null,\"finish_reason\":null}],"
+			+ "\"usage\":null}\n\n";
+
+	private final ServerSentEventDecoder<ByteDanceChatApi.ChatCompletionChunk> decoder = new ServerSentEventDecoder<>(
+			ChatCompletionCodec.chunkReader());
+
+	private byte[] chunk;
+
+	@Setup
+	public void setup() {
+		this.chunk = CHUNK.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The former path: the body decoded to one {@code String} per line, the
+	 * {@code data:} prefix removed with {@code substring} and the remainder parsed by
+	 * {@link ModelOptionsUtils#jsonToObject}.
+	 */
+	@Benchmark
+	public void stringLines(Blackhole blackhole) {
+		for (int i = 0; i < CHUNKS; i++) {
+			String content = new String(this.chunk, 0, this.chunk.length - 2, StandardCharsets.UTF_8);
+			if (content.startsWith("data:")) {
+				content = content.substring(content.charAt(5) != ' ' ? 5 : 6);
+			}
+			blackhole.consume(ModelOptionsUtils.jsonToObject(content, ByteDanceChatApi.ChatCompletionChunk.class));
+		}
+	}
+
+	/**
+	 * The chunk reader alone, without SSE framing.
+	 */
+	@Benchmark
+	public void chunkReader(Blackhole blackhole) throws IOException {
+		for (int i = 0; i < CHUNKS; i++) {
+			blackhole.consume(ChatCompletionCodec.chunkReader().readValue(this.chunk, 6, this.chunk.length - 8));
+		}
+	}
+
+	@Benchmark
+	public void dataBuffers(Blackhole blackhole) {
+		List<DataBuffer> buffers = new ArrayList<>(CHUNKS);
+		for (int i = 0; i < CHUNKS; i++) {
+			buffers.add(DefaultDataBufferFactory.sharedInstance.wrap(this.chunk));
+		}
+		this.decoder.decode(Flux.fromIterable(buffers)).subscribe(blackhole::consume);
+	}
+
+}
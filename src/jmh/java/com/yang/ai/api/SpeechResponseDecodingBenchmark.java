@@ -0,0 +1,86 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.yang.ai.api.common.AudioOutputBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares reading a TTS response into a {@code String} and decoding its Base64
+ * {@code data} afterwards with {@link ByteDanceAudioApi#readSpeechResponse}, which decodes
+ * while the response is parsed. Run with {@code -prof gc}, the difference in
+ * {@code gc.alloc.rate.norm} is the intermediate copies of the audio.
+ *
+ * @author yang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpeechResponseDecodingBenchmark {
+
+	/**
+	 * The audio size in bytes, 64 KB is about 4 s of 128 kbit/s MP3.
+	 */
+	@Param({ "65536", "1048576" })
+	public int audioSize;
+
+	private final ObjectMapper objectMapper = new ObjectMapper()
+		.disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
+	private byte[] body;
+
+	@Setup
+	public void setup() {
+		byte[] audio = new byte[this.audioSize];
+		new Random(42).nextBytes(audio);
+		this.body = ("{\"reqid\":\"r1\",\"code\":3000,\"operation\":\"query\",\"message\":\"Success\",\"sequence\":-1,"
+				+ "\"data\":\"" + Base64.getEncoder().encodeToString(audio) + "\","
+				+ "\"addition\":{\"duration\":\"1960\",\"first_pkg\":\"93\"}}")
+			.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * The former path: the response bound to {@link ByteDanceAudioApi.SpeechApiResponse}
+	 * with the audio as a Base64 {@code String}, then decoded.
+	 */
+	@Benchmark
+	public void stringThenDecode(Blackhole blackhole) throws IOException {
+		ByteDanceAudioApi.SpeechApiResponse response = this.objectMapper.readValue(this.body,
+				ByteDanceAudioApi.SpeechApiResponse.class);
+		blackhole.consume(Base64.getDecoder().decode(response.data()));
+	}
+
+	@Benchmark
+	public void decodeWhileParsing(Blackhole blackhole) throws IOException {
+		AudioOutputBuffer output = new AudioOutputBuffer(AudioOutputBuffer.estimateDecodedSize(this.body.length));
+		blackhole.consume(ByteDanceAudioApi.readSpeechResponse(new ByteArrayInputStream(this.body), output));
+		blackhole.consume(output.toByteArray());
+	}
+
+}
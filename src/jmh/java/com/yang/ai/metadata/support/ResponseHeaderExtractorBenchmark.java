@@ -0,0 +1,69 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.metadata.support;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.http.HttpHeaders;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link ByteDanceResponseHeaderExtractor}, which runs on every response, with and
+ * without the rate limit headers. Run with {@code -prof gc} for
+ * {@code gc.alloc.rate.norm}.
+ *
+ * @author yang
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseHeaderExtractorBenchmark {
+
+	private final HttpHeaders rateLimitHeaders = new HttpHeaders();
+
+	private final HttpHeaders plainHeaders = new HttpHeaders();
+
+	@Setup
+	public void setup() {
+		for (HttpHeaders headers : new HttpHeaders[] { this.rateLimitHeaders, this.plainHeaders }) {
+			headers.add(HttpHeaders.CONTENT_TYPE, "application/json; charset=utf-8");
+			headers.add(HttpHeaders.DATE, "Tue, 11 Jun 2024 01:04:09 GMT");
+			headers.add("x-request-id", "021718067849899d92fcbe0865fdffdde");
+			headers.add("x-client-request-id", "unknown-20240611090409-QEYyUTMk");
+		}
+		this.rateLimitHeaders.add(ByteDanceApiResponseHeaders.REQUESTS_LIMIT_HEADER.getName(), "10000");
+		this.rateLimitHeaders.add(ByteDanceApiResponseHeaders.REQUESTS_REMAINING_HEADER.getName(), "9999");
+		this.rateLimitHeaders.add(ByteDanceApiResponseHeaders.REQUESTS_RESET_HEADER.getName(), "6ms");
+		this.rateLimitHeaders.add(ByteDanceApiResponseHeaders.TOKENS_LIMIT_HEADER.getName(), "800000");
+		this.rateLimitHeaders.add(ByteDanceApiResponseHeaders.TOKENS_REMAINING_HEADER.getName(), "799942");
+		this.rateLimitHeaders.add(ByteDanceApiResponseHeaders.TOKENS_RESET_HEADER.getName(), "1m2s");
+	}
+
+	@Benchmark
+	public RateLimit withRateLimitHeaders() {
+		return ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(this.rateLimitHeaders);
+	}
+
+	@Benchmark
+	public RateLimit withoutRateLimitHeaders() {
+		return ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(this.plainHeaders);
+	}
+
+}
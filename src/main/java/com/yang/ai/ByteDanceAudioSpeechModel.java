@@ -18,20 +18,50 @@ package com.yang.ai;
 
 import com.yang.ai.api.ByteDanceAudioApi;
 import com.yang.ai.api.common.ByteDanceApiException;
+import com.yang.ai.api.common.VirtualThreadSupport;
 import com.yang.ai.audio.speech.*;
+import com.yang.ai.cache.SpeechAudioCache;
+import com.yang.ai.cache.SpeechRequestKeys;
+import com.yang.ai.cache.TieredSpeechAudioCache;
 import com.yang.ai.metadata.audio.ByteDanceAudioSpeechResponseMetadata;
 import com.yang.ai.metadata.support.ByteDanceResponseHeaderExtractor;
+import com.yang.ai.observation.ByteDanceMetrics;
+import com.yang.ai.observation.ByteDanceObservation;
+import com.yang.ai.resilience.ByteDanceRateLimiter;
+import com.yang.ai.resilience.CircuitBreaker;
+import com.yang.ai.resilience.CircuitBreakerRegistry;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.ResponseEntity;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
-import java.util.Base64;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * ByteDance audio speech client implementation for backed by {@link ByteDanceAudioApi}.
@@ -53,19 +83,58 @@ public class ByteDanceAudioSpeechModel implements SpeechModel, StreamingSpeechMo
     private static final Float SPEED = 1.0f;
 
     /**
-     * The retry template used to retry the ByteDance Audio API calls.
+     * The retry template used when none is given: up to 10 attempts, with an exponential
+     * backoff from 2 seconds up to 3 minutes.
      */
-    public final RetryTemplate retryTemplate = RetryTemplate.builder()
+    public static final RetryTemplate DEFAULT_RETRY_TEMPLATE = RetryTemplate.builder()
             .maxAttempts(10)
             .retryOn(ByteDanceApiException.class)
             .exponentialBackoff(Duration.ofMillis(2000), 5, Duration.ofMillis(3 * 60000))
             .build();
 
+    /**
+     * The default number of segments synthesized at the same time by
+     * {@link #callLongText(SpeechPrompt)} and {@link #streamLongText(SpeechPrompt)}.
+     */
+    public static final int DEFAULT_LONG_TEXT_CONCURRENCY = 4;
+
+    /**
+     * The retry template used to retry the ByteDance Audio API calls.
+     */
+    public final RetryTemplate retryTemplate;
+
     /**
      * Low-level access to the ByteDance Audio API.
      */
     private final ByteDanceAudioApi audioApi;
 
+    /**
+     * Holds requests back when the rate limit headers report an exhausted quota, may be
+     * {@code null}.
+     */
+    private ByteDanceRateLimiter rateLimiter;
+
+    /**
+     * Runs {@link #callAsync(SpeechPrompt)}, {@code null} for
+     * {@link VirtualThreadSupport#defaultExecutor()}.
+     */
+    private Executor taskExecutor;
+
+    /**
+     * Fails the calls fast while the speech endpoint is degraded, may be {@code null}.
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * Serves repeated prompts without calling the API, may be {@code null}.
+     */
+    private SpeechAudioCache audioCache;
+
+    /**
+     * Records latency, errors and audio size of the requests, may be {@code null}.
+     */
+    private ByteDanceMetrics metrics;
+
     /**
      * Initializes a new instance of the ByteDanceAudioSpeechModel class with the provided
      * ByteDanceAudioApi and options.
@@ -91,10 +160,116 @@ public class ByteDanceAudioSpeechModel implements SpeechModel, StreamingSpeechMo
      *                 options.
      */
     public ByteDanceAudioSpeechModel(ByteDanceAudioApi audioApi, ByteDanceAudioSpeechOptions options) {
+        this(audioApi, options, DEFAULT_RETRY_TEMPLATE);
+    }
+
+    /**
+     * Initializes a new instance of the ByteDanceAudioSpeechModel class with the provided
+     * ByteDanceAudioApi, options and retry template.
+     *
+     * @param audioApi      The ByteDanceAudioApi to use for speech synthesis.
+     * @param options       The ByteDanceAudioSpeechOptions containing the speech synthesis
+     *                      options.
+     * @param retryTemplate The RetryTemplate instance for retrying failed API calls.
+     */
+    public ByteDanceAudioSpeechModel(ByteDanceAudioApi audioApi, ByteDanceAudioSpeechOptions options,
+                                     RetryTemplate retryTemplate) {
         Assert.notNull(audioApi, "ByteDanceAudioApi must not be null");
         Assert.notNull(options, "ByteDanceSpeechOptions must not be null");
+        Assert.notNull(retryTemplate, "RetryTemplate must not be null");
         this.audioApi = audioApi;
         this.defaultOptions = options;
+        this.retryTemplate = retryTemplate;
+    }
+
+    /**
+     * Throttle the speech requests with the given limiter.
+     *
+     * @param rateLimiter the limiter, may be shared with other models using the same token.
+     * @return this
+     */
+    public ByteDanceAudioSpeechModel withRateLimiter(ByteDanceRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * Protect the speech endpoint with the {@code audio/speech} circuit breaker of the
+     * given registry. While it is open, calls fail with a
+     * {@link CircuitBreaker.CallNotPermittedException}, which is not retried.
+     *
+     * @param circuitBreakerRegistry the registry, may be shared with other models.
+     * @return this
+     */
+    public ByteDanceAudioSpeechModel withCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        this.circuitBreaker = circuitBreakerRegistry != null
+                ? circuitBreakerRegistry.circuitBreaker("audio/speech")
+                : null;
+        return this;
+    }
+
+    /**
+     * Cache the synthesized audio. Requests with the same text and the same audio
+     * parameters, see {@link SpeechRequestKeys}, are then answered from the cache, without
+     * the API call and without decoding the Base64 payload. The cache applies to
+     * {@link #call(SpeechPrompt)} and to every segment of {@link #callLongText}, not to
+     * {@link #stream(SpeechPrompt)}.
+     *
+     * @param audioCache the cache, e.g. {@link TieredSpeechAudioCache}.
+     * @return this
+     */
+    public ByteDanceAudioSpeechModel withAudioCache(SpeechAudioCache audioCache) {
+        this.audioCache = audioCache;
+        return this;
+    }
+
+    /**
+     * Record Micrometer metrics and observations of the speech requests: latency, retries,
+     * errors, the size of the received audio and the rate limit headroom, tagged with the
+     * cluster as {@code model} and the voice type. Cache hits are not recorded.
+     *
+     * @param metrics the metrics, may be shared with other models.
+     * @return this
+     */
+    public ByteDanceAudioSpeechModel withMetrics(ByteDanceMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    private ByteDanceObservation observe(String operation, ByteDanceAudioApi.SpeechRequest speechRequest) {
+        if (this.metrics == null) {
+            return ByteDanceObservation.noop();
+        }
+        String cluster = speechRequest.app() != null ? speechRequest.app().cluster() : null;
+        String voiceType = speechRequest.audio() != null ? speechRequest.audio().voice_type() : null;
+        return this.metrics.start(operation, cluster, voiceType);
+    }
+
+    /**
+     * Set the executor running {@link #callAsync(SpeechPrompt)}, including the retry
+     * backoff waits.
+     *
+     * @param taskExecutor the executor, e.g. {@link VirtualThreadSupport#createExecutor(String)}.
+     * @return this
+     */
+    public ByteDanceAudioSpeechModel withTaskExecutor(Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        return this;
+    }
+
+    /**
+     * Run {@link #call(SpeechPrompt)} on the task executor, by default on a virtual thread
+     * (Java 21) so that waiting calls do not hold platform threads.
+     *
+     * @param speechPrompt the speech prompt.
+     * @return the speech response.
+     */
+    public CompletableFuture<SpeechResponse> callAsync(SpeechPrompt speechPrompt) {
+        return CompletableFuture.supplyAsync(() -> call(speechPrompt), getTaskExecutor());
+    }
+
+    private Executor getTaskExecutor() {
+        return this.taskExecutor != null ? this.taskExecutor : VirtualThreadSupport.defaultExecutor();
     }
 
     @Override
@@ -105,22 +280,150 @@ public class ByteDanceAudioSpeechModel implements SpeechModel, StreamingSpeechMo
 
     @Override
     public SpeechResponse call(SpeechPrompt speechPrompt) {
+        return call(() -> createRequestBody(speechPrompt));
+    }
 
-        return this.retryTemplate.execute(ctx -> {
+    private SpeechResponse call(Supplier<ByteDanceAudioApi.SpeechRequest> requestSupplier) {
+        if (this.audioCache == null) {
+            return doCall(requestSupplier);
+        }
+        String key = SpeechRequestKeys.of(requestSupplier.get());
+        byte[] cached = this.audioCache.get(key);
+        if (cached != null) {
+            return new SpeechResponse(new Speech(cached));
+        }
+        SpeechResponse response = doCall(requestSupplier);
+        byte[] audio = response.getResult().getOutput();
+        if (audio != null && audio.length > 0) {
+            this.audioCache.put(key, audio);
+        }
+        return response;
+    }
 
-            ByteDanceAudioApi.SpeechRequest speechRequest = createRequestBody(speechPrompt);
+    private SpeechResponse doCall(Supplier<ByteDanceAudioApi.SpeechRequest> requestSupplier) {
 
-            ResponseEntity<ByteDanceAudioApi.SpeechApiResponse> speechEntity = this.audioApi.createSpeech(speechRequest);
-            ByteDanceAudioApi.SpeechApiResponse speechEntityBody = speechEntity.getBody();
+        ByteDanceAudioApi.SpeechRequest firstRequest = requestSupplier.get();
+        ByteDanceObservation observation = observe(ByteDanceMetrics.OPERATION_SPEECH, firstRequest);
+        try {
+            SpeechResponse response = this.retryTemplate.execute(ctx -> {
 
-            if (speechEntityBody == null) {
-                logger.warn("No speechEntityBody response returned for speechRequest: {}", speechRequest);
-                return new SpeechResponse(new Speech(new byte[0]));
-            }
+                if (ctx.getRetryCount() > 0) {
+                    observation.onRetry();
+                }
+                ByteDanceAudioApi.SpeechRequest speechRequest = ctx.getRetryCount() == 0
+                        ? firstRequest
+                        : requestSupplier.get();
 
-            byte[] speech = Base64.getDecoder().decode(speechEntityBody.data());
-            return new SpeechResponse(new Speech(speech), new ByteDanceAudioSpeechResponseMetadata(null));
-        });
+                if (this.rateLimiter != null) {
+                    this.rateLimiter.acquire(0);
+                }
+
+                // The audio is decoded while the response is read, see ByteDanceAudioApi#createSpeechAudio.
+                ResponseEntity<byte[]> speechEntity;
+                try {
+                    speechEntity = this.circuitBreaker != null
+                            ? this.circuitBreaker.execute(() -> this.audioApi.createSpeechAudio(speechRequest))
+                            : this.audioApi.createSpeechAudio(speechRequest);
+                } catch (RuntimeException ex) {
+                    observation.onError(ex);
+                    throw ex;
+                }
+
+                RateLimit rateLimit = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(speechEntity);
+                if (this.rateLimiter != null) {
+                    this.rateLimiter.update(rateLimit);
+                }
+                observation.onRateLimit(rateLimit);
+
+                byte[] speech = speechEntity.getBody();
+                if (speech == null || speech.length == 0) {
+                    logger.warn("No audio returned for speechRequest: {}", speechRequest);
+                    return new SpeechResponse(new Speech(new byte[0]));
+                }
+                observation.onAudioReceived(speech.length);
+
+                return new SpeechResponse(new Speech(speech), new ByteDanceAudioSpeechResponseMetadata(rateLimit));
+            });
+            observation.stop();
+            return response;
+        } catch (RuntimeException ex) {
+            observation.stop(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Synthesizes a text of any length with {@link #DEFAULT_LONG_TEXT_CONCURRENCY}
+     * segments in parallel, see {@link #callLongText(SpeechPrompt, int)}.
+     *
+     * @param speechPrompt The speech prompt, the text may exceed the limit of a single
+     *                     request.
+     * @return The speech response with the stitched audio.
+     */
+    public SpeechResponse callLongText(SpeechPrompt speechPrompt) {
+        return callLongText(speechPrompt, DEFAULT_LONG_TEXT_CONCURRENCY);
+    }
+
+    /**
+     * Synthesizes a text of any length. The text is split at sentence boundaries into
+     * segments that fit into one request ({@link TextSegmenter}), the segments are
+     * synthesized with at most {@code maxConcurrency} requests in flight, and the audio
+     * is joined in order ({@link AudioStitcher}). A failed segment fails the whole call
+     * once its retries are exhausted.
+     *
+     * @param speechPrompt   The speech prompt, the text may exceed the limit of a single
+     *                       request.
+     * @param maxConcurrency The maximum number of segments synthesized at the same time.
+     * @return The speech response with the stitched audio and the metadata of the last
+     * segment.
+     */
+    public SpeechResponse callLongText(SpeechPrompt speechPrompt, int maxConcurrency) {
+        ByteDanceAudioApi.SpeechRequest speechRequest = createRequestBody(speechPrompt);
+        List<SpeechResponse> segments = streamLongText(speechRequest, maxConcurrency).collectList().block();
+        if (segments == null || segments.isEmpty()) {
+            return new SpeechResponse(new Speech(new byte[0]));
+        }
+        String encoding = speechRequest.audio() != null ? speechRequest.audio().encoding() : null;
+        byte[] audio = AudioStitcher.stitch(encoding,
+                segments.stream().map(segment -> segment.getResult().getOutput()).toList());
+        return new SpeechResponse(new Speech(audio), segments.get(segments.size() - 1).getMetadata());
+    }
+
+    /**
+     * Streaming variant of {@link #callLongText(SpeechPrompt)}.
+     *
+     * @param speechPrompt The speech prompt, the text may exceed the limit of a single
+     *                     request.
+     * @return The segments, see {@link #streamLongText(SpeechPrompt, int)}.
+     */
+    public Flux<SpeechResponse> streamLongText(SpeechPrompt speechPrompt) {
+        return streamLongText(speechPrompt, DEFAULT_LONG_TEXT_CONCURRENCY);
+    }
+
+    /**
+     * Streaming variant of {@link #callLongText(SpeechPrompt, int)}: emits one response
+     * per segment, in text order, as soon as the segment and all segments before it are
+     * synthesized, so playback can start after the first segment. Every response holds a
+     * self-contained audio file; {@link AudioStitcher#stitch} joins them.
+     *
+     * @param speechPrompt   The speech prompt, the text may exceed the limit of a single
+     *                       request.
+     * @param maxConcurrency The maximum number of segments synthesized at the same time.
+     * @return The segments in order.
+     */
+    public Flux<SpeechResponse> streamLongText(SpeechPrompt speechPrompt, int maxConcurrency) {
+        return Flux.defer(() -> streamLongText(createRequestBody(speechPrompt), maxConcurrency));
+    }
+
+    private Flux<SpeechResponse> streamLongText(ByteDanceAudioApi.SpeechRequest speechRequest, int maxConcurrency) {
+        Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be positive");
+        ByteDanceAudioApi.SpeechRequest.Request requestParam = speechRequest.request();
+        List<String> segments = TextSegmenter.split(requestParam.text());
+        Scheduler scheduler = Schedulers.fromExecutor(getTaskExecutor());
+        return Flux.fromIterable(segments)
+                .flatMapSequential(segment -> Mono.fromCallable(() -> call(() -> withRequest(speechRequest,
+                                newReqid(), segment, requestParam.operation())))
+                        .subscribeOn(scheduler), maxConcurrency);
     }
 
     /**
@@ -133,10 +436,201 @@ public class ByteDanceAudioSpeechModel implements SpeechModel, StreamingSpeechMo
      */
     @Override
     public Flux<SpeechResponse> stream(SpeechPrompt prompt) {
-        throw new UnsupportedOperationException();
-//        return this.audioApi.stream(this.createRequestBody(prompt))
-//                .map(entity -> new SpeechResponse(new Speech(entity.getBody()), new ByteDanceAudioSpeechResponseMetadata(
-//                        ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(entity))));
+        return Flux.defer(() -> {
+                    ByteDanceAudioApi.SpeechRequest speechRequest = createStreamRequest(prompt);
+                    ByteDanceObservation observation = observe(ByteDanceMetrics.OPERATION_SPEECH_STREAM, speechRequest);
+                    return observation.observe(protect(this.audioApi.stream(speechRequest))
+                            .doOnNext(entity -> observation.onAudioReceived(
+                                    entity.getBody() != null ? entity.getBody().length : 0))
+                            .doOnError(observation::onError));
+                })
+                .map(entity -> new SpeechResponse(new Speech(entity.getBody()),
+                        new ByteDanceAudioSpeechResponseMetadata(
+                                ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(entity))));
+    }
+
+    /**
+     * Synthesizes the prompt and writes the audio to the given channel, decoding it while
+     * the response is read so that the audio is never held on the heap as a whole.
+     * <p>
+     * A failed attempt is retried only if it can be undone: a {@link SeekableByteChannel},
+     * e.g. a {@link FileChannel}, is rewound and truncated to its position at the call;
+     * on any other channel an attempt that already wrote audio is not retried. With an
+     * {@link #withAudioCache audio cache} the audio goes through the cache and is written
+     * afterwards.
+     *
+     * @param speechPrompt The speech prompt.
+     * @param channel      Receives the audio, it is not closed.
+     * @return The metadata of the response.
+     */
+    public ByteDanceAudioSpeechResponseMetadata call(SpeechPrompt speechPrompt, WritableByteChannel channel) {
+        Assert.notNull(channel, "channel must not be null");
+        if (this.audioCache != null) {
+            SpeechResponse response = call(speechPrompt);
+            ChannelOutputStream output = new ChannelOutputStream(channel);
+            try {
+                output.write(response.getResult().getOutput());
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+            return response.getMetadata();
+        }
+
+        SeekableByteChannel seekable = channel instanceof SeekableByteChannel seekableChannel ? seekableChannel : null;
+        long startPosition;
+        try {
+            startPosition = seekable != null ? seekable.position() : 0;
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        ChannelOutputStream output = new ChannelOutputStream(channel);
+        ByteDanceObservation observation = observe(ByteDanceMetrics.OPERATION_SPEECH, createRequestBody(speechPrompt));
+        try {
+            ByteDanceAudioSpeechResponseMetadata metadata = writeSpeech(speechPrompt, seekable, startPosition, output,
+                    observation);
+            observation.onAudioReceived(output.getCount());
+            observation.stop();
+            return metadata;
+        } catch (RuntimeException ex) {
+            observation.stop(ex);
+            throw ex;
+        }
+    }
+
+    private ByteDanceAudioSpeechResponseMetadata writeSpeech(SpeechPrompt speechPrompt, SeekableByteChannel seekable,
+                                                             long startPosition, ChannelOutputStream output,
+                                                             ByteDanceObservation observation) {
+        return this.retryTemplate.execute(ctx -> {
+            if (ctx.getRetryCount() > 0) {
+                observation.onRetry();
+            }
+            if (output.getCount() > 0) {
+                if (seekable == null) {
+                    throw new NonTransientAiException("Speech synthesis failed after " + output.getCount()
+                            + " bytes were written to a channel that cannot be rewound", ctx.getLastThrowable());
+                }
+                try {
+                    seekable.truncate(startPosition);
+                    seekable.position(startPosition);
+                } catch (IOException ex) {
+                    throw new UncheckedIOException(ex);
+                }
+                output.resetCount();
+            }
+
+            ByteDanceAudioApi.SpeechRequest speechRequest = createRequestBody(speechPrompt);
+
+            if (this.rateLimiter != null) {
+                this.rateLimiter.acquire(0);
+            }
+
+            ResponseEntity<ByteDanceAudioApi.SpeechApiResponse> speechEntity;
+            try {
+                speechEntity = this.circuitBreaker != null
+                        ? this.circuitBreaker.execute(() -> this.audioApi.createSpeech(speechRequest, output))
+                        : this.audioApi.createSpeech(speechRequest, output);
+            } catch (RuntimeException ex) {
+                observation.onError(ex);
+                throw ex;
+            }
+
+            RateLimit rateLimit = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(speechEntity);
+            if (this.rateLimiter != null) {
+                this.rateLimiter.update(rateLimit);
+            }
+            observation.onRateLimit(rateLimit);
+            return new ByteDanceAudioSpeechResponseMetadata(rateLimit);
+        });
+    }
+
+    /**
+     * Synthesizes the prompt into the given file, see
+     * {@link #call(SpeechPrompt, WritableByteChannel)}. The audio is written to a temporary
+     * file next to it, which replaces the file once the synthesis succeeded, so readers
+     * never see a partial file.
+     *
+     * @param speechPrompt The speech prompt.
+     * @param file         The file to create or replace.
+     * @return The metadata of the response.
+     */
+    public ByteDanceAudioSpeechResponseMetadata call(SpeechPrompt speechPrompt, Path file) {
+        Assert.notNull(file, "file must not be null");
+        Path target = file.toAbsolutePath();
+        Path temporary = null;
+        try {
+            temporary = Files.createTempFile(target.getParent(), target.getFileName().toString(), ".tmp");
+            ByteDanceAudioSpeechResponseMetadata metadata;
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                metadata = call(speechPrompt, channel);
+            }
+            Files.move(temporary, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            temporary = null;
+            return metadata;
+        } catch (IOException ex) {
+            throw new UncheckedIOException("Could not write the speech to " + file, ex);
+        } finally {
+            if (temporary != null) {
+                try {
+                    Files.deleteIfExists(temporary);
+                } catch (IOException ex) {
+                    logger.warn("Could not delete {}", temporary, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Streams the audio of the prompt into the given channel. Every frame is written as
+     * it arrives, straight from the received buffer, and released afterwards, so the
+     * utterance is never collected on the heap.
+     *
+     * @param prompt  The speech prompt.
+     * @param channel Receives the audio, it is not closed.
+     * @return Completes when the last frame was written.
+     */
+    public Mono<Void> stream(SpeechPrompt prompt, WritableByteChannel channel) {
+        Assert.notNull(channel, "channel must not be null");
+        return DataBufferUtils.write(streamAudio(prompt), channel).doOnNext(DataBufferUtils::release).then();
+    }
+
+    /**
+     * Streams the audio of the prompt into the given file, created or truncated, see
+     * {@link #stream(SpeechPrompt, WritableByteChannel)}. The file is written
+     * asynchronously.
+     *
+     * @param prompt The speech prompt.
+     * @param file   The file to write.
+     * @return Completes when the last frame was written and the file is closed.
+     */
+    public Mono<Void> stream(SpeechPrompt prompt, Path file) {
+        Assert.notNull(file, "file must not be null");
+        return DataBufferUtils.write(streamAudio(prompt), file);
+    }
+
+    private Flux<DataBuffer> streamAudio(SpeechPrompt prompt) {
+        return Flux.defer(() -> {
+            ByteDanceAudioApi.SpeechRequest speechRequest = createStreamRequest(prompt);
+            ByteDanceObservation observation = observe(ByteDanceMetrics.OPERATION_SPEECH_STREAM, speechRequest);
+            return observation.observe(protect(this.audioApi.streamAudio(speechRequest))
+                    .doOnNext(buffer -> observation.onAudioReceived(buffer.readableByteCount()))
+                    .doOnError(observation::onError));
+        });
+    }
+
+    private ByteDanceAudioApi.SpeechRequest createStreamRequest(SpeechPrompt prompt) {
+        ByteDanceAudioApi.SpeechRequest speechRequest = createRequestBody(prompt);
+        // The streaming endpoint only accepts the "submit" operation.
+        return withRequest(speechRequest, speechRequest.request().reqid(), speechRequest.request().text(), "submit");
+    }
+
+    private <T> Flux<T> protect(Flux<T> stream) {
+        if (this.rateLimiter != null) {
+            stream = this.rateLimiter.acquireAsync(0).thenMany(stream);
+        }
+        if (this.circuitBreaker != null) {
+            stream = this.circuitBreaker.apply(stream);
+        }
+        return stream;
     }
 
     private ByteDanceAudioApi.SpeechRequest createRequestBody(SpeechPrompt request) {
@@ -173,6 +667,23 @@ public class ByteDanceAudioSpeechModel implements SpeechModel, StreamingSpeechMo
         return requestBuilder.build();
     }
 
+    private static ByteDanceAudioApi.SpeechRequest withRequest(ByteDanceAudioApi.SpeechRequest speechRequest,
+                                                               String reqid, String text, String operation) {
+        ByteDanceAudioApi.SpeechRequest.Request requestParam = speechRequest.request();
+        return ByteDanceAudioApi.SpeechRequest.builder()
+                .withApp(speechRequest.app())
+                .withUser(speechRequest.user())
+                .withAudio(speechRequest.audio())
+                .withRequest(new ByteDanceAudioApi.SpeechRequest.Request(reqid, text, requestParam.text_type(),
+                        requestParam.silence_duration(), operation, requestParam.with_timestamp(),
+                        requestParam.split_sentence(), requestParam.pure_english_opt()))
+                .build();
+    }
+
+    private static String newReqid() {
+        return UUID.randomUUID().toString().replaceAll("-", "");
+    }
+
     private ByteDanceAudioSpeechOptions merge(ByteDanceAudioSpeechOptions source, ByteDanceAudioSpeechOptions target) {
         ByteDanceAudioSpeechOptions.Builder mergedBuilder = ByteDanceAudioSpeechOptions.builder();
 
@@ -183,4 +694,40 @@ public class ByteDanceAudioSpeechModel implements SpeechModel, StreamingSpeechMo
 
         return mergedBuilder.build();
     }
+
+    /**
+     * Writes to a channel and counts the written bytes.
+     */
+    private static final class ChannelOutputStream extends OutputStream {
+
+        private final WritableByteChannel channel;
+
+        private long count;
+
+        ChannelOutputStream(WritableByteChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+            while (buffer.hasRemaining()) {
+                this.channel.write(buffer);
+            }
+            this.count += length;
+        }
+
+        long getCount() {
+            return this.count;
+        }
+
+        void resetCount() {
+            this.count = 0;
+        }
+    }
 }
@@ -33,20 +33,46 @@ package com.yang.ai;
 
 import com.yang.ai.api.ByteDanceAudioApi;
 import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse;
+import com.yang.ai.api.common.VirtualThreadSupport;
+import com.yang.ai.audio.transcription.AudioSplitter;
 import com.yang.ai.audio.transcription.AudioTranscription;
 import com.yang.ai.audio.transcription.AudioTranscriptionPrompt;
 import com.yang.ai.audio.transcription.AudioTranscriptionResponse;
+import com.yang.ai.audio.transcription.AudioWindow;
+import com.yang.ai.audio.transcription.TranscriptMerger;
 import com.yang.ai.metadata.audio.ByteDanceAudioTranscriptionResponseMetadata;
 import com.yang.ai.metadata.support.ByteDanceResponseHeaderExtractor;
+import com.yang.ai.observation.ByteDanceMetrics;
+import com.yang.ai.observation.ByteDanceObservation;
+import com.yang.ai.resilience.ByteDanceRateLimiter;
+import com.yang.ai.resilience.CircuitBreaker;
+import com.yang.ai.resilience.CircuitBreakerRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.metadata.RateLimit;
 import org.springframework.ai.model.Model;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 /**
  * ByteDance audio transcription client implementation for backed by {@link ByteDanceAudioApi}.
@@ -58,6 +84,11 @@ import org.springframework.util.Assert;
  */
 public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptionPrompt, AudioTranscriptionResponse> {
 
+	/**
+	 * The number of windows of a long recording transcribed at the same time by default.
+	 */
+	public static final int DEFAULT_LONG_AUDIO_CONCURRENCY = 4;
+
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	private final ByteDanceAudioTranscriptionOptions defaultOptions;
@@ -66,6 +97,16 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 
 	private final ByteDanceAudioApi audioApi;
 
+	private ByteDanceRateLimiter rateLimiter;
+
+	private Executor taskExecutor;
+
+	private CircuitBreaker circuitBreaker;
+
+	private AudioSplitter audioSplitter = AudioSplitter.defaults();
+
+	private ByteDanceMetrics metrics;
+
 	/**
 	 * ByteDanceAudioTranscriptionModel is a client class used to interact with the ByteDance
 	 * Audio Transcription API.
@@ -110,6 +151,84 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 		this.retryTemplate = retryTemplate;
 	}
 
+	/**
+	 * Throttle the transcription requests with the given limiter.
+	 * @param rateLimiter the limiter, may be shared with other models using the same token.
+	 * @return this
+	 */
+	public ByteDanceAudioTranscriptionModel withRateLimiter(ByteDanceRateLimiter rateLimiter) {
+		this.rateLimiter = rateLimiter;
+		return this;
+	}
+
+	/**
+	 * Protect the transcription endpoint with the {@code audio/transcription} circuit
+	 * breaker of the given registry. While it is open, calls fail with a
+	 * {@link CircuitBreaker.CallNotPermittedException}, which is not retried.
+	 * @param circuitBreakerRegistry the registry, may be shared with other models.
+	 * @return this
+	 */
+	public ByteDanceAudioTranscriptionModel withCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+		this.circuitBreaker = circuitBreakerRegistry != null
+				? circuitBreakerRegistry.circuitBreaker("audio/transcription") : null;
+		return this;
+	}
+
+	/**
+	 * Set the executor running {@link #callAsync(AudioTranscriptionPrompt)}, including
+	 * the retry backoff waits.
+	 * @param taskExecutor the executor, e.g.
+	 * {@link VirtualThreadSupport#createExecutor(String)}.
+	 * @return this
+	 */
+	public ByteDanceAudioTranscriptionModel withTaskExecutor(Executor taskExecutor) {
+		this.taskExecutor = taskExecutor;
+		return this;
+	}
+
+	/**
+	 * Set how {@link #callLongAudio(AudioTranscriptionPrompt)} splits long recordings.
+	 * @param audioSplitter the splitter, {@link AudioSplitter#defaults()} by default.
+	 * @return this
+	 */
+	public ByteDanceAudioTranscriptionModel withAudioSplitter(AudioSplitter audioSplitter) {
+		Assert.notNull(audioSplitter, "AudioSplitter must not be null");
+		this.audioSplitter = audioSplitter;
+		return this;
+	}
+
+	/**
+	 * Record Micrometer metrics and observations of the transcription requests: latency,
+	 * retries, errors, the size of the uploaded audio and the rate limit headroom. Every
+	 * window of {@link #callLongAudio} is recorded as a request of its own.
+	 * @param metrics the metrics, may be shared with other models.
+	 * @return this
+	 */
+	public ByteDanceAudioTranscriptionModel withMetrics(ByteDanceMetrics metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+
+	private ByteDanceObservation observe(ByteDanceAudioApi.TranscriptionRequest requestBody) {
+		return this.metrics != null
+				? this.metrics.start(ByteDanceMetrics.OPERATION_TRANSCRIPTION, requestBody.model(), null)
+				: ByteDanceObservation.noop();
+	}
+
+	/**
+	 * Run {@link #call(AudioTranscriptionPrompt)} on the task executor, by default on a
+	 * virtual thread (Java 21) so that waiting calls do not hold platform threads.
+	 * @param request the transcription prompt.
+	 * @return the transcription response.
+	 */
+	public CompletableFuture<AudioTranscriptionResponse> callAsync(AudioTranscriptionPrompt request) {
+		return CompletableFuture.supplyAsync(() -> call(request), getTaskExecutor());
+	}
+
+	private Executor getTaskExecutor() {
+		return this.taskExecutor != null ? this.taskExecutor : VirtualThreadSupport.defaultExecutor();
+	}
+
 	public String call(Resource audioResource) {
 		AudioTranscriptionPrompt transcriptionRequest = new AudioTranscriptionPrompt(audioResource);
 		return call(transcriptionRequest).getResult().getOutput();
@@ -118,16 +237,39 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 	@Override
 	public AudioTranscriptionResponse call(AudioTranscriptionPrompt request) {
 
+		ByteDanceAudioApi.TranscriptionRequest requestBody = createRequestBody(request);
+		ByteDanceObservation observation = observe(requestBody);
+		try {
+			AudioTranscriptionResponse response = call(request, requestBody, observation);
+			observation.onAudioSent(knownSize(request.getInstructions()));
+			observation.stop();
+			return response;
+		}
+		catch (RuntimeException ex) {
+			observation.stop(ex);
+			throw ex;
+		}
+	}
+
+	private AudioTranscriptionResponse call(AudioTranscriptionPrompt request,
+			ByteDanceAudioApi.TranscriptionRequest requestBody, ByteDanceObservation observation) {
+
 		return this.retryTemplate.execute(ctx -> {
 
+			if (ctx.getRetryCount() > 0) {
+				observation.onRetry();
+			}
+
 			Resource audioResource = request.getInstructions();
 
-			ByteDanceAudioApi.TranscriptionRequest requestBody = createRequestBody(request);
+			if (this.rateLimiter != null) {
+				this.rateLimiter.acquire(0);
+			}
 
 			if (requestBody.responseFormat().isJsonType()) {
 
-				ResponseEntity<StructuredResponse> transcriptionEntity = this.audioApi.createTranscription(requestBody,
-						StructuredResponse.class);
+				ResponseEntity<StructuredResponse> transcriptionEntity = protect(
+						() -> this.audioApi.createTranscription(requestBody, StructuredResponse.class), observation);
 
 				var transcription = transcriptionEntity.getBody();
 
@@ -139,6 +281,10 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 				AudioTranscription transcript = new AudioTranscription(transcription.text());
 
 				RateLimit rateLimits = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(transcriptionEntity);
+				if (this.rateLimiter != null) {
+					this.rateLimiter.update(rateLimits);
+				}
+				observation.onRateLimit(rateLimits);
 
 				return new AudioTranscriptionResponse(transcript,
 						ByteDanceAudioTranscriptionResponseMetadata.from(transcriptionEntity.getBody())
@@ -147,8 +293,8 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 			}
 			else {
 
-				ResponseEntity<String> transcriptionEntity = this.audioApi.createTranscription(requestBody,
-						String.class);
+				ResponseEntity<String> transcriptionEntity = protect(
+						() -> this.audioApi.createTranscription(requestBody, String.class), observation);
 
 				var transcription = transcriptionEntity.getBody();
 
@@ -160,6 +306,10 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 				AudioTranscription transcript = new AudioTranscription(transcription);
 
 				RateLimit rateLimits = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(transcriptionEntity);
+				if (this.rateLimiter != null) {
+					this.rateLimiter.update(rateLimits);
+				}
+				observation.onRateLimit(rateLimits);
 
 				return new AudioTranscriptionResponse(transcript,
 						ByteDanceAudioTranscriptionResponseMetadata.from(transcriptionEntity.getBody())
@@ -168,6 +318,137 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 		});
 	}
 
+	public StructuredResponse callLongAudio(AudioTranscriptionPrompt request) {
+		return callLongAudio(request, DEFAULT_LONG_AUDIO_CONCURRENCY);
+	}
+
+	/**
+	 * Transcribe a recording that is too long for a single request. The recording is split
+	 * into overlapping windows by the {@link AudioSplitter}, which are transcribed on the
+	 * task executor, each one with its own retries, and merged by the
+	 * {@link TranscriptMerger}. A recording that is not a local file is spooled to a
+	 * temporary file first. The windows are always requested as {@code verbose_json},
+	 * since the merge needs the timestamps.
+	 * @param request the transcription prompt.
+	 * @param maxConcurrency the maximum number of windows transcribed at the same time.
+	 * @return the transcription of the whole recording, with segment and word timestamps
+	 * relative to its start.
+	 */
+	public StructuredResponse callLongAudio(AudioTranscriptionPrompt request, int maxConcurrency) {
+		Assert.isTrue(maxConcurrency > 0, "maxConcurrency must be positive");
+		ByteDanceAudioApi.TranscriptionRequest requestBody = createRequestBody(request);
+		Resource audio = request.getInstructions();
+		Path spooled = null;
+		try {
+			Path file;
+			if (audio.isFile()) {
+				file = audio.getFile().toPath();
+			}
+			else {
+				spooled = Files.createTempFile("transcription-", audio.getFilename() != null
+						? "-" + Paths.get(audio.getFilename()).getFileName() : ".audio");
+				try (InputStream in = audio.getInputStream()) {
+					Files.copy(in, spooled, StandardCopyOption.REPLACE_EXISTING);
+				}
+				file = spooled;
+			}
+			List<AudioWindow> windows = this.audioSplitter.split(file);
+			Scheduler scheduler = Schedulers.fromExecutor(getTaskExecutor());
+			List<StructuredResponse> transcripts = Flux.fromIterable(windows)
+				.flatMapSequential(window -> Mono.fromCallable(() -> transcribeWindow(requestBody, window))
+					.subscribeOn(scheduler), maxConcurrency)
+				.collectList()
+				.block();
+			return TranscriptMerger.merge(windows, transcripts);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		finally {
+			if (spooled != null) {
+				try {
+					Files.deleteIfExists(spooled);
+				}
+				catch (IOException ex) {
+					logger.warn("Could not delete spooled recording {}", spooled, ex);
+				}
+			}
+		}
+	}
+
+	private StructuredResponse transcribeWindow(ByteDanceAudioApi.TranscriptionRequest requestBody,
+			AudioWindow window) {
+		ByteDanceAudioApi.TranscriptionRequest windowRequest = ByteDanceAudioApi.TranscriptionRequest.builder()
+			.withFile(window.audio())
+			.withResponseFormat(ByteDanceAudioApi.TranscriptResponseFormat.VERBOSE_JSON)
+			.withPrompt(requestBody.prompt())
+			.withTemperature(requestBody.temperature())
+			.withLanguage(requestBody.language())
+			.withModel(requestBody.model())
+			.withGranularityType(requestBody.granularityType())
+			.build();
+
+		ByteDanceObservation observation = observe(windowRequest);
+		try {
+			StructuredResponse transcription = this.retryTemplate.execute(ctx -> {
+				if (ctx.getRetryCount() > 0) {
+					observation.onRetry();
+				}
+				if (this.rateLimiter != null) {
+					this.rateLimiter.acquire(0);
+				}
+				ResponseEntity<StructuredResponse> transcriptionEntity = protect(
+						() -> this.audioApi.createTranscription(windowRequest, StructuredResponse.class), observation);
+				RateLimit rateLimit = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(transcriptionEntity);
+				if (this.rateLimiter != null) {
+					this.rateLimiter.update(rateLimit);
+				}
+				observation.onRateLimit(rateLimit);
+				StructuredResponse body = transcriptionEntity.getBody();
+				if (body == null) {
+					logger.warn("No transcription returned for window {} at {}s", window.index(), window.start());
+					return new StructuredResponse(null, null, null, null, null);
+				}
+				return body;
+			});
+			// The windows are regions of a local file, their size is known.
+			observation.onAudioSent(contentLength(window.audio()));
+			observation.stop();
+			return transcription;
+		}
+		catch (RuntimeException ex) {
+			observation.stop(ex);
+			throw ex;
+		}
+	}
+
+	private <T> T protect(Supplier<T> call, ByteDanceObservation observation) {
+		try {
+			return this.circuitBreaker != null ? this.circuitBreaker.execute(call) : call.get();
+		}
+		catch (RuntimeException ex) {
+			observation.onError(ex);
+			throw ex;
+		}
+	}
+
+	/**
+	 * @return the size of the recording if it is known without reading it, {@code -1}
+	 * otherwise.
+	 */
+	private static long knownSize(Resource audio) {
+		return audio.isFile() || audio instanceof ByteArrayResource ? contentLength(audio) : -1;
+	}
+
+	private static long contentLength(Resource audio) {
+		try {
+			return audio.contentLength();
+		}
+		catch (IOException ex) {
+			return -1;
+		}
+	}
+
 	ByteDanceAudioApi.TranscriptionRequest createRequestBody(AudioTranscriptionPrompt request) {
 
 		ByteDanceAudioTranscriptionOptions options = this.defaultOptions;
@@ -183,7 +464,8 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 		}
 
 		ByteDanceAudioApi.TranscriptionRequest audioTranscriptionRequest = ByteDanceAudioApi.TranscriptionRequest.builder()
-			.withFile(toBytes(request.getInstructions()))
+			// Streamed into the multipart body, the recording is never loaded as a whole.
+			.withFile(request.getInstructions())
 			.withResponseFormat(options.getResponseFormat())
 			.withPrompt(options.getPrompt())
 			.withTemperature(options.getTemperature())
@@ -195,15 +477,6 @@ public class ByteDanceAudioTranscriptionModel implements Model<AudioTranscriptio
 		return audioTranscriptionRequest;
 	}
 
-	private byte[] toBytes(Resource resource) {
-		try {
-			return resource.getInputStream().readAllBytes();
-		}
-		catch (Exception e) {
-			throw new IllegalArgumentException("Failed to read resource: " + resource, e);
-		}
-	}
-
 	private ByteDanceAudioTranscriptionOptions merge(ByteDanceAudioTranscriptionOptions source,
 			ByteDanceAudioTranscriptionOptions target) {
 
@@ -16,31 +16,57 @@
 package com.yang.ai;
 
 import com.yang.ai.api.ByteDanceChatApi;
+import com.yang.ai.api.common.VirtualThreadSupport;
+import com.yang.ai.cache.ChatCompletionRequestKeys;
+import com.yang.ai.cache.ChatResponseCache;
+import com.yang.ai.cache.InMemoryChatResponseCache;
+import com.yang.ai.cache.SingleFlight;
 import com.yang.ai.metadata.ByteDanceChatResponseMetadata;
+import com.yang.ai.metadata.ByteDanceUsage;
+import com.yang.ai.metadata.support.ByteDanceResponseHeaderExtractor;
+import com.yang.ai.observation.ByteDanceMetrics;
+import com.yang.ai.observation.ByteDanceObservation;
+import com.yang.ai.resilience.ByteDanceRateLimiter;
+import com.yang.ai.resilience.CircuitBreaker;
+import com.yang.ai.resilience.CircuitBreakerRegistry;
+import com.yang.ai.resilience.HedgingPolicy;
+import com.yang.ai.resilience.StreamRetryPolicy;
+import io.micrometer.observation.Observation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.messages.MessageType;
 import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.RateLimit;
 import org.springframework.ai.chat.model.ChatModel;
 import org.springframework.ai.chat.model.ChatResponse;
 import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.model.StreamingChatModel;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
-import org.springframework.ai.model.ModelOptions;
-import org.springframework.ai.model.ModelOptionsUtils;
 import org.springframework.ai.model.function.AbstractFunctionCallSupport;
 import org.springframework.ai.model.function.FunctionCallbackContext;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.retry.support.RetryTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.MimeType;
 import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+import reactor.util.context.Context;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * {@link ChatModel} and {@link StreamingChatModel} implementation for {@literal ByteDance}
@@ -57,6 +83,11 @@ public class ByteDanceChatModel extends
 
     private static final Logger logger = LoggerFactory.getLogger(ByteDanceChatModel.class);
 
+    /**
+     * {@link #callAll(List)} 的默认并发数。
+     */
+    public static final int DEFAULT_BATCH_CONCURRENCY = 16;
+
     /**
      * 用于chat completion api请求的默认选项。
      */
@@ -72,6 +103,56 @@ public class ByteDanceChatModel extends
      */
     private final ByteDanceChatApi byteDanceChatApi;
 
+    /**
+     * 根据响应头中的限流信息控制请求发送速率，为null时不限流。
+     */
+    private ByteDanceRateLimiter rateLimiter;
+
+    /**
+     * call()的精确匹配响应缓存，为null时不缓存。
+     */
+    private ChatResponseCache responseCache;
+
+    /**
+     * 是否缓存temperature不为0的请求。
+     */
+    private boolean cacheNonDeterministic;
+
+    /**
+     * 合并并发的相同请求，为null时不合并。
+     */
+    private SingleFlight singleFlight;
+
+    /**
+     * 执行callAsync()和批量调用中的阻塞请求，为null时使用 {@link VirtualThreadSupport#defaultExecutor()}。
+     */
+    private Executor taskExecutor;
+
+    /**
+     * stream()在订阅后失败时的重试策略，retryTemplate只覆盖创建Flux时的异常。
+     */
+    private StreamRetryPolicy streamRetryPolicy = StreamRetryPolicy.defaults();
+
+    /**
+     * 对慢请求发送重复请求以降低尾延迟，为null时不启用。
+     */
+    private HedgingPolicy hedgingPolicy;
+
+    /**
+     * 按 "chat/模型" 创建的熔断器，为null时不熔断。
+     */
+    private CircuitBreakerRegistry circuitBreakerRegistry;
+
+    /**
+     * 熔断器打开时的降级响应，为null时直接抛出 {@link CircuitBreaker.CallNotPermittedException}。
+     */
+    private Function<Prompt, ChatResponse> circuitBreakerFallback;
+
+    /**
+     * 记录请求的延迟、token用量、重试和错误等指标，为null时不记录。
+     */
+    private ByteDanceMetrics metrics;
+
     public ByteDanceChatModel(ByteDanceChatApi byteDanceChatApi) {
         this(byteDanceChatApi, ByteDanceChatOptions.builder().withTemperature(0.7f).build());
     }
@@ -116,29 +197,353 @@ public class ByteDanceChatModel extends
         byteDanceChatApi.refreshApiKey(newApiKey);
     }
 
+    /**
+     * 设置客户端限流器，发送请求前按响应头中的剩余额度等待，避免触发429。
+     *
+     * @param rateLimiter 限流器，可以在多个模型之间共用同一个apiKey的限流器。
+     * @return this
+     */
+    public ByteDanceChatModel withRateLimiter(ByteDanceRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+        return this;
+    }
+
+    /**
+     * 设置call()的响应缓存，只缓存temperature为0的请求。
+     *
+     * @param responseCache 响应缓存，例如 {@link InMemoryChatResponseCache}。
+     * @return this
+     */
+    public ByteDanceChatModel withResponseCache(ChatResponseCache responseCache) {
+        return withResponseCache(responseCache, false);
+    }
+
+    /**
+     * 设置call()的响应缓存。
+     *
+     * @param responseCache         响应缓存，例如 {@link InMemoryChatResponseCache}。
+     * @param cacheNonDeterministic 为true时temperature不为0的请求也会被缓存，同一请求将始终得到相同的回答。
+     * @return this
+     */
+    public ByteDanceChatModel withResponseCache(ChatResponseCache responseCache, boolean cacheNonDeterministic) {
+        this.responseCache = responseCache;
+        this.cacheNonDeterministic = cacheNonDeterministic;
+        return this;
+    }
+
+    /**
+     * 合并并发的相同请求：同一时刻的相同请求只发送一次，共享同一个 {@link ChatResponse}；
+     * stream()的后到订阅者加入同一个Flux，并先收到已错过的部分。
+     *
+     * @param singleFlight 可以在多个模型之间共用。
+     * @return this
+     */
+    public ByteDanceChatModel withSingleFlight(SingleFlight singleFlight) {
+        this.singleFlight = singleFlight;
+        return this;
+    }
+
+    /**
+     * 设置执行阻塞请求的线程池，包括请求本身和重试的退避等待。
+     * 传入 {@link VirtualThreadSupport#createExecutor(String)} 可以在Java 21上使用虚拟线程。
+     *
+     * @param taskExecutor 执行callAsync()和批量调用的线程池。
+     * @return this
+     */
+    public ByteDanceChatModel withTaskExecutor(Executor taskExecutor) {
+        this.taskExecutor = taskExecutor;
+        return this;
+    }
+
+    /**
+     * 设置stream()的响应式重试策略，默认为 {@link StreamRetryPolicy#defaults()}。
+     *
+     * @param streamRetryPolicy 重试策略，{@link StreamRetryPolicy#none()} 表示不重试。
+     * @return this
+     */
+    public ByteDanceChatModel withStreamRetryPolicy(StreamRetryPolicy streamRetryPolicy) {
+        Assert.notNull(streamRetryPolicy, "StreamRetryPolicy must not be null");
+        this.streamRetryPolicy = streamRetryPolicy;
+        return this;
+    }
+
+    /**
+     * 启用对冲请求：请求在对冲延迟内未返回（stream()为未收到第一个token）时再发送一次相同的请求，
+     * 使用先返回的结果并取消另一个。对冲的是单次请求：重试的每次尝试各自对冲，退避等待期间不会发送对冲请求。
+     *
+     * @param hedgingPolicy 对冲策略，包括延迟的分位数和可对冲请求的比例。
+     * @return this
+     */
+    public ByteDanceChatModel withHedgingPolicy(HedgingPolicy hedgingPolicy) {
+        this.hedgingPolicy = hedgingPolicy;
+        return this;
+    }
+
+    /**
+     * 启用熔断：每个模型（endpoint）使用各自的熔断器，错误率或慢调用比例过高时熔断器打开，
+     * 打开期间的请求立即失败，不再等待超时和重试。
+     *
+     * @param circuitBreakerRegistry 熔断器注册表，可以在多个模型之间共用。
+     * @return this
+     */
+    public ByteDanceChatModel withCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return withCircuitBreaker(circuitBreakerRegistry, null);
+    }
+
+    /**
+     * 启用熔断，熔断器打开时返回降级响应。
+     *
+     * @param circuitBreakerRegistry 熔断器注册表，可以在多个模型之间共用。
+     * @param fallback               熔断器打开时根据prompt生成降级响应，stream()会发出这一个响应。
+     * @return this
+     */
+    public ByteDanceChatModel withCircuitBreaker(CircuitBreakerRegistry circuitBreakerRegistry,
+                                                 Function<Prompt, ChatResponse> fallback) {
+        this.circuitBreakerRegistry = circuitBreakerRegistry;
+        this.circuitBreakerFallback = fallback;
+        return this;
+    }
+
+    /**
+     * 启用Micrometer指标和Observation：call()和stream()的延迟、stream()的首token延迟和token间隔、
+     * token用量、重试次数、429/5xx错误数以及响应头中的剩余额度，见 {@link ByteDanceMetrics}。
+     * 缓存命中和合并的请求不计入。
+     *
+     * @param metrics 指标，可以在多个模型之间共用。
+     * @return this
+     */
+    public ByteDanceChatModel withMetrics(ByteDanceMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    private ByteDanceObservation observe(String operation, ByteDanceChatApi.ChatCompletionRequest request) {
+        return this.metrics != null
+                ? this.metrics.start(operation, request.model(), null)
+                : ByteDanceObservation.noop();
+    }
+
+    private CircuitBreaker circuitBreaker(ByteDanceChatApi.ChatCompletionRequest request) {
+        return this.circuitBreakerRegistry != null
+                ? this.circuitBreakerRegistry.circuitBreaker("chat/" + request.model())
+                : null;
+    }
+
     @Override
     public ChatResponse call(Prompt prompt) {
+        try {
+            return call(prompt, this.rateLimiter);
+        } catch (CircuitBreaker.CallNotPermittedException ex) {
+            if (this.circuitBreakerFallback == null) {
+                throw ex;
+            }
+            return this.circuitBreakerFallback.apply(prompt);
+        }
+    }
+
+    /**
+     * 在 {@link #withTaskExecutor 线程池} 中执行call()，默认使用虚拟线程（Java 21），
+     * 大量并发请求阻塞等待时不会占用平台线程。
+     *
+     * @param prompt 要调用的prompt。
+     * @return 调用的结果。
+     */
+    public CompletableFuture<ChatResponse> callAsync(Prompt prompt) {
+        return CompletableFuture.supplyAsync(() -> call(prompt), getTaskExecutor());
+    }
+
+    private Executor getTaskExecutor() {
+        return this.taskExecutor != null ? this.taskExecutor : VirtualThreadSupport.defaultExecutor();
+    }
+
+    private ChatResponse call(Prompt prompt, ByteDanceRateLimiter limiter) {
 
         ByteDanceChatApi.ChatCompletionRequest request = createRequest(prompt, false);
 
+        boolean cacheable = isCacheable(request);
+        String requestKey = cacheable || this.singleFlight != null ? ChatCompletionRequestKeys.of(request) : null;
+        if (cacheable) {
+            ChatResponse cached = this.responseCache.get(requestKey);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        ChatResponse chatResponse = this.singleFlight != null
+                ? this.singleFlight.execute(requestKey, () -> doObservedCall(prompt, request, limiter))
+                : doObservedCall(prompt, request, limiter);
+
+        if (cacheable && !chatResponse.getResults().isEmpty()) {
+            this.responseCache.put(requestKey, chatResponse);
+        }
+        return chatResponse;
+    }
+
+    /**
+     * 未设置temperature时服务端使用非0的默认值，因此也视为不确定的请求。
+     */
+    private boolean isCacheable(ByteDanceChatApi.ChatCompletionRequest request) {
+        if (this.responseCache == null) {
+            return false;
+        }
+        return this.cacheNonDeterministic || (request.temperature() != null && request.temperature() == 0f);
+    }
+
+    private ChatResponse doObservedCall(Prompt prompt, ByteDanceChatApi.ChatCompletionRequest request,
+                                        ByteDanceRateLimiter limiter) {
+        ByteDanceObservation observation = observe(ByteDanceMetrics.OPERATION_CHAT, request);
+        try {
+            ChatResponse chatResponse = doCall(prompt, request, limiter, observation);
+            observation.stop();
+            return chatResponse;
+        } catch (RuntimeException ex) {
+            observation.stop(ex);
+            throw ex;
+        }
+    }
+
+    private ChatResponse doCall(Prompt prompt, ByteDanceChatApi.ChatCompletionRequest request,
+                                ByteDanceRateLimiter limiter, ByteDanceObservation observation) {
+
+        CircuitBreaker circuitBreaker = circuitBreaker(request);
+
+        // 429等错误响应的限流响应头在抛出异常之前更新限流器，限流器正是要避免这些响应。
+        Consumer<HttpHeaders> errorHeadersListener = headers -> {
+            RateLimit rateLimit = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(headers);
+            if (limiter != null) {
+                limiter.update(rateLimit);
+            }
+            observation.onRateLimit(rateLimit);
+        };
+
         return this.retryTemplate.execute(ctx -> {
 
-            ResponseEntity<ByteDanceChatApi.ChatCompletion> completionEntity = this.callWithFunctionSupport(request);
+            if (ctx.getRetryCount() > 0) {
+                observation.onRetry();
+            }
+
+            if (limiter != null) {
+                limiter.acquire(estimateTokens(request));
+            }
+
+            // 熔断器打开时抛出的CallNotPermittedException不会被重试。
+            // isToolFunctionCall恒为false，直接调用接口，以便传入错误响应头的回调。
+            // 打开observation的scope，RestClient的observation作为它的子observation。
+            Supplier<ResponseEntity<ByteDanceChatApi.ChatCompletion>> attempt = () -> {
+                try (Observation.Scope scope = observation.openScope()) {
+                    return circuitBreaker != null
+                            ? circuitBreaker.execute(
+                                    () -> this.byteDanceChatApi.chatCompletionEntity(request, errorHeadersListener))
+                            : this.byteDanceChatApi.chatCompletionEntity(request, errorHeadersListener);
+                }
+            };
+            ResponseEntity<ByteDanceChatApi.ChatCompletion> completionEntity;
+            try {
+                completionEntity = this.hedgingPolicy != null ? hedge(attempt) : attempt.get();
+            } catch (RuntimeException ex) {
+                observation.onError(ex);
+                throw ex;
+            }
+
+            RateLimit rateLimit = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(completionEntity);
+            if (limiter != null) {
+                limiter.update(rateLimit);
+            }
+            observation.onRateLimit(rateLimit);
 
             var chatCompletion = completionEntity.getBody();
             if (chatCompletion == null) {
                 logger.warn("No chat completion returned for prompt: {}", prompt);
                 return new ChatResponse(List.of());
             }
+            if (chatCompletion.usage() != null) {
+                observation.onUsage(ByteDanceUsage.from(chatCompletion.usage()));
+            }
 
             List<Generation> generations = chatCompletion.choices().stream().map(choice -> new Generation(choice.message().content(), toMap(chatCompletion.id(), choice))
                     .withGenerationMetadata(ChatGenerationMetadata.from(choice.finishReason().name(), null))).toList();
 
             return new ChatResponse(generations,
-                    ByteDanceChatResponseMetadata.from(completionEntity.getBody()));
+                    ByteDanceChatResponseMetadata.from(completionEntity.getBody()).withRateLimit(rateLimit));
         });
     }
 
+    /**
+     * 只对冲单次HTTP请求，不包括重试和退避等待，两边也不会各自重试。
+     * 对冲的两个请求分别在 {@link Schedulers#boundedElastic()} 的线程上阻塞执行，取消时中断落败请求的线程。
+     */
+    private <T> T hedge(Supplier<T> attempt) {
+        return this.hedgingPolicy.apply(Mono.fromSupplier(attempt).subscribeOn(Schedulers.boundedElastic())).block();
+    }
+
+    /**
+     * 以默认并发数 {@link #DEFAULT_BATCH_CONCURRENCY} 批量调用，见 {@link #batch(List, int)}。
+     *
+     * @param prompts 要调用的prompt列表。
+     * @return 与prompts顺序一致的结果，单个prompt失败不影响其他结果。
+     */
+    public List<BatchResult> callAll(List<Prompt> prompts) {
+        return batch(prompts, DEFAULT_BATCH_CONCURRENCY).collectList().block();
+    }
+
+    /**
+     * 以有限的并发批量调用call()，结果按prompts的顺序发出。
+     * <p>
+     * 每个prompt的异常都被包装在对应的 {@link BatchResult} 中，不会中断整个批次。
+     * 请求按响应头中的限流信息节流：使用 {@link #withRateLimiter} 设置的限流器，未设置时为本批次单独创建一个。
+     * 阻塞调用在 {@link #withTaskExecutor 线程池} 上执行，连接的复用由 {@link ByteDanceChatApi} 的连接池负责，
+     * 大并发时建议使用 {@link com.yang.ai.api.common.ByteDanceClientTransport}。
+     *
+     * @param prompts        要调用的prompt列表。
+     * @param maxConcurrency 同时进行的最大请求数。
+     * @return 与prompts顺序一致的结果。
+     */
+    public Flux<BatchResult> batch(List<Prompt> prompts, int maxConcurrency) {
+        Assert.notNull(prompts, "Prompts must not be null");
+        Assert.isTrue(maxConcurrency > 0, "MaxConcurrency must be positive");
+
+        ByteDanceRateLimiter limiter = this.rateLimiter != null ? this.rateLimiter : new ByteDanceRateLimiter();
+        Scheduler scheduler = Schedulers.fromExecutor(getTaskExecutor());
+
+        return Flux.range(0, prompts.size())
+                .flatMapSequential(index -> {
+                    Prompt prompt = prompts.get(index);
+                    return Mono.fromCallable(() -> call(prompt, limiter))
+                            .subscribeOn(scheduler)
+                            .map(chatResponse -> new BatchResult(index, prompt, chatResponse, null))
+                            .onErrorResume(error -> Mono.just(new BatchResult(index, prompt, null, error)));
+                }, maxConcurrency, 1);
+    }
+
+    /**
+     * 批量调用中单个prompt的结果。
+     *
+     * @param index    prompt在批次中的位置。
+     * @param prompt   调用的prompt。
+     * @param response 调用成功时的响应，失败时为null。
+     * @param error    调用失败时的异常，成功时为null。
+     */
+    public record BatchResult(int index, Prompt prompt, ChatResponse response, Throwable error) {
+
+        public boolean isSuccess() {
+            return this.error == null;
+        }
+
+    }
+
+    /**
+     * 粗略估算请求消耗的token数：输入按每2个字符1个token估算，再加上max_tokens。
+     */
+    private static long estimateTokens(ByteDanceChatApi.ChatCompletionRequest request) {
+        long chars = 0;
+        for (ByteDanceChatApi.ChatCompletionMessage message : request.messages()) {
+            if (message.rawContent() instanceof String text) {
+                chars += text.length();
+            }
+        }
+        return (chars + 1) / 2 + (request.maxTokens() != null ? request.maxTokens() : 0);
+    }
+
     private Map<String, Object> toMap(String id, ByteDanceChatApi.ChatCompletion.Choice choice) {
         Map<String, Object> map = new HashMap<>();
 
@@ -158,56 +563,163 @@ public class ByteDanceChatModel extends
 
         ByteDanceChatApi.ChatCompletionRequest request = createRequest(prompt, true);
 
+        Flux<ChatResponse> chatResponses = this.singleFlight != null
+                ? this.singleFlight.stream(ChatCompletionRequestKeys.of(request), () -> doStream(request))
+                : doStream(request);
+
+        if (this.circuitBreakerFallback != null) {
+            chatResponses = chatResponses.onErrorResume(CircuitBreaker.CallNotPermittedException.class,
+                    ex -> Flux.just(this.circuitBreakerFallback.apply(prompt)));
+        }
+        return chatResponses;
+    }
+
+    /**
+     * 与stream()相同，并在流结束时汇总出完整的响应：每个choice的内容、role、finishReason以及usage，
+     * 见 {@link ChatResponseAggregator}。
+     * <p>
+     * 汇总在订阅responses时进行，aggregate本身不会发送请求；每次订阅responses都会重新汇总，
+     * aggregate发出第一次结束的汇总结果。responses被取消时aggregate发出取消前已收到的部分，
+     * 出错时以同样的异常结束。
+     *
+     * @param prompt 要调用的prompt。
+     * @return 实时的响应流和汇总的响应。
+     */
+    public AggregatedStream streamAndAggregate(Prompt prompt) {
+        Sinks.One<ChatResponse> aggregate = Sinks.one();
+        Flux<ChatResponse> responses = Flux.defer(() -> {
+            ChatResponseAggregator aggregator = new ChatResponseAggregator();
+            return stream(prompt)
+                    .doOnNext(aggregator::add)
+                    .doOnComplete(() -> aggregate.tryEmitValue(aggregator.aggregate()))
+                    .doOnCancel(() -> aggregate.tryEmitValue(aggregator.aggregate()))
+                    .doOnError(aggregate::tryEmitError);
+        });
+        return new AggregatedStream(responses, aggregate.asMono());
+    }
+
+    /**
+     * {@link #streamAndAggregate(Prompt)} 的结果。
+     *
+     * @param responses 实时的响应流，与stream()相同。
+     * @param aggregate responses结束时汇总的完整响应。
+     */
+    public record AggregatedStream(Flux<ChatResponse> responses, Mono<ChatResponse> aggregate) {
+    }
+
+    private Flux<ChatResponse> doStream(ByteDanceChatApi.ChatCompletionRequest request) {
+
+        // 每次订阅一个observation，从订阅开始计时，首token延迟包括排队和限流等待；未订阅的流不会开始observation。
+        return Flux.defer(() -> {
+            ByteDanceObservation observation = observe(ByteDanceMetrics.OPERATION_CHAT_STREAM, request);
+            try {
+                return observation.observe(doStream(request, observation));
+            } catch (RuntimeException ex) {
+                observation.stop(ex);
+                throw ex;
+            }
+        });
+    }
+
+    private Flux<ChatResponse> doStream(ByteDanceChatApi.ChatCompletionRequest request,
+                                        ByteDanceObservation observation) {
+
         return this.retryTemplate.execute(ctx -> {
 
             Flux<ByteDanceChatApi.ChatCompletionChunk> completionChunks = this.byteDanceChatApi.chatCompletionStream(request);
 
-            // For chunked responses, only the first chunk contains the choice role.
-            // The rest of the chunks with same ID share the same role.
-            ConcurrentHashMap<String, String> roleMap = new ConcurrentHashMap<>();
-
-            // Convert the ChatCompletionChunk into a ChatCompletion to be able to reuse
-            // the function call handling logic.
-            return completionChunks.map(chunk -> chunkToChatCompletion(chunk))
-                    .switchMap(
-                            cc -> handleFunctionCallOrReturnStream(request, Flux.just(ResponseEntity.of(Optional.of(cc)))))
-                    .map(ResponseEntity::getBody)
-                    .map(chatCompletion -> {
-                        try {
-                            @SuppressWarnings("null")
-                            String id = chatCompletion.id();
-
-                            List<Generation> generations = chatCompletion.choices().stream().map(choice -> {
-                                if (choice.message().role() != null) {
-                                    roleMap.putIfAbsent(id, choice.message().role().name());
-                                }
-                                String finish = (choice.finishReason() != null ? choice.finishReason().name() : "");
-                                var generation = new Generation(choice.message().content(),
-                                        Map.of("id", id, "role", roleMap.get(id), "finishReason", finish));
-                                if (choice.finishReason() != null) {
-                                    generation = generation.withGenerationMetadata(
-                                            ChatGenerationMetadata.from(choice.finishReason().name(), null));
-                                }
-                                return generation;
-                            }).toList();
-
-                            return new ChatResponse(generations);
-                        } catch (Exception e) {
-                            logger.error("Error processing chat completion", e);
-                            return new ChatResponse(List.of());
-                        }
-
-                    });
+            if (this.rateLimiter != null) {
+                completionChunks = this.rateLimiter.acquireAsync(estimateTokens(request)).thenMany(completionChunks);
+            }
+
+            // 响应头中的限流信息，写入每个ChatResponse的metadata；重试时被新的响应头覆盖。
+            AtomicReference<RateLimit> rateLimit = new AtomicReference<>();
+            ByteDanceRateLimiter limiter = this.rateLimiter;
+            Consumer<HttpHeaders> headersListener = headers -> {
+                RateLimit headersRateLimit = ByteDanceResponseHeaderExtractor.extractAiResponseHeaders(headers);
+                rateLimit.set(headersRateLimit);
+                if (limiter != null) {
+                    limiter.update(headersRateLimit);
+                }
+                observation.onRateLimit(headersRateLimit);
+            };
+            completionChunks = completionChunks
+                    .contextWrite(Context.of(ByteDanceChatApi.RESPONSE_HEADERS_LISTENER, headersListener));
+
+            CircuitBreaker circuitBreaker = circuitBreaker(request);
+            if (circuitBreaker != null) {
+                completionChunks = circuitBreaker.apply(completionChunks);
+            }
+
+            if (this.hedgingPolicy != null) {
+                completionChunks = this.hedgingPolicy.apply(completionChunks);
+            }
+
+            if (this.metrics != null) {
+                // 重试时重新订阅，第二次及以后的订阅计为重试。
+                AtomicInteger subscriptions = new AtomicInteger();
+                completionChunks = completionChunks
+                        .doOnSubscribe(subscription -> {
+                            if (subscriptions.getAndIncrement() > 0) {
+                                observation.onRetry();
+                            }
+                        })
+                        .doOnNext(chunk -> {
+                            if (hasContent(chunk)) {
+                                observation.onToken();
+                            }
+                            if (chunk.usage() != null) {
+                                observation.onUsage(ByteDanceUsage.from(chunk.usage()));
+                            }
+                        })
+                        .doOnError(observation::onError);
+            }
+
+            // 每次重试都会重新订阅，即重新发送请求（并重新经过限流）。
+            completionChunks = this.streamRetryPolicy.apply(completionChunks);
+
+            // 每个chunk直接转换为ChatResponse，role、generation属性和metadata在同一次订阅内复用，
+            // 每个token只分配Generation和ChatResponse。streamRetryPolicy的重试发生在mapper之前，
+            // 沿用同一个mapper：重试的请求带有新的chunk id和新的RateLimit，mapper据此重置缓存的状态。
+            // 每次订阅返回的Flux才会创建新的mapper。
+            Flux<ByteDanceChatApi.ChatCompletionChunk> chunks = completionChunks;
+            return Flux.defer(() -> {
+                ChatCompletionChunkMapper mapper = new ChatCompletionChunkMapper();
+                return chunks.map(chunk -> {
+                    try {
+                        // usage只在最后一个没有choices的chunk中（stream_options.include_usage）。
+                        return mapper.map(chunk, rateLimit.get());
+                    } catch (Exception e) {
+                        logger.error("Error processing chat completion", e);
+                        return new ChatResponse(List.of());
+                    }
+                });
+            });
         });
     }
 
+    /**
+     * 只含role或usage的chunk不算作token。
+     */
+    private static boolean hasContent(ByteDanceChatApi.ChatCompletionChunk chunk) {
+        if (chunk.choices() == null) {
+            return false;
+        }
+        for (ByteDanceChatApi.ChatCompletionChunk.ChunkChoice choice : chunk.choices()) {
+            if (choice.delta() != null && choice.delta().rawContent() instanceof String content && !content.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * 将ChatCompletionChunk转换为ChatCompletion。
      *
      * @param chunk the ChatCompletionChunk to convert
      * @return the ChatCompletion
      */
-    private ByteDanceChatApi.ChatCompletion chunkToChatCompletion(ByteDanceChatApi.ChatCompletionChunk chunk) {
+    ByteDanceChatApi.ChatCompletion chunkToChatCompletion(ByteDanceChatApi.ChatCompletionChunk chunk) {
         List<ByteDanceChatApi.ChatCompletion.Choice> choices = chunk.choices()
                 .stream()
                 .map(cc -> new ByteDanceChatApi.ChatCompletion.Choice(cc.finishReason(), cc.index(), cc.delta(), cc.logprobs()))
@@ -239,25 +751,11 @@ public class ByteDanceChatModel extends
             return new ByteDanceChatApi.ChatCompletionMessage(m.getContent(), ByteDanceChatApi.ChatCompletionMessage.Role.valueOf(m.getMessageType().name()));
         }).toList();
 
-        ByteDanceChatApi.ChatCompletionRequest request = new ByteDanceChatApi.ChatCompletionRequest(chatCompletionMessages, stream);
-
-        if (prompt.getOptions() != null) {
-            if (prompt.getOptions() != null) {
-                ByteDanceChatOptions updatedRuntimeOptions = ModelOptionsUtils.copyToTarget(prompt.getOptions(),
-                        ModelOptions.class, ByteDanceChatOptions.class);
-
-                request = ModelOptionsUtils.merge(updatedRuntimeOptions, request, ByteDanceChatApi.ChatCompletionRequest.class);
-            } else {
-                throw new IllegalArgumentException("Prompt options are not of type ChatOptions: "
-                        + prompt.getOptions().getClass().getSimpleName());
-            }
-        }
-
-        if (this.defaultOptions != null) {
-            request = ModelOptionsUtils.merge(request, this.defaultOptions, ByteDanceChatApi.ChatCompletionRequest.class);
-        }
+        // 直接复制字段，运行时选项优先于默认选项，避免ModelOptionsUtils.merge经Jackson在Map和对象之间来回转换。
+        ByteDanceChatOptions runtimeOptions = prompt.getOptions() != null
+                ? ChatCompletionRequestMerger.toByteDanceChatOptions(prompt.getOptions()) : null;
 
-        return request;
+        return ChatCompletionRequestMerger.merge(chatCompletionMessages, stream, runtimeOptions, this.defaultOptions);
     }
 
     private String fromMediaData(MimeType mimeType, Object mediaContentData) {
@@ -135,6 +135,11 @@ public class ByteDanceChatOptions implements ChatOptions {
 			return this;
 		}
 
+		public Builder withStreamOptions(ByteDanceChatApi.ChatCompletionStreamOption streamOptions) {
+			this.options.streamOptions = streamOptions;
+			return this;
+		}
+
 		public ByteDanceChatOptions build() {
 			return this.options;
 		}
@@ -215,6 +220,14 @@ public class ByteDanceChatOptions implements ChatOptions {
 		this.topP = topP;
 	}
 
+	public ByteDanceChatApi.ChatCompletionStreamOption getStreamOptions() {
+		return this.streamOptions;
+	}
+
+	public void setStreamOptions(ByteDanceChatApi.ChatCompletionStreamOption streamOptions) {
+		this.streamOptions = streamOptions;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
@@ -228,6 +241,7 @@ public class ByteDanceChatOptions implements ChatOptions {
 		result = prime * result + ((stop == null) ? 0 : stop.hashCode());
 		result = prime * result + ((temperature == null) ? 0 : temperature.hashCode());
 		result = prime * result + ((topP == null) ? 0 : topP.hashCode());
+		result = prime * result + ((streamOptions == null) ? 0 : streamOptions.hashCode());
 		return result;
 	}
 
@@ -314,6 +328,14 @@ public class ByteDanceChatOptions implements ChatOptions {
 		}
 		else if (!topP.equals(other.topP)) {
             return false;
+        }
+		if (this.streamOptions == null) {
+			if (other.streamOptions != null) {
+                return false;
+            }
+		}
+		else if (!this.streamOptions.equals(other.streamOptions)) {
+            return false;
         }
 		return true;
 	}
@@ -340,6 +362,7 @@ public class ByteDanceChatOptions implements ChatOptions {
 			.withStop(fromOptions.getStop())
 			.withTemperature(fromOptions.getTemperature())
 			.withTopP(fromOptions.getTopP())
+			.withStreamOptions(fromOptions.getStreamOptions())
 			.build();
 	}
 
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionChunk;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.metadata.ByteDanceChatResponseMetadata;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Maps the chunks of one chat stream to {@link ChatResponse}s. Only the first chunk
+ * carries the role, so the mapper remembers it for the chunks that follow. The
+ * generation properties ({@code id}, {@code role}, {@code finishReason}, {@code index})
+ * of the chunks without a finish reason and the metadata of the chunks without usage are
+ * built on first use and shared by the following chunks, until the id or the rate limit
+ * changes, e.g. on a retry. A token therefore costs the {@link Generation} and the
+ * {@link ChatResponse} only.
+ * <p>
+ * Holds the state of one subscription and is not thread-safe.
+ *
+ * @author yang
+ */
+final class ChatCompletionChunkMapper {
+
+	private String id;
+
+	private String role;
+
+	private RateLimit rateLimit;
+
+	private ByteDanceChatResponseMetadata metadata;
+
+	/**
+	 * The properties of the generations without finish reason, per choice index.
+	 */
+	private final List<Map<String, Object>> properties = new ArrayList<>(1);
+
+	/**
+	 * @param chunk the next chunk of the stream.
+	 * @param rateLimit the rate limit read from the response headers, may be
+	 * {@code null}.
+	 * @return the response of the chunk. The chunk with the usage has no generations.
+	 */
+	ChatResponse map(ChatCompletionChunk chunk, RateLimit rateLimit) {
+		if (!Objects.equals(chunk.id(), this.id) || rateLimit != this.rateLimit) {
+			this.id = chunk.id();
+			this.role = null;
+			this.rateLimit = rateLimit;
+			this.metadata = null;
+			this.properties.clear();
+		}
+
+		List<ChatCompletionChunk.ChunkChoice> choices = chunk.choices();
+		List<Generation> generations;
+		if (choices == null || choices.isEmpty()) {
+			generations = List.of();
+		}
+		else if (choices.size() == 1) {
+			generations = List.of(toGeneration(choices.get(0)));
+		}
+		else {
+			generations = new ArrayList<>(choices.size());
+			for (ChatCompletionChunk.ChunkChoice choice : choices) {
+				generations.add(toGeneration(choice));
+			}
+		}
+
+		if (chunk.usage() != null) {
+			return new ChatResponse(generations,
+					ByteDanceChatResponseMetadata.from(this.id, chunk.usage()).withRateLimit(rateLimit));
+		}
+		if (this.metadata == null) {
+			this.metadata = ByteDanceChatResponseMetadata.from(this.id, null).withRateLimit(rateLimit);
+		}
+		return new ChatResponse(generations, this.metadata);
+	}
+
+	private Generation toGeneration(ChatCompletionChunk.ChunkChoice choice) {
+		ChatCompletionMessage delta = choice.delta();
+		if (this.role == null && delta != null && delta.role() != null) {
+			this.role = delta.role().name();
+			// Built before the role was known.
+			this.properties.clear();
+		}
+		int index = choice.index() != null ? choice.index() : 0;
+		String content = delta != null ? delta.content() : null;
+		if (choice.finishReason() == null) {
+			return new Generation(content, properties(index));
+		}
+		String finishReason = choice.finishReason().name();
+		return new Generation(content, properties(index, finishReason))
+			.withGenerationMetadata(ChatGenerationMetadata.from(finishReason, null));
+	}
+
+	private Map<String, Object> properties(int index) {
+		while (this.properties.size() <= index) {
+			this.properties.add(null);
+		}
+		Map<String, Object> choiceProperties = this.properties.get(index);
+		if (choiceProperties == null) {
+			choiceProperties = properties(index, "");
+			this.properties.set(index, choiceProperties);
+		}
+		return choiceProperties;
+	}
+
+	private Map<String, Object> properties(int index, String finishReason) {
+		String choiceId = this.id != null ? this.id : "";
+		return this.role != null
+				? Map.of("id", choiceId, "role", this.role, "finishReason", finishReason, "index", index)
+				: Map.of("id", choiceId, "finishReason", finishReason, "index", index);
+	}
+
+}
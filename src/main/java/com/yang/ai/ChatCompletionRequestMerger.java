@@ -0,0 +1,99 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionRequest;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionStreamOption;
+import org.springframework.ai.chat.prompt.ChatOptions;
+
+import java.util.List;
+
+/**
+ * Builds a {@link ChatCompletionRequest} from the runtime and the default
+ * {@link ByteDanceChatOptions} by copying the fields directly. Equivalent to
+ * {@code ModelOptionsUtils.merge} of the runtime options into the request and of the
+ * request into the default options, without the round trip through Jackson maps: every
+ * field is taken from the runtime options if set there, from the default options
+ * otherwise. Collections are shared with the options, not copied.
+ * <p>
+ * A stream request without stream options in either of them asks for the usage, see
+ * {@link #DEFAULT_STREAM_OPTIONS}.
+ * <p>
+ * A field added to {@link ByteDanceChatOptions} must be added here as well.
+ *
+ * @author yang
+ */
+final class ChatCompletionRequestMerger {
+
+	/**
+	 * The stream options of a stream request that sets none: the server sends the usage
+	 * of the request in a last chunk without choices.
+	 */
+	static final ChatCompletionStreamOption DEFAULT_STREAM_OPTIONS = new ChatCompletionStreamOption(true);
+
+	private ChatCompletionRequestMerger() {
+	}
+
+	/**
+	 * @param options the runtime options of a prompt.
+	 * @return the options themselves if they are {@link ByteDanceChatOptions}, otherwise
+	 * the portable ones of them.
+	 */
+	static ByteDanceChatOptions toByteDanceChatOptions(ChatOptions options) {
+		if (options instanceof ByteDanceChatOptions byteDanceChatOptions) {
+			return byteDanceChatOptions;
+		}
+		return ByteDanceChatOptions.builder()
+			.withTemperature(options.getTemperature())
+			.withTopP(options.getTopP())
+			.build();
+	}
+
+	/**
+	 * @param messages the messages of the request.
+	 * @param stream whether the request is streamed.
+	 * @param runtimeOptions the options of the prompt, may be {@code null}.
+	 * @param defaultOptions the options of the model, may be {@code null}.
+	 * @return the request.
+	 */
+	static ChatCompletionRequest merge(List<ChatCompletionMessage> messages, boolean stream,
+			ByteDanceChatOptions runtimeOptions, ByteDanceChatOptions defaultOptions) {
+		ByteDanceChatOptions runtime = runtimeOptions != null ? runtimeOptions : defaultOptions;
+		ByteDanceChatOptions defaults = defaultOptions != null ? defaultOptions : runtimeOptions;
+		if (runtime == null) {
+			return stream ? new ChatCompletionRequest(messages, null, null, null, null, null, null, null, true,
+					DEFAULT_STREAM_OPTIONS, null, null) : new ChatCompletionRequest(messages, false);
+		}
+		ChatCompletionStreamOption streamOptions = first(runtime.getStreamOptions(), defaults.getStreamOptions());
+		if (stream && streamOptions == null) {
+			streamOptions = DEFAULT_STREAM_OPTIONS;
+		}
+		return new ChatCompletionRequest(messages, first(runtime.getModel(), defaults.getModel()),
+				first(runtime.getFrequencyPenalty(), defaults.getFrequencyPenalty()),
+				first(runtime.getLogitBias(), defaults.getLogitBias()),
+				first(runtime.getLogprobs(), defaults.getLogprobs()),
+				first(runtime.getTopLogprobs(), defaults.getTopLogprobs()),
+				first(runtime.getMaxTokens(), defaults.getMaxTokens()), first(runtime.getStop(), defaults.getStop()),
+				stream, streamOptions,
+				first(runtime.getTemperature(), defaults.getTemperature()), first(runtime.getTopP(), defaults.getTopP()));
+	}
+
+	private static <T> T first(T runtimeValue, T defaultValue) {
+		return runtimeValue != null ? runtimeValue : defaultValue;
+	}
+
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.metadata.ChatResponseMetadata;
+import org.springframework.ai.chat.metadata.EmptyUsage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Folds the responses of a chat stream into the response of the whole completion, as
+ * {@link ByteDanceChatModel#call} would have returned it. The content of every choice is
+ * appended to a buffer of its own, keyed by the {@code index} property of the
+ * generations and falling back to the position in the response; the role, the id and the
+ * finish reason are kept as they arrive. The metadata is taken from the last response
+ * that reports a usage, which with {@code stream_options.include_usage} is the last one,
+ * and from the last response otherwise.
+ * <p>
+ * Not thread-safe: feed it from a single stream, whose signals are serialized.
+ *
+ * @author yang
+ */
+public final class ChatResponseAggregator {
+
+	private static final int INITIAL_CAPACITY = 256;
+
+	private final List<ChoiceBuffer> choices = new ArrayList<>(1);
+
+	private ChatResponseMetadata metadata;
+
+	private boolean hasUsage;
+
+	/**
+	 * @param responses a chat stream.
+	 * @return the aggregated response, emitted when the stream completes.
+	 */
+	public static Mono<ChatResponse> aggregate(Flux<ChatResponse> responses) {
+		return Mono.defer(() -> {
+			ChatResponseAggregator aggregator = new ChatResponseAggregator();
+			return responses.doOnNext(aggregator::add).then(Mono.fromSupplier(aggregator::aggregate));
+		});
+	}
+
+	/**
+	 * @param response the next response of the stream.
+	 */
+	public void add(ChatResponse response) {
+		List<Generation> generations = response.getResults();
+		for (int i = 0; i < generations.size(); i++) {
+			Generation generation = generations.get(i);
+			Map<String, Object> properties = generation.getOutput().getMetadata();
+			int index = properties != null && properties.get("index") instanceof Integer choiceIndex ? choiceIndex : i;
+			choice(index).add(generation, properties);
+		}
+		ChatResponseMetadata responseMetadata = response.getMetadata();
+		if (responseMetadata != null) {
+			boolean responseHasUsage = responseMetadata.getUsage() != null
+					&& !(responseMetadata.getUsage() instanceof EmptyUsage);
+			if (responseHasUsage || !this.hasUsage) {
+				this.metadata = responseMetadata;
+				this.hasUsage = responseHasUsage;
+			}
+		}
+	}
+
+	/**
+	 * @return the response of everything added so far, one generation per choice in the
+	 * order of the choice index.
+	 */
+	public ChatResponse aggregate() {
+		List<Generation> generations = new ArrayList<>(this.choices.size());
+		for (int index = 0; index < this.choices.size(); index++) {
+			ChoiceBuffer choice = this.choices.get(index);
+			if (choice != null) {
+				generations.add(choice.toGeneration(index));
+			}
+		}
+		return this.metadata != null ? new ChatResponse(generations, this.metadata) : new ChatResponse(generations);
+	}
+
+	private ChoiceBuffer choice(int index) {
+		while (this.choices.size() <= index) {
+			this.choices.add(null);
+		}
+		ChoiceBuffer choice = this.choices.get(index);
+		if (choice == null) {
+			choice = new ChoiceBuffer();
+			this.choices.set(index, choice);
+		}
+		return choice;
+	}
+
+	private static final class ChoiceBuffer {
+
+		private final StringBuilder content = new StringBuilder(INITIAL_CAPACITY);
+
+		private Object id;
+
+		private Object role;
+
+		private String finishReason;
+
+		void add(Generation generation, Map<String, Object> properties) {
+			String delta = generation.getOutput().getContent();
+			if (delta != null) {
+				this.content.append(delta);
+			}
+			if (properties != null) {
+				if (this.id == null) {
+					this.id = properties.get("id");
+				}
+				if (this.role == null) {
+					this.role = properties.get("role");
+				}
+			}
+			ChatGenerationMetadata generationMetadata = generation.getMetadata();
+			if (generationMetadata != null && generationMetadata.getFinishReason() != null) {
+				this.finishReason = generationMetadata.getFinishReason();
+			}
+		}
+
+		Generation toGeneration(int index) {
+			Map<String, Object> properties = new HashMap<>();
+			properties.put("index", index);
+			properties.put("finishReason", this.finishReason != null ? this.finishReason : "");
+			if (this.id != null) {
+				properties.put("id", this.id);
+			}
+			if (this.role != null) {
+				properties.put("role", this.role);
+			}
+			Generation generation = new Generation(this.content.toString(), properties);
+			return this.finishReason != null
+					? generation.withGenerationMetadata(ChatGenerationMetadata.from(this.finishReason, null))
+					: generation;
+		}
+
+	}
+
+}
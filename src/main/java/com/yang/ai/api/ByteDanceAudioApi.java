@@ -18,12 +18,26 @@ package com.yang.ai.api;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
 import com.fasterxml.jackson.annotation.JsonProperty;
-import com.yang.ai.api.common.ApiUtils;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.yang.ai.api.common.AudioOutputBuffer;
 import com.yang.ai.api.common.ByteDanceApiConstants;
+import com.yang.ai.api.common.ByteDanceApiException;
+import com.yang.ai.api.common.ByteDanceClientTransport;
+import com.yang.ai.api.common.TtsBinaryProtocol;
+import org.springframework.ai.model.ModelOptionsUtils;
 import org.springframework.ai.retry.RetryUtils;
 import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
 import org.springframework.util.Assert;
@@ -32,10 +46,25 @@ import org.springframework.util.MultiValueMap;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.core.Disposable;
+import reactor.core.Disposables;
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
-
+import reactor.core.publisher.Sinks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 import java.util.List;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongFunction;
 
 /**
  * Turn audio into text or text into audio. Based on
@@ -44,9 +73,19 @@ import java.util.List;
  */
 public class ByteDanceAudioApi {
 
+    private static final ObjectReader ADDITION_READER = ModelOptionsUtils.OBJECT_MAPPER
+            .readerFor(SpeechApiResponse.Addition.class)
+            .without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+
     private final RestClient restClient;
 
-    private final WebClient webClient;
+    private final ResponseErrorHandler responseErrorHandler;
+
+    private final WebSocketClient webSocketClient;
+
+    private final URI streamUri;
+
+    private final String speechApiToken;
 
     /**
      * Create a new audio api.
@@ -58,6 +97,30 @@ public class ByteDanceAudioApi {
                 RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
     }
 
+    /**
+     * Create a new audio api on top of the given transport.
+     *
+     * @param speechApiToken ByteDance apiKey.
+     * @param transport      Connection pool and timeout settings, can be shared with
+     *                       {@link ByteDanceChatApi}.
+     */
+    public ByteDanceAudioApi(String speechApiToken, ByteDanceClientTransport transport) {
+        this(ByteDanceApiConstants.DEFAULT_SPEECH_BASE_URL, speechApiToken, transport);
+    }
+
+    /**
+     * Create a new audio api on top of the given transport.
+     *
+     * @param baseUrl        api base URL.
+     * @param speechApiToken ByteDance apiKey.
+     * @param transport      Connection pool and timeout settings, can be shared with
+     *                       {@link ByteDanceChatApi}.
+     */
+    public ByteDanceAudioApi(String baseUrl, String speechApiToken, ByteDanceClientTransport transport) {
+        this(baseUrl, speechApiToken, transport.customize(RestClient.builder()), WebClient.builder(),
+                transport.createWebSocketClient(), RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
+    }
+
     /**
      * Create an new chat completion api.
      *
@@ -68,14 +131,7 @@ public class ByteDanceAudioApi {
      */
     public ByteDanceAudioApi(String baseUrl, String speechApiToken, RestClient.Builder restClientBuilder,
                              ResponseErrorHandler responseErrorHandler) {
-
-        this.restClient = restClientBuilder.baseUrl(baseUrl).defaultHeaders(headers -> {
-            headers.setBearerAuth(speechApiToken);
-        }).defaultStatusHandler(responseErrorHandler).build();
-
-        this.webClient = WebClient.builder().baseUrl(baseUrl).defaultHeaders(headers -> {
-            headers.setBearerAuth(speechApiToken);
-        }).defaultHeaders(ApiUtils.getJsonContentHeaders(speechApiToken)).build();
+        this(baseUrl, speechApiToken, restClientBuilder, WebClient.builder(), responseErrorHandler);
     }
 
     /**
@@ -84,19 +140,39 @@ public class ByteDanceAudioApi {
      * @param baseUrl              api base URL.
      * @param speechApiToken          ByteDance apiKey.
      * @param restClientBuilder    RestClient builder.
-     * @param webClientBuilder     WebClient builder.
+     * @param webClientBuilder     WebClient builder, not used since the speech stream moved to the
+     *                             WebSocket endpoint; kept for source compatibility.
      * @param responseErrorHandler Response error handler.
      */
     public ByteDanceAudioApi(String baseUrl, String speechApiToken, RestClient.Builder restClientBuilder,
                              WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler) {
+        this(baseUrl, speechApiToken, restClientBuilder, webClientBuilder, new ReactorNettyWebSocketClient(),
+                responseErrorHandler);
+    }
+
+    /**
+     * Create an new chat completion api.
+     *
+     * @param baseUrl              api base URL.
+     * @param speechApiToken       ByteDance apiKey.
+     * @param restClientBuilder    RestClient builder.
+     * @param webClientBuilder     WebClient builder, not used since the speech stream moved to the
+     *                             WebSocket endpoint; kept for source compatibility.
+     * @param webSocketClient      WebSocket client used by {@link #stream(SpeechRequest)}.
+     * @param responseErrorHandler Response error handler.
+     */
+    public ByteDanceAudioApi(String baseUrl, String speechApiToken, RestClient.Builder restClientBuilder,
+                             WebClient.Builder webClientBuilder, WebSocketClient webSocketClient,
+                             ResponseErrorHandler responseErrorHandler) {
 
         this.restClient = restClientBuilder.baseUrl(baseUrl).defaultHeaders(headers -> {
             headers.setBearerAuth(speechApiToken);
         }).defaultStatusHandler(responseErrorHandler).build();
 
-        this.webClient = webClientBuilder.baseUrl(baseUrl).defaultHeaders(headers -> {
-            headers.setBearerAuth(speechApiToken);
-        }).defaultHeaders(ApiUtils.getJsonContentHeaders(speechApiToken)).build();
+        this.responseErrorHandler = responseErrorHandler;
+        this.webSocketClient = webSocketClient;
+        this.streamUri = URI.create(baseUrl.replaceFirst("^http", "ws") + "/api/v1/tts/ws_binary");
+        this.speechApiToken = speechApiToken;
     }
 
     /**
@@ -387,7 +463,7 @@ public class ByteDanceAudioApi {
     @JsonInclude(Include.NON_NULL)
     public record TranscriptionRequest(
             // @formatter:off
-		@JsonProperty("file") byte[] file,
+		@JsonProperty("file") Resource file,
 		@JsonProperty("model") String model,
 		@JsonProperty("language") String language,
 		@JsonProperty("prompt") String prompt,
@@ -421,7 +497,7 @@ public class ByteDanceAudioApi {
 
         public static class Builder {
 
-            private byte[] file;
+            private Resource file;
 
             private String model = WhisperModel.WHISPER_1.getValue();
 
@@ -435,11 +511,41 @@ public class ByteDanceAudioApi {
 
             private GranularityType granularityType;
 
+            /**
+             * The audio as bytes. Prefer one of the other variants for large recordings, they
+             * are streamed instead of held in memory.
+             */
             public Builder withFile(byte[] file) {
+                this.file = file != null ? new ByteArrayResource(file) : null;
+                return this;
+            }
+
+            /**
+             * The audio to stream into the request. The resource must be readable again when
+             * the request is retried.
+             */
+            public Builder withFile(Resource file) {
                 this.file = file;
                 return this;
             }
 
+            /**
+             * The audio file to stream into the request, read in chunks.
+             */
+            public Builder withFile(Path file) {
+                this.file = file != null ? new FileSystemResource(file) : null;
+                return this;
+            }
+
+            /**
+             * The audio to stream into the request. The stream is read once and closed, so a
+             * request built from it cannot be retried.
+             */
+            public Builder withFile(InputStream file, String filename) {
+                this.file = file != null ? new NamedInputStreamResource(file, filename) : null;
+                return this;
+            }
+
             public Builder withModel(String model) {
                 this.model = model;
                 return this;
@@ -537,7 +643,7 @@ public class ByteDanceAudioApi {
     @JsonInclude(Include.NON_NULL)
     public record TranslationRequest(
             // @formatter:off
-		@JsonProperty("file") byte[] file,
+		@JsonProperty("file") Resource file,
 		@JsonProperty("model") String model,
 		@JsonProperty("prompt") String prompt,
 		@JsonProperty("response_format") TranscriptResponseFormat responseFormat,
@@ -550,7 +656,7 @@ public class ByteDanceAudioApi {
 
         public static class Builder {
 
-            private byte[] file;
+            private Resource file;
 
             private String model = WhisperModel.WHISPER_1.getValue();
 
@@ -560,11 +666,41 @@ public class ByteDanceAudioApi {
 
             private Float temperature;
 
+            /**
+             * The audio as bytes. Prefer one of the other variants for large recordings, they
+             * are streamed instead of held in memory.
+             */
             public Builder withFile(byte[] file) {
+                this.file = file != null ? new ByteArrayResource(file) : null;
+                return this;
+            }
+
+            /**
+             * The audio to stream into the request. The resource must be readable again when
+             * the request is retried.
+             */
+            public Builder withFile(Resource file) {
                 this.file = file;
                 return this;
             }
 
+            /**
+             * The audio file to stream into the request, read in chunks.
+             */
+            public Builder withFile(Path file) {
+                this.file = file != null ? new FileSystemResource(file) : null;
+                return this;
+            }
+
+            /**
+             * The audio to stream into the request. The stream is read once and closed, so a
+             * request built from it cannot be retried.
+             */
+            public Builder withFile(InputStream file, String filename) {
+                this.file = file != null ? new NamedInputStreamResource(file, filename) : null;
+                return this;
+            }
+
             public Builder withModel(String model) {
                 this.model = model;
                 return this;
@@ -680,29 +816,179 @@ public class ByteDanceAudioApi {
         return this.restClient.post().uri("/api/v1/tts").body(requestBody).retrieve().toEntity(SpeechApiResponse.class);
     }
 
+    /**
+     * Request to generates audio from the input text, decoding the audio while the
+     * response is read.
+     * <p>
+     * The response is parsed as a stream: the Base64 {@code data} field is decoded in
+     * small chunks straight into the given output, so neither the encoded string nor a
+     * second copy of the audio is held in memory.
+     *
+     * @param requestBody The request body.
+     * @param audioOutput Receives the decoded audio, it is not closed.
+     * @return Response entity with every field but {@code data}, which is {@code null}.
+     */
+    public ResponseEntity<SpeechApiResponse> createSpeech(SpeechRequest requestBody, OutputStream audioOutput) {
+        Assert.notNull(audioOutput, "audioOutput must not be null");
+        return exchangeSpeech(requestBody, contentLength -> audioOutput);
+    }
+
+    /**
+     * Request to generates audio from the input text, decoding the audio into the given
+     * channel while the response is read, see {@link #createSpeech(SpeechRequest, OutputStream)}.
+     *
+     * @param requestBody  The request body.
+     * @param audioChannel Receives the decoded audio, it is not closed.
+     * @return Response entity with every field but {@code data}, which is {@code null}.
+     */
+    public ResponseEntity<SpeechApiResponse> createSpeech(SpeechRequest requestBody, WritableByteChannel audioChannel) {
+        Assert.notNull(audioChannel, "audioChannel must not be null");
+        return createSpeech(requestBody, Channels.newOutputStream(audioChannel));
+    }
+
+    /**
+     * Request to generates audio from the input text and return the decoded audio.
+     * <p>
+     * The audio is decoded in chunks while the response is read and copied once into the
+     * returned array, so the peak memory is about twice the audio size instead of the
+     * encoded string, its decoded copy and the parse buffers, see {@link AudioOutputBuffer}.
+     * Use {@link #createSpeech(SpeechRequest, OutputStream)} to hold the audio only once.
+     *
+     * @param requestBody The request body.
+     * @return Response entity containing the decoded audio.
+     */
+    public ResponseEntity<byte[]> createSpeechAudio(SpeechRequest requestBody) {
+        AudioOutputBuffer[] audio = new AudioOutputBuffer[1];
+        ResponseEntity<SpeechApiResponse> entity = exchangeSpeech(requestBody,
+                contentLength -> audio[0] = new AudioOutputBuffer(AudioOutputBuffer.estimateDecodedSize(contentLength)));
+        return ResponseEntity.status(entity.getStatusCode()).headers(entity.getHeaders()).body(audio[0].toByteArray());
+    }
+
+    private ResponseEntity<SpeechApiResponse> exchangeSpeech(SpeechRequest requestBody,
+                                                             LongFunction<OutputStream> audioOutput) {
+        return this.restClient.post().uri("/api/v1/tts").body(requestBody).exchange((request, response) -> {
+            if (this.responseErrorHandler.hasError(response)) {
+                this.responseErrorHandler.handleError(request.getURI(), request.getMethod(), response);
+            }
+            OutputStream output = audioOutput.apply(response.getHeaders().getContentLength());
+            SpeechApiResponse body = readSpeechResponse(response.getBody(), output);
+            return ResponseEntity.status(response.getStatusCode()).headers(response.getHeaders()).body(body);
+        });
+    }
+
+    static SpeechApiResponse readSpeechResponse(InputStream json, OutputStream audioOutput) throws IOException {
+        String reqId = null;
+        Integer code = null;
+        String message = null;
+        Integer sequence = null;
+        SpeechApiResponse.Addition addition = null;
+        try (JsonParser parser = ModelOptionsUtils.OBJECT_MAPPER.createParser(json)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new ByteDanceApiException("Unexpected speech response, expected a JSON object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if (value == JsonToken.VALUE_NULL) {
+                    continue;
+                }
+                switch (field) {
+                    case "reqid" -> reqId = parser.getValueAsString();
+                    case "code" -> code = parser.getValueAsInt();
+                    case "message" -> message = parser.getValueAsString();
+                    case "sequence" -> sequence = parser.getValueAsInt();
+                    // Decodes chunk by chunk, the encoded string is never materialized.
+                    case "data" -> parser.readBinaryValue(audioOutput);
+                    case "addition" -> addition = ADDITION_READER.readValue(parser);
+                    default -> parser.skipChildren();
+                }
+            }
+        }
+        return new SpeechApiResponse(reqId, code, message, sequence, null, addition);
+    }
+
     /**
      * Streams audio generated from the input text.
      * <p>
-     * This method sends a POST request to the ByteDance API to generate audio from the
-     * provided text. The audio is streamed back as a Flux of ResponseEntity objects, each
-     * containing a byte array of the audio data.
+     * This method opens a WebSocket to the streaming TTS endpoint and sends the request as
+     * a single binary frame, see {@link TtsBinaryProtocol}. The audio is emitted frame by
+     * frame as it is synthesized; the stream completes after the last frame and the
+     * WebSocket is closed. The {@code operation} of the request must be {@code submit}.
      *
      * @param requestBody The request body containing the details for the audio
      *                    generation, such as the input text, model, voice, and response format.
      * @return A Flux of ResponseEntity objects, each containing a byte array of the audio
-     * data.
+     * data and the headers of the WebSocket handshake.
      */
     public Flux<ResponseEntity<byte[]>> stream(SpeechRequest requestBody) {
+        return streamFrames(requestBody, (handshakeHeaders, audio) -> {
+            byte[] bytes = new byte[audio.readableByteCount()];
+            audio.read(bytes);
+            return ResponseEntity.ok().headers(handshakeHeaders).body(bytes);
+        });
+    }
+
+    /**
+     * Streams audio generated from the input text as the received buffers, see
+     * {@link #stream(SpeechRequest)}.
+     * <p>
+     * Each buffer is narrowed to the audio of one frame without copying it out of the
+     * WebSocket frame. The buffers may be pooled: the subscriber must release every
+     * buffer, e.g. with {@link DataBufferUtils#release(DataBuffer)} or by writing them with
+     * {@link DataBufferUtils#write(org.reactivestreams.Publisher, java.nio.file.Path, java.nio.file.OpenOption...)}.
+     *
+     * @param requestBody The request body, the {@code operation} must be {@code submit}.
+     * @return The audio buffers in order.
+     */
+    public Flux<DataBuffer> streamAudio(SpeechRequest requestBody) {
+        return streamFrames(requestBody, (handshakeHeaders, audio) -> DataBufferUtils.retain(audio))
+                .doOnDiscard(DataBuffer.class, DataBufferUtils::release);
+    }
 
-        return webClient.post()
-                .uri("/api/v1/tts/ws_binary")
-                .body(Mono.just(requestBody), SpeechRequest.class)
-                .accept(MediaType.APPLICATION_OCTET_STREAM)
-                .exchangeToFlux(clientResponse -> {
-                    HttpHeaders headers = clientResponse.headers().asHttpHeaders();
-                    return clientResponse.bodyToFlux(byte[].class)
-                            .map(bytes -> ResponseEntity.ok().headers(headers).body(bytes));
+    private <T> Flux<T> streamFrames(SpeechRequest requestBody, BiFunction<HttpHeaders, DataBuffer, T> audioMapper) {
+
+        return Flux.defer(() -> {
+            byte[] requestFrame;
+            try {
+                requestFrame = TtsBinaryProtocol.encodeFullClientRequest(
+                        ModelOptionsUtils.OBJECT_MAPPER.writeValueAsBytes(requestBody));
+            } catch (JsonProcessingException ex) {
+                return Flux.error(new ByteDanceApiException("Could not serialize the speech request", ex));
+            }
+
+            HttpHeaders headers = new HttpHeaders();
+            // The WebSocket endpoint expects "Bearer;" followed by the token.
+            headers.set(HttpHeaders.AUTHORIZATION, "Bearer;" + this.speechApiToken);
+
+            // The frames are handed out of the handler, so the demand of the subscriber reaches the
+            // socket: no frame is received ahead of it. The session stays open until they terminate.
+            Sinks.One<Flux<T>> audio = Sinks.one();
+            Sinks.Empty<Void> finished = Sinks.empty();
+            Mono<Void> connection = this.webSocketClient.execute(this.streamUri, headers, session -> {
+                HttpHeaders handshakeHeaders = session.getHandshakeInfo().getHeaders();
+                Mono<Void> send = session.send(Mono.fromSupplier(
+                        () -> session.binaryMessage(factory -> factory.wrap(requestFrame))));
+                // The payload is only valid until the message is handled, so it is mapped right away.
+                Flux<T> frames = session.receive().handle((message, sink) -> {
+                    DataBuffer payload = message.getPayload();
+                    int sequence = TtsBinaryProtocol.sliceAudio(payload);
+                    if (payload.readableByteCount() > 0) {
+                        sink.next(audioMapper.apply(handshakeHeaders, payload));
+                    }
+                    if (sequence < 0) {
+                        sink.complete();
+                    }
                 });
+                audio.tryEmitValue(send.thenMany(frames).doFinally(signal -> finished.tryEmitEmpty()));
+                return finished.asMono();
+            });
+            Disposable.Swap connected = Disposables.swap();
+            return audio.asMono()
+                    .flatMapMany(Function.identity())
+                    // A failed handshake fails the stream, a cancelled stream closes the WebSocket.
+                    .doOnSubscribe(subscription -> connected.update(connection.subscribe(null, audio::tryEmitError)))
+                    .doOnCancel(connected::dispose);
+        });
     }
 
     /**
@@ -728,12 +1014,7 @@ public class ByteDanceAudioApi {
     public <T> ResponseEntity<T> createTranscription(TranscriptionRequest requestBody, Class<T> responseType) {
 
         MultiValueMap<String, Object> multipartBody = new LinkedMultiValueMap<>();
-        multipartBody.add("file", new ByteArrayResource(requestBody.file()) {
-            @Override
-            public String getFilename() {
-                return "audio.webm";
-            }
-        });
+        multipartBody.add("file", filePart(requestBody.file()));
         multipartBody.add("model", requestBody.model());
         multipartBody.add("language", requestBody.language());
         multipartBody.add("prompt", requestBody.prompt());
@@ -752,6 +1033,17 @@ public class ByteDanceAudioApi {
                 .toEntity(responseType);
     }
 
+    /**
+     * The file part of a multipart body. The resource is streamed into the body by the
+     * {@link org.springframework.http.converter.ResourceHttpMessageConverter} in small
+     * chunks; resources without a file name are sent as {@code audio.webm}.
+     */
+    private static HttpEntity<Resource> filePart(Resource file) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentDispositionFormData("file", file.getFilename() != null ? file.getFilename() : "audio.webm");
+        return new HttpEntity<>(file, headers);
+    }
+
     /**
      * Translates audio into English.
      *
@@ -775,12 +1067,7 @@ public class ByteDanceAudioApi {
     public <T> ResponseEntity<T> createTranslation(TranslationRequest requestBody, Class<T> responseType) {
 
         MultiValueMap<String, Object> multipartBody = new LinkedMultiValueMap<>();
-        multipartBody.add("file", new ByteArrayResource(requestBody.file()) {
-            @Override
-            public String getFilename() {
-                return "audio.webm";
-            }
-        });
+        multipartBody.add("file", filePart(requestBody.file()));
         multipartBody.add("model", requestBody.model());
         multipartBody.add("prompt", requestBody.prompt());
         multipartBody.add("response_format", requestBody.responseFormat().getValue());
@@ -793,4 +1080,29 @@ public class ByteDanceAudioApi {
                 .toEntity(responseType);
     }
 
+    /**
+     * An audio stream with a file name. Its length is unknown, so the multipart body is
+     * sent chunked instead of reading the stream ahead to count it.
+     */
+    private static final class NamedInputStreamResource extends InputStreamResource {
+
+        private final String filename;
+
+        NamedInputStreamResource(InputStream inputStream, String filename) {
+            super(inputStream);
+            this.filename = filename;
+        }
+
+        @Override
+        public String getFilename() {
+            return this.filename;
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+    }
+
 }
@@ -21,16 +21,19 @@ import com.fasterxml.jackson.annotation.JsonProperty;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
-import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 import com.yang.ai.api.common.ApiUtils;
 import com.yang.ai.api.common.ByteDanceApiConstants;
-import org.springframework.ai.model.ModelOptionsUtils;
+import com.yang.ai.api.common.ByteDanceClientTransport;
+import com.yang.ai.api.common.ServerSentEventDecoder;
 import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.ResponseEntity;
 import org.springframework.lang.NonNull;
+import org.springframework.lang.Nullable;
 import org.springframework.util.Assert;
-import org.springframework.util.StringUtils;
 import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.reactive.function.client.WebClient;
@@ -38,10 +41,10 @@ import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Predicate;
+import java.util.function.Consumer;
 
 
 /**
@@ -51,10 +54,23 @@ import java.util.function.Predicate;
  */
 public class ByteDanceChatApi {
 
-    private static final Predicate<String> SSE_DONE_PREDICATE = "[DONE]"::equals;
+    /**
+     * 流式响应解码器，直接在字节层面解析SSE事件，避免逐个chunk创建中间字符串。
+     */
+    private static final ServerSentEventDecoder<ChatCompletionChunk> CHUNK_DECODER = new ServerSentEventDecoder<>(
+            ChatCompletionCodec.chunkReader());
+
+    /**
+     * Reactor {@link reactor.util.context.Context} 中的键，值为 {@code Consumer<HttpHeaders>}。
+     * 订阅 {@link #chatCompletionStream} 时写入，流式响应的响应头到达时回调，用于读取限流等响应头。
+     * 错误响应（如429）的响应头同样会回调，之后才抛出异常。
+     */
+    public static final String RESPONSE_HEADERS_LISTENER = ByteDanceChatApi.class.getName() + ".RESPONSE_HEADERS_LISTENER";
 
     private final RestClient restClient;
 
+    private final ResponseErrorHandler responseErrorHandler;
+
     private WebClient webClient;
 
     /**
@@ -76,6 +92,27 @@ public class ByteDanceChatApi {
         this(baseUrl, apiKey, RestClient.builder(),  WebClient.builder());
     }
 
+    /**
+     * 创建一个新的聊天完成api，使用给定的连接池和超时配置。
+     *
+     * @param apiKey    ByteDance apiKey.
+     * @param transport 传输层配置，可以和 {@link ByteDanceAudioApi} 共用。
+     */
+    public ByteDanceChatApi(String apiKey, ByteDanceClientTransport transport) {
+        this(ByteDanceApiConstants.DEFAULT_CHAT_BASE_URL, apiKey, transport);
+    }
+
+    /**
+     * 创建一个新的聊天完成api，使用给定的连接池和超时配置。
+     *
+     * @param baseUrl   api base URL.
+     * @param apiKey    ByteDance apiKey.
+     * @param transport 传输层配置，可以和 {@link ByteDanceAudioApi} 共用。
+     */
+    public ByteDanceChatApi(String baseUrl, String apiKey, ByteDanceClientTransport transport) {
+        this(baseUrl, apiKey, transport.customize(RestClient.builder()), transport.customize(WebClient.builder()));
+    }
+
     /**
      * 创建一个新的聊天完成api。
      *
@@ -97,6 +134,8 @@ public class ByteDanceChatApi {
      */
     public ByteDanceChatApi(String baseUrl, String apiKey, RestClient.Builder restClientBuilder, WebClient.Builder webClientBuilder, ResponseErrorHandler responseErrorHandler) {
 
+        this.responseErrorHandler = responseErrorHandler;
+
         this.restClient = restClientBuilder
                 .baseUrl(baseUrl)
                 .defaultHeaders(ApiUtils.getJsonContentHeaders(apiKey))
@@ -296,13 +335,26 @@ public class ByteDanceChatApi {
     public static class ChatCompletionFinishReasonEnumDeserializer extends JsonDeserializer<ChatCompletionFinishReason> {
         @Override
         public ChatCompletionFinishReason deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
-            JsonNode node = p.getCodec().readTree(p);
-            String value = node.textValue();
+            // 直接读取字符串值，不构建JsonNode
+            return parse(p.getValueAsString());
+        }
 
+        static ChatCompletionFinishReason parse(String value) {
             if (value == null || value.isEmpty()) {
                 return null;
             }
 
+            switch (value) {
+                case "stop":
+                    return ChatCompletionFinishReason.STOP;
+                case "length":
+                    return ChatCompletionFinishReason.LENGTH;
+                case "content_filter":
+                    return ChatCompletionFinishReason.CONTENT_FILTER;
+                default:
+                    break;
+            }
+
             for (ChatCompletionFinishReason enumValue : ChatCompletionFinishReason.values()) {
                 if (enumValue.name().equalsIgnoreCase(value)) {
                     return enumValue;
@@ -456,15 +508,43 @@ public class ByteDanceChatApi {
      * @return 以 {@link ChatCompletion}为主体、HTTP状态代码和标头的实体响应。
      */
     public ResponseEntity<ChatCompletion> chatCompletionEntity(ChatCompletionRequest chatRequest) {
+        return chatCompletionEntity(chatRequest, null);
+    }
+
+    /**
+     * 获取完整输出，错误响应（如429）的响应头在抛出异常之前交给 errorHeadersListener，用于读取限流等响应头。
+     * 成功响应的响应头在返回的 {@link ResponseEntity} 中。
+     * 响应体由 {@link ChatCompletionCodec} 预先绑定类型的reader直接从响应流解析。
+     *
+     * @param chatRequest          入参
+     * @param errorHeadersListener 错误响应的响应头回调，可以为null。
+     * @return 以 {@link ChatCompletion}为主体、HTTP状态代码和标头的实体响应。
+     */
+    public ResponseEntity<ChatCompletion> chatCompletionEntity(ChatCompletionRequest chatRequest,
+                                                               @Nullable Consumer<HttpHeaders> errorHeadersListener) {
 
         Assert.notNull(chatRequest, "The request body can not be null.");
         Assert.isTrue(!chatRequest.stream(), "Request must set the steam property to false.");
 
+        // exchange不经过默认的状态处理器，错误响应在回调之后交给同一个错误处理器抛出异常。
         return this.restClient.post()
                 .uri("/api/v3/chat/completions")
                 .body(chatRequest)
-                .retrieve()
-                .toEntity(ChatCompletion.class);
+                .exchange((request, response) -> {
+                    if (this.responseErrorHandler.hasError(response)) {
+                        if (errorHeadersListener != null) {
+                            errorHeadersListener.accept(response.getHeaders());
+                        }
+                        this.responseErrorHandler.handleError(request.getURI(), request.getMethod(), response);
+                    }
+                    ChatCompletion chatCompletion;
+                    try (InputStream body = response.getBody()) {
+                        chatCompletion = ChatCompletionCodec.readCompletion(body);
+                    }
+                    return ResponseEntity.status(response.getStatusCode())
+                            .headers(response.getHeaders())
+                            .body(chatCompletion);
+                });
     }
 
     /**
@@ -478,31 +558,28 @@ public class ByteDanceChatApi {
         Assert.notNull(chatRequest, "The request body can not be null.");
         Assert.isTrue(chatRequest.stream(), "Request must set the steam property to true.");
 
-        AtomicBoolean isInsideTool = new AtomicBoolean(false);
-
-        return this.webClient.post()
-                .uri("/api/v3/chat/completions")
-                .body(Mono.just(chatRequest), ChatCompletionRequest.class)
-                .retrieve()
-                .bodyToFlux(String.class)
-                .map(content -> {
-                    // 返回的content-type不是text/event-stream，导致当作普通处理，需要手动解析
-                    if (content.startsWith("data:")) {
-                        int length = content.length();
-                        if (length > 5) {
-                            int index = (content.charAt(5) != ' ' ? 5 : 6);
-                            if (length > index) {
-                                return content.substring(index);
-                            }
+        // 返回的content-type不一定是text/event-stream，直接按字节解析
+        return Flux.deferContextual(context -> {
+            Consumer<HttpHeaders> headersListener = context.<Consumer<HttpHeaders>>getOrEmpty(RESPONSE_HEADERS_LISTENER)
+                    .orElse(null);
+            WebClient.ResponseSpec response = this.webClient.post()
+                    .uri("/api/v3/chat/completions")
+                    .body(Mono.just(chatRequest), ChatCompletionRequest.class)
+                    .retrieve();
+            if (headersListener != null) {
+                // 与默认处理相同，抛出WebClientResponseException，但先回调错误响应的响应头。
+                response = response.onStatus(HttpStatusCode::isError, errorResponse -> {
+                    headersListener.accept(errorResponse.headers().asHttpHeaders());
+                    return errorResponse.createException();
+                });
+            }
+            return CHUNK_DECODER.decode(response.toEntityFlux(DataBuffer.class)
+                    .flatMapMany(entity -> {
+                        if (headersListener != null) {
+                            headersListener.accept(entity.getHeaders());
                         }
-                    }
-                    return content;
-                })
-                .filter(StringUtils::hasText)
-                // cancels the flux stream after the "[DONE]" is received.
-                .takeUntil(SSE_DONE_PREDICATE)
-                // filters out the "[DONE]" message.
-                .filter(SSE_DONE_PREDICATE.negate())
-                .map(content -> ModelOptionsUtils.jsonToObject(content, ChatCompletionChunk.class));
+                        return entity.getBody();
+                    }));
+        });
     }
 }
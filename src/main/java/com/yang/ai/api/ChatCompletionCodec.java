@@ -0,0 +1,230 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletion;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionChunk;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionFinishReason;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionFinishReasonEnumDeserializer;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.api.ByteDanceChatApi.LogProbs;
+import com.yang.ai.api.ByteDanceChatApi.Usage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 聊天接口响应的解码器。
+ * <p>
+ * {@link ObjectReader} 在类加载时绑定好目标类型并复用，避免每个 chunk 都经过通用的 mapper 查找。
+ * {@link ChatCompletionChunk} 使用手写的流式解析：只按字段名分派
+ * {@code choices[].delta.content}、{@code finish_reason} 等热点字段，
+ * 其余不常出现的结构（如 logprobs）才交给 Jackson 的通用反序列化。
+ *
+ * @author yang
+ */
+public final class ChatCompletionCodec {
+
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .registerModule(new SimpleModule("ByteDanceChatCompletionCodec")
+                    .addDeserializer(ChatCompletionChunk.class, new ChatCompletionChunkDeserializer()));
+
+    private static final ObjectReader CHUNK_READER = OBJECT_MAPPER.readerFor(ChatCompletionChunk.class);
+
+    private static final ObjectReader COMPLETION_READER = OBJECT_MAPPER.readerFor(ChatCompletion.class);
+
+    private ChatCompletionCodec() {
+    }
+
+    /**
+     * @return 绑定 {@link ChatCompletionChunk} 的 reader。
+     */
+    public static ObjectReader chunkReader() {
+        return CHUNK_READER;
+    }
+
+    /**
+     * 非流式响应的解析，由 {@link ByteDanceChatApi#chatCompletionEntity} 使用。
+     *
+     * @param json 响应体。
+     * @return 解析出的 {@link ChatCompletion}，响应体为空时为null。
+     */
+    static ChatCompletion readCompletion(InputStream json) throws IOException {
+        try (JsonParser parser = COMPLETION_READER.createParser(json)) {
+            return parser.nextToken() != null ? COMPLETION_READER.readValue(parser) : null;
+        }
+    }
+
+    /**
+     * {@link ChatCompletionChunk} 的手写反序列化器。
+     */
+    static class ChatCompletionChunkDeserializer extends JsonDeserializer<ChatCompletionChunk> {
+
+        @Override
+        public ChatCompletionChunk deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            String id = null;
+            List<ChatCompletionChunk.ChunkChoice> choices = null;
+            Long created = null;
+            String model = null;
+            Usage usage = null;
+            String object = null;
+
+            for (String field = firstFieldName(p, ctxt); field != null; field = p.nextFieldName()) {
+                JsonToken token = p.nextToken();
+                switch (field) {
+                    case "id" -> id = text(p, token);
+                    case "choices" -> choices = readChoices(p, ctxt, token);
+                    case "created" -> created = token == JsonToken.VALUE_NULL ? null : p.getLongValue();
+                    case "model" -> model = text(p, token);
+                    case "usage" -> usage = readUsage(p, token);
+                    case "object" -> object = text(p, token);
+                    default -> p.skipChildren();
+                }
+            }
+            return new ChatCompletionChunk(id, choices, created, model, usage, object);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static List<ChatCompletionChunk.ChunkChoice> readChoices(JsonParser p, DeserializationContext ctxt,
+                                                                         JsonToken token) throws IOException {
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                return (List<ChatCompletionChunk.ChunkChoice>) ctxt.handleUnexpectedToken(List.class, p);
+            }
+            List<ChatCompletionChunk.ChunkChoice> choices = new ArrayList<>(1);
+            while (p.nextToken() != JsonToken.END_ARRAY) {
+                choices.add(readChoice(p, ctxt));
+            }
+            return choices;
+        }
+
+        private static ChatCompletionChunk.ChunkChoice readChoice(JsonParser p, DeserializationContext ctxt)
+                throws IOException {
+            ChatCompletionFinishReason finishReason = null;
+            Integer index = null;
+            ChatCompletionMessage delta = null;
+            LogProbs logprobs = null;
+
+            for (String field = firstFieldName(p, ctxt); field != null; field = p.nextFieldName()) {
+                JsonToken token = p.nextToken();
+                switch (field) {
+                    case "finish_reason" ->
+                            finishReason = ChatCompletionFinishReasonEnumDeserializer.parse(text(p, token));
+                    case "index" -> index = intValue(p, token);
+                    case "delta" -> delta = readDelta(p, ctxt, token);
+                    case "logprobs" ->
+                            logprobs = token == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, LogProbs.class);
+                    default -> p.skipChildren();
+                }
+            }
+            return new ChatCompletionChunk.ChunkChoice(finishReason, index, delta, logprobs);
+        }
+
+        private static ChatCompletionMessage readDelta(JsonParser p, DeserializationContext ctxt, JsonToken token)
+                throws IOException {
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            Object content = null;
+            ChatCompletionMessage.Role role = null;
+
+            for (String field = firstFieldName(p, ctxt); field != null; field = p.nextFieldName()) {
+                JsonToken valueToken = p.nextToken();
+                switch (field) {
+                    case "content" -> content = valueToken == JsonToken.VALUE_STRING ? p.getText()
+                            : valueToken == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, Object.class);
+                    case "role" -> role = role(p, ctxt, text(p, valueToken));
+                    default -> p.skipChildren();
+                }
+            }
+            return new ChatCompletionMessage(content, role);
+        }
+
+        private static Usage readUsage(JsonParser p, JsonToken token) throws IOException {
+            if (token == JsonToken.VALUE_NULL) {
+                return null;
+            }
+            Integer completionTokens = null;
+            Integer promptTokens = null;
+            Integer totalTokens = null;
+
+            for (String field = p.nextFieldName(); field != null; field = p.nextFieldName()) {
+                JsonToken valueToken = p.nextToken();
+                switch (field) {
+                    case "completion_tokens" -> completionTokens = intValue(p, valueToken);
+                    case "prompt_tokens" -> promptTokens = intValue(p, valueToken);
+                    case "total_tokens" -> totalTokens = intValue(p, valueToken);
+                    default -> p.skipChildren();
+                }
+            }
+            return new Usage(completionTokens, promptTokens, totalTokens);
+        }
+
+        private static ChatCompletionMessage.Role role(JsonParser p, DeserializationContext ctxt, String value)
+                throws IOException {
+            if (value == null) {
+                return null;
+            }
+            return switch (value) {
+                case "assistant" -> ChatCompletionMessage.Role.ASSISTANT;
+                case "user" -> ChatCompletionMessage.Role.USER;
+                case "system" -> ChatCompletionMessage.Role.SYSTEM;
+                default -> throw ctxt.weirdStringException(value, ChatCompletionMessage.Role.class,
+                        "not one of the values accepted for Enum class");
+            };
+        }
+
+        private static Integer intValue(JsonParser p, JsonToken token) throws IOException {
+            return token == JsonToken.VALUE_NULL ? null : p.getIntValue();
+        }
+
+        private static String text(JsonParser p, JsonToken token) throws IOException {
+            return token == JsonToken.VALUE_NULL ? null : p.getText();
+        }
+
+        /**
+         * 返回当前对象的第一个字段名，兼容解析器停在 START_OBJECT 或 FIELD_NAME 上两种情况。
+         */
+        private static String firstFieldName(JsonParser p, DeserializationContext ctxt) throws IOException {
+            if (p.isExpectedStartObjectToken()) {
+                return p.nextFieldName();
+            }
+            if (p.hasToken(JsonToken.FIELD_NAME)) {
+                return p.currentName();
+            }
+            if (p.hasToken(JsonToken.END_OBJECT)) {
+                return null;
+            }
+            ctxt.handleUnexpectedToken(Object.class, p);
+            return null;
+        }
+
+    }
+
+}
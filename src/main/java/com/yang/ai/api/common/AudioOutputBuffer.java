@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Unsynchronized {@link OutputStream} collecting decoded audio in chunks of at most
+ * {@link #MAX_CHUNK_SIZE} bytes. Unlike {@link java.io.ByteArrayOutputStream} it never
+ * copies the written bytes while growing, and {@link #toByteArray()} copies them once
+ * into an array of the exact size.
+ * <p>
+ * The peak memory is therefore about twice the audio, the chunks and the result, while
+ * {@link #toByteArray()} copies; before that the chunks exceed the audio by less than
+ * one chunk. Callers which can consume the audio as it is decoded should write it to
+ * their own stream or channel instead.
+ *
+ * @author yang
+ */
+public final class AudioOutputBuffer extends OutputStream {
+
+	/**
+	 * The size of the largest chunk, small enough to stay out of the humongous regions of
+	 * the usual G1 heaps.
+	 */
+	public static final int MAX_CHUNK_SIZE = 512 * 1024;
+
+	private static final int MIN_CHUNK_SIZE = 8 * 1024;
+
+	private final List<byte[]> chunks = new ArrayList<>();
+
+	private byte[] current;
+
+	private int position;
+
+	private int count;
+
+	/**
+	 * @param expectedSize the expected size of the audio, sizes the first chunk.
+	 */
+	public AudioOutputBuffer(int expectedSize) {
+		this.current = new byte[Math.min(Math.max(expectedSize, MIN_CHUNK_SIZE), MAX_CHUNK_SIZE)];
+		this.chunks.add(this.current);
+	}
+
+	/**
+	 * @param encodedLength the length of the response carrying Base64 encoded audio,
+	 * negative if unknown.
+	 * @return an upper bound of the decoded audio size, or a small default if unknown.
+	 */
+	public static int estimateDecodedSize(long encodedLength) {
+		if (encodedLength < 0) {
+			return 64 * 1024;
+		}
+		return (int) Math.min(Integer.MAX_VALUE - 8, encodedLength / 4 * 3 + 3);
+	}
+
+	@Override
+	public void write(int b) {
+		if (this.position == this.current.length) {
+			nextChunk();
+		}
+		this.current[this.position++] = (byte) b;
+		this.count++;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+		if (length > Integer.MAX_VALUE - 8 - this.count) {
+			throw new OutOfMemoryError("Audio exceeds the maximum array size");
+		}
+		while (length > 0) {
+			if (this.position == this.current.length) {
+				nextChunk();
+			}
+			int n = Math.min(length, this.current.length - this.position);
+			System.arraycopy(bytes, offset, this.current, this.position, n);
+			this.position += n;
+			this.count += n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	private void nextChunk() {
+		// Doubles the buffered size until the chunks reach their maximum.
+		this.current = new byte[Math.min(Math.max(this.count, MIN_CHUNK_SIZE), MAX_CHUNK_SIZE)];
+		this.chunks.add(this.current);
+		this.position = 0;
+	}
+
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * @return the written bytes. The buffer must not be written to afterwards, since the
+	 * array may be shared.
+	 */
+	public byte[] toByteArray() {
+		if (this.chunks.size() == 1 && this.position == this.current.length) {
+			return this.current;
+		}
+		byte[] audio = new byte[this.count];
+		int offset = 0;
+		for (int i = 0; i < this.chunks.size(); i++) {
+			byte[] chunk = this.chunks.set(i, null);
+			int n = Math.min(chunk.length, this.count - offset);
+			System.arraycopy(chunk, 0, audio, offset, n);
+			offset += n;
+		}
+		// Release the chunks before the caller holds on to the result.
+		this.chunks.clear();
+		this.chunks.add(audio);
+		this.current = audio;
+		this.position = audio.length;
+		return audio;
+	}
+
+}
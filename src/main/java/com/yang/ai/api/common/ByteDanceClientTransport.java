@@ -0,0 +1,385 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import io.netty.channel.ChannelOption;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.ReactorNettyClientRequestFactory;
+import org.springframework.http.client.reactive.ClientHttpConnector;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.socket.client.ReactorNettyWebSocketClient;
+import org.springframework.web.reactive.socket.client.WebSocketClient;
+import reactor.netty.http.HttpProtocol;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+import java.time.Duration;
+
+/**
+ * HTTP transport shared by the ByteDance API clients. One instance owns a Reactor Netty
+ * connection pool that backs both the blocking {@link RestClient} and the reactive
+ * {@link WebClient}, so connections (and their TLS sessions) are reused across the chat
+ * and audio APIs instead of each client using its own default pool.
+ * <p>
+ * The pool limits apply per remote host. HTTP/2 is negotiated through ALPN when the
+ * server supports it, HTTP/1.1 is used otherwise. The read timeout only applies to
+ * blocking requests; streamed responses are bounded by the response timeout until the
+ * headers arrive and then by the caller.
+ *
+ * @author yang
+ */
+public class ByteDanceClientTransport {
+
+	private final String name;
+
+	private final int maxConnections;
+
+	private final int pendingAcquireMaxCount;
+
+	private final Duration pendingAcquireTimeout;
+
+	private final Duration maxIdleTime;
+
+	private final Duration maxLifeTime;
+
+	private final Duration evictionInterval;
+
+	private final Duration connectTimeout;
+
+	private final Duration readTimeout;
+
+	private final Duration responseTimeout;
+
+	private final boolean http2;
+
+	private final boolean tcpKeepAlive;
+
+	private final boolean virtualThreads;
+
+	private final ConnectionProvider connectionProvider;
+
+	private final HttpClient httpClient;
+
+	private final java.net.http.HttpClient jdkHttpClient;
+
+	private ByteDanceClientTransport(Builder builder) {
+		this.name = builder.name;
+		this.maxConnections = builder.maxConnections;
+		this.pendingAcquireMaxCount = builder.pendingAcquireMaxCount;
+		this.pendingAcquireTimeout = builder.pendingAcquireTimeout;
+		this.maxIdleTime = builder.maxIdleTime;
+		this.maxLifeTime = builder.maxLifeTime;
+		this.evictionInterval = builder.evictionInterval;
+		this.connectTimeout = builder.connectTimeout;
+		this.readTimeout = builder.readTimeout;
+		this.responseTimeout = builder.responseTimeout;
+		this.http2 = builder.http2;
+		this.tcpKeepAlive = builder.tcpKeepAlive;
+		this.virtualThreads = builder.virtualThreads;
+
+		this.connectionProvider = ConnectionProvider.builder(this.name)
+			.maxConnections(this.maxConnections)
+			.pendingAcquireMaxCount(this.pendingAcquireMaxCount)
+			.pendingAcquireTimeout(this.pendingAcquireTimeout)
+			.maxIdleTime(this.maxIdleTime)
+			.maxLifeTime(this.maxLifeTime)
+			.evictInBackground(this.evictionInterval)
+			.build();
+
+		HttpClient client = HttpClient.create(this.connectionProvider)
+			.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) this.connectTimeout.toMillis())
+			.option(ChannelOption.SO_KEEPALIVE, this.tcpKeepAlive)
+			.responseTimeout(this.responseTimeout);
+		if (this.http2) {
+			client = client.protocol(HttpProtocol.H2, HttpProtocol.HTTP11);
+		}
+		this.httpClient = client;
+
+		this.jdkHttpClient = (this.virtualThreads && VirtualThreadSupport.isAvailable())
+				? java.net.http.HttpClient.newBuilder()
+					.connectTimeout(this.connectTimeout)
+					.version(this.http2 ? java.net.http.HttpClient.Version.HTTP_2
+							: java.net.http.HttpClient.Version.HTTP_1_1)
+					.executor(VirtualThreadSupport.createExecutor(this.name + "-http-"))
+					.build()
+				: null;
+	}
+
+	/**
+	 * @return a transport with the default high-concurrency settings.
+	 */
+	public static ByteDanceClientTransport defaults() {
+		return builder().build();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the underlying Reactor Netty client, shared by every request factory and
+	 * connector created by this transport.
+	 */
+	public HttpClient getHttpClient() {
+		return this.httpClient;
+	}
+
+	/**
+	 * @return a request factory for {@link RestClient} backed by the shared pool. With
+	 * {@link Builder#withVirtualThreads virtual threads} on Java 21 the JDK client is used
+	 * instead, so that blocked callers on virtual threads unmount while waiting; it keeps
+	 * its own connections apart from the Reactor Netty pool.
+	 */
+	public ClientHttpRequestFactory createRequestFactory() {
+		if (this.jdkHttpClient != null) {
+			JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(this.jdkHttpClient);
+			requestFactory.setReadTimeout(this.readTimeout);
+			return requestFactory;
+		}
+		ReactorNettyClientRequestFactory requestFactory = new ReactorNettyClientRequestFactory(this.httpClient);
+		requestFactory.setReadTimeout(this.readTimeout);
+		requestFactory.setExchangeTimeout(this.responseTimeout);
+		return requestFactory;
+	}
+
+	/**
+	 * @return a connector for {@link WebClient} backed by the shared pool.
+	 */
+	public ClientHttpConnector createConnector() {
+		return new ReactorClientHttpConnector(this.httpClient);
+	}
+
+	/**
+	 * @return a WebSocket client backed by the shared pool. WebSocket upgrades need
+	 * HTTP/1.1, so the client never negotiates HTTP/2.
+	 */
+	public WebSocketClient createWebSocketClient() {
+		return new ReactorNettyWebSocketClient(this.httpClient.protocol(HttpProtocol.HTTP11));
+	}
+
+	/**
+	 * Apply this transport to the given builder.
+	 * @param restClientBuilder the builder to customize.
+	 * @return the given builder.
+	 */
+	public RestClient.Builder customize(RestClient.Builder restClientBuilder) {
+		return restClientBuilder.requestFactory(createRequestFactory());
+	}
+
+	/**
+	 * Apply this transport to the given builder.
+	 * @param webClientBuilder the builder to customize.
+	 * @return the given builder.
+	 */
+	public WebClient.Builder customize(WebClient.Builder webClientBuilder) {
+		return webClientBuilder.clientConnector(createConnector());
+	}
+
+	/**
+	 * Close the pooled connections. Clients built from this transport can no longer be
+	 * used afterwards.
+	 */
+	public void dispose() {
+		this.connectionProvider.dispose();
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public int getMaxConnections() {
+		return this.maxConnections;
+	}
+
+	public int getPendingAcquireMaxCount() {
+		return this.pendingAcquireMaxCount;
+	}
+
+	public Duration getPendingAcquireTimeout() {
+		return this.pendingAcquireTimeout;
+	}
+
+	public Duration getMaxIdleTime() {
+		return this.maxIdleTime;
+	}
+
+	public Duration getMaxLifeTime() {
+		return this.maxLifeTime;
+	}
+
+	public Duration getEvictionInterval() {
+		return this.evictionInterval;
+	}
+
+	public Duration getConnectTimeout() {
+		return this.connectTimeout;
+	}
+
+	public Duration getReadTimeout() {
+		return this.readTimeout;
+	}
+
+	public Duration getResponseTimeout() {
+		return this.responseTimeout;
+	}
+
+	public boolean isHttp2() {
+		return this.http2;
+	}
+
+	public boolean isTcpKeepAlive() {
+		return this.tcpKeepAlive;
+	}
+
+	public boolean isVirtualThreads() {
+		return this.virtualThreads;
+	}
+
+	/**
+	 * Builder for the {@link ByteDanceClientTransport}.
+	 */
+	public static class Builder {
+
+		private String name = "bytedance";
+
+		/**
+		 * Connections per remote host.
+		 */
+		private int maxConnections = 500;
+
+		/**
+		 * Requests allowed to wait for a connection once the pool is exhausted.
+		 */
+		private int pendingAcquireMaxCount = 1000;
+
+		private Duration pendingAcquireTimeout = Duration.ofSeconds(10);
+
+		/**
+		 * Kept below the usual 60s idle timeout of the servers and load balancers, so
+		 * that pooled connections are not closed by the remote side while in use.
+		 */
+		private Duration maxIdleTime = Duration.ofSeconds(45);
+
+		private Duration maxLifeTime = Duration.ofMinutes(10);
+
+		private Duration evictionInterval = Duration.ofSeconds(30);
+
+		private Duration connectTimeout = Duration.ofSeconds(5);
+
+		private Duration readTimeout = Duration.ofSeconds(60);
+
+		/**
+		 * Non-streaming chat completions only answer once the whole completion is
+		 * generated, so this is much longer than a usual HTTP response timeout.
+		 */
+		private Duration responseTimeout = Duration.ofSeconds(180);
+
+		private boolean http2 = true;
+
+		private boolean tcpKeepAlive = true;
+
+		/**
+		 * Use the JDK client with virtual threads for blocking requests, ignored before
+		 * Java 21.
+		 */
+		private boolean virtualThreads = false;
+
+		public Builder withName(String name) {
+			this.name = name;
+			return this;
+		}
+
+		public Builder withMaxConnections(int maxConnections) {
+			this.maxConnections = maxConnections;
+			return this;
+		}
+
+		public Builder withPendingAcquireMaxCount(int pendingAcquireMaxCount) {
+			this.pendingAcquireMaxCount = pendingAcquireMaxCount;
+			return this;
+		}
+
+		public Builder withPendingAcquireTimeout(Duration pendingAcquireTimeout) {
+			this.pendingAcquireTimeout = pendingAcquireTimeout;
+			return this;
+		}
+
+		public Builder withMaxIdleTime(Duration maxIdleTime) {
+			this.maxIdleTime = maxIdleTime;
+			return this;
+		}
+
+		public Builder withMaxLifeTime(Duration maxLifeTime) {
+			this.maxLifeTime = maxLifeTime;
+			return this;
+		}
+
+		public Builder withEvictionInterval(Duration evictionInterval) {
+			this.evictionInterval = evictionInterval;
+			return this;
+		}
+
+		public Builder withConnectTimeout(Duration connectTimeout) {
+			this.connectTimeout = connectTimeout;
+			return this;
+		}
+
+		public Builder withReadTimeout(Duration readTimeout) {
+			this.readTimeout = readTimeout;
+			return this;
+		}
+
+		public Builder withResponseTimeout(Duration responseTimeout) {
+			this.responseTimeout = responseTimeout;
+			return this;
+		}
+
+		public Builder withHttp2(boolean http2) {
+			this.http2 = http2;
+			return this;
+		}
+
+		public Builder withTcpKeepAlive(boolean tcpKeepAlive) {
+			this.tcpKeepAlive = tcpKeepAlive;
+			return this;
+		}
+
+		public Builder withVirtualThreads(boolean virtualThreads) {
+			this.virtualThreads = virtualThreads;
+			return this;
+		}
+
+		public ByteDanceClientTransport build() {
+			Assert.hasText(this.name, "name must not be empty");
+			Assert.isTrue(this.maxConnections > 0, "maxConnections must be positive");
+			Assert.isTrue(this.pendingAcquireMaxCount != 0, "pendingAcquireMaxCount must not be 0");
+			Assert.notNull(this.pendingAcquireTimeout, "pendingAcquireTimeout must not be null");
+			Assert.notNull(this.maxIdleTime, "maxIdleTime must not be null");
+			Assert.notNull(this.maxLifeTime, "maxLifeTime must not be null");
+			Assert.notNull(this.evictionInterval, "evictionInterval must not be null");
+			Assert.notNull(this.connectTimeout, "connectTimeout must not be null");
+			Assert.notNull(this.readTimeout, "readTimeout must not be null");
+			Assert.notNull(this.responseTimeout, "responseTimeout must not be null");
+			return new ByteDanceClientTransport(this);
+		}
+
+	}
+
+}
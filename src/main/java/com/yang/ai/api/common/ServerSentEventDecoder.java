@@ -0,0 +1,197 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Decodes a server-sent event body straight from {@link DataBuffer}s. Line boundaries,
+ * the {@code data:} field and the {@code [DONE]} sentinel are located at the byte level
+ * and the payload bytes are handed to Jackson as they are, so no intermediate
+ * {@link String} is created per event.
+ * <p>
+ * The Ark endpoint does not always answer with a {@code text/event-stream} content type,
+ * so lines without a {@code data:} field that start with <code>{</code> are decoded as
+ * well. Comments and other SSE fields ({@code event:}, {@code id:}, {@code retry:}) are
+ * skipped. Every {@code data:} line is treated as a complete event.
+ *
+ * @param <T> the type of the decoded events
+ * @author yang
+ */
+public class ServerSentEventDecoder<T> {
+
+	private static final byte[] DATA_FIELD = { 'd', 'a', 't', 'a', ':' };
+
+	private static final byte[] DONE = { '[', 'D', 'O', 'N', 'E', ']' };
+
+	private static final int INITIAL_BUFFER_SIZE = 1024;
+
+	private final ObjectReader reader;
+
+	/**
+	 * Create a new decoder.
+	 * @param reader the Jackson reader bound to the event type.
+	 */
+	public ServerSentEventDecoder(ObjectReader reader) {
+		Assert.notNull(reader, "ObjectReader must not be null");
+		this.reader = reader;
+	}
+
+	/**
+	 * Decode the given body. The upstream is cancelled once {@code [DONE]} is received.
+	 * @param body the raw response body.
+	 * @return the decoded events.
+	 */
+	public Flux<T> decode(Flux<DataBuffer> body) {
+		return Flux.defer(() -> {
+			LineBuffer lines = new LineBuffer();
+			return body.doOnDiscard(DataBuffer.class, DataBufferUtils::release)
+				.map(lines::feed)
+				// cancels the body once the "[DONE]" is received.
+				.takeUntil(events -> lines.done)
+				.concatMapIterable(Function.identity())
+				.concatWith(Flux.defer(() -> Flux.fromIterable(lines.flush())));
+		});
+	}
+
+	/**
+	 * Per-subscription accumulator of the bytes that do not form a complete line yet.
+	 */
+	private final class LineBuffer {
+
+		private byte[] bytes = new byte[INITIAL_BUFFER_SIZE];
+
+		private int length;
+
+		private int scanned;
+
+		private boolean done;
+
+		List<T> feed(DataBuffer buffer) {
+			try {
+				int count = buffer.readableByteCount();
+				ensureCapacity(this.length + count);
+				buffer.read(this.bytes, this.length, count);
+				this.length += count;
+			}
+			finally {
+				DataBufferUtils.release(buffer);
+			}
+			return drain(false);
+		}
+
+		List<T> flush() {
+			return drain(true);
+		}
+
+		private List<T> drain(boolean endOfStream) {
+			List<T> events = Collections.emptyList();
+			int lineStart = 0;
+			for (int i = this.scanned; i < this.length && !this.done; i++) {
+				if (this.bytes[i] == '\n') {
+					events = add(events, decodeLine(lineStart, i));
+					lineStart = i + 1;
+				}
+			}
+			if (endOfStream && !this.done && lineStart < this.length) {
+				events = add(events, decodeLine(lineStart, this.length));
+				lineStart = this.length;
+			}
+			int remaining = this.length - lineStart;
+			if (remaining > 0 && lineStart > 0) {
+				System.arraycopy(this.bytes, lineStart, this.bytes, 0, remaining);
+			}
+			this.length = remaining;
+			this.scanned = remaining;
+			return events;
+		}
+
+		private T decodeLine(int start, int end) {
+			if (end > start && this.bytes[end - 1] == '\r') {
+				end--;
+			}
+			if (startsWith(start, end, DATA_FIELD)) {
+				start += DATA_FIELD.length;
+				if (start < end && this.bytes[start] == ' ') {
+					start++;
+				}
+			}
+			else if (start == end || this.bytes[start] != '{') {
+				// blank line, comment or a non-data field.
+				return null;
+			}
+			while (start < end && Character.isWhitespace(this.bytes[start])) {
+				start++;
+			}
+			if (start == end) {
+				return null;
+			}
+			if (end - start == DONE.length && startsWith(start, end, DONE)) {
+				this.done = true;
+				return null;
+			}
+			try {
+				return reader.readValue(this.bytes, start, end - start);
+			}
+			catch (IOException ex) {
+				throw new ByteDanceApiException("Failed to decode server-sent event", ex);
+			}
+		}
+
+		private boolean startsWith(int start, int end, byte[] prefix) {
+			if (end - start < prefix.length) {
+				return false;
+			}
+			for (int i = 0; i < prefix.length; i++) {
+				if (this.bytes[start + i] != prefix[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > this.bytes.length) {
+				byte[] grown = new byte[Math.max(capacity, this.bytes.length << 1)];
+				System.arraycopy(this.bytes, 0, grown, 0, this.length);
+				this.bytes = grown;
+			}
+		}
+
+		private List<T> add(List<T> events, T event) {
+			if (event == null) {
+				return events;
+			}
+			if (events.isEmpty()) {
+				events = new ArrayList<>(2);
+			}
+			events.add(event);
+			return events;
+		}
+
+	}
+
+}
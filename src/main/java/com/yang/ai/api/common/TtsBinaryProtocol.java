@@ -0,0 +1,243 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import org.springframework.core.io.buffer.DataBuffer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Frames of the binary WebSocket protocol of the streaming TTS endpoint
+ * ({@code /api/v1/tts/ws_binary}), see
+ * <a href="https://www.volcengine.com/docs/6561/79821">the protocol description</a>.
+ * <p>
+ * Every frame starts with a 4 byte header:
+ * <pre>
+ * byte 0: protocol version (4 bits) | header size in 4 byte words (4 bits)
+ * byte 1: message type (4 bits)     | message type specific flags (4 bits)
+ * byte 2: serialization (4 bits)    | compression (4 bits)
+ * byte 3: reserved
+ * </pre>
+ * The client sends a single full request: a gzip compressed JSON payload prefixed with
+ * its size. The server answers with audio-only frames or with an error frame. The flags
+ * of an audio-only frame tell whether a sequence number precedes the payload size:
+ * <pre>
+ * 0b0000: no sequence number, an acknowledgement unless a payload follows
+ * 0b0001: positive sequence number
+ * 0b0010: last frame, no sequence number
+ * 0b0011: negative sequence number, last frame
+ * </pre>
+ * Frames without a sequence number are reported with {@code 0}, or with
+ * {@link #LAST_SEQUENCE} when they are the last one.
+ *
+ * @author yang
+ */
+public final class TtsBinaryProtocol {
+
+	public static final int FULL_CLIENT_REQUEST = 0b0001;
+
+	public static final int AUDIO_ONLY_RESPONSE = 0b1011;
+
+	public static final int ERROR_MESSAGE = 0b1111;
+
+	/**
+	 * The sequence number reported for a last frame which carries none.
+	 */
+	public static final int LAST_SEQUENCE = -1;
+
+	private static final int FLAG_SEQUENCE = 0b0001;
+
+	private static final int FLAG_LAST = 0b0010;
+
+	private static final byte PROTOCOL_VERSION_AND_HEADER_SIZE = 0x11;
+
+	private static final byte JSON_GZIP = 0x11;
+
+	private static final int COMPRESSION_GZIP = 0b0001;
+
+	private TtsBinaryProtocol() {
+	}
+
+	/**
+	 * @param json the serialized speech request.
+	 * @return the full client request frame.
+	 */
+	public static byte[] encodeFullClientRequest(byte[] json) {
+		byte[] payload = gzip(json);
+		return ByteBuffer.allocate(8 + payload.length)
+			.put(PROTOCOL_VERSION_AND_HEADER_SIZE)
+			.put((byte) (FULL_CLIENT_REQUEST << 4))
+			.put(JSON_GZIP)
+			.put((byte) 0)
+			.putInt(payload.length)
+			.put(payload)
+			.array();
+	}
+
+	/**
+	 * @param frame a frame received from the server.
+	 * @return the decoded frame.
+	 * @throws ByteDanceApiException if the frame is malformed or is an error message.
+	 */
+	public static ServerFrame decode(byte[] frame) {
+		if (frame.length < 4) {
+			throw new ByteDanceApiException("Truncated TTS frame of " + frame.length + " bytes");
+		}
+		int headerSize = (frame[0] & 0x0F) * 4;
+		int messageType = (frame[1] & 0xFF) >>> 4;
+		int flags = frame[1] & 0x0F;
+		int compression = frame[2] & 0x0F;
+		ByteBuffer buffer = ByteBuffer.wrap(frame, headerSize, frame.length - headerSize);
+
+		if (messageType == ERROR_MESSAGE) {
+			int code = buffer.getInt();
+			byte[] payload = readPayload(buffer);
+			String message = new String(compression == COMPRESSION_GZIP ? gunzip(payload) : payload,
+					StandardCharsets.UTF_8);
+			throw new ByteDanceApiException("TTS request failed with code " + code + ": " + message);
+		}
+		if (messageType != AUDIO_ONLY_RESPONSE) {
+			throw new ByteDanceApiException("Unexpected TTS message type " + messageType);
+		}
+		int sequence;
+		if ((flags & FLAG_SEQUENCE) != 0) {
+			if (buffer.remaining() < 4) {
+				throw new ByteDanceApiException("Truncated TTS frame of " + frame.length + " bytes");
+			}
+			sequence = buffer.getInt();
+		}
+		else {
+			sequence = sequenceOf(flags);
+		}
+		return new ServerFrame(sequence, readPayload(buffer));
+	}
+
+	/**
+	 * Narrow a received frame to its audio by moving the read and write positions of the
+	 * buffer, without copying. A frame without payload, such as an acknowledgement, is
+	 * narrowed to nothing.
+	 * @param frame a frame received from the server.
+	 * @return the sequence number, negative on the last frame, {@code 0} for a frame
+	 * without sequence number which is not the last one.
+	 * @throws ByteDanceApiException if the frame is malformed or is an error message.
+	 */
+	public static int sliceAudio(DataBuffer frame) {
+		int start = frame.readPosition();
+		int length = frame.readableByteCount();
+		if (length < 4) {
+			throw new ByteDanceApiException("Truncated TTS frame of " + length + " bytes");
+		}
+		int headerSize = (frame.getByte(start) & 0x0F) * 4;
+		int messageType = (frame.getByte(start + 1) & 0xFF) >>> 4;
+		int flags = frame.getByte(start + 1) & 0x0F;
+		if (messageType != AUDIO_ONLY_RESPONSE) {
+			// Error or unexpected frames are rare, decode(byte[]) reports them.
+			byte[] bytes = new byte[length];
+			frame.read(bytes);
+			return decode(bytes).sequence();
+		}
+		int offset = headerSize;
+		int sequence;
+		if ((flags & FLAG_SEQUENCE) != 0) {
+			if (length < offset + 4) {
+				throw new ByteDanceApiException("Truncated TTS frame of " + length + " bytes");
+			}
+			sequence = getInt(frame, start + offset);
+			offset += 4;
+		}
+		else {
+			sequence = sequenceOf(flags);
+		}
+		if (length < offset + 4) {
+			// No payload, as readPayload(ByteBuffer) treats it.
+			frame.readPosition(start + length);
+			return sequence;
+		}
+		int size = getInt(frame, start + offset);
+		offset += 4;
+		if (size < 0 || size > length - offset) {
+			throw new ByteDanceApiException("Invalid TTS payload size " + size);
+		}
+		frame.writePosition(start + offset + size);
+		frame.readPosition(start + offset);
+		return sequence;
+	}
+
+	private static int sequenceOf(int flags) {
+		return (flags & FLAG_LAST) != 0 ? LAST_SEQUENCE : 0;
+	}
+
+	private static int getInt(DataBuffer buffer, int index) {
+		return (buffer.getByte(index) & 0xFF) << 24 | (buffer.getByte(index + 1) & 0xFF) << 16
+				| (buffer.getByte(index + 2) & 0xFF) << 8 | (buffer.getByte(index + 3) & 0xFF);
+	}
+
+	private static byte[] readPayload(ByteBuffer buffer) {
+		if (buffer.remaining() < 4) {
+			return new byte[0];
+		}
+		int size = buffer.getInt();
+		if (size < 0 || size > buffer.remaining()) {
+			throw new ByteDanceApiException("Invalid TTS payload size " + size);
+		}
+		byte[] payload = new byte[size];
+		buffer.get(payload);
+		return payload;
+	}
+
+	private static byte[] gzip(byte[] bytes) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 2 + 32);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(bytes);
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return out.toByteArray();
+	}
+
+	private static byte[] gunzip(byte[] bytes) {
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+			return gzip.readAllBytes();
+		}
+		catch (IOException ex) {
+			throw new ByteDanceApiException("Could not decompress TTS payload", ex);
+		}
+	}
+
+	/**
+	 * An audio-only frame.
+	 *
+	 * @param sequence the sequence number, negative on the last frame, {@code 0} for a
+	 * frame without sequence number which is not the last one.
+	 * @param audio the audio bytes, empty for an acknowledgement.
+	 */
+	public record ServerFrame(int sequence, byte[] audio) {
+
+		public boolean isLast() {
+			return this.sequence < 0;
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.VirtualThreadTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+/**
+ * Executors for the blocking ByteDance clients. On Java 21 and later the tasks run on
+ * virtual threads, so a call blocked on the network or sleeping through a retry backoff
+ * does not hold a platform thread. On Java 17 a pool of at most
+ * {@link #FALLBACK_CONCURRENCY_LIMIT} platform threads is used instead. Further tasks
+ * wait in the queue of the pool, so submitting never blocks the caller, which is often a
+ * Reactor thread scheduling work through {@code Schedulers.fromExecutor}.
+ *
+ * @author yang
+ */
+public final class VirtualThreadSupport {
+
+	/**
+	 * Threads of the platform thread fallback; further tasks are queued until a thread is
+	 * free.
+	 */
+	public static final int FALLBACK_CONCURRENCY_LIMIT = 256;
+
+	/**
+	 * Idle threads of the platform thread fallback are released after this many seconds.
+	 */
+	private static final int FALLBACK_KEEP_ALIVE_SECONDS = 60;
+
+	private static final boolean AVAILABLE = Runtime.version().feature() >= 21;
+
+	private static volatile AsyncTaskExecutor defaultExecutor;
+
+	private VirtualThreadSupport() {
+	}
+
+	/**
+	 * @return whether the running JVM supports virtual threads.
+	 */
+	public static boolean isAvailable() {
+		return AVAILABLE;
+	}
+
+	/**
+	 * @param threadNamePrefix prefix of the names of the created threads.
+	 * @return a new executor starting a virtual thread per task, or the platform thread
+	 * fallback on Java 17.
+	 */
+	public static AsyncTaskExecutor createExecutor(String threadNamePrefix) {
+		if (AVAILABLE) {
+			return new VirtualThreadTaskExecutor(threadNamePrefix);
+		}
+		return createFallbackExecutor(threadNamePrefix);
+	}
+
+	/**
+	 * @param threadNamePrefix prefix of the names of the created threads.
+	 * @return the platform thread fallback, also on Java 21 and later.
+	 */
+	static ThreadPoolTaskExecutor createFallbackExecutor(String threadNamePrefix) {
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix(threadNamePrefix);
+		executor.setDaemon(true);
+		executor.setCorePoolSize(FALLBACK_CONCURRENCY_LIMIT);
+		executor.setMaxPoolSize(FALLBACK_CONCURRENCY_LIMIT);
+		executor.setKeepAliveSeconds(FALLBACK_KEEP_ALIVE_SECONDS);
+		executor.setAllowCoreThreadTimeOut(true);
+		executor.initialize();
+		return executor;
+	}
+
+	/**
+	 * @return the executor shared by the models that were not given their own.
+	 */
+	public static AsyncTaskExecutor defaultExecutor() {
+		AsyncTaskExecutor executor = defaultExecutor;
+		if (executor == null) {
+			synchronized (VirtualThreadSupport.class) {
+				executor = defaultExecutor;
+				if (executor == null) {
+					executor = createExecutor("bytedance-");
+					defaultExecutor = executor;
+				}
+			}
+		}
+		return executor;
+	}
+
+}
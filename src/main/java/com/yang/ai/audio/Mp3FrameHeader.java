@@ -0,0 +1,107 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The header of an MPEG audio layer III frame, as needed to walk an MP3 file frame by
+ * frame without decoding it.
+ *
+ * @param mpeg1 whether the frame is MPEG-1, otherwise MPEG-2 or MPEG-2.5.
+ * @param mono whether the frame has a single channel.
+ * @param sampleRate the sample rate in Hz.
+ * @param samplesPerFrame the number of samples per channel in the frame.
+ * @param frameLength the length of the frame in bytes, including the header.
+ * @author yang
+ */
+public record Mp3FrameHeader(boolean mpeg1, boolean mono, int sampleRate, int samplesPerFrame, int frameLength) {
+
+	private static final int[] MPEG1_BITRATES = { 0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320 };
+
+	private static final int[] MPEG2_BITRATES = { 0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160 };
+
+	private static final int[] MPEG1_SAMPLE_RATES = { 44100, 48000, 32000 };
+
+	/**
+	 * @param data the audio.
+	 * @param offset the position of the presumed header.
+	 * @return the header, or {@code null} if there is no valid layer III frame header at
+	 * the offset.
+	 */
+	public static Mp3FrameHeader parse(ByteBuffer data, int offset) {
+		if (offset < 0 || offset + 4 > data.limit()) {
+			return null;
+		}
+		int b1 = data.get(offset + 1) & 0xFF;
+		int b2 = data.get(offset + 2) & 0xFF;
+		int b3 = data.get(offset + 3) & 0xFF;
+		if ((data.get(offset) & 0xFF) != 0xFF || (b1 & 0xE0) != 0xE0) {
+			return null;
+		}
+		int version = (b1 >> 3) & 0x03;
+		int layer = (b1 >> 1) & 0x03;
+		int bitrateIndex = b2 >> 4;
+		int sampleRateIndex = (b2 >> 2) & 0x03;
+		if (version == 1 || layer != 1 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) {
+			return null;
+		}
+		boolean mpeg1 = version == 3;
+		int bitrate = (mpeg1 ? MPEG1_BITRATES : MPEG2_BITRATES)[bitrateIndex] * 1000;
+		int sampleRate = MPEG1_SAMPLE_RATES[sampleRateIndex] >> (mpeg1 ? 0 : version == 2 ? 1 : 2);
+		int padding = (b2 >> 1) & 0x01;
+		int frameLength = (mpeg1 ? 144 : 72) * bitrate / sampleRate + padding;
+		return new Mp3FrameHeader(mpeg1, (b3 >> 6) == 3, sampleRate, mpeg1 ? 1152 : 576, frameLength);
+	}
+
+	/**
+	 * @param data the audio.
+	 * @return the length of the ID3v2 tag at the start, {@code 0} if there is none.
+	 */
+	public static int id3v2Length(ByteBuffer data) {
+		if (data.limit() < 10 || data.get(0) != 'I' || data.get(1) != 'D' || data.get(2) != '3') {
+			return 0;
+		}
+		int size = (data.get(6) & 0x7F) << 21 | (data.get(7) & 0x7F) << 14 | (data.get(8) & 0x7F) << 7
+				| (data.get(9) & 0x7F);
+		int footer = (data.get(5) & 0x10) != 0 ? 10 : 0;
+		return Math.min(data.limit(), 10 + size + footer);
+	}
+
+	/**
+	 * @param data the audio.
+	 * @param offset the position of this frame.
+	 * @return whether the frame is a Xing/Info frame, which carries the duration of the
+	 * file instead of audio.
+	 */
+	public boolean isXingFrame(ByteBuffer data, int offset) {
+		int tag = offset + 4 + (this.mpeg1 ? (this.mono ? 17 : 32) : (this.mono ? 9 : 17));
+		if (tag + 4 > data.limit()) {
+			return false;
+		}
+		return (data.get(tag) == 'X' && data.get(tag + 1) == 'i' && data.get(tag + 2) == 'n' && data.get(tag + 3) == 'g')
+				|| (data.get(tag) == 'I' && data.get(tag + 1) == 'n' && data.get(tag + 2) == 'f'
+						&& data.get(tag + 3) == 'o');
+	}
+
+	/**
+	 * @return the playback duration of the frame in seconds.
+	 */
+	public double duration() {
+		return (double) this.samplesPerFrame / this.sampleRate;
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.speech;
+
+import com.yang.ai.audio.Mp3FrameHeader;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+/**
+ * Joins separately synthesized audio segments into one playable file of the same
+ * encoding.
+ * <ul>
+ * <li>{@code pcm}: the samples are concatenated.</li>
+ * <li>{@code mp3}: the frames are concatenated. ID3 tags are kept only at the very start
+ * and the very end, and the Xing/Info frame of every segment is dropped since it would
+ * announce the duration of the first segment only.</li>
+ * <li>{@code wav}: the {@code data} chunks are concatenated under a single RIFF header
+ * with the format of the first segment.</li>
+ * <li>{@code ogg_opus}: the streams are chained, which the Ogg format allows.</li>
+ * </ul>
+ *
+ * @author yang
+ */
+public final class AudioStitcher {
+
+	// RIFF chunk ids as little-endian ints.
+
+	private static final int RIFF = 0x46464952;
+
+	private static final int WAVE = 0x45564157;
+
+	private static final int FMT = 0x20746D66;
+
+	private static final int DATA = 0x61746164;
+
+	private AudioStitcher() {
+	}
+
+	/**
+	 * @param encoding the encoding of the segments, {@code null} for {@code pcm}, the
+	 * default of the TTS endpoint.
+	 * @param segments the segments in playback order.
+	 * @return the joined audio.
+	 * @throws IllegalArgumentException if a {@code wav} segment has no RIFF header.
+	 */
+	public static byte[] stitch(String encoding, List<byte[]> segments) {
+		if (segments.isEmpty()) {
+			return new byte[0];
+		}
+		if (segments.size() == 1) {
+			return segments.get(0);
+		}
+		String format = encoding != null ? encoding.toLowerCase() : "pcm";
+		return switch (format) {
+			case "mp3" -> stitchMp3(segments);
+			case "wav" -> stitchWav(segments);
+			default -> concat(segments);
+		};
+	}
+
+	private static byte[] concat(List<byte[]> segments) {
+		ByteBuffer joined = ByteBuffer.allocate(concatSize(segments));
+		for (byte[] segment : segments) {
+			joined.put(segment);
+		}
+		return joined.array();
+	}
+
+	private static byte[] stitchMp3(List<byte[]> segments) {
+		ByteArrayOutputStream out = new ByteArrayOutputStream(concatSize(segments));
+		for (int i = 0; i < segments.size(); i++) {
+			byte[] segment = segments.get(i);
+			ByteBuffer buffer = ByteBuffer.wrap(segment);
+			int id3v2 = Mp3FrameHeader.id3v2Length(buffer);
+			if (i == 0) {
+				out.write(segment, 0, id3v2);
+			}
+			int start = id3v2 + xingFrameLength(buffer, id3v2);
+			int end = segment.length;
+			if (i < segments.size() - 1 && hasId3v1(segment)) {
+				end -= 128;
+			}
+			if (start < end) {
+				out.write(segment, start, end - start);
+			}
+		}
+		return out.toByteArray();
+	}
+
+	private static int concatSize(List<byte[]> segments) {
+		int size = 0;
+		for (byte[] segment : segments) {
+			size += segment.length;
+		}
+		return size;
+	}
+
+	private static boolean hasId3v1(byte[] mp3) {
+		int tag = mp3.length - 128;
+		return tag >= 0 && mp3[tag] == 'T' && mp3[tag + 1] == 'A' && mp3[tag + 2] == 'G';
+	}
+
+	/**
+	 * @return the length of the Xing/Info frame at the given offset, {@code 0} if there
+	 * is none.
+	 */
+	private static int xingFrameLength(ByteBuffer mp3, int offset) {
+		Mp3FrameHeader header = Mp3FrameHeader.parse(mp3, offset);
+		if (header == null || !header.isXingFrame(mp3, offset)) {
+			return 0;
+		}
+		return Math.min(header.frameLength(), mp3.limit() - offset);
+	}
+
+	private static byte[] stitchWav(List<byte[]> segments) {
+		byte[] format = null;
+		ByteArrayOutputStream data = new ByteArrayOutputStream(concatSize(segments));
+		for (byte[] segment : segments) {
+			ByteBuffer buffer = ByteBuffer.wrap(segment).order(ByteOrder.LITTLE_ENDIAN);
+			if (segment.length < 12 || buffer.getInt(0) != RIFF || buffer.getInt(8) != WAVE) {
+				throw new IllegalArgumentException("wav segment without RIFF/WAVE header");
+			}
+			int position = 12;
+			while (position + 8 <= segment.length) {
+				int chunkId = buffer.getInt(position);
+				// Streamed WAV files may carry a placeholder size, so clamp to what is there.
+				long declared = Integer.toUnsignedLong(buffer.getInt(position + 4));
+				int chunkSize = (int) Math.min(declared, segment.length - position - 8);
+				int body = position + 8;
+				if (chunkId == FMT && format == null) {
+					format = new byte[chunkSize];
+					System.arraycopy(segment, body, format, 0, chunkSize);
+				}
+				else if (chunkId == DATA) {
+					data.write(segment, body, chunkSize);
+				}
+				position = body + chunkSize + (chunkSize & 1);
+			}
+		}
+		if (format == null) {
+			throw new IllegalArgumentException("wav segments without fmt chunk");
+		}
+		int dataSize = data.size();
+		ByteBuffer wav = ByteBuffer.allocate(12 + 8 + format.length + 8 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+		wav.putInt(RIFF).putInt(4 + 8 + format.length + 8 + dataSize).putInt(WAVE);
+		wav.putInt(FMT).putInt(format.length).put(format);
+		wav.putInt(DATA).putInt(dataSize).put(data.toByteArray());
+		return wav.array();
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.speech;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits long text into segments that fit into a single TTS request. The limit is given in
+ * UTF-8 bytes, since that is how the {@code /api/v1/tts} endpoint counts it (1024 bytes,
+ * i.e. about 340 CJK characters).
+ * <p>
+ * Segments end at sentence boundaries where possible, both CJK ({@code 。！？；…}) and
+ * western ({@code .!?;}, a full stop only when followed by whitespace so that numbers like
+ * {@code 3.14} stay intact). Closing quotes and brackets stay with their sentence. Short
+ * sentences are packed into one segment. A sentence longer than the limit is split at the
+ * last clause boundary ({@code ，、：,:} or whitespace) that fits, and only as a last resort
+ * between two code points.
+ *
+ * @author yang
+ */
+public final class TextSegmenter {
+
+	/**
+	 * The text limit of a single {@code /api/v1/tts} request.
+	 */
+	public static final int DEFAULT_MAX_SEGMENT_BYTES = 1024;
+
+	private static final String SENTENCE_TERMINATORS = "。！？；…!?;\n";
+
+	private static final String CLAUSE_TERMINATORS = "，、：,:";
+
+	private static final String CLOSING_PUNCTUATION = "”’」』）》】\"')]";
+
+	private TextSegmenter() {
+	}
+
+	public static List<String> split(String text) {
+		return split(text, DEFAULT_MAX_SEGMENT_BYTES);
+	}
+
+	/**
+	 * @param text the text to split.
+	 * @param maxBytes the maximum size of a segment in UTF-8 bytes, at least 4.
+	 * @return the non-blank segments in order.
+	 */
+	public static List<String> split(String text, int maxBytes) {
+		Assert.isTrue(maxBytes >= 4, "maxBytes must be at least 4");
+		List<String> segments = new ArrayList<>();
+		if (text == null || text.isBlank()) {
+			return segments;
+		}
+		StringBuilder current = new StringBuilder();
+		int currentBytes = 0;
+		for (String sentence : sentences(text)) {
+			int sentenceBytes = utf8Length(sentence, 0, sentence.length());
+			if (currentBytes + sentenceBytes <= maxBytes) {
+				current.append(sentence);
+				currentBytes += sentenceBytes;
+				continue;
+			}
+			addSegment(segments, current);
+			current.setLength(0);
+			currentBytes = 0;
+			if (sentenceBytes <= maxBytes) {
+				current.append(sentence);
+				currentBytes = sentenceBytes;
+			}
+			else {
+				splitLongSentence(sentence, maxBytes, segments);
+			}
+		}
+		addSegment(segments, current);
+		return segments;
+	}
+
+	private static List<String> sentences(String text) {
+		List<String> sentences = new ArrayList<>();
+		int start = 0;
+		int i = 0;
+		while (i < text.length()) {
+			char c = text.charAt(i++);
+			boolean end = SENTENCE_TERMINATORS.indexOf(c) >= 0
+					|| (c == '.' && (i == text.length() || Character.isWhitespace(text.charAt(i))
+							|| CLOSING_PUNCTUATION.indexOf(text.charAt(i)) >= 0));
+			if (!end) {
+				continue;
+			}
+			// Keep repeated terminators ("！？", "……") and closing quotes with the sentence.
+			while (i < text.length() && (SENTENCE_TERMINATORS.indexOf(text.charAt(i)) >= 0
+					|| CLOSING_PUNCTUATION.indexOf(text.charAt(i)) >= 0)) {
+				i++;
+			}
+			sentences.add(text.substring(start, i));
+			start = i;
+		}
+		if (start < text.length()) {
+			sentences.add(text.substring(start));
+		}
+		return sentences;
+	}
+
+	private static void splitLongSentence(String sentence, int maxBytes, List<String> segments) {
+		int start = 0;
+		while (start < sentence.length()) {
+			int end = start;
+			int bytes = 0;
+			int lastClauseEnd = -1;
+			while (end < sentence.length()) {
+				int codePoint = sentence.codePointAt(end);
+				int length = utf8Length(codePoint);
+				if (bytes + length > maxBytes) {
+					break;
+				}
+				bytes += length;
+				end += Character.charCount(codePoint);
+				if (CLAUSE_TERMINATORS.indexOf(codePoint) >= 0 || Character.isWhitespace(codePoint)) {
+					lastClauseEnd = end;
+				}
+			}
+			if (end < sentence.length() && lastClauseEnd > start) {
+				end = lastClauseEnd;
+			}
+			addSegment(segments, sentence.substring(start, end));
+			start = end;
+		}
+	}
+
+	private static void addSegment(List<String> segments, CharSequence segment) {
+		String trimmed = segment.toString().strip();
+		if (!trimmed.isEmpty()) {
+			segments.add(trimmed);
+		}
+	}
+
+	private static int utf8Length(String text, int start, int end) {
+		int bytes = 0;
+		for (int i = start; i < end;) {
+			int codePoint = text.codePointAt(i);
+			bytes += utf8Length(codePoint);
+			i += Character.charCount(codePoint);
+		}
+		return bytes;
+	}
+
+	private static int utf8Length(int codePoint) {
+		if (codePoint < 0x80) {
+			return 1;
+		}
+		if (codePoint < 0x800) {
+			return 2;
+		}
+		return codePoint < 0x10000 ? 3 : 4;
+	}
+
+}
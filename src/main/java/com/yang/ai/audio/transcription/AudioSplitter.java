@@ -0,0 +1,444 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.transcription;
+
+import com.yang.ai.audio.Mp3FrameHeader;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.util.Assert;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits a long recording into overlapping windows that are small enough for a single
+ * transcription request. The windows are cut without decoding or copying the audio: every
+ * window is a region of the original file behind a header synthesized for it.
+ * <ul>
+ * <li>{@code wav}: 16 bit PCM is cut at the quietest 20 ms within the silence search
+ * range before the end of the window, so that cuts fall between words where possible.
+ * Other sample formats are cut at the window length.</li>
+ * <li>{@code mp3}: cut at frame boundaries. The ID3 tags and the Xing/Info frame are
+ * dropped.</li>
+ * <li>{@code flac}: cut at frame boundaries, found by their sync code and header CRC.
+ * Every window gets the STREAMINFO block with the total number of samples and the MD5
+ * signature cleared, i.e. unknown.</li>
+ * </ul>
+ * Any other recording is not split and results in a single window of unknown duration.
+ * Consecutive windows overlap by the configured amount, so that a word at a cut is heard
+ * whole in at least one window, see {@link TranscriptMerger}.
+ *
+ * @author yang
+ */
+public final class AudioSplitter {
+
+	// RIFF chunk ids as little-endian ints.
+
+	private static final int RIFF = 0x46464952;
+
+	private static final int WAVE = 0x45564157;
+
+	private static final int FMT = 0x20746D66;
+
+	private static final int DATA = 0x61746164;
+
+	private static final int FLAC = 0x664C6143;
+
+	private static final int WAVE_FORMAT_PCM = 1;
+
+	private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+	private final double windowSeconds;
+
+	private final double overlapSeconds;
+
+	private final double silenceSearchSeconds;
+
+	private AudioSplitter(Builder builder) {
+		this.windowSeconds = builder.window.toMillis() / 1000.0;
+		this.overlapSeconds = builder.overlap.toMillis() / 1000.0;
+		this.silenceSearchSeconds = builder.silenceSearch.toMillis() / 1000.0;
+	}
+
+	public static AudioSplitter defaults() {
+		return builder().build();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @param file the recording, at most 2 GB.
+	 * @return the windows in order, at least one.
+	 * @throws IOException if the file cannot be read.
+	 * @throws IllegalArgumentException if the file is larger than 2 GB or is a malformed
+	 * {@code wav} or {@code flac} file.
+	 */
+	public List<AudioWindow> split(Path file) throws IOException {
+		ByteBuffer audio = map(file);
+		if (audio.limit() >= 12 && audio.order(ByteOrder.LITTLE_ENDIAN).getInt(0) == RIFF
+				&& audio.getInt(8) == WAVE) {
+			return splitWav(file, audio);
+		}
+		audio.order(ByteOrder.BIG_ENDIAN);
+		if (audio.limit() >= 8 && audio.getInt(0) == FLAC) {
+			return splitFlac(file, audio);
+		}
+		int id3v2 = Mp3FrameHeader.id3v2Length(audio);
+		if (id3v2 > 0 || Mp3FrameHeader.parse(audio, 0) != null) {
+			return splitMp3(file, audio, id3v2);
+		}
+		return List.of(new AudioWindow(0, 0, Double.NaN, new FileSystemResource(file)));
+	}
+
+	private static ByteBuffer map(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			long size = channel.size();
+			Assert.isTrue(size <= Integer.MAX_VALUE, () -> "Audio file larger than 2 GB: " + file);
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
+	private List<AudioWindow> splitWav(Path file, ByteBuffer wav) {
+		int format = -1;
+		int formatSize = 0;
+		int data = -1;
+		int dataSize = 0;
+		int position = 12;
+		while (position + 8 <= wav.limit()) {
+			int chunkId = wav.getInt(position);
+			// Streamed WAV files may carry a placeholder size, so clamp to what is there.
+			long declared = Integer.toUnsignedLong(wav.getInt(position + 4));
+			int chunkSize = (int) Math.min(declared, wav.limit() - position - 8);
+			int body = position + 8;
+			if (chunkId == FMT) {
+				format = body;
+				formatSize = chunkSize;
+			}
+			else if (chunkId == DATA) {
+				data = body;
+				dataSize = chunkSize;
+				break;
+			}
+			position = body + chunkSize + (chunkSize & 1);
+		}
+		Assert.isTrue(format >= 0 && formatSize >= 16, "wav file without fmt chunk");
+		Assert.isTrue(data >= 0, "wav file without data chunk");
+
+		int formatTag = wav.getShort(format) & 0xFFFF;
+		int sampleRate = wav.getInt(format + 4);
+		int blockAlign = wav.getShort(format + 12) & 0xFFFF;
+		int bitsPerSample = wav.getShort(format + 14) & 0xFFFF;
+		Assert.isTrue(sampleRate > 0 && blockAlign > 0, "wav file with invalid fmt chunk");
+		boolean pcm16 = bitsPerSample == 16 && (formatTag == WAVE_FORMAT_PCM || formatTag == WAVE_FORMAT_EXTENSIBLE);
+		byte[] formatChunk = new byte[formatSize];
+		wav.get(format, formatChunk);
+
+		long frames = dataSize / blockAlign;
+		long window = (long) (this.windowSeconds * sampleRate);
+		long overlap = (long) (this.overlapSeconds * sampleRate);
+		long search = (long) (this.silenceSearchSeconds * sampleRate);
+		List<AudioWindow> windows = new ArrayList<>();
+		long start = 0;
+		while (true) {
+			long end = start + window;
+			if (end >= frames) {
+				end = frames;
+			}
+			else if (pcm16) {
+				end = quietestFrame(wav, data, blockAlign, sampleRate, Math.max(end - search, start + overlap + 1), end);
+			}
+			byte[] header = wavHeader(formatChunk, (end - start) * blockAlign);
+			windows.add(new AudioWindow(windows.size(), (double) start / sampleRate, (double) end / sampleRate,
+					new FileRegionResource(file, header, data + start * blockAlign, (end - start) * blockAlign,
+							windowFilename(file, windows.size(), "wav"))));
+			if (end >= frames) {
+				return windows;
+			}
+			start = Math.max(end - overlap, start + 1);
+		}
+	}
+
+	/**
+	 * @return the middle of the 20 ms block with the least energy in {@code [from, to)}.
+	 */
+	private static long quietestFrame(ByteBuffer wav, int data, int blockAlign, int sampleRate, long from, long to) {
+		int block = Math.max(1, sampleRate / 50);
+		int samplesPerFrame = blockAlign / 2;
+		long quietest = to;
+		double minEnergy = Double.MAX_VALUE;
+		for (long frame = from; frame + block <= to; frame += block) {
+			double energy = 0;
+			int offset = (int) (data + frame * blockAlign);
+			for (int i = 0; i < block * samplesPerFrame; i++) {
+				double sample = wav.getShort(offset + 2 * i);
+				energy += sample * sample;
+			}
+			if (energy < minEnergy) {
+				minEnergy = energy;
+				quietest = frame + block / 2;
+			}
+		}
+		return quietest;
+	}
+
+	private static byte[] wavHeader(byte[] formatChunk, long dataSize) {
+		ByteBuffer header = ByteBuffer.allocate(12 + 8 + formatChunk.length + 8).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(RIFF).putInt((int) (4 + 8 + formatChunk.length + 8 + dataSize)).putInt(WAVE);
+		header.putInt(FMT).putInt(formatChunk.length).put(formatChunk);
+		header.putInt(DATA).putInt((int) dataSize);
+		return header.array();
+	}
+
+	private List<AudioWindow> splitMp3(Path file, ByteBuffer mp3, int id3v2) {
+		int limit = mp3.limit();
+		if (limit - 128 >= id3v2 && mp3.get(limit - 128) == 'T' && mp3.get(limit - 127) == 'A'
+				&& mp3.get(limit - 126) == 'G') {
+			limit -= 128;
+		}
+		FrameIndex frames = new FrameIndex();
+		int offset = id3v2;
+		Mp3FrameHeader first = Mp3FrameHeader.parse(mp3, offset);
+		if (first != null && first.isXingFrame(mp3, offset)) {
+			offset += first.frameLength();
+		}
+		double time = 0;
+		while (offset + 4 <= limit) {
+			Mp3FrameHeader header = Mp3FrameHeader.parse(mp3, offset);
+			if (header == null) {
+				// Skip garbage between frames until the next sync word.
+				offset++;
+				continue;
+			}
+			if (offset + header.frameLength() > limit) {
+				break;
+			}
+			frames.add(offset, time);
+			time += header.duration();
+			offset += header.frameLength();
+		}
+		return splitFrames(file, new byte[0], frames, offset, time, "mp3");
+	}
+
+	private List<AudioWindow> splitFlac(Path file, ByteBuffer flac) {
+		int position = 4;
+		int streamInfo = -1;
+		boolean last = false;
+		while (!last && position + 4 <= flac.limit()) {
+			int header = flac.getInt(position);
+			last = (header & 0x80000000) != 0;
+			if (((header >>> 24) & 0x7F) == 0) {
+				streamInfo = position + 4;
+			}
+			position += 4 + (header & 0xFFFFFF);
+		}
+		Assert.isTrue(streamInfo >= 0 && streamInfo + 34 <= flac.limit(), "flac file without STREAMINFO block");
+		int maxBlockSize = flac.getShort(streamInfo + 2) & 0xFFFF;
+		int sampleRate = (flac.get(streamInfo + 10) & 0xFF) << 12 | (flac.get(streamInfo + 11) & 0xFF) << 4
+				| (flac.get(streamInfo + 12) & 0xFF) >> 4;
+		Assert.isTrue(sampleRate > 0, "flac file with invalid STREAMINFO block");
+
+		// fLaC, then STREAMINFO as the last metadata block, with unknown length and MD5.
+		byte[] header = new byte[4 + 4 + 34];
+		flac.get(0, header, 0, 4);
+		header[4] = (byte) 0x80;
+		header[7] = 34;
+		flac.get(streamInfo, header, 8, 34);
+		header[8 + 13] &= (byte) 0xF0;
+		Arrays.fill(header, 8 + 14, header.length, (byte) 0);
+
+		FrameIndex frames = new FrameIndex();
+		long lastSample = -1;
+		int offset = position;
+		while (offset + 6 <= flac.limit()) {
+			long sample = flacFrameSample(flac, offset, maxBlockSize);
+			// A frame starts right after the samples of the previous one, which also rules
+			// out sync codes that happen to appear inside a frame.
+			boolean next = lastSample < 0 ? sample == 0 : sample > lastSample && sample <= lastSample + maxBlockSize;
+			if (next) {
+				frames.add(offset, (double) sample / sampleRate);
+				lastSample = sample;
+			}
+			// Frames are not indexed, the next one is found by its sync code.
+			offset++;
+		}
+		double duration = frames.size > 0 ? frames.times[frames.size - 1] + (double) maxBlockSize / sampleRate : 0;
+		return splitFrames(file, header, frames, flac.limit(), duration, "flac");
+	}
+
+	/**
+	 * @return the number of the first sample of the frame at the given offset, {@code -1}
+	 * if there is no valid frame header.
+	 */
+	private static long flacFrameSample(ByteBuffer flac, int offset, int fixedBlockSize) {
+		if ((flac.get(offset) & 0xFF) != 0xFF || (flac.get(offset + 1) & 0xFE) != 0xF8) {
+			return -1;
+		}
+		boolean variableBlockSize = (flac.get(offset + 1) & 0x01) != 0;
+		int blockSizeCode = (flac.get(offset + 2) & 0xFF) >> 4;
+		int sampleRateCode = flac.get(offset + 2) & 0x0F;
+		int channels = (flac.get(offset + 3) & 0xFF) >> 4;
+		int sampleSize = (flac.get(offset + 3) >> 1) & 0x07;
+		if (blockSizeCode == 0 || sampleRateCode == 15 || channels > 10 || sampleSize == 3
+				|| (flac.get(offset + 3) & 0x01) != 0) {
+			return -1;
+		}
+		// The frame or sample number, UTF-8 coded.
+		int position = offset + 4;
+		int lead = flac.get(position++) & 0xFF;
+		int continuation = Integer.numberOfLeadingZeros(~lead << 24);
+		if (continuation == 1 || continuation > 7) {
+			return -1;
+		}
+		long number = continuation == 0 ? lead : lead & (0x7F >> continuation);
+		for (int i = 1; i < continuation; i++) {
+			if (position >= flac.limit() || (flac.get(position) & 0xC0) != 0x80) {
+				return -1;
+			}
+			number = number << 6 | (flac.get(position++) & 0x3F);
+		}
+		position += blockSizeCode == 6 ? 1 : blockSizeCode == 7 ? 2 : 0;
+		position += sampleRateCode == 12 ? 1 : sampleRateCode == 13 || sampleRateCode == 14 ? 2 : 0;
+		if (position >= flac.limit() || crc8(flac, offset, position) != (flac.get(position) & 0xFF)) {
+			return -1;
+		}
+		return variableBlockSize ? number : number * fixedBlockSize;
+	}
+
+	private static int crc8(ByteBuffer buffer, int from, int to) {
+		int crc = 0;
+		for (int i = from; i < to; i++) {
+			crc ^= buffer.get(i) & 0xFF;
+			for (int bit = 0; bit < 8; bit++) {
+				crc = (crc & 0x80) != 0 ? (crc << 1 ^ 0x07) & 0xFF : crc << 1 & 0xFF;
+			}
+		}
+		return crc;
+	}
+
+	private List<AudioWindow> splitFrames(Path file, byte[] header, FrameIndex frames, long endOffset,
+			double duration, String extension) {
+		List<AudioWindow> windows = new ArrayList<>();
+		if (frames.size == 0) {
+			windows.add(new AudioWindow(0, 0, duration, new FileSystemResource(file)));
+			return windows;
+		}
+		int start = 0;
+		while (true) {
+			int end = frames.indexAt(frames.times[start] + this.windowSeconds);
+			if (end <= start) {
+				end = start + 1;
+			}
+			long from = frames.offsets[start];
+			long to = end < frames.size ? frames.offsets[end] : endOffset;
+			double endTime = end < frames.size ? frames.times[end] : duration;
+			windows.add(new AudioWindow(windows.size(), frames.times[start], endTime, new FileRegionResource(file,
+					header, from, to - from, windowFilename(file, windows.size(), extension))));
+			if (end >= frames.size) {
+				return windows;
+			}
+			start = Math.max(frames.indexAt(endTime - this.overlapSeconds), start + 1);
+		}
+	}
+
+	private static String windowFilename(Path file, int index, String extension) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		return (dot > 0 ? name.substring(0, dot) : name) + "-" + index + "." + extension;
+	}
+
+	/**
+	 * The offsets and start times of the frames of a file, in order.
+	 */
+	private static final class FrameIndex {
+
+		private long[] offsets = new long[1024];
+
+		private double[] times = new double[1024];
+
+		private int size;
+
+		void add(long offset, double time) {
+			if (this.size == this.offsets.length) {
+				this.offsets = Arrays.copyOf(this.offsets, this.size * 2);
+				this.times = Arrays.copyOf(this.times, this.size * 2);
+			}
+			this.offsets[this.size] = offset;
+			this.times[this.size++] = time;
+		}
+
+		/**
+		 * @return the index of the first frame starting at or after the given time,
+		 * {@link #size} if there is none.
+		 */
+		int indexAt(double time) {
+			int index = Arrays.binarySearch(this.times, 0, this.size, time);
+			return index >= 0 ? index : -index - 1;
+		}
+
+	}
+
+	/**
+	 * Builder for the {@link AudioSplitter}.
+	 */
+	public static class Builder {
+
+		/**
+		 * Well below the upload limit of the transcription endpoint for common bitrates.
+		 */
+		private Duration window = Duration.ofMinutes(5);
+
+		private Duration overlap = Duration.ofSeconds(2);
+
+		private Duration silenceSearch = Duration.ofSeconds(10);
+
+		public Builder withWindow(Duration window) {
+			this.window = window;
+			return this;
+		}
+
+		public Builder withOverlap(Duration overlap) {
+			this.overlap = overlap;
+			return this;
+		}
+
+		public Builder withSilenceSearch(Duration silenceSearch) {
+			this.silenceSearch = silenceSearch;
+			return this;
+		}
+
+		public AudioSplitter build() {
+			Assert.notNull(this.window, "window must not be null");
+			Assert.notNull(this.overlap, "overlap must not be null");
+			Assert.notNull(this.silenceSearch, "silenceSearch must not be null");
+			Assert.isTrue(!this.overlap.isNegative() && !this.silenceSearch.isNegative(),
+					"overlap and silenceSearch must not be negative");
+			Assert.isTrue(this.overlap.plus(this.silenceSearch).compareTo(this.window) < 0,
+					"overlap plus silenceSearch must be shorter than window");
+			return new AudioSplitter(this);
+		}
+
+	}
+
+}
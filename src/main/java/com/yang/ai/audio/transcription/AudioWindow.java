@@ -0,0 +1,32 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.transcription;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * A window of a long recording that is transcribed on its own, see {@link AudioSplitter}.
+ *
+ * @param index the position of the window in the recording, starting at {@code 0}.
+ * @param start the start of the window in the recording, in seconds.
+ * @param end the end of the window in the recording, in seconds, {@link Double#NaN} if
+ * the format of the recording is not known and it was not split.
+ * @param audio the audio of the window, a file of the same format as the recording.
+ * @author yang
+ */
+public record AudioWindow(int index, double start, double end, Resource audio) {
+
+}
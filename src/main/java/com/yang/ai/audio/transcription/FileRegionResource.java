@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.transcription;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A region of a file behind a small synthesized header, read straight from the file
+ * every time it is opened so that a window can be uploaded again on retry without
+ * holding its audio in memory.
+ *
+ * @author yang
+ */
+final class FileRegionResource extends AbstractResource {
+
+	private final Path file;
+
+	private final byte[] header;
+
+	private final long offset;
+
+	private final long length;
+
+	private final String filename;
+
+	FileRegionResource(Path file, byte[] header, long offset, long length, String filename) {
+		this.file = file;
+		this.header = header;
+		this.offset = offset;
+		this.length = length;
+		this.filename = filename;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ);
+		return new SequenceInputStream(new ByteArrayInputStream(this.header),
+				new RegionInputStream(channel, this.offset, this.offset + this.length));
+	}
+
+	@Override
+	public boolean exists() {
+		return true;
+	}
+
+	@Override
+	public long contentLength() {
+		return this.header.length + this.length;
+	}
+
+	@Override
+	public String getFilename() {
+		return this.filename;
+	}
+
+	@Override
+	public String getDescription() {
+		return "region [" + this.offset + ", " + (this.offset + this.length) + ") of file [" + this.file + "]";
+	}
+
+	/**
+	 * Positional reads, so that concurrently open windows of the same file do not share
+	 * any state.
+	 */
+	private static final class RegionInputStream extends InputStream {
+
+		private final FileChannel channel;
+
+		private long position;
+
+		private final long end;
+
+		RegionInputStream(FileChannel channel, long position, long end) {
+			this.channel = channel;
+			this.position = position;
+			this.end = end;
+		}
+
+		@Override
+		public int read() throws IOException {
+			byte[] single = new byte[1];
+			return read(single, 0, 1) < 0 ? -1 : single[0] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) throws IOException {
+			if (len == 0) {
+				return 0;
+			}
+			if (this.position >= this.end) {
+				return -1;
+			}
+			int count = (int) Math.min(len, this.end - this.position);
+			int read = this.channel.read(ByteBuffer.wrap(bytes, off, count), this.position);
+			if (read < 0) {
+				return -1;
+			}
+			this.position += read;
+			return read;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, this.end - this.position);
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.transcription;
+
+import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse;
+import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse.Segment;
+import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse.Word;
+import org.springframework.util.Assert;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Merges the transcripts of the windows of a recording, see {@link AudioSplitter}, into
+ * the transcript of the whole recording.
+ * <p>
+ * Segment and word timestamps are shifted by the start of their window and segments are
+ * renumbered. Where two windows overlap, a segment or word is taken from the earlier
+ * window if its middle lies before the middle of the overlap and from the later window
+ * otherwise, so that nothing is transcribed twice. Transcripts without segments, e.g. in
+ * the {@code json} format, are joined by dropping the longest end of the text so far that
+ * the next text starts with.
+ *
+ * @author yang
+ */
+public final class TranscriptMerger {
+
+	/**
+	 * Shorter matches in the text of overlapping windows are likely coincidental.
+	 */
+	private static final int MIN_TEXT_OVERLAP = 3;
+
+	private static final int MAX_TEXT_OVERLAP = 200;
+
+	private TranscriptMerger() {
+	}
+
+	/**
+	 * @param windows the windows of the recording in order.
+	 * @param transcripts the {@code verbose_json} transcript of each window.
+	 * @return the transcript of the recording.
+	 */
+	public static StructuredResponse merge(List<AudioWindow> windows, List<StructuredResponse> transcripts) {
+		Assert.isTrue(windows.size() == transcripts.size(), "windows and transcripts must have the same size");
+		String language = null;
+		double duration = 0;
+		StringBuilder text = new StringBuilder();
+		List<Word> words = new ArrayList<>();
+		List<Segment> segments = new ArrayList<>();
+		for (int i = 0; i < windows.size(); i++) {
+			AudioWindow window = windows.get(i);
+			StructuredResponse transcript = transcripts.get(i);
+			double keepFrom = i > 0 ? (windows.get(i - 1).end() + window.start()) / 2 : Double.NEGATIVE_INFINITY;
+			double keepUntil = i < windows.size() - 1 ? (window.end() + windows.get(i + 1).start()) / 2
+					: Double.POSITIVE_INFINITY;
+			float offset = (float) window.start();
+			if (language == null) {
+				language = transcript.language();
+			}
+			if (transcript.duration() != null) {
+				duration = Math.max(duration, offset + transcript.duration());
+			}
+			if (!Double.isNaN(window.end())) {
+				duration = Math.max(duration, window.end());
+			}
+			if (transcript.segments() != null && !transcript.segments().isEmpty()) {
+				for (Segment segment : transcript.segments()) {
+					float start = offset + value(segment.start());
+					float end = offset + value(segment.end());
+					if (keeps(start, end, keepFrom, keepUntil)) {
+						Integer seek = segment.seek() != null ? segment.seek() + Math.round(offset * 100) : null;
+						segments.add(new Segment(segments.size(), seek, start, end, segment.text(), segment.tokens(),
+								segment.temperature(), segment.avgLogprob(), segment.compressionRatio(),
+								segment.noSpeechProb()));
+						append(text, segment.text());
+					}
+				}
+			}
+			else if (transcript.text() != null) {
+				append(text, transcript.text().substring(overlap(text, transcript.text())));
+			}
+			if (transcript.words() != null) {
+				for (Word word : transcript.words()) {
+					float start = offset + value(word.start());
+					float end = offset + value(word.end());
+					if (keeps(start, end, keepFrom, keepUntil)) {
+						words.add(new Word(word.word(), start, end));
+					}
+				}
+			}
+		}
+		return new StructuredResponse(language, (float) duration, text.toString().strip(), words, segments);
+	}
+
+	private static boolean keeps(float start, float end, double keepFrom, double keepUntil) {
+		double middle = (start + end) / 2.0;
+		return middle >= keepFrom && middle < keepUntil;
+	}
+
+	private static float value(Float seconds) {
+		return seconds != null ? seconds : 0f;
+	}
+
+	/**
+	 * @return the length of the longest prefix of the next text that the text so far
+	 * ends with.
+	 */
+	private static int overlap(CharSequence text, String next) {
+		String tail = text.toString().stripTrailing();
+		String head = next.stripLeading();
+		int leading = next.length() - head.length();
+		int longest = Math.min(MAX_TEXT_OVERLAP, Math.min(tail.length(), head.length()));
+		for (int length = longest; length >= MIN_TEXT_OVERLAP; length--) {
+			if (tail.regionMatches(true, tail.length() - length, head, 0, length)) {
+				return leading + length;
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Append a piece of text, separated by a space unless there is one already or either
+	 * side is written without spaces between words, like Chinese and Japanese.
+	 */
+	private static void append(StringBuilder text, String piece) {
+		if (piece == null || piece.isBlank()) {
+			return;
+		}
+		if (!text.isEmpty()) {
+			int last = text.codePointBefore(text.length());
+			int first = piece.codePointAt(0);
+			if (!Character.isWhitespace(last) && !Character.isWhitespace(first) && !isSpaceless(last)
+					&& !isSpaceless(first)) {
+				text.append(' ');
+			}
+		}
+		text.append(piece);
+	}
+
+	private static boolean isSpaceless(int codePoint) {
+		if (Character.isIdeographic(codePoint) || (codePoint >= 0x3000 && codePoint <= 0x303F)
+				|| (codePoint >= 0xFF00 && codePoint <= 0xFFEF)) {
+			return true;
+		}
+		Character.UnicodeScript script = Character.UnicodeScript.of(codePoint);
+		return script == Character.UnicodeScript.HIRAGANA || script == Character.UnicodeScript.KATAKANA
+				|| script == Character.UnicodeScript.THAI;
+	}
+
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+/**
+ * Snapshot of the counters of a {@link ChatResponseCache}.
+ *
+ * @param hitCount lookups that returned a cached response.
+ * @param missCount lookups that found nothing, including expired entries.
+ * @param evictionCount entries removed because of size or expiry.
+ * @param rejectionCount puts the admission policy refused.
+ * @param size entries currently held.
+ * @author yang
+ */
+public record CacheStats(long hitCount, long missCount, long evictionCount, long rejectionCount, long size) {
+
+	public static final CacheStats EMPTY = new CacheStats(0, 0, 0, 0, 0);
+
+	public long requestCount() {
+		return this.hitCount + this.missCount;
+	}
+
+	/**
+	 * @return hits divided by lookups, {@code 1.0} when there were no lookups.
+	 */
+	public double hitRate() {
+		long requests = requestCount();
+		return requests == 0 ? 1.0 : (double) this.hitCount / requests;
+	}
+
+}
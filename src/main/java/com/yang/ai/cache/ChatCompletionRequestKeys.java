@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionRequest;
+import org.springframework.util.Assert;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Stable keys for {@link ChatCompletionRequest}s. The request is serialized with sorted
+ * properties and map entries and hashed with SHA-256, so equal requests map to the same
+ * key across JVMs. The {@code stream} flags are left out: a streamed and a blocking
+ * request for the same messages and options produce the same completion.
+ *
+ * @author yang
+ */
+public final class ChatCompletionRequestKeys {
+
+	private static final ObjectWriter WRITER = JsonMapper.builder()
+		.enable(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY)
+		.enable(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS)
+		.build()
+		.writer();
+
+	private ChatCompletionRequestKeys() {
+	}
+
+	/**
+	 * @param request the final request, as sent to the API.
+	 * @return the hex encoded SHA-256 of the normalized request.
+	 */
+	public static String of(ChatCompletionRequest request) {
+		Assert.notNull(request, "request must not be null");
+		ChatCompletionRequest normalized = new ChatCompletionRequest(request.messages(), request.model(),
+				request.frequencyPenalty(), request.logitBias(), request.logprobs(), request.topLogprobs(),
+				request.maxTokens(), request.stop(), null, null, request.temperature(), request.topP());
+		try {
+			return HexFormat.of().formatHex(sha256().digest(WRITER.writeValueAsBytes(normalized)));
+		}
+		catch (JsonProcessingException ex) {
+			throw new IllegalArgumentException("Could not serialize the chat completion request", ex);
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
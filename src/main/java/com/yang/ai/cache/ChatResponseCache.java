@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import org.springframework.ai.chat.model.ChatResponse;
+
+/**
+ * Exact-match cache for chat responses, keyed by {@link ChatCompletionRequestKeys#of}.
+ * Implementations must be thread-safe. {@link InMemoryChatResponseCache} is the default
+ * implementation; a persistent store can be plugged in by implementing this interface.
+ *
+ * @author yang
+ * @see com.yang.ai.ByteDanceChatModel#withResponseCache(ChatResponseCache)
+ */
+public interface ChatResponseCache {
+
+	/**
+	 * @param key the request key.
+	 * @return the cached response, or {@code null} when absent or expired.
+	 */
+	ChatResponse get(String key);
+
+	/**
+	 * Store a response. Implementations are free to reject it, e.g. when their
+	 * admission policy considers the entry not worth keeping.
+	 * @param key the request key.
+	 * @param response the response to cache.
+	 */
+	void put(String key, ChatResponse response);
+
+	/**
+	 * Remove a single entry.
+	 * @param key the request key.
+	 */
+	void evict(String key);
+
+	/**
+	 * Remove all entries.
+	 */
+	void clear();
+
+	/**
+	 * @return a snapshot of the hit and miss counters.
+	 */
+	CacheStats getStats();
+
+}
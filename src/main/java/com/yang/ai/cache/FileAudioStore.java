@@ -0,0 +1,224 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The on-disk tier of {@link TieredSpeechAudioCache}: one file per entry, read with a
+ * single channel read into an array of the file size. The total size of the files is
+ * bounded; the least recently used files are deleted first. The index is rebuilt from the
+ * directory on start, ordered by the file modification time, and the temporary files of
+ * writes interrupted by a crash are deleted.
+ *
+ * @author yang
+ */
+final class FileAudioStore {
+
+	private static final Logger logger = LoggerFactory.getLogger(FileAudioStore.class);
+
+	private static final String SUFFIX = ".audio";
+
+	private static final String TEMPORARY_SUFFIX = ".tmp";
+
+	private final Path directory;
+
+	private final long maxBytes;
+
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long size;
+
+	private long evictionCount;
+
+	FileAudioStore(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		try {
+			Files.createDirectories(directory);
+			List<Path> files;
+			try (Stream<Path> stream = Files.list(directory)) {
+				files = stream.toList();
+			}
+			deleteTemporaryFiles(files);
+			files = files.stream()
+				.filter(file -> file.getFileName().toString().endsWith(SUFFIX))
+				.sorted(Comparator.comparing(FileAudioStore::lastModified))
+				.toList();
+			for (Path file : files) {
+				String name = file.getFileName().toString();
+				long length = Files.size(file);
+				this.index.put(name.substring(0, name.length() - SUFFIX.length()), length);
+				this.size += length;
+			}
+		}
+		catch (IOException ex) {
+			throw new UncheckedIOException("Could not open the audio cache directory " + directory, ex);
+		}
+		synchronized (this) {
+			evictToFit();
+		}
+	}
+
+	byte[] get(String key) {
+		synchronized (this) {
+			if (this.index.get(key) == null) {
+				return null;
+			}
+		}
+		try (FileChannel channel = FileChannel.open(file(key), StandardOpenOption.READ)) {
+			long length = channel.size();
+			if (length > Integer.MAX_VALUE - 8) {
+				throw new IOException("Cached audio of " + length + " bytes exceeds the maximum array size");
+			}
+			ByteBuffer audio = ByteBuffer.allocate((int) length);
+			while (audio.hasRemaining()) {
+				if (channel.read(audio) < 0) {
+					throw new IOException("Cached audio truncated to " + audio.position() + " bytes");
+				}
+			}
+			return audio.array();
+		}
+		catch (NoSuchFileException ex) {
+			// Evicted concurrently.
+			return null;
+		}
+		catch (IOException ex) {
+			logger.warn("Could not read cached audio {}", key, ex);
+			remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * @return {@code false} if the audio is larger than the store.
+	 */
+	boolean put(String key, byte[] audio) {
+		if (audio.length > this.maxBytes) {
+			return false;
+		}
+		try {
+			// Write aside and move, so that readers never read a partially written file.
+			Path temporary = Files.createTempFile(this.directory, key, TEMPORARY_SUFFIX);
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+				ByteBuffer buffer = ByteBuffer.wrap(audio);
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			}
+			Files.move(temporary, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (IOException ex) {
+			logger.warn("Could not write cached audio {}", key, ex);
+			return false;
+		}
+		synchronized (this) {
+			Long previous = this.index.put(key, (long) audio.length);
+			this.size += audio.length - (previous != null ? previous : 0);
+			evictToFit();
+		}
+		return true;
+	}
+
+	synchronized void remove(String key) {
+		Long length = this.index.remove(key);
+		if (length != null) {
+			this.size -= length;
+			delete(key);
+		}
+	}
+
+	synchronized void clear() {
+		for (String key : this.index.keySet()) {
+			delete(key);
+		}
+		this.index.clear();
+		this.size = 0;
+	}
+
+	synchronized int entryCount() {
+		return this.index.size();
+	}
+
+	synchronized long evictionCount() {
+		return this.evictionCount;
+	}
+
+	private void evictToFit() {
+		Iterator<Map.Entry<String, Long>> eldest = this.index.entrySet().iterator();
+		while (this.size > this.maxBytes && eldest.hasNext()) {
+			Map.Entry<String, Long> entry = eldest.next();
+			eldest.remove();
+			this.size -= entry.getValue();
+			this.evictionCount++;
+			delete(entry.getKey());
+		}
+	}
+
+	private void delete(String key) {
+		try {
+			Files.deleteIfExists(file(key));
+		}
+		catch (IOException ex) {
+			logger.warn("Could not delete cached audio {}", key, ex);
+		}
+	}
+
+	private static void deleteTemporaryFiles(List<Path> files) {
+		for (Path file : files) {
+			if (file.getFileName().toString().endsWith(TEMPORARY_SUFFIX)) {
+				try {
+					Files.deleteIfExists(file);
+				}
+				catch (IOException ex) {
+					logger.warn("Could not delete temporary audio file {}", file, ex);
+				}
+			}
+		}
+	}
+
+	private Path file(String key) {
+		return this.directory.resolve(key + SUFFIX);
+	}
+
+	private static FileTime lastModified(Path file) {
+		try {
+			return Files.getLastModifiedTime(file);
+		}
+		catch (IOException ex) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+/**
+ * Count-min sketch estimating how often a key was requested, with four rows of counters
+ * saturating at 15. Once the number of increments reaches ten times the cache size all
+ * counters are halved, so the estimates follow recent popularity rather than the all-time
+ * count. Not thread-safe, guarded by the owning cache.
+ *
+ * @author yang
+ */
+final class FrequencySketch {
+
+	private static final int DEPTH = 4;
+
+	private static final int MAX_COUNT = 15;
+
+	private static final int[] SEEDS = { 0x97cb3127, 0xc3a5c85c, 0x9ae16a3b, 0xb492b66f };
+
+	private final byte[][] table;
+
+	private final int mask;
+
+	private final int sampleSize;
+
+	private int additions;
+
+	FrequencySketch(int maximumSize) {
+		int width = Integer.highestOneBit(Math.max(16, Math.min(maximumSize, 1 << 24) - 1) << 1);
+		this.table = new byte[DEPTH][width];
+		this.mask = width - 1;
+		this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * maximumSize);
+	}
+
+	void increment(String key) {
+		int hash = spread(key.hashCode());
+		boolean added = false;
+		for (int i = 0; i < DEPTH; i++) {
+			int index = indexOf(hash, i);
+			if (this.table[i][index] < MAX_COUNT) {
+				this.table[i][index]++;
+				added = true;
+			}
+		}
+		if (added && ++this.additions >= this.sampleSize) {
+			reset();
+		}
+	}
+
+	int frequency(String key) {
+		int hash = spread(key.hashCode());
+		int frequency = MAX_COUNT;
+		for (int i = 0; i < DEPTH; i++) {
+			frequency = Math.min(frequency, this.table[i][indexOf(hash, i)]);
+		}
+		return frequency;
+	}
+
+	private void reset() {
+		for (byte[] row : this.table) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = (byte) (row[i] >>> 1);
+			}
+		}
+		this.additions >>>= 1;
+	}
+
+	private int indexOf(int hash, int row) {
+		int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+		return (h ^ (h >>> 16)) & this.mask;
+	}
+
+	private static int spread(int hash) {
+		int h = hash * 0x85ebca6b;
+		return h ^ (h >>> 13);
+	}
+
+}
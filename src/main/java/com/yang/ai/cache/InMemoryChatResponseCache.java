@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.util.Assert;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded in-memory {@link ChatResponseCache} with W-TinyLFU style admission.
+ * <p>
+ * New entries go to a small LRU window (1% of the capacity). An entry pushed out of the
+ * window only replaces the least recently used entry of the main region when it was
+ * requested more often, as estimated by a {@link FrequencySketch}; otherwise it is
+ * dropped. This keeps a burst of one-off prompts from flushing the prompts that are
+ * actually repeated. Entries expire after a fixed time to live.
+ * <p>
+ * All operations lock the cache. A lookup is a few hash map operations, which is
+ * negligible compared to the API call it saves.
+ *
+ * @author yang
+ */
+public class InMemoryChatResponseCache implements ChatResponseCache {
+
+	public static final int DEFAULT_MAXIMUM_SIZE = 10_000;
+
+	public static final Duration DEFAULT_TIME_TO_LIVE = Duration.ofHours(1);
+
+	private final int windowCapacity;
+
+	private final int mainCapacity;
+
+	private final long timeToLiveNanos;
+
+	private final LongSupplier nanoClock;
+
+	private final LinkedHashMap<String, Entry> window = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final LinkedHashMap<String, Entry> main = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final FrequencySketch sketch;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long evictionCount;
+
+	private long rejectionCount;
+
+	public InMemoryChatResponseCache() {
+		this(DEFAULT_MAXIMUM_SIZE, DEFAULT_TIME_TO_LIVE);
+	}
+
+	public InMemoryChatResponseCache(int maximumSize, Duration timeToLive) {
+		this(maximumSize, timeToLive, System::nanoTime);
+	}
+
+	InMemoryChatResponseCache(int maximumSize, Duration timeToLive, LongSupplier nanoClock) {
+		Assert.isTrue(maximumSize > 0, "maximumSize must be positive");
+		Assert.isTrue(timeToLive != null && !timeToLive.isNegative() && !timeToLive.isZero(),
+				"timeToLive must be positive");
+		Assert.notNull(nanoClock, "nanoClock must not be null");
+		this.windowCapacity = Math.max(1, maximumSize / 100);
+		this.mainCapacity = maximumSize - this.windowCapacity;
+		this.timeToLiveNanos = timeToLive.toNanos();
+		this.nanoClock = nanoClock;
+		this.sketch = new FrequencySketch(maximumSize);
+	}
+
+	@Override
+	public synchronized ChatResponse get(String key) {
+		this.sketch.increment(key);
+		Entry entry = this.window.get(key);
+		Map<String, Entry> region = this.window;
+		if (entry == null) {
+			entry = this.main.get(key);
+			region = this.main;
+		}
+		if (entry == null) {
+			this.missCount++;
+			return null;
+		}
+		if (entry.isExpired(this.nanoClock.getAsLong())) {
+			region.remove(key);
+			this.evictionCount++;
+			this.missCount++;
+			return null;
+		}
+		this.hitCount++;
+		return entry.response();
+	}
+
+	@Override
+	public synchronized void put(String key, ChatResponse response) {
+		Assert.notNull(key, "key must not be null");
+		Assert.notNull(response, "response must not be null");
+		Entry entry = new Entry(response, this.nanoClock.getAsLong() + this.timeToLiveNanos);
+		if (this.main.containsKey(key)) {
+			this.main.put(key, entry);
+			return;
+		}
+		this.window.put(key, entry);
+		if (this.window.size() > this.windowCapacity) {
+			Iterator<Map.Entry<String, Entry>> eldest = this.window.entrySet().iterator();
+			Map.Entry<String, Entry> candidate = eldest.next();
+			eldest.remove();
+			admit(candidate.getKey(), candidate.getValue());
+		}
+	}
+
+	/**
+	 * Move an entry evicted from the window into the main region, if it is worth more
+	 * than the entry it would replace.
+	 */
+	private void admit(String key, Entry entry) {
+		long now = this.nanoClock.getAsLong();
+		if (entry.isExpired(now)) {
+			this.evictionCount++;
+			return;
+		}
+		if (this.main.size() < this.mainCapacity) {
+			this.main.put(key, entry);
+			return;
+		}
+		if (this.mainCapacity == 0) {
+			this.rejectionCount++;
+			return;
+		}
+		Iterator<Map.Entry<String, Entry>> eldest = this.main.entrySet().iterator();
+		Map.Entry<String, Entry> victim = eldest.next();
+		if (victim.getValue().isExpired(now)
+				|| this.sketch.frequency(key) > this.sketch.frequency(victim.getKey())) {
+			eldest.remove();
+			this.evictionCount++;
+			this.main.put(key, entry);
+		}
+		else {
+			this.rejectionCount++;
+		}
+	}
+
+	@Override
+	public synchronized void evict(String key) {
+		if (this.window.remove(key) == null) {
+			this.main.remove(key);
+		}
+	}
+
+	@Override
+	public synchronized void clear() {
+		this.window.clear();
+		this.main.clear();
+	}
+
+	@Override
+	public synchronized CacheStats getStats() {
+		return new CacheStats(this.hitCount, this.missCount, this.evictionCount, this.rejectionCount,
+				this.window.size() + this.main.size());
+	}
+
+	private record Entry(ChatResponse response, long expiresAt) {
+
+		boolean isExpired(long now) {
+			return now - this.expiresAt >= 0;
+		}
+
+	}
+
+}
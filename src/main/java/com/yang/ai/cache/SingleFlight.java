@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical requests. While a call for a key is in flight, further
+ * calls for the same key wait for it and receive its result, or its exception, instead
+ * of sending their own request. Nothing is kept once the call completes, see
+ * {@link ChatResponseCache} for that.
+ * <p>
+ * Streams are shared the same way: subscribers that arrive while a stream for the key is
+ * running join it and first receive the elements they missed. The upstream request is
+ * cancelled once every subscriber has cancelled.
+ *
+ * @author yang
+ */
+public class SingleFlight {
+
+	private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<String, Flux<?>> streams = new ConcurrentHashMap<>();
+
+	/**
+	 * Run the supplier, unless a call with the same key is already running, in which
+	 * case its outcome is returned.
+	 * @param key the request key, e.g. {@link ChatCompletionRequestKeys#of}.
+	 * @param supplier the call to make.
+	 * @param <T> the result type.
+	 * @return the result of this or the in-flight call.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T execute(String key, Supplier<T> supplier) {
+		Assert.notNull(key, "key must not be null");
+		CompletableFuture<Object> future = new CompletableFuture<>();
+		CompletableFuture<Object> inFlight = this.calls.putIfAbsent(key, future);
+		if (inFlight != null) {
+			return (T) join(inFlight);
+		}
+		try {
+			T result = supplier.get();
+			future.complete(result);
+			return result;
+		}
+		catch (RuntimeException | Error ex) {
+			future.completeExceptionally(ex);
+			throw ex;
+		}
+		finally {
+			this.calls.remove(key, future);
+		}
+	}
+
+	/**
+	 * Share the stream with the given key among concurrent subscribers.
+	 * @param key the request key, e.g. {@link ChatCompletionRequestKeys#of}.
+	 * @param supplier creates the stream when none is running for the key; invoked on
+	 * subscription.
+	 * @param <T> the element type.
+	 * @return the shared stream.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Flux<T> stream(String key, Supplier<Flux<T>> supplier) {
+		Assert.notNull(key, "key must not be null");
+		return Flux.defer(() -> (Flux<T>) this.streams.computeIfAbsent(key, k -> {
+			AtomicReference<Flux<?>> self = new AtomicReference<>();
+			Flux<T> shared = supplier.get()
+				.doFinally(signal -> this.streams.remove(k, self.get()))
+				.replay()
+				.refCount();
+			self.set(shared);
+			return shared;
+		}));
+	}
+
+	/**
+	 * @return the number of calls and streams currently in flight.
+	 */
+	public int getInFlightCount() {
+		return this.calls.size() + this.streams.size();
+	}
+
+	private static Object join(CompletableFuture<Object> inFlight) {
+		try {
+			return inFlight.join();
+		}
+		catch (CompletionException ex) {
+			if (ex.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (ex.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw ex;
+		}
+	}
+
+}
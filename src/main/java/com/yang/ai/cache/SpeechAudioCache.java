@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+/**
+ * Cache of synthesized audio, keyed by {@link SpeechRequestKeys}. Implementations must be
+ * thread-safe.
+ *
+ * @author yang
+ * @see TieredSpeechAudioCache
+ */
+public interface SpeechAudioCache {
+
+	/**
+	 * @param key the request key.
+	 * @return the cached audio, or {@code null} when absent.
+	 */
+	byte[] get(String key);
+
+	/**
+	 * Store the audio of a request. Implementations are free to reject it, e.g. when it
+	 * is larger than the whole cache.
+	 * @param key the request key.
+	 * @param audio the decoded audio.
+	 */
+	void put(String key, byte[] audio);
+
+	/**
+	 * Remove a single entry.
+	 * @param key the request key.
+	 */
+	void evict(String key);
+
+	/**
+	 * Remove all entries.
+	 */
+	void clear();
+
+	/**
+	 * @return a snapshot of the hit and miss counters.
+	 */
+	CacheStats getStats();
+
+}
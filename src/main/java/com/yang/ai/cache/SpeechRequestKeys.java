@@ -0,0 +1,88 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import com.yang.ai.api.ByteDanceAudioApi.SpeechRequest;
+import org.springframework.util.Assert;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Content-addressed keys for {@link SpeechAudioCache}.
+ * <p>
+ * The key covers what determines the audio: the text, how it is read (text type and
+ * trailing silence) and every {@link SpeechRequest.Audio} parameter. It never covers the
+ * {@code reqid}, which is unique per request, nor the app and user, which do not change
+ * the audio.
+ *
+ * @author yang
+ */
+public final class SpeechRequestKeys {
+
+	private SpeechRequestKeys() {
+	}
+
+	/**
+	 * @param request the final request, as sent to the API.
+	 * @return the hex encoded SHA-256 of the audio relevant fields.
+	 */
+	public static String of(SpeechRequest request) {
+		Assert.notNull(request, "request must not be null");
+		Assert.notNull(request.request(), "request.request must not be null");
+		MessageDigest digest = sha256();
+		SpeechRequest.Audio audio = request.audio();
+		if (audio != null) {
+			update(digest, audio.voice_type());
+			update(digest, audio.encoding());
+			update(digest, audio.compression_rate());
+			update(digest, audio.speed_ratio());
+			update(digest, audio.volume_ratio());
+			update(digest, audio.pitch_ratio());
+			update(digest, audio.emotion());
+			update(digest, audio.language());
+		}
+		update(digest, request.request().text_type());
+		update(digest, request.request().silence_duration());
+		update(digest, request.request().text());
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	private static void update(MessageDigest digest, Object value) {
+		// Length prefixed, so that ("ab", "c") and ("a", "bc") differ; -1 marks null.
+		if (value == null) {
+			digest.update(new byte[] { -1, -1, -1, -1 });
+			return;
+		}
+		byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+		int length = bytes.length;
+		digest.update(new byte[] { (byte) (length >>> 24), (byte) (length >>> 16), (byte) (length >>> 8),
+				(byte) length });
+		digest.update(bytes);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+}
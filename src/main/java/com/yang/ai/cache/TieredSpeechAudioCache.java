@@ -0,0 +1,175 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import org.springframework.util.Assert;
+
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * {@link SpeechAudioCache} with a memory tier and an optional disk tier, both bounded in
+ * bytes with least recently used eviction.
+ * <p>
+ * Lookups try the memory tier first, then the disk tier; a disk hit is promoted to
+ * memory. New audio is written to both tiers, so the disk tier holds the larger working
+ * set and survives restarts while the memory tier holds the hottest prompts. The memory
+ * tier hands out copies, callers may modify the returned audio.
+ *
+ * @author yang
+ */
+public class TieredSpeechAudioCache implements SpeechAudioCache {
+
+	public static final long DEFAULT_MAX_MEMORY_BYTES = 64L * 1024 * 1024;
+
+	public static final long DEFAULT_MAX_DISK_BYTES = 1024L * 1024 * 1024;
+
+	private static final Pattern KEY_PATTERN = Pattern.compile("[0-9A-Za-z_-]{1,128}");
+
+	private final long maxMemoryBytes;
+
+	private final LinkedHashMap<String, byte[]> memory = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final FileAudioStore disk;
+
+	private long memorySize;
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long evictionCount;
+
+	private long rejectionCount;
+
+	/**
+	 * Create a memory only cache.
+	 * @param maxMemoryBytes the size bound of the memory tier.
+	 */
+	public TieredSpeechAudioCache(long maxMemoryBytes) {
+		this(maxMemoryBytes, null, 0);
+	}
+
+	/**
+	 * @param maxMemoryBytes the size bound of the memory tier.
+	 * @param directory the directory of the disk tier, created if missing, {@code null}
+	 * for no disk tier. Entries found there are reused.
+	 * @param maxDiskBytes the size bound of the disk tier.
+	 */
+	public TieredSpeechAudioCache(long maxMemoryBytes, Path directory, long maxDiskBytes) {
+		Assert.isTrue(maxMemoryBytes >= 0, "maxMemoryBytes must not be negative");
+		Assert.isTrue(directory == null || maxDiskBytes > 0, "maxDiskBytes must be positive");
+		this.maxMemoryBytes = maxMemoryBytes;
+		this.disk = directory != null ? new FileAudioStore(directory, maxDiskBytes) : null;
+	}
+
+	@Override
+	public byte[] get(String key) {
+		synchronized (this) {
+			byte[] audio = this.memory.get(key);
+			if (audio != null) {
+				this.hitCount++;
+				return audio.clone();
+			}
+		}
+		byte[] audio = this.disk != null && isValidKey(key) ? this.disk.get(key) : null;
+		synchronized (this) {
+			if (audio == null) {
+				this.missCount++;
+				return null;
+			}
+			this.hitCount++;
+			putInMemory(key, audio.clone());
+		}
+		return audio;
+	}
+
+	@Override
+	public void put(String key, byte[] audio) {
+		Assert.isTrue(isValidKey(key), "key must be a short alphanumeric string, e.g. a SpeechRequestKeys key");
+		Assert.notNull(audio, "audio must not be null");
+		boolean stored = this.disk != null && this.disk.put(key, audio);
+		synchronized (this) {
+			stored |= putInMemory(key, audio.clone());
+			if (!stored) {
+				this.rejectionCount++;
+			}
+		}
+	}
+
+	private boolean putInMemory(String key, byte[] audio) {
+		if (audio.length > this.maxMemoryBytes) {
+			return false;
+		}
+		byte[] previous = this.memory.put(key, audio);
+		this.memorySize += audio.length - (previous != null ? previous.length : 0);
+		Iterator<Map.Entry<String, byte[]>> eldest = this.memory.entrySet().iterator();
+		while (this.memorySize > this.maxMemoryBytes && eldest.hasNext()) {
+			this.memorySize -= eldest.next().getValue().length;
+			eldest.remove();
+			this.evictionCount++;
+		}
+		return true;
+	}
+
+	@Override
+	public void evict(String key) {
+		synchronized (this) {
+			byte[] removed = this.memory.remove(key);
+			if (removed != null) {
+				this.memorySize -= removed.length;
+			}
+		}
+		if (this.disk != null && isValidKey(key)) {
+			this.disk.remove(key);
+		}
+	}
+
+	@Override
+	public void clear() {
+		synchronized (this) {
+			this.memory.clear();
+			this.memorySize = 0;
+		}
+		if (this.disk != null) {
+			this.disk.clear();
+		}
+	}
+
+	@Override
+	public synchronized CacheStats getStats() {
+		long diskEvictions = this.disk != null ? this.disk.evictionCount() : 0;
+		long size = this.disk != null ? Math.max(this.disk.entryCount(), this.memory.size()) : this.memory.size();
+		return new CacheStats(this.hitCount, this.missCount, this.evictionCount + diskEvictions, this.rejectionCount,
+				size);
+	}
+
+	/**
+	 * @return the bytes held by the memory tier.
+	 */
+	public synchronized long getMemorySize() {
+		return this.memorySize;
+	}
+
+	private static boolean isValidKey(String key) {
+		// Keys become file names.
+		return key != null && KEY_PATTERN.matcher(key).matches();
+	}
+
+}
@@ -34,11 +34,24 @@ public class ByteDanceChatResponseMetadata extends HashMap<String, Object> imple
 
 	protected static final String AI_METADATA_STRING = "{ @type: %1$s, id: %2$s, usage: %3$s, rateLimit: %4$s }";
 
+	/**
+	 * @param result a completion, or a chunk of a stream converted to one. Only the last
+	 * chunk of a stream carries the usage, and only if the request set
+	 * {@code stream_options.include_usage}.
+	 * @return the metadata, with an empty usage if the result has none.
+	 */
 	public static ByteDanceChatResponseMetadata from(ByteDanceChatApi.ChatCompletion result) {
 		Assert.notNull(result, "ByteDance ChatCompletionResult must not be null");
-		ByteDanceUsage usage = ByteDanceUsage.from(result.usage());
-		ByteDanceChatResponseMetadata chatResponseMetadata = new ByteDanceChatResponseMetadata(result.id(), usage);
-		return chatResponseMetadata;
+		return from(result.id(), result.usage());
+	}
+
+	/**
+	 * @param id the id of the completion.
+	 * @param usage the usage, may be {@code null}.
+	 * @return the metadata, with an empty usage if there is none.
+	 */
+	public static ByteDanceChatResponseMetadata from(String id, @Nullable ByteDanceChatApi.Usage usage) {
+		return new ByteDanceChatResponseMetadata(id, usage != null ? ByteDanceUsage.from(usage) : null);
 	}
 
 	private final String id;
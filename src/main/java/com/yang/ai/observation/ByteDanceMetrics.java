@@ -0,0 +1,413 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.observation;
+
+import com.yang.ai.resilience.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.util.Assert;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientResponseException;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Micrometer instrumentation of the ByteDance models. One instance is usually shared by
+ * all models of an application, each model reports every request through a
+ * {@link ByteDanceObservation}, see {@code withMetrics} on the models.
+ * <p>
+ * All meters are tagged with {@code operation} ({@code chat}, {@code chat.stream},
+ * {@code speech}, {@code speech.stream}, {@code transcription}), {@code model} and
+ * {@code voice_type} ({@code none} outside of speech):
+ * <ul>
+ * <li>{@code bytedance.client.requests}: timer of a request including its retries,
+ * tagged with the {@code outcome} ({@code success}, {@code error} or
+ * {@code cancelled}).</li>
+ * <li>{@code bytedance.client.stream.time.to.first.token} and
+ * {@code bytedance.client.stream.inter.token.latency}: timers of the chat streams.</li>
+ * <li>{@code bytedance.client.tokens}: summary of the reported usage, tagged with the
+ * {@code token_type} ({@code input} or {@code output}).</li>
+ * <li>{@code bytedance.client.retries}: counter of retried attempts.</li>
+ * <li>{@code bytedance.client.errors}: counter of failed attempts, tagged with the
+ * {@code status} ({@code 429}, {@code 4xx}, {@code 5xx}, {@code io},
+ * {@code circuit_open} or {@code other}).</li>
+ * <li>{@code bytedance.client.audio.bytes}: summary of the audio sent and received,
+ * tagged with the {@code direction} ({@code in} or {@code out}).</li>
+ * <li>{@code bytedance.client.rate.limit.remaining} and
+ * {@code bytedance.client.rate.limit.limit}: gauges of the last rate limit headers,
+ * tagged with the {@code limit_type} ({@code requests} or {@code tokens}).</li>
+ * </ul>
+ * The timers publish percentile histograms. Every request is also an {@link Observation}
+ * named {@code bytedance.client.operation}, so tracing handlers registered with the
+ * observation registry see it.
+ * <p>
+ * The model and the voice type are taken from the requests, so the number of their
+ * distinct values is capped, see {@link #DEFAULT_MAX_TAG_VALUES}, and further values are
+ * reported as {@code other}.
+ *
+ * @author yang
+ */
+public class ByteDanceMetrics {
+
+	public static final String OPERATION_CHAT = "chat";
+
+	public static final String OPERATION_CHAT_STREAM = "chat.stream";
+
+	public static final String OPERATION_SPEECH = "speech";
+
+	public static final String OPERATION_SPEECH_STREAM = "speech.stream";
+
+	public static final String OPERATION_TRANSCRIPTION = "transcription";
+
+	/**
+	 * The default number of distinct values of the {@code model} and the
+	 * {@code voice_type} tags.
+	 */
+	public static final int DEFAULT_MAX_TAG_VALUES = 50;
+
+	static final String REQUESTS = "bytedance.client.requests";
+
+	static final String TIME_TO_FIRST_TOKEN = "bytedance.client.stream.time.to.first.token";
+
+	static final String INTER_TOKEN_LATENCY = "bytedance.client.stream.inter.token.latency";
+
+	static final String TOKENS = "bytedance.client.tokens";
+
+	static final String RETRIES = "bytedance.client.retries";
+
+	static final String ERRORS = "bytedance.client.errors";
+
+	static final String AUDIO_BYTES = "bytedance.client.audio.bytes";
+
+	static final String RATE_LIMIT_REMAINING = "bytedance.client.rate.limit.remaining";
+
+	static final String RATE_LIMIT_LIMIT = "bytedance.client.rate.limit.limit";
+
+	static final String OBSERVATION_NAME = "bytedance.client.operation";
+
+	private static final String OPERATION = "operation";
+
+	private static final String MODEL = "model";
+
+	private static final String VOICE_TYPE = "voice_type";
+
+	private final MeterRegistry meterRegistry;
+
+	private final ObservationRegistry observationRegistry;
+
+	private final TagValueLimiter tagValueLimiter;
+
+	/**
+	 * The meters per tag set, registered on first use and shared by the requests with
+	 * these tags, so recording a value does not build a meter id.
+	 */
+	private final ConcurrentHashMap<MetersKey, Meters> meters = new ConcurrentHashMap<>();
+
+	public ByteDanceMetrics(MeterRegistry meterRegistry) {
+		this(meterRegistry, ObservationRegistry.NOOP);
+	}
+
+	public ByteDanceMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry) {
+		this(meterRegistry, observationRegistry, DEFAULT_MAX_TAG_VALUES);
+	}
+
+	/**
+	 * @param meterRegistry receives the meters.
+	 * @param observationRegistry receives the observations, {@link ObservationRegistry#NOOP}
+	 * to record the meters only.
+	 * @param maxTagValues the number of distinct values of the {@code model} and the
+	 * {@code voice_type} tags.
+	 */
+	public ByteDanceMetrics(MeterRegistry meterRegistry, ObservationRegistry observationRegistry, int maxTagValues) {
+		Assert.notNull(meterRegistry, "meterRegistry must not be null");
+		Assert.notNull(observationRegistry, "observationRegistry must not be null");
+		Assert.isTrue(maxTagValues > 0, "maxTagValues must be positive");
+		this.meterRegistry = meterRegistry;
+		this.observationRegistry = observationRegistry;
+		this.tagValueLimiter = new TagValueLimiter(maxTagValues);
+	}
+
+	/**
+	 * Start observing a request.
+	 * @param operation the operation, e.g. {@link #OPERATION_CHAT}.
+	 * @param model the model or endpoint id, may be {@code null}.
+	 * @param voiceType the voice type of a speech request, may be {@code null}.
+	 * @return the started observation, to be stopped exactly once.
+	 */
+	public ByteDanceObservation start(String operation, String model, String voiceType) {
+		Assert.hasText(operation, "operation must not be empty");
+		String modelValue = this.tagValueLimiter.limit(MODEL, model);
+		String voiceTypeValue = this.tagValueLimiter.limit(VOICE_TYPE, voiceType);
+		Meters requestMeters = meters(new MetersKey(operation, modelValue, voiceTypeValue));
+		Observation observation = Observation.createNotStarted(OBSERVATION_NAME, this.observationRegistry)
+			.contextualName(operation)
+			.lowCardinalityKeyValue(OPERATION, operation)
+			.lowCardinalityKeyValue(MODEL, modelValue)
+			.lowCardinalityKeyValue(VOICE_TYPE, voiceTypeValue)
+			.start();
+		return new ByteDanceObservation(this, requestMeters, observation, monotonicTime());
+	}
+
+	private Meters meters(MetersKey key) {
+		Meters existing = this.meters.get(key);
+		return existing != null ? existing : this.meters.computeIfAbsent(key, Meters::new);
+	}
+
+	long monotonicTime() {
+		return this.meterRegistry.config().clock().monotonicTime();
+	}
+
+	void recordRequest(Meters meters, String outcome, long nanos) {
+		meters.requests.get(outcome).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void recordTimeToFirstToken(Meters meters, long nanos) {
+		meters.timeToFirstToken.get(TIME_TO_FIRST_TOKEN).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void recordInterTokenLatency(Meters meters, long nanos) {
+		meters.interTokenLatency.get(INTER_TOKEN_LATENCY).record(nanos, TimeUnit.NANOSECONDS);
+	}
+
+	void recordTokens(Meters meters, String tokenType, long tokens) {
+		meters.tokens.get(tokenType).record(tokens);
+	}
+
+	void recordRetry(Meters meters) {
+		meters.retries.get(RETRIES).increment();
+	}
+
+	void recordError(Meters meters, Throwable error) {
+		meters.errors.get(status(error)).increment();
+	}
+
+	void recordAudioBytes(Meters meters, String direction, long bytes) {
+		meters.audioBytes.get(direction).record(bytes);
+	}
+
+	void updateRateLimit(Meters meters, RateLimit rateLimit) {
+		if (rateLimit == null || (rateLimit.getRequestsRemaining() == null && rateLimit.getTokensRemaining() == null)) {
+			// No rate limit headers, keep the last known values.
+			return;
+		}
+		meters.rateLimit.get(RATE_LIMIT_REMAINING).rateLimit = rateLimit;
+	}
+
+	private RateLimitHolder registerRateLimitGauges(Tags tags) {
+		RateLimitHolder holder = new RateLimitHolder();
+		Gauge.builder(RATE_LIMIT_REMAINING, holder, h -> h.value(RateLimit::getRequestsRemaining))
+			.description("Remaining quota reported by the last response")
+			.tags(tags)
+			.tag("limit_type", "requests")
+			.register(this.meterRegistry);
+		Gauge.builder(RATE_LIMIT_REMAINING, holder, h -> h.value(RateLimit::getTokensRemaining))
+			.description("Remaining quota reported by the last response")
+			.tags(tags)
+			.tag("limit_type", "tokens")
+			.register(this.meterRegistry);
+		Gauge.builder(RATE_LIMIT_LIMIT, holder, h -> h.value(RateLimit::getRequestsLimit))
+			.description("Quota reported by the last response")
+			.tags(tags)
+			.tag("limit_type", "requests")
+			.register(this.meterRegistry);
+		Gauge.builder(RATE_LIMIT_LIMIT, holder, h -> h.value(RateLimit::getTokensLimit))
+			.description("Quota reported by the last response")
+			.tags(tags)
+			.tag("limit_type", "tokens")
+			.register(this.meterRegistry);
+		return holder;
+	}
+
+	/**
+	 * @param error a failed attempt.
+	 * @return the {@code status} tag of the error.
+	 */
+	static String status(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+			if (cause instanceof CircuitBreaker.CallNotPermittedException) {
+				return "circuit_open";
+			}
+			if (cause instanceof RestClientResponseException responseException) {
+				return statusClass(responseException.getStatusCode().value());
+			}
+			if (cause instanceof WebClientResponseException responseException) {
+				return statusClass(responseException.getStatusCode().value());
+			}
+			if (cause instanceof IOException || cause instanceof ResourceAccessException
+					|| cause instanceof WebClientRequestException) {
+				return "io";
+			}
+			if ((cause instanceof TransientAiException || cause instanceof NonTransientAiException)
+					&& cause.getMessage() != null) {
+				// RetryUtils reports HTTP errors as "<status> - <body>".
+				String status = statusPrefix(cause.getMessage());
+				if (status != null) {
+					return status;
+				}
+			}
+		}
+		return "other";
+	}
+
+	private static String statusPrefix(String message) {
+		if (message.length() < 3) {
+			return null;
+		}
+		for (int i = 0; i < 3; i++) {
+			if (!Character.isDigit(message.charAt(i))) {
+				return null;
+			}
+		}
+		if (message.length() > 3 && Character.isDigit(message.charAt(3))) {
+			return null;
+		}
+		return statusClass(Integer.parseInt(message.substring(0, 3)));
+	}
+
+	private static String statusClass(int status) {
+		if (status == 429) {
+			return "429";
+		}
+		if (status >= 500 && status < 600) {
+			return "5xx";
+		}
+		if (status >= 400 && status < 500) {
+			return "4xx";
+		}
+		return "other";
+	}
+
+	private record MetersKey(String operation, String model, String voiceType) {
+	}
+
+	/**
+	 * The meters of one tag set. Each kind of meter is cached by the value of its own
+	 * extra tag, or by its name when it has none.
+	 */
+	final class Meters {
+
+		private final MeterCache<Timer> requests;
+
+		private final MeterCache<Timer> timeToFirstToken;
+
+		private final MeterCache<Timer> interTokenLatency;
+
+		private final MeterCache<DistributionSummary> tokens;
+
+		private final MeterCache<Counter> retries;
+
+		private final MeterCache<Counter> errors;
+
+		private final MeterCache<DistributionSummary> audioBytes;
+
+		/**
+		 * The last rate limit, the gauges read it. Held here since gauges only hold a
+		 * weak reference to their state.
+		 */
+		private final MeterCache<RateLimitHolder> rateLimit;
+
+		private Meters(MetersKey key) {
+			Tags tags = Tags.of(OPERATION, key.operation(), MODEL, key.model(), VOICE_TYPE, key.voiceType());
+			MeterRegistry registry = ByteDanceMetrics.this.meterRegistry;
+			this.requests = new MeterCache<>(outcome -> Timer.builder(REQUESTS)
+				.description("Requests to the ByteDance APIs, including retries")
+				.tags(tags)
+				.tag("outcome", outcome)
+				.publishPercentileHistogram()
+				.register(registry));
+			this.timeToFirstToken = new MeterCache<>(name -> Timer.builder(name)
+				.description("Time from the request to the first token of a stream")
+				.tags(tags)
+				.publishPercentileHistogram()
+				.register(registry));
+			this.interTokenLatency = new MeterCache<>(name -> Timer.builder(name)
+				.description("Time between two tokens of a stream")
+				.tags(tags)
+				.publishPercentileHistogram()
+				.register(registry));
+			this.tokens = new MeterCache<>(tokenType -> DistributionSummary.builder(TOKENS)
+				.description("Tokens reported in the usage of the responses")
+				.baseUnit("tokens")
+				.tags(tags)
+				.tag("token_type", tokenType)
+				.register(registry));
+			this.retries = new MeterCache<>(name -> Counter.builder(name)
+				.description("Retried attempts")
+				.tags(tags)
+				.register(registry));
+			this.errors = new MeterCache<>(status -> Counter.builder(ERRORS)
+				.description("Failed attempts")
+				.tags(tags)
+				.tag("status", status)
+				.register(registry));
+			this.audioBytes = new MeterCache<>(direction -> DistributionSummary.builder(AUDIO_BYTES)
+				.description("Audio sent to and received from the audio APIs")
+				.baseUnit("bytes")
+				.tags(tags)
+				.tag("direction", direction)
+				.register(registry));
+			this.rateLimit = new MeterCache<>(name -> registerRateLimitGauges(tags));
+		}
+
+	}
+
+	/**
+	 * Meters registered on first use, by the value of a tag.
+	 */
+	private static final class MeterCache<M> {
+
+		private final ConcurrentHashMap<String, M> meters = new ConcurrentHashMap<>(4);
+
+		private final Function<String, M> register;
+
+		MeterCache(Function<String, M> register) {
+			this.register = register;
+		}
+
+		M get(String tagValue) {
+			M meter = this.meters.get(tagValue);
+			return meter != null ? meter : this.meters.computeIfAbsent(tagValue, this.register);
+		}
+
+	}
+
+	private static final class RateLimitHolder {
+
+		volatile RateLimit rateLimit;
+
+		double value(Function<RateLimit, Long> getter) {
+			RateLimit current = this.rateLimit;
+			Long value = current != null ? getter.apply(current) : null;
+			return value != null ? value : Double.NaN;
+		}
+
+	}
+
+}
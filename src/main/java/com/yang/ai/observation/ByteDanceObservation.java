@@ -0,0 +1,214 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.observation;
+
+import io.micrometer.observation.Observation;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.chat.metadata.Usage;
+import reactor.core.publisher.Flux;
+import reactor.util.context.Context;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The observation of a single request, created by {@link ByteDanceMetrics#start}. The
+ * model reports the attempts, tokens, audio and rate limits of the request to it and
+ * stops it when the request is finished. {@link #noop()} records nothing, for models
+ * without metrics.
+ *
+ * @author yang
+ */
+public final class ByteDanceObservation {
+
+	/**
+	 * The key of the parent observation in the Reactor context, the value of
+	 * {@code ObservationThreadLocalAccessor.KEY}, read by the instrumented
+	 * {@code WebClient}.
+	 */
+	static final String OBSERVATION_CONTEXT_KEY = "micrometer.observation";
+
+	private static final ByteDanceObservation NOOP = new ByteDanceObservation(null, null, Observation.NOOP, 0);
+
+	private final ByteDanceMetrics metrics;
+
+	private final ByteDanceMetrics.Meters meters;
+
+	private final Observation observation;
+
+	private final long startTime;
+
+	/**
+	 * The time of the last token, {@code 0} until the first one.
+	 */
+	private final AtomicLong lastTokenTime = new AtomicLong();
+
+	private final AtomicBoolean stopped = new AtomicBoolean();
+
+	ByteDanceObservation(ByteDanceMetrics metrics, ByteDanceMetrics.Meters meters, Observation observation,
+			long startTime) {
+		this.metrics = metrics;
+		this.meters = meters;
+		this.observation = observation;
+		this.startTime = startTime;
+	}
+
+	/**
+	 * @return an observation that records nothing.
+	 */
+	public static ByteDanceObservation noop() {
+		return NOOP;
+	}
+
+	/**
+	 * Count an attempt after the first one.
+	 */
+	public void onRetry() {
+		if (this.metrics != null) {
+			this.metrics.recordRetry(this.meters);
+		}
+	}
+
+	/**
+	 * Count a failed attempt, whether it is retried or not.
+	 * @param error the error of the attempt.
+	 */
+	public void onError(Throwable error) {
+		if (this.metrics != null) {
+			this.metrics.recordError(this.meters, error);
+		}
+	}
+
+	/**
+	 * Record a token of a stream: the time to the first token, then the time between the
+	 * tokens.
+	 */
+	public void onToken() {
+		if (this.metrics == null) {
+			return;
+		}
+		long now = this.metrics.monotonicTime();
+		long last = this.lastTokenTime.getAndSet(now);
+		if (last == 0) {
+			this.metrics.recordTimeToFirstToken(this.meters, now - this.startTime);
+		}
+		else {
+			this.metrics.recordInterTokenLatency(this.meters, now - last);
+		}
+	}
+
+	/**
+	 * @param usage the usage reported by the response, e.g.
+	 * {@link com.yang.ai.metadata.ByteDanceUsage}.
+	 */
+	public void onUsage(Usage usage) {
+		if (this.metrics == null || usage == null) {
+			return;
+		}
+		if (usage.getPromptTokens() != null) {
+			this.metrics.recordTokens(this.meters, "input", usage.getPromptTokens());
+		}
+		if (usage.getGenerationTokens() != null) {
+			this.metrics.recordTokens(this.meters, "output", usage.getGenerationTokens());
+		}
+	}
+
+	/**
+	 * @param bytes the size of the audio sent with the request.
+	 */
+	public void onAudioSent(long bytes) {
+		if (this.metrics != null && bytes >= 0) {
+			this.metrics.recordAudioBytes(this.meters, "in", bytes);
+		}
+	}
+
+	/**
+	 * @param bytes the size of the audio received, all of it or the next chunk.
+	 */
+	public void onAudioReceived(long bytes) {
+		if (this.metrics != null && bytes >= 0) {
+			this.metrics.recordAudioBytes(this.meters, "out", bytes);
+		}
+	}
+
+	/**
+	 * @param rateLimit the rate limit reported by the response headers.
+	 */
+	public void onRateLimit(RateLimit rateLimit) {
+		if (this.metrics != null) {
+			this.metrics.updateRateLimit(this.meters, rateLimit);
+		}
+	}
+
+	/**
+	 * Stop a successful request. Only the first call of the stop methods counts.
+	 */
+	public void stop() {
+		stop("success", null);
+	}
+
+	/**
+	 * Stop a failed request.
+	 * @param error the error the request failed with.
+	 */
+	public void stop(Throwable error) {
+		stop("error", error);
+	}
+
+	/**
+	 * Stop a request whose caller lost interest, e.g. a cancelled stream.
+	 */
+	public void cancel() {
+		stop("cancelled", null);
+	}
+
+	private void stop(String outcome, Throwable error) {
+		if (this.metrics == null || !this.stopped.compareAndSet(false, true)) {
+			return;
+		}
+		this.metrics.recordRequest(this.meters, outcome, this.metrics.monotonicTime() - this.startTime);
+		if (error != null) {
+			this.observation.error(error);
+		}
+		this.observation.lowCardinalityKeyValue("outcome", outcome);
+		this.observation.stop();
+	}
+
+	/**
+	 * Make this observation the current one, so that the observations of a blocking HTTP
+	 * client nest under it.
+	 * @return the scope, to be closed on the same thread.
+	 */
+	public Observation.Scope openScope() {
+		return this.observation.openScope();
+	}
+
+	/**
+	 * Stop this observation when the given stream terminates. The observation is the
+	 * parent of the observations of the HTTP exchanges of the stream.
+	 * @param stream the stream of the request.
+	 * @return the stream.
+	 */
+	public <T> Flux<T> observe(Flux<T> stream) {
+		if (this.metrics == null) {
+			return stream;
+		}
+		Flux<T> observed = stream.doOnComplete(this::stop).doOnError(this::stop).doOnCancel(this::cancel);
+		return this.observation.isNoop() ? observed
+				: observed.contextWrite(Context.of(OBSERVATION_CONTEXT_KEY, this.observation));
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.observation;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caps the number of distinct values of a tag. The first values seen are kept, any
+ * further value is replaced by {@link #OTHER}, so that a caller passing e.g. a new model
+ * id per request cannot create an unbounded number of meters. Under contention a few
+ * more values than the cap may slip through.
+ *
+ * @author yang
+ */
+final class TagValueLimiter {
+
+	static final String NONE = "none";
+
+	static final String OTHER = "other";
+
+	private final int maxValues;
+
+	private final ConcurrentHashMap<String, Set<String>> values = new ConcurrentHashMap<>();
+
+	TagValueLimiter(int maxValues) {
+		this.maxValues = maxValues;
+	}
+
+	/**
+	 * @param key the tag key.
+	 * @param value the tag value, may be {@code null}.
+	 * @return the value, {@link #NONE} for a missing value, or {@link #OTHER} once the
+	 * cap of the key is reached.
+	 */
+	String limit(String key, String value) {
+		if (value == null || value.isBlank()) {
+			return NONE;
+		}
+		Set<String> seen = this.values.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet());
+		if (seen.contains(value)) {
+			return value;
+		}
+		if (seen.size() >= this.maxValues) {
+			return OTHER;
+		}
+		seen.add(value);
+		return value;
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import com.yang.ai.metadata.ByteDanceRateLimit;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Client-side limiter driven by the {@code x-ratelimit-*} response headers, see
+ * {@link ByteDanceRateLimit}. It keeps a request bucket and a token bucket; every
+ * response refreshes both from the headers, and every outgoing request takes from them.
+ * When a bucket is empty the request is held back until the announced reset instead of
+ * being sent and answered with a 429.
+ * <p>
+ * Until the first headers arrive the limiter lets requests through. Once a reset has
+ * passed without new headers, the next window is assumed to be as long as the announced
+ * one and to start with the announced limit, so callers that were held back are let
+ * through one window at a time rather than all at once. Both buckets are updated with
+ * compare-and-set, so the limiter never blocks on a lock; only callers that have to wait
+ * are parked, and they reserve again when they wake up.
+ *
+ * @author yang
+ */
+public class ByteDanceRateLimiter {
+
+	/**
+	 * Upper bound for a single wait, protecting against bogus reset headers.
+	 */
+	public static final Duration DEFAULT_MAX_WAIT = Duration.ofSeconds(30);
+
+	private final Bucket requests = new Bucket();
+
+	private final Bucket tokens = new Bucket();
+
+	private final long maxWaitNanos;
+
+	private final LongSupplier nanoClock;
+
+	public ByteDanceRateLimiter() {
+		this(DEFAULT_MAX_WAIT);
+	}
+
+	public ByteDanceRateLimiter(Duration maxWait) {
+		this(maxWait, System::nanoTime);
+	}
+
+	ByteDanceRateLimiter(Duration maxWait, LongSupplier nanoClock) {
+		Assert.notNull(maxWait, "maxWait must not be null");
+		Assert.notNull(nanoClock, "nanoClock must not be null");
+		this.maxWaitNanos = maxWait.toNanos();
+		this.nanoClock = nanoClock;
+	}
+
+	/**
+	 * Refresh the buckets from the rate limit headers of a response.
+	 * @param rateLimit the extracted headers, may be {@code null}.
+	 */
+	public void update(RateLimit rateLimit) {
+		if (rateLimit == null) {
+			return;
+		}
+		long now = this.nanoClock.getAsLong();
+		this.requests.update(rateLimit.getRequestsRemaining(), rateLimit.getRequestsLimit(),
+				rateLimit.getRequestsReset(), now);
+		this.tokens.update(rateLimit.getTokensRemaining(), rateLimit.getTokensLimit(), rateLimit.getTokensReset(),
+				now);
+	}
+
+	/**
+	 * Take one request and the given number of tokens from the buckets. Either both are
+	 * taken or none: when the tokens are short, the request taken first is given back.
+	 * @param estimatedTokens tokens the request is expected to consume.
+	 * @return how long the caller has to wait before reserving again,
+	 * {@link Duration#ZERO} when the request was reserved and can be sent right away.
+	 */
+	public Duration reserve(long estimatedTokens) {
+		long now = this.nanoClock.getAsLong();
+		long wait = this.requests.take(1, now);
+		if (wait == 0) {
+			wait = this.tokens.take(estimatedTokens, now);
+			if (wait != 0) {
+				this.requests.giveBack(1, now);
+			}
+		}
+		return Duration.ofNanos(Math.min(wait, this.maxWaitNanos));
+	}
+
+	/**
+	 * Block the calling thread until the request is reserved. After waiting for
+	 * {@code maxWait} in total the request is sent anyway.
+	 * @param estimatedTokens tokens the request is expected to consume.
+	 */
+	public void acquire(long estimatedTokens) {
+		long deadline = this.nanoClock.getAsLong() + this.maxWaitNanos;
+		for (long wait = reserve(estimatedTokens).toNanos(); wait > 0; wait = reserve(estimatedTokens).toNanos()) {
+			long left = deadline - this.nanoClock.getAsLong();
+			if (left <= 0) {
+				return;
+			}
+			try {
+				TimeUnit.NANOSECONDS.sleep(Math.min(wait, left));
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted while waiting for the rate limit to reset", ex);
+			}
+		}
+	}
+
+	/**
+	 * Non-blocking variant of {@link #acquire(long)}.
+	 * @param estimatedTokens tokens the request is expected to consume.
+	 * @return a {@link Mono} completing once the request is reserved.
+	 */
+	public Mono<Void> acquireAsync(long estimatedTokens) {
+		return Mono.defer(() -> acquireAsync(estimatedTokens, this.nanoClock.getAsLong() + this.maxWaitNanos));
+	}
+
+	private Mono<Void> acquireAsync(long estimatedTokens, long deadline) {
+		long wait = reserve(estimatedTokens).toNanos();
+		long left = deadline - this.nanoClock.getAsLong();
+		if (wait == 0 || left <= 0) {
+			return Mono.empty();
+		}
+		return Mono.delay(Duration.ofNanos(Math.min(wait, left)))
+			.then(Mono.defer(() -> acquireAsync(estimatedTokens, deadline)));
+	}
+
+	/**
+	 * @return the requests left in the current window, {@code null} when unknown.
+	 */
+	public Long getRequestsRemaining() {
+		return this.requests.remaining(this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * @return the tokens left in the current window, {@code null} when unknown.
+	 */
+	public Long getTokensRemaining() {
+		return this.tokens.remaining(this.nanoClock.getAsLong());
+	}
+
+	/**
+	 * @param limit the announced limit, 0 when unknown.
+	 * @param period the announced time to the reset, 0 when unknown.
+	 */
+	private record Window(long remaining, long resetAt, long limit, long period) {
+
+		Window withRemaining(long remaining) {
+			return new Window(remaining, this.resetAt, this.limit, this.period);
+		}
+
+	}
+
+	private static final class Bucket {
+
+		private final AtomicReference<Window> window = new AtomicReference<>();
+
+		void update(Long remaining, Long limit, Duration reset, long now) {
+			if (remaining == null) {
+				return;
+			}
+			long period = reset != null ? reset.toNanos() : 0;
+			this.window.set(new Window(remaining, now + period, limit != null ? limit : 0, period));
+		}
+
+		/**
+		 * A full window lets a request through even if it asks for more than the limit,
+		 * it could not be sent otherwise.
+		 * @return 0 when the amount was taken, otherwise the nanos until the reset.
+		 */
+		long take(long amount, long now) {
+			for (;;) {
+				Window current = this.window.get();
+				if (current == null) {
+					return 0;
+				}
+				if (now - current.resetAt() >= 0) {
+					if (current.limit() <= 0 || current.period() <= 0) {
+						return 0;
+					}
+					Window next = new Window(current.limit(), now + current.period(), current.limit(), current.period());
+					this.window.compareAndSet(current, next);
+					continue;
+				}
+				boolean full = current.limit() > 0 && current.remaining() >= current.limit();
+				if (current.remaining() <= 0 || (current.remaining() < amount && !full)) {
+					return current.resetAt() - now;
+				}
+				if (this.window.compareAndSet(current, current.withRemaining(Math.max(current.remaining() - amount, 0)))) {
+					return 0;
+				}
+			}
+		}
+
+		/**
+		 * Give back an amount taken from the current window, unless the window has been
+		 * reset since.
+		 */
+		void giveBack(long amount, long now) {
+			for (;;) {
+				Window current = this.window.get();
+				if (current == null || now - current.resetAt() >= 0) {
+					return;
+				}
+				long remaining = current.remaining() + amount;
+				if (current.limit() > 0) {
+					remaining = Math.min(remaining, current.limit());
+				}
+				if (this.window.compareAndSet(current, current.withRemaining(remaining))) {
+					return;
+				}
+			}
+		}
+
+		Long remaining(long now) {
+			Window current = this.window.get();
+			if (current == null || now - current.resetAt() >= 0) {
+				return null;
+			}
+			return current.remaining();
+		}
+
+	}
+
+}
@@ -0,0 +1,396 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker for one endpoint. The outcomes of the last calls are kept in a
+ * count-based window; once it holds enough calls and either the share of failed calls or
+ * the share of slow calls reaches its threshold, the breaker opens and calls are rejected
+ * with a {@link CallNotPermittedException} without reaching the endpoint. After the open
+ * duration a few probe calls are let through (half-open); the breaker closes when they
+ * succeed and opens again otherwise.
+ * <p>
+ * {@link NonTransientAiException}s, i.e. rejected requests, are not counted as failures
+ * since they say nothing about the health of the endpoint.
+ *
+ * @author yang
+ * @see CircuitBreakerRegistry
+ */
+public class CircuitBreaker {
+
+	public enum State {
+
+		CLOSED, OPEN, HALF_OPEN
+
+	}
+
+	private final String name;
+
+	private final Config config;
+
+	private final LongSupplier nanoClock;
+
+	private final byte[] window;
+
+	private State state = State.CLOSED;
+
+	private int windowCount;
+
+	private int windowNext;
+
+	private int failures;
+
+	private int slowCalls;
+
+	private long openedAt;
+
+	private int halfOpenPermits;
+
+	private int halfOpenSuccesses;
+
+	public CircuitBreaker(String name, Config config) {
+		this(name, config, System::nanoTime);
+	}
+
+	CircuitBreaker(String name, Config config, LongSupplier nanoClock) {
+		Assert.hasText(name, "name must not be empty");
+		Assert.notNull(config, "config must not be null");
+		this.name = name;
+		this.config = config;
+		this.nanoClock = nanoClock;
+		this.window = new byte[config.windowSize];
+	}
+
+	/**
+	 * Run the call if the breaker permits it and record its outcome.
+	 * @param call the call to protect.
+	 * @param <T> the result type.
+	 * @return the result of the call.
+	 * @throws CallNotPermittedException if the breaker is open.
+	 */
+	public <T> T execute(Supplier<T> call) {
+		acquirePermission();
+		long start = this.nanoClock.getAsLong();
+		T result;
+		try {
+			result = call.get();
+		}
+		catch (RuntimeException | Error ex) {
+			onError(this.nanoClock.getAsLong() - start, ex);
+			throw ex;
+		}
+		onSuccess(this.nanoClock.getAsLong() - start);
+		return result;
+	}
+
+	/**
+	 * Protect a stream. The permission is checked on subscription; the latency is the
+	 * time to the first element, the outcome is recorded on completion or error.
+	 * @param source the stream to protect.
+	 * @param <T> the element type.
+	 * @return the protected stream.
+	 */
+	public <T> Flux<T> apply(Flux<T> source) {
+		return Flux.defer(() -> {
+			acquirePermission();
+			long start = this.nanoClock.getAsLong();
+			long[] latency = { -1 };
+			AtomicBoolean recorded = new AtomicBoolean();
+			return source.doOnNext(element -> {
+				if (latency[0] < 0) {
+					latency[0] = this.nanoClock.getAsLong() - start;
+				}
+			}).doFinally(signal -> {
+				if (!recorded.compareAndSet(false, true)) {
+					return;
+				}
+				long duration = latency[0] >= 0 ? latency[0] : this.nanoClock.getAsLong() - start;
+				if (signal == SignalType.ON_COMPLETE) {
+					onSuccess(duration);
+				}
+				else if (signal == SignalType.CANCEL) {
+					releasePermission();
+				}
+			}).doOnError(error -> {
+				if (recorded.compareAndSet(false, true)) {
+					onError(latency[0] >= 0 ? latency[0] : this.nanoClock.getAsLong() - start, error);
+				}
+			});
+		});
+	}
+
+	/**
+	 * @throws CallNotPermittedException if no call may be made right now.
+	 */
+	public synchronized void acquirePermission() {
+		if (this.state == State.OPEN) {
+			if (this.nanoClock.getAsLong() - this.openedAt < this.config.openDuration.toNanos()) {
+				throw new CallNotPermittedException(this.name);
+			}
+			transitionTo(State.HALF_OPEN);
+		}
+		if (this.state == State.HALF_OPEN) {
+			if (this.halfOpenPermits >= this.config.permittedCallsInHalfOpenState) {
+				throw new CallNotPermittedException(this.name);
+			}
+			this.halfOpenPermits++;
+		}
+	}
+
+	/**
+	 * Give back a permission without recording an outcome, e.g. for a cancelled call.
+	 */
+	public synchronized void releasePermission() {
+		if (this.state == State.HALF_OPEN && this.halfOpenPermits > 0) {
+			this.halfOpenPermits--;
+		}
+	}
+
+	public synchronized void onSuccess(long durationNanos) {
+		record(false, durationNanos);
+	}
+
+	public synchronized void onError(long durationNanos, Throwable error) {
+		if (error instanceof CallNotPermittedException || !this.config.recordFailure.test(error)) {
+			releasePermission();
+			return;
+		}
+		record(true, durationNanos);
+	}
+
+	private void record(boolean failure, long durationNanos) {
+		boolean slow = durationNanos >= this.config.slowCallDuration.toNanos();
+		if (this.state == State.HALF_OPEN) {
+			if (failure || slow) {
+				transitionTo(State.OPEN);
+			}
+			else if (++this.halfOpenSuccesses >= this.config.permittedCallsInHalfOpenState) {
+				transitionTo(State.CLOSED);
+			}
+			return;
+		}
+		if (this.state == State.OPEN) {
+			return;
+		}
+		byte outcome = (byte) ((failure ? 1 : 0) | (slow ? 2 : 0));
+		if (this.windowCount == this.window.length) {
+			byte evicted = this.window[this.windowNext];
+			this.failures -= evicted & 1;
+			this.slowCalls -= (evicted >> 1) & 1;
+		}
+		else {
+			this.windowCount++;
+		}
+		this.window[this.windowNext] = outcome;
+		this.windowNext = (this.windowNext + 1) % this.window.length;
+		this.failures += outcome & 1;
+		this.slowCalls += (outcome >> 1) & 1;
+
+		if (this.windowCount >= this.config.minimumNumberOfCalls
+				&& ((double) this.failures / this.windowCount >= this.config.failureRateThreshold
+						|| (double) this.slowCalls / this.windowCount >= this.config.slowCallRateThreshold)) {
+			transitionTo(State.OPEN);
+		}
+	}
+
+	private void transitionTo(State newState) {
+		this.state = newState;
+		this.halfOpenPermits = 0;
+		this.halfOpenSuccesses = 0;
+		if (newState == State.OPEN) {
+			this.openedAt = this.nanoClock.getAsLong();
+		}
+		if (newState != State.HALF_OPEN) {
+			this.windowCount = 0;
+			this.windowNext = 0;
+			this.failures = 0;
+			this.slowCalls = 0;
+		}
+	}
+
+	public String getName() {
+		return this.name;
+	}
+
+	public synchronized State getState() {
+		if (this.state == State.OPEN
+				&& this.nanoClock.getAsLong() - this.openedAt >= this.config.openDuration.toNanos()) {
+			return State.HALF_OPEN;
+		}
+		return this.state;
+	}
+
+	/**
+	 * @return the share of failed calls in the current window, {@code 0} when empty.
+	 */
+	public synchronized double getFailureRate() {
+		return this.windowCount == 0 ? 0.0 : (double) this.failures / this.windowCount;
+	}
+
+	/**
+	 * Thrown instead of making a call while the breaker is open. Not transient, so that
+	 * retry templates give up right away.
+	 */
+	public static class CallNotPermittedException extends NonTransientAiException {
+
+		private final String circuitBreakerName;
+
+		public CallNotPermittedException(String circuitBreakerName) {
+			super("Circuit breaker '" + circuitBreakerName + "' is open and does not permit further calls");
+			this.circuitBreakerName = circuitBreakerName;
+		}
+
+		public String getCircuitBreakerName() {
+			return this.circuitBreakerName;
+		}
+
+	}
+
+	/**
+	 * Settings of a {@link CircuitBreaker}.
+	 */
+	public static final class Config {
+
+		private final float failureRateThreshold;
+
+		private final float slowCallRateThreshold;
+
+		private final Duration slowCallDuration;
+
+		private final int windowSize;
+
+		private final int minimumNumberOfCalls;
+
+		private final Duration openDuration;
+
+		private final int permittedCallsInHalfOpenState;
+
+		private final Predicate<Throwable> recordFailure;
+
+		private Config(Builder builder) {
+			this.failureRateThreshold = builder.failureRateThreshold;
+			this.slowCallRateThreshold = builder.slowCallRateThreshold;
+			this.slowCallDuration = builder.slowCallDuration;
+			this.windowSize = builder.windowSize;
+			this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+			this.openDuration = builder.openDuration;
+			this.permittedCallsInHalfOpenState = builder.permittedCallsInHalfOpenState;
+			this.recordFailure = builder.recordFailure;
+		}
+
+		public static Config defaults() {
+			return builder().build();
+		}
+
+		public static Builder builder() {
+			return new Builder();
+		}
+
+		/**
+		 * Builder for the {@link Config}.
+		 */
+		public static class Builder {
+
+			private float failureRateThreshold = 0.5f;
+
+			private float slowCallRateThreshold = 0.8f;
+
+			/**
+			 * For streams this is the time to the first element.
+			 */
+			private Duration slowCallDuration = Duration.ofSeconds(60);
+
+			private int windowSize = 100;
+
+			private int minimumNumberOfCalls = 20;
+
+			private Duration openDuration = Duration.ofSeconds(30);
+
+			private int permittedCallsInHalfOpenState = 3;
+
+			private Predicate<Throwable> recordFailure = error -> !(error instanceof NonTransientAiException);
+
+			public Builder withFailureRateThreshold(float failureRateThreshold) {
+				this.failureRateThreshold = failureRateThreshold;
+				return this;
+			}
+
+			public Builder withSlowCallRateThreshold(float slowCallRateThreshold) {
+				this.slowCallRateThreshold = slowCallRateThreshold;
+				return this;
+			}
+
+			public Builder withSlowCallDuration(Duration slowCallDuration) {
+				this.slowCallDuration = slowCallDuration;
+				return this;
+			}
+
+			public Builder withWindowSize(int windowSize) {
+				this.windowSize = windowSize;
+				return this;
+			}
+
+			public Builder withMinimumNumberOfCalls(int minimumNumberOfCalls) {
+				this.minimumNumberOfCalls = minimumNumberOfCalls;
+				return this;
+			}
+
+			public Builder withOpenDuration(Duration openDuration) {
+				this.openDuration = openDuration;
+				return this;
+			}
+
+			public Builder withPermittedCallsInHalfOpenState(int permittedCallsInHalfOpenState) {
+				this.permittedCallsInHalfOpenState = permittedCallsInHalfOpenState;
+				return this;
+			}
+
+			public Builder withRecordFailure(Predicate<Throwable> recordFailure) {
+				this.recordFailure = recordFailure;
+				return this;
+			}
+
+			public Config build() {
+				Assert.isTrue(this.failureRateThreshold > 0 && this.failureRateThreshold <= 1,
+						"failureRateThreshold must be in (0, 1]");
+				Assert.isTrue(this.slowCallRateThreshold > 0 && this.slowCallRateThreshold <= 1,
+						"slowCallRateThreshold must be in (0, 1]");
+				Assert.notNull(this.slowCallDuration, "slowCallDuration must not be null");
+				Assert.isTrue(this.windowSize > 0, "windowSize must be positive");
+				Assert.isTrue(this.minimumNumberOfCalls > 0 && this.minimumNumberOfCalls <= this.windowSize,
+						"minimumNumberOfCalls must be in [1, windowSize]");
+				Assert.notNull(this.openDuration, "openDuration must not be null");
+				Assert.isTrue(this.permittedCallsInHalfOpenState > 0, "permittedCallsInHalfOpenState must be positive");
+				Assert.notNull(this.recordFailure, "recordFailure must not be null");
+				return new Config(this);
+			}
+
+		}
+
+	}
+
+}
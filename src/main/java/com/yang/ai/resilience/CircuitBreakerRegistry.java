@@ -0,0 +1,58 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Creates and holds one {@link CircuitBreaker} per name. The models name their breakers
+ * after the endpoint and the model, e.g. {@code chat/<endpoint id>} or
+ * {@code audio/speech}, so that one degraded model does not cut off the others.
+ *
+ * @author yang
+ */
+public class CircuitBreakerRegistry {
+
+	private final CircuitBreaker.Config config;
+
+	private final ConcurrentHashMap<String, CircuitBreaker> circuitBreakers = new ConcurrentHashMap<>();
+
+	public CircuitBreakerRegistry() {
+		this(CircuitBreaker.Config.defaults());
+	}
+
+	public CircuitBreakerRegistry(CircuitBreaker.Config config) {
+		Assert.notNull(config, "config must not be null");
+		this.config = config;
+	}
+
+	/**
+	 * @param name the breaker name.
+	 * @return the breaker with that name, created on first use.
+	 */
+	public CircuitBreaker circuitBreaker(String name) {
+		return this.circuitBreakers.computeIfAbsent(name, key -> new CircuitBreaker(key, this.config));
+	}
+
+	public Collection<CircuitBreaker> getAllCircuitBreakers() {
+		return Collections.unmodifiableCollection(this.circuitBreakers.values());
+	}
+
+}
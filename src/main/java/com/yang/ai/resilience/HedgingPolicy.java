@@ -0,0 +1,387 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import org.springframework.util.Assert;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Hedged requests against tail latency. When the response, or for a stream the first
+ * element, has not arrived after the hedging delay, the same request is sent a second
+ * time and whichever answers first is used; the other one is cancelled.
+ * <p>
+ * The delay is the configured percentile of the recently observed latencies, clamped
+ * between the minimum and maximum delay, so that only the slowest requests are hedged.
+ * A budget caps the share of requests that may be hedged, so that a general slowdown of
+ * the service does not double the load on it. A failure of the hedge is ignored and the
+ * first request decides. A failure of the first request is propagated right away when no
+ * hedge was sent; otherwise it waits for the hedge and is only propagated if the hedge
+ * fails as well.
+ *
+ * @author yang
+ */
+public class HedgingPolicy {
+
+	/**
+	 * Budget credits are counted in thousandths of a request.
+	 */
+	private static final long CREDIT_UNIT = 1000;
+
+	private final double percentile;
+
+	private final Duration minDelay;
+
+	private final Duration maxDelay;
+
+	private final long creditPerRequest;
+
+	private final long maxCredits;
+
+	private final LatencyWindow latencies;
+
+	private final AtomicLong credits;
+
+	private final LongAdder requests = new LongAdder();
+
+	private final LongAdder hedged = new LongAdder();
+
+	private final LongAdder hedgeWins = new LongAdder();
+
+	private final LongAdder budgetExhausted = new LongAdder();
+
+	private HedgingPolicy(Builder builder) {
+		this.percentile = builder.percentile;
+		this.minDelay = builder.minDelay;
+		this.maxDelay = builder.maxDelay;
+		this.creditPerRequest = Math.round(builder.budget * CREDIT_UNIT);
+		this.maxCredits = builder.maxBurst * CREDIT_UNIT;
+		this.latencies = new LatencyWindow(builder.windowSize);
+		this.credits = new AtomicLong(this.maxCredits);
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Hedge a single response.
+	 * @param source sends the request on every subscription.
+	 * @param <T> the response type.
+	 * @return the first response of either request.
+	 */
+	public <T> Mono<T> apply(Mono<T> source) {
+		return Mono.defer(() -> {
+			onRequest();
+			long start = System.nanoTime();
+			Race race = new Race();
+			Mono<T> primary = source.doOnNext(value -> this.latencies.record(System.nanoTime() - start))
+				.onErrorResume(error -> race.primaryFailed(error) ? Mono.error(error) : Mono.never());
+			Mono<T> hedge = Mono.delay(delay()).flatMap(tick -> {
+				if (!race.startHedge(this::tryHedge)) {
+					return Mono.<T>never();
+				}
+				// The first request was cancelled, its latency is at least the time elapsed so far.
+				return source.doOnNext(value -> {
+					this.hedgeWins.increment();
+					this.latencies.record(System.nanoTime() - start);
+				}).onErrorResume(error -> {
+					Throwable primaryError = race.hedgeFailed();
+					return primaryError != null ? Mono.error(primaryError) : Mono.never();
+				});
+			});
+			return Mono.firstWithSignal(primary, hedge);
+		});
+	}
+
+	/**
+	 * Hedge a stream on its first element.
+	 * @param source sends the request on every subscription.
+	 * @param <T> the element type.
+	 * @return the stream whose first element arrives first.
+	 */
+	public <T> Flux<T> apply(Flux<T> source) {
+		return Flux.defer(() -> {
+			onRequest();
+			long start = System.nanoTime();
+			Race race = new Race();
+			AtomicBoolean primaryEmitted = new AtomicBoolean();
+			Flux<T> primary = source.doOnNext(value -> {
+				if (!primaryEmitted.getAndSet(true)) {
+					this.latencies.record(System.nanoTime() - start);
+				}
+			})
+				.onErrorResume(
+						error -> primaryEmitted.get() || race.primaryFailed(error) ? Flux.error(error) : Flux.never());
+			Flux<T> hedge = Mono.delay(delay()).flatMapMany(tick -> {
+				if (!race.startHedge(this::tryHedge)) {
+					return Flux.<T>never();
+				}
+				AtomicBoolean hedgeEmitted = new AtomicBoolean();
+				return source.doOnNext(value -> {
+					if (!hedgeEmitted.getAndSet(true)) {
+						this.hedgeWins.increment();
+						this.latencies.record(System.nanoTime() - start);
+					}
+				}).onErrorResume(error -> {
+					if (hedgeEmitted.get()) {
+						return Flux.error(error);
+					}
+					Throwable primaryError = race.hedgeFailed();
+					return primaryError != null ? Flux.error(primaryError) : Flux.never();
+				});
+			});
+			return Flux.firstWithSignal(primary, hedge);
+		});
+	}
+
+	/**
+	 * @return the current hedging delay.
+	 */
+	public Duration delay() {
+		long observed = this.latencies.percentile(this.percentile);
+		if (observed < 0) {
+			return this.maxDelay;
+		}
+		long nanos = Math.max(this.minDelay.toNanos(), Math.min(this.maxDelay.toNanos(), observed));
+		return Duration.ofNanos(nanos);
+	}
+
+	public HedgingStats getStats() {
+		return new HedgingStats(this.requests.sum(), this.hedged.sum(), this.hedgeWins.sum(),
+				this.budgetExhausted.sum(), delay());
+	}
+
+	private void onRequest() {
+		this.requests.increment();
+		this.credits.accumulateAndGet(this.creditPerRequest, (current, add) -> Math.min(this.maxCredits, current + add));
+	}
+
+	private boolean tryHedge() {
+		for (;;) {
+			long current = this.credits.get();
+			if (current < CREDIT_UNIT) {
+				this.budgetExhausted.increment();
+				return false;
+			}
+			if (this.credits.compareAndSet(current, current - CREDIT_UNIT)) {
+				this.hedged.increment();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * The state of one hedged request, before either side has emitted. An error of the
+	 * first request is held back while a hedge is in flight, and the hedge reports it
+	 * when it fails as well.
+	 */
+	private static final class Race {
+
+		private boolean primaryFailed;
+
+		private boolean hedgeStarted;
+
+		private boolean hedgeFailed;
+
+		private Throwable primaryError;
+
+		/**
+		 * @return whether the error is to be propagated now, otherwise it is held back
+		 * for the hedge.
+		 */
+		synchronized boolean primaryFailed(Throwable error) {
+			if (this.hedgeStarted && !this.hedgeFailed) {
+				this.primaryError = error;
+				return false;
+			}
+			this.primaryFailed = true;
+			return true;
+		}
+
+		/**
+		 * @return whether the hedge is to be sent.
+		 */
+		synchronized boolean startHedge(BooleanSupplier budget) {
+			if (this.primaryFailed || !budget.getAsBoolean()) {
+				return false;
+			}
+			this.hedgeStarted = true;
+			return true;
+		}
+
+		/**
+		 * @return the held back error of the first request, {@code null} while it is
+		 * still running.
+		 */
+		synchronized Throwable hedgeFailed() {
+			this.hedgeFailed = true;
+			return this.primaryError;
+		}
+
+	}
+
+	/**
+	 * Counters of a {@link HedgingPolicy}.
+	 *
+	 * @param requests requests that went through the policy.
+	 * @param hedged requests for which a hedge was sent.
+	 * @param hedgeWins hedges that answered before the first request.
+	 * @param budgetExhausted hedges skipped because the budget was used up.
+	 * @param currentDelay the hedging delay at the time of the snapshot.
+	 */
+	public record HedgingStats(long requests, long hedged, long hedgeWins, long budgetExhausted,
+			Duration currentDelay) {
+
+		/**
+		 * @return the share of the sent hedges that won.
+		 */
+		public double hedgeWinRate() {
+			return this.hedged == 0 ? 0.0 : (double) this.hedgeWins / this.hedged;
+		}
+
+	}
+
+	/**
+	 * Ring buffer of the most recent latencies. The percentile is recomputed at most once
+	 * every {@link #RECOMPUTE_INTERVAL} samples.
+	 */
+	private static final class LatencyWindow {
+
+		private static final int RECOMPUTE_INTERVAL = 32;
+
+		private static final int MIN_SAMPLES = 20;
+
+		private final long[] samples;
+
+		private int count;
+
+		private int next;
+
+		private int sinceRecompute = RECOMPUTE_INTERVAL;
+
+		private double cachedPercentile = Double.NaN;
+
+		private long cachedValue = -1;
+
+		LatencyWindow(int size) {
+			this.samples = new long[size];
+		}
+
+		synchronized void record(long nanos) {
+			this.samples[this.next] = nanos;
+			this.next = (this.next + 1) % this.samples.length;
+			this.count = Math.min(this.count + 1, this.samples.length);
+			this.sinceRecompute++;
+		}
+
+		/**
+		 * @return the latency in nanos, {@code -1} until enough samples were recorded.
+		 */
+		synchronized long percentile(double percentile) {
+			if (this.count < MIN_SAMPLES) {
+				return -1;
+			}
+			if (this.sinceRecompute >= RECOMPUTE_INTERVAL || percentile != this.cachedPercentile) {
+				long[] sorted = Arrays.copyOf(this.samples, this.count);
+				Arrays.sort(sorted);
+				int index = (int) Math.ceil(percentile * sorted.length) - 1;
+				this.cachedValue = sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+				this.cachedPercentile = percentile;
+				this.sinceRecompute = 0;
+			}
+			return this.cachedValue;
+		}
+
+	}
+
+	/**
+	 * Builder for the {@link HedgingPolicy}.
+	 */
+	public static class Builder {
+
+		private double percentile = 0.95;
+
+		private Duration minDelay = Duration.ofMillis(50);
+
+		/**
+		 * Also used as the delay until enough latencies were observed.
+		 */
+		private Duration maxDelay = Duration.ofSeconds(2);
+
+		/**
+		 * Share of the requests that may be hedged.
+		 */
+		private double budget = 0.05;
+
+		/**
+		 * Hedges that may be sent in a row once enough budget was saved up.
+		 */
+		private int maxBurst = 10;
+
+		private int windowSize = 1000;
+
+		public Builder withPercentile(double percentile) {
+			this.percentile = percentile;
+			return this;
+		}
+
+		public Builder withMinDelay(Duration minDelay) {
+			this.minDelay = minDelay;
+			return this;
+		}
+
+		public Builder withMaxDelay(Duration maxDelay) {
+			this.maxDelay = maxDelay;
+			return this;
+		}
+
+		public Builder withBudget(double budget) {
+			this.budget = budget;
+			return this;
+		}
+
+		public Builder withMaxBurst(int maxBurst) {
+			this.maxBurst = maxBurst;
+			return this;
+		}
+
+		public Builder withWindowSize(int windowSize) {
+			this.windowSize = windowSize;
+			return this;
+		}
+
+		public HedgingPolicy build() {
+			Assert.isTrue(this.percentile > 0 && this.percentile < 1, "percentile must be between 0 and 1");
+			Assert.notNull(this.minDelay, "minDelay must not be null");
+			Assert.notNull(this.maxDelay, "maxDelay must not be null");
+			Assert.isTrue(this.minDelay.compareTo(this.maxDelay) <= 0, "minDelay must not exceed maxDelay");
+			Assert.isTrue(this.budget >= 0 && this.budget <= 1, "budget must be between 0 and 1");
+			Assert.isTrue(this.maxBurst > 0, "maxBurst must be positive");
+			Assert.isTrue(this.windowSize > 0, "windowSize must be positive");
+			return new HedgingPolicy(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.util.Assert;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
+
+/**
+ * Reactive retry for streamed responses. Unlike a {@code RetryTemplate} around the
+ * creation of the {@link Flux}, the retry covers failures signalled after subscription,
+ * such as a 5xx status or a connection reset. The backoff delays run on a Reactor timer,
+ * no thread is blocked while waiting.
+ * <p>
+ * A failure before the first element is retried transparently. A failure after elements
+ * were emitted is handled according to the {@link MidStreamFailure} policy, since the
+ * subscriber already received part of the answer.
+ *
+ * @author yang
+ */
+public final class StreamRetryPolicy {
+
+	/**
+	 * What to do when a stream fails after emitting elements.
+	 */
+	public enum MidStreamFailure {
+
+		/**
+		 * Propagate the error to the subscriber.
+		 */
+		ERROR,
+
+		/**
+		 * Complete normally, the subscriber keeps the partial answer.
+		 */
+		COMPLETE,
+
+		/**
+		 * Send the request again; the subscriber receives the new answer from its start
+		 * after the partial one, and has to discard what it received before.
+		 */
+		RESTART
+
+	}
+
+	private static final StreamRetryPolicy NONE = builder().withMaxRetries(0).build();
+
+	private final long maxRetries;
+
+	private final Duration minBackoff;
+
+	private final Duration maxBackoff;
+
+	private final double jitter;
+
+	private final MidStreamFailure midStreamFailure;
+
+	private final Predicate<Throwable> retryable;
+
+	private StreamRetryPolicy(Builder builder) {
+		this.maxRetries = builder.maxRetries;
+		this.minBackoff = builder.minBackoff;
+		this.maxBackoff = builder.maxBackoff;
+		this.jitter = builder.jitter;
+		this.midStreamFailure = builder.midStreamFailure;
+		this.retryable = builder.retryable;
+	}
+
+	/**
+	 * @return a policy retrying up to 3 times, with a backoff from 500ms up to 10s, and
+	 * propagating failures after the first element.
+	 */
+	public static StreamRetryPolicy defaults() {
+		return builder().build();
+	}
+
+	/**
+	 * @return a policy that never retries.
+	 */
+	public static StreamRetryPolicy none() {
+		return NONE;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Whether the failure is worth retrying: {@link TransientAiException}s, I/O errors,
+	 * and {@code 429} or {@code 5xx} responses.
+	 * @param error the failure.
+	 * @return {@code true} if the failure is transient.
+	 */
+	public static boolean isTransient(Throwable error) {
+		if (error instanceof WebClientResponseException responseException) {
+			return responseException.getStatusCode().is5xxServerError()
+					|| responseException.getStatusCode().value() == 429;
+		}
+		return error instanceof TransientAiException || error instanceof WebClientRequestException
+				|| error instanceof IOException;
+	}
+
+	/**
+	 * Apply this policy to the given stream. Every retry subscribes to {@code source}
+	 * again, which must therefore issue a new request per subscription.
+	 * @param source the stream to protect.
+	 * @param <T> the element type.
+	 * @return the stream with retries.
+	 */
+	public <T> Flux<T> apply(Flux<T> source) {
+		if (this.maxRetries == 0 && this.midStreamFailure != MidStreamFailure.COMPLETE) {
+			return source;
+		}
+		return Flux.defer(() -> {
+			AtomicBoolean emitted = new AtomicBoolean();
+			Flux<T> retried = source.doOnNext(element -> emitted.set(true))
+				.retryWhen(Retry.backoff(this.maxRetries, this.minBackoff)
+					.maxBackoff(this.maxBackoff)
+					.jitter(this.jitter)
+					.filter(error -> this.retryable.test(error)
+							&& (!emitted.get() || this.midStreamFailure == MidStreamFailure.RESTART))
+					.doBeforeRetry(signal -> emitted.set(false))
+					.onRetryExhaustedThrow((spec, signal) -> signal.failure()));
+			if (this.midStreamFailure == MidStreamFailure.COMPLETE) {
+				retried = retried.onErrorResume(error -> emitted.get() ? Flux.empty() : Flux.error(error));
+			}
+			return retried;
+		});
+	}
+
+	public long getMaxRetries() {
+		return this.maxRetries;
+	}
+
+	public Duration getMinBackoff() {
+		return this.minBackoff;
+	}
+
+	public Duration getMaxBackoff() {
+		return this.maxBackoff;
+	}
+
+	public MidStreamFailure getMidStreamFailure() {
+		return this.midStreamFailure;
+	}
+
+	/**
+	 * Builder for the {@link StreamRetryPolicy}.
+	 */
+	public static class Builder {
+
+		private long maxRetries = 3;
+
+		private Duration minBackoff = Duration.ofMillis(500);
+
+		private Duration maxBackoff = Duration.ofSeconds(10);
+
+		private double jitter = 0.5;
+
+		private MidStreamFailure midStreamFailure = MidStreamFailure.ERROR;
+
+		private Predicate<Throwable> retryable = StreamRetryPolicy::isTransient;
+
+		public Builder withMaxRetries(long maxRetries) {
+			this.maxRetries = maxRetries;
+			return this;
+		}
+
+		public Builder withMinBackoff(Duration minBackoff) {
+			this.minBackoff = minBackoff;
+			return this;
+		}
+
+		public Builder withMaxBackoff(Duration maxBackoff) {
+			this.maxBackoff = maxBackoff;
+			return this;
+		}
+
+		public Builder withJitter(double jitter) {
+			this.jitter = jitter;
+			return this;
+		}
+
+		public Builder withMidStreamFailure(MidStreamFailure midStreamFailure) {
+			this.midStreamFailure = midStreamFailure;
+			return this;
+		}
+
+		public Builder withRetryable(Predicate<Throwable> retryable) {
+			this.retryable = retryable;
+			return this;
+		}
+
+		public StreamRetryPolicy build() {
+			Assert.isTrue(this.maxRetries >= 0, "maxRetries must not be negative");
+			Assert.notNull(this.minBackoff, "minBackoff must not be null");
+			Assert.notNull(this.maxBackoff, "maxBackoff must not be null");
+			Assert.isTrue(this.jitter >= 0 && this.jitter <= 1, "jitter must be between 0 and 1");
+			Assert.notNull(this.midStreamFailure, "midStreamFailure must not be null");
+			Assert.notNull(this.retryable, "retryable must not be null");
+			return new StreamRetryPolicy(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionChunk;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionFinishReason;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.api.ByteDanceChatApi.Usage;
+import com.yang.ai.metadata.ByteDanceRateLimit;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.metadata.RateLimit;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ChatCompletionChunkMapperTests {
+
+	private final RateLimit rateLimit = new ByteDanceRateLimit(100L, 42L, null, 1000L, 7L, null);
+
+	@Test
+	public void carriesTheRoleAndSharesTheMetadata() {
+		ChatCompletionChunkMapper mapper = new ChatCompletionChunkMapper();
+
+		ChatResponse first = mapper.map(chunk("chat-1", ChatCompletionMessage.Role.ASSISTANT, "The", null),
+				this.rateLimit);
+		ChatResponse second = mapper.map(chunk("chat-1", null, " end", null), this.rateLimit);
+		ChatResponse last = mapper.map(chunk("chat-1", null, "", ChatCompletionFinishReason.STOP), this.rateLimit);
+
+		assertThat(first.getResult().getOutput().getContent()).isEqualTo("The");
+		assertThat(second.getResult().getOutput().getMetadata()).containsEntry("id", "chat-1")
+			.containsEntry("role", "ASSISTANT")
+			.containsEntry("finishReason", "")
+			.containsEntry("index", 0);
+		assertThat(second.getResult().getOutput().getMetadata()).isSameAs(first.getResult().getOutput().getMetadata());
+		assertThat(second.getMetadata()).isSameAs(first.getMetadata());
+		assertThat(second.getMetadata().getRateLimit()).isSameAs(this.rateLimit);
+		Generation finish = last.getResult();
+		assertThat(finish.getMetadata().getFinishReason()).isEqualTo("STOP");
+		assertThat(finish.getOutput().getMetadata()).containsEntry("finishReason", "STOP")
+			.containsEntry("role", "ASSISTANT");
+	}
+
+	@Test
+	public void reportsTheUsageOfTheLastChunk() {
+		ChatCompletionChunkMapper mapper = new ChatCompletionChunkMapper();
+		ChatResponse token = mapper.map(chunk("chat-1", ChatCompletionMessage.Role.ASSISTANT, "Hi", null), null);
+
+		ChatResponse usage = mapper.map(new ChatCompletionChunk("chat-1", List.of(), 0L, "ep-test", new Usage(3, 5, 8),
+				"chat.completion.chunk"), null);
+
+		assertThat(usage.getResults()).isEmpty();
+		assertThat(usage.getMetadata()).isNotSameAs(token.getMetadata());
+		assertThat(usage.getMetadata().getUsage().getPromptTokens()).isEqualTo(5);
+		assertThat(usage.getMetadata().getUsage().getGenerationTokens()).isEqualTo(3);
+	}
+
+	@Test
+	public void startsOverOnANewId() {
+		ChatCompletionChunkMapper mapper = new ChatCompletionChunkMapper();
+		mapper.map(chunk("chat-1", ChatCompletionMessage.Role.ASSISTANT, "Hi", null), null);
+
+		ChatResponse retried = mapper.map(chunk("chat-2", null, "Hi", null), null);
+
+		assertThat(retried.getResult().getOutput().getMetadata()).containsEntry("id", "chat-2")
+			.doesNotContainKey("role");
+		assertThat(retried.getMetadata().getId()).isEqualTo("chat-2");
+	}
+
+	private static ChatCompletionChunk chunk(String id, ChatCompletionMessage.Role role, String content,
+			ChatCompletionFinishReason finishReason) {
+		return new ChatCompletionChunk(id,
+				List.of(new ChatCompletionChunk.ChunkChoice(finishReason, 0, new ChatCompletionMessage(content, role),
+						null)),
+				0L, "ep-test", null, "chat.completion.chunk");
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage.Role;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionRequest;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionStreamOption;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.model.ModelOptionsUtils;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ChatCompletionRequestMergerTests {
+
+	private final List<ChatCompletionMessage> messages = List.of(new ChatCompletionMessage("Hello", Role.USER));
+
+	private final ByteDanceChatOptions defaultOptions = ByteDanceChatOptions.builder()
+		.withModel("ep-default")
+		.withTemperature(0.7f)
+		.withMaxTokens(1024)
+		.withStop(List.of("END"))
+		.withStreamOptions(new ChatCompletionStreamOption(true))
+		.build();
+
+	private final ByteDanceChatOptions runtimeOptions = ByteDanceChatOptions.builder()
+		.withModel("ep-runtime")
+		.withTemperature(0.2f)
+		.withTopP(0.9f)
+		.withLogitBias(Map.of("1024", -100))
+		.build();
+
+	@Test
+	public void runtimeOptionsTakePrecedenceOverDefaults() {
+		ChatCompletionRequest request = ChatCompletionRequestMerger.merge(this.messages, true, this.runtimeOptions,
+				this.defaultOptions);
+
+		assertThat(request.model()).isEqualTo("ep-runtime");
+		assertThat(request.temperature()).isEqualTo(0.2f);
+		assertThat(request.topP()).isEqualTo(0.9f);
+		assertThat(request.maxTokens()).isEqualTo(1024);
+		assertThat(request.stop()).containsExactly("END");
+		assertThat(request.streamOptions().includeUsage()).isTrue();
+		assertThat(request.stream()).isTrue();
+		assertThat(request.messages()).isSameAs(this.messages);
+	}
+
+	@Test
+	public void matchesModelOptionsUtilsMerge() {
+		ChatCompletionRequest merged = ModelOptionsUtils.merge(this.runtimeOptions,
+				new ChatCompletionRequest(this.messages, false), ChatCompletionRequest.class);
+		merged = ModelOptionsUtils.merge(merged, this.defaultOptions, ChatCompletionRequest.class);
+
+		assertThat(ChatCompletionRequestMerger.merge(this.messages, false, this.runtimeOptions, this.defaultOptions))
+			.isEqualTo(merged);
+		assertThat(ChatCompletionRequestMerger.merge(this.messages, false, null, this.defaultOptions))
+			.isEqualTo(ModelOptionsUtils.merge(new ChatCompletionRequest(this.messages, false), this.defaultOptions,
+					ChatCompletionRequest.class));
+	}
+
+	@Test
+	public void streamRequestsAskForUsageByDefault() {
+		assertThat(ChatCompletionRequestMerger.merge(this.messages, true, null, null).streamOptions().includeUsage())
+			.isTrue();
+		assertThat(ChatCompletionRequestMerger.merge(this.messages, true, this.runtimeOptions, null).streamOptions())
+			.isEqualTo(ChatCompletionRequestMerger.DEFAULT_STREAM_OPTIONS);
+		assertThat(ChatCompletionRequestMerger
+			.merge(this.messages, true, ByteDanceChatOptions.builder()
+				.withStreamOptions(new ChatCompletionStreamOption(false))
+				.build(), this.defaultOptions)
+			.streamOptions()
+			.includeUsage()).isFalse();
+		assertThat(ChatCompletionRequestMerger.merge(this.messages, false, this.runtimeOptions, null).streamOptions())
+			.isNull();
+	}
+
+	@Test
+	public void withoutOptions() {
+		assertThat(ChatCompletionRequestMerger.merge(this.messages, false, null, null))
+			.isEqualTo(new ChatCompletionRequest(this.messages, false));
+	}
+
+}
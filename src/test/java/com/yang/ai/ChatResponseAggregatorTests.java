@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletion;
+import com.yang.ai.api.ByteDanceChatApi.Usage;
+import com.yang.ai.metadata.ByteDanceChatResponseMetadata;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.metadata.ChatGenerationMetadata;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import reactor.core.publisher.Flux;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ChatResponseAggregatorTests {
+
+	@Test
+	public void aggregatesChoicesByIndex() {
+		ChatResponseAggregator aggregator = new ChatResponseAggregator();
+
+		aggregator.add(new ChatResponse(List.of(delta(0, "The quick", null), delta(1, "A lazy", null))));
+		aggregator.add(new ChatResponse(List.of(delta(1, " dog", "STOP"))));
+		aggregator.add(new ChatResponse(List.of(delta(0, " brown fox", null))));
+		aggregator.add(new ChatResponse(List.of(delta(0, "", "LENGTH"))));
+
+		ChatResponse response = aggregator.aggregate();
+
+		assertThat(response.getResults()).hasSize(2);
+		Generation first = response.getResults().get(0);
+		assertThat(first.getOutput().getContent()).isEqualTo("The quick brown fox");
+		assertThat(first.getMetadata().getFinishReason()).isEqualTo("LENGTH");
+		assertThat(first.getOutput().getMetadata()).containsEntry("role", "ASSISTANT").containsEntry("id", "chat-1");
+		Generation second = response.getResults().get(1);
+		assertThat(second.getOutput().getContent()).isEqualTo("A lazy dog");
+		assertThat(second.getMetadata().getFinishReason()).isEqualTo("STOP");
+	}
+
+	@Test
+	public void keepsTheUsageOfTheLastChunk() {
+		ChatResponse usage = new ChatResponse(List.of(), ByteDanceChatResponseMetadata
+			.from(new ChatCompletion("chat-1", List.of(), 0L, "ep-test", "chat.completion.chunk", new Usage(3, 5, 8))));
+
+		ChatResponse response = ChatResponseAggregator
+			.aggregate(Flux.just(new ChatResponse(List.of(delta(0, "Hello", "STOP"))), usage))
+			.block();
+
+		assertThat(response.getResult().getOutput().getContent()).isEqualTo("Hello");
+		assertThat(response.getMetadata().getUsage().getPromptTokens()).isEqualTo(5);
+		assertThat(response.getMetadata().getUsage().getGenerationTokens()).isEqualTo(3);
+	}
+
+	private static Generation delta(int index, String content, String finishReason) {
+		Generation generation = new Generation(content, Map.of("id", "chat-1", "role", "ASSISTANT", "finishReason",
+				finishReason != null ? finishReason : "", "index", index));
+		return finishReason != null
+				? generation.withGenerationMetadata(ChatGenerationMetadata.from(finishReason, null)) : generation;
+	}
+
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import com.sun.net.httpserver.HttpServer;
+import com.yang.ai.api.ByteDanceAudioApi.TranscriptResponseFormat;
+import com.yang.ai.api.ByteDanceAudioApi.TranscriptionRequest;
+import com.yang.ai.api.ByteDanceAudioApi.TranslationRequest;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.web.client.RestClient;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The file part of the transcription and translation requests, as received by a local
+ * server.
+ *
+ * @author yang
+ */
+public class ByteDanceAudioApiMultipartTests {
+
+	private static final int AUDIO_SIZE = 1024 * 1024;
+
+	@TempDir
+	Path directory;
+
+	private HttpServer server;
+
+	private volatile String contentType;
+
+	private volatile byte[] body;
+
+	private ByteDanceAudioApi audioApi;
+
+	private byte[] audio;
+
+	@BeforeEach
+	public void startServer() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.createContext("/", exchange -> {
+			this.contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			try (InputStream in = exchange.getRequestBody()) {
+				this.body = in.readAllBytes();
+			}
+			byte[] response = "ok".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/plain");
+			exchange.sendResponseHeaders(200, response.length);
+			exchange.getResponseBody().write(response);
+			exchange.close();
+		});
+		this.server.start();
+		InetSocketAddress address = this.server.getAddress();
+		this.audioApi = new ByteDanceAudioApi("http://" + address.getHostString() + ":" + address.getPort(),
+				"test-token", RestClient.builder(), RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
+		this.audio = new byte[AUDIO_SIZE];
+		new Random(42).nextBytes(this.audio);
+	}
+
+	@AfterEach
+	public void stopServer() {
+		this.server.stop(0);
+	}
+
+	@Test
+	public void transcriptionStreamsFileFromPath() throws IOException {
+		Path file = Files.write(this.directory.resolve("speech.mp3"), this.audio);
+		TranscriptionRequest request = TranscriptionRequest.builder()
+			.withFile(file)
+			.withResponseFormat(TranscriptResponseFormat.TEXT)
+			.build();
+
+		assertThat(request.file()).isInstanceOf(FileSystemResource.class);
+		assertThat(request.file().getFile().toPath()).isEqualTo(file);
+		assertThat(this.audioApi.createTranscription(request, String.class).getBody()).isEqualTo("ok");
+
+		assertFilePart("speech.mp3", "audio/mpeg");
+	}
+
+	@Test
+	public void transcriptionStreamsFileFromInputStream() {
+		GuardedInputStream stream = new GuardedInputStream(this.audio);
+		TranscriptionRequest request = TranscriptionRequest.builder()
+			.withFile(stream, "speech.mp3")
+			.withResponseFormat(TranscriptResponseFormat.TEXT)
+			.build();
+
+		assertThat(this.audioApi.createTranscription(request, String.class).getBody()).isEqualTo("ok");
+
+		assertFilePart("speech.mp3", "audio/mpeg");
+		assertStreamed(stream);
+	}
+
+	@Test
+	public void translationStreamsFileFromPath() throws IOException {
+		Path file = Files.write(this.directory.resolve("interview.mp3"), this.audio);
+		TranslationRequest request = TranslationRequest.builder()
+			.withFile(file)
+			.withResponseFormat(TranscriptResponseFormat.TEXT)
+			.build();
+
+		assertThat(request.file()).isInstanceOf(FileSystemResource.class);
+		assertThat(this.audioApi.createTranslation(request, String.class).getBody()).isEqualTo("ok");
+
+		assertFilePart("interview.mp3", "audio/mpeg");
+	}
+
+	@Test
+	public void translationStreamsFileFromInputStream() {
+		GuardedInputStream stream = new GuardedInputStream(this.audio);
+		TranslationRequest request = TranslationRequest.builder()
+			.withFile(stream, "interview.mp3")
+			.withResponseFormat(TranscriptResponseFormat.TEXT)
+			.build();
+
+		assertThat(this.audioApi.createTranslation(request, String.class).getBody()).isEqualTo("ok");
+
+		assertFilePart("interview.mp3", "audio/mpeg");
+		assertStreamed(stream);
+	}
+
+	private void assertFilePart(String filename, String contentType) {
+		assertThat(this.contentType).startsWith("multipart/form-data");
+		String boundary = this.contentType.substring(this.contentType.indexOf("boundary=") + "boundary=".length())
+			.split(";")[0]
+			.replace("\"", "");
+		// ISO-8859-1 maps every byte to one char, so the indexes are byte offsets.
+		String multipart = new String(this.body, StandardCharsets.ISO_8859_1);
+		int part = multipart.indexOf("name=\"file\"");
+		assertThat(part).isNotNegative();
+		int headersStart = multipart.lastIndexOf("--" + boundary, part);
+		int contentStart = multipart.indexOf("\r\n\r\n", part) + 4;
+		String headers = multipart.substring(headersStart, contentStart);
+		int contentEnd = multipart.indexOf("\r\n--" + boundary, contentStart);
+
+		assertThat(headers).contains("filename=\"" + filename + "\"").contains("Content-Type: " + contentType);
+		assertThat(Arrays.copyOfRange(this.body, contentStart, contentEnd)).isEqualTo(this.audio);
+	}
+
+	private static void assertStreamed(GuardedInputStream stream) {
+		assertThat(stream.closed).isTrue();
+		assertThat(stream.largestRead).isPositive().isLessThan(AUDIO_SIZE / 8);
+	}
+
+	/**
+	 * Fails on the bulk reads and records the largest chunk asked for. The inherited
+	 * {@link InputStream#transferTo} copies through {@link #read(byte[], int, int)}.
+	 */
+	private static final class GuardedInputStream extends InputStream {
+
+		private final ByteArrayInputStream delegate;
+
+		private volatile int largestRead;
+
+		private volatile boolean closed;
+
+		GuardedInputStream(byte[] bytes) {
+			this.delegate = new ByteArrayInputStream(bytes);
+		}
+
+		@Override
+		public int read() {
+			return this.delegate.read();
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int length) {
+			this.largestRead = Math.max(this.largestRead, length);
+			return this.delegate.read(bytes, offset, length);
+		}
+
+		@Override
+		public byte[] readAllBytes() {
+			throw new AssertionError("The audio must be streamed, not read at once");
+		}
+
+		@Override
+		public byte[] readNBytes(int length) {
+			throw new AssertionError("The audio must be streamed, not read at once");
+		}
+
+		@Override
+		public void close() {
+			this.closed = true;
+		}
+
+	}
+
+}
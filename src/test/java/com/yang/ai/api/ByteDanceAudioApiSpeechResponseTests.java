@@ -0,0 +1,84 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import com.yang.ai.api.common.AudioOutputBuffer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ByteDanceAudioApiSpeechResponseTests {
+
+	@Test
+	public void decodesDataIntoOutputWhileParsing() throws IOException {
+		byte[] audio = new byte[100_000];
+		new Random(42).nextBytes(audio);
+		String json = "{\"reqid\":\"r1\",\"code\":3000,\"operation\":\"query\",\"message\":\"Success\",\"sequence\":-1,"
+				+ "\"data\":\"" + Base64.getEncoder().encodeToString(audio) + "\","
+				+ "\"addition\":{\"duration\":\"1960\",\"first_pkg\":\"93\"}}";
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		AudioOutputBuffer output = new AudioOutputBuffer(AudioOutputBuffer.estimateDecodedSize(body.length));
+
+		ByteDanceAudioApi.SpeechApiResponse response = ByteDanceAudioApi
+			.readSpeechResponse(new ByteArrayInputStream(body), output);
+
+		assertThat(output.toByteArray()).isEqualTo(audio);
+		assertThat(response.data()).isNull();
+		assertThat(response.reqId()).isEqualTo("r1");
+		assertThat(response.code()).isEqualTo(3000);
+		assertThat(response.sequence()).isEqualTo(-1);
+		assertThat(response.addition().duration()).isEqualTo("1960");
+	}
+
+	@Test
+	public void collectsAudioLargerThanAChunk() throws IOException {
+		byte[] audio = new byte[3 * AudioOutputBuffer.MAX_CHUNK_SIZE + 17];
+		new Random(42).nextBytes(audio);
+		byte[] body = ("{\"code\":3000,\"data\":\"" + Base64.getEncoder().encodeToString(audio) + "\"}")
+			.getBytes(StandardCharsets.UTF_8);
+		AudioOutputBuffer output = new AudioOutputBuffer(AudioOutputBuffer.estimateDecodedSize(-1));
+
+		ByteDanceAudioApi.readSpeechResponse(new ByteArrayInputStream(body), output);
+
+		assertThat(output.size()).isEqualTo(audio.length);
+		byte[] collected = output.toByteArray();
+		assertThat(collected).isEqualTo(audio);
+		assertThat(output.toByteArray()).isSameAs(collected);
+	}
+
+	@Test
+	public void errorResponseWithoutData() throws IOException {
+		byte[] body = "{\"reqid\":\"r1\",\"code\":3001,\"message\":\"invalid request\",\"data\":null}"
+			.getBytes(StandardCharsets.UTF_8);
+		AudioOutputBuffer output = new AudioOutputBuffer(AudioOutputBuffer.estimateDecodedSize(body.length));
+
+		ByteDanceAudioApi.SpeechApiResponse response = ByteDanceAudioApi
+			.readSpeechResponse(new ByteArrayInputStream(body), output);
+
+		assertThat(output.size()).isZero();
+		assertThat(response.message()).isEqualTo("invalid request");
+	}
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import com.yang.ai.api.ByteDanceAudioApi.SpeechRequest;
+import com.yang.ai.api.common.ByteDanceApiException;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestClient;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * {@link ByteDanceAudioApi#stream} and {@link ByteDanceAudioApi#streamAudio} against a
+ * local WebSocket endpoint speaking the binary TTS protocol.
+ *
+ * @author yang
+ */
+public class ByteDanceAudioApiStreamTests {
+
+	private DisposableServer server;
+
+	private ByteDanceAudioApi audioApi;
+
+	private volatile Flux<byte[]> responseFrames = Flux.empty();
+
+	private volatile String authorization;
+
+	private volatile byte[] requestFrame;
+
+	private final CountDownLatch closed = new CountDownLatch(1);
+
+	@BeforeEach
+	public void startServer() {
+		this.server = HttpServer.create()
+			.host("127.0.0.1")
+			.port(0)
+			.route(routes -> routes.ws("/api/v1/tts/ws_binary", (in, out) -> {
+				this.authorization = in.headers().get("Authorization");
+				in.withConnection(connection -> connection.onDispose(this.closed::countDown));
+				return out.sendObject(in.aggregateFrames()
+					.receive()
+					.asByteArray()
+					.next()
+					.flatMapMany(request -> {
+						this.requestFrame = request;
+						return this.responseFrames;
+					})
+					.map(frame -> new BinaryWebSocketFrame(Unpooled.wrappedBuffer(frame))));
+			}))
+			.bindNow();
+		this.audioApi = new ByteDanceAudioApi("http://127.0.0.1:" + this.server.port(), "test-token",
+				RestClient.builder(), RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
+	}
+
+	@AfterEach
+	public void stopServer() {
+		this.server.disposeNow();
+	}
+
+	@Test
+	public void streamsAudioUntilTheLastFrame() throws IOException {
+		this.responseFrames = Flux.just(ack(), audioFrame(1, 1, 2), audioFrame(2, 3), audioFrame(-3, 4, 5),
+				audioFrame(4, 9));
+
+		List<byte[]> audio = this.audioApi.stream(request("你好"))
+			.map(ResponseEntity::getBody)
+			.collectList()
+			.block(Duration.ofSeconds(10));
+
+		assertThat(audio).containsExactly(new byte[] { 1, 2 }, new byte[] { 3 }, new byte[] { 4, 5 });
+		assertThat(this.authorization).isEqualTo("Bearer;test-token");
+		assertThat(Byte.toUnsignedInt(this.requestFrame[1]) >>> 4).isEqualTo(0b0001);
+		String json = new String(gunzip(this.requestFrame), StandardCharsets.UTF_8);
+		assertThat(json).contains("\"text\":\"你好\"").contains("\"operation\":\"submit\"");
+	}
+
+	@Test
+	public void errorFrameFailsTheStream() {
+		this.responseFrames = Flux.just(audioFrame(1, 1), errorFrame(3050, "quota exceeded"));
+		List<byte[]> audio = new CopyOnWriteArrayList<>();
+
+		assertThatThrownBy(() -> this.audioApi.stream(request("你好"))
+			.map(ResponseEntity::getBody)
+			.doOnNext(audio::add)
+			.blockLast(Duration.ofSeconds(10))).isInstanceOf(ByteDanceApiException.class)
+			.hasMessageContaining("3050")
+			.hasMessageContaining("quota exceeded");
+		assertThat(audio).containsExactly(new byte[] { 1 });
+	}
+
+	@Test
+	public void cancellingTheAudioClosesTheWebSocket() throws InterruptedException {
+		this.responseFrames = Flux.concat(Flux.just(audioFrame(1, 7, 8)), Flux.never());
+
+		DataBuffer first = this.audioApi.streamAudio(request("你好")).next().block(Duration.ofSeconds(10));
+
+		byte[] audio = new byte[first.readableByteCount()];
+		first.read(audio);
+		DataBufferUtils.release(first);
+		assertThat(audio).containsExactly(7, 8);
+		assertThat(this.closed.await(5, TimeUnit.SECONDS)).isTrue();
+	}
+
+	private static SpeechRequest request(String text) {
+		return SpeechRequest.builder()
+			.withApp(new SpeechRequest.App("app"))
+			.withUser(new SpeechRequest.User("uid"))
+			.withAudio(new SpeechRequest.Audio("BV001_streaming"))
+			.withRequest(new SpeechRequest.Request("r1", text, "submit"))
+			.build();
+	}
+
+	private static byte[] ack() {
+		return new byte[] { 0x11, (byte) 0xB0, 0x00, 0x00 };
+	}
+
+	private static byte[] audioFrame(int sequence, int... audio) {
+		ByteBuffer frame = ByteBuffer.allocate(12 + audio.length)
+			.put(new byte[] { 0x11, (byte) (sequence < 0 ? 0xB3 : 0xB1), 0x00, 0x00 })
+			.putInt(sequence)
+			.putInt(audio.length);
+		for (int b : audio) {
+			frame.put((byte) b);
+		}
+		return frame.array();
+	}
+
+	private static byte[] errorFrame(int code, String message) {
+		byte[] payload = message.getBytes(StandardCharsets.UTF_8);
+		return ByteBuffer.allocate(12 + payload.length)
+			.put(new byte[] { 0x11, (byte) 0xF0, 0x10, 0x00 })
+			.putInt(code)
+			.putInt(payload.length)
+			.put(payload)
+			.array();
+	}
+
+	private static byte[] gunzip(byte[] frame) throws IOException {
+		int size = ByteBuffer.wrap(frame, 4, 4).getInt();
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(frame, 8, size))) {
+			return gzip.readAllBytes();
+		}
+	}
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ChatCompletionCodecTests {
+
+	@Test
+	public void readsCompletion() throws IOException {
+		String json = "{\"id\":\"0217\",\"object\":\"chat.completion\",\"created\":1718067849,\"model\":\"ep-test\","
+				+ "\"choices\":[{\"index\":0,\"finish_reason\":\"stop\",\"logprobs\":null,"
+				+ "\"message\":{\"role\":\"assistant\",\"content\":\"你好\"}}],"
+				+ "\"usage\":{\"prompt_tokens\":5,\"completion_tokens\":3,\"total_tokens\":8},\"unknown\":{}}";
+
+		ByteDanceChatApi.ChatCompletion completion = ChatCompletionCodec
+			.readCompletion(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+		assertThat(completion.id()).isEqualTo("0217");
+		assertThat(completion.choices()).singleElement().satisfies(choice -> {
+			assertThat(choice.finishReason()).isEqualTo(ByteDanceChatApi.ChatCompletionFinishReason.STOP);
+			assertThat(choice.message().content()).isEqualTo("你好");
+		});
+		assertThat(completion.usage().totalTokens()).isEqualTo(8);
+	}
+
+	@Test
+	public void readsEmptyBodyAsNull() throws IOException {
+		assertThat(ChatCompletionCodec.readCompletion(new ByteArrayInputStream(new byte[0]))).isNull();
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionChunk;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionFinishReason;
+import com.yang.ai.api.ByteDanceChatApi.Usage;
+import com.yang.ai.api.ChatCompletionCodec;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import reactor.core.publisher.Flux;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ServerSentEventDecoderTests {
+
+	private final ServerSentEventDecoder<ChatCompletionChunk> decoder = new ServerSentEventDecoder<>(
+			ChatCompletionCodec.chunkReader());
+
+	@Test
+	public void decodesEventsSplitAcrossBuffers() {
+		List<ChatCompletionChunk> chunks = decode("data: {\"id\":\"1\",\"choices\":[{\"index\":0,",
+				"\"delta\":{\"role\":\"assistant\",\"content\":\"Hel\"}}]}\r\n\r\ndata:{\"id\":\"1\",\"choices\":[{\"index\":0,",
+				"\"delta\":{\"content\":\"lo\"},\"finish_reason\":\"stop\"}]}\n\n");
+
+		assertThat(chunks).hasSize(2);
+		assertThat(chunks.get(0).choices().get(0).delta().content()).isEqualTo("Hel");
+		assertThat(chunks.get(1).choices().get(0).delta().content()).isEqualTo("lo");
+		assertThat(chunks.get(1).choices().get(0).finishReason()).isEqualTo(ChatCompletionFinishReason.STOP);
+	}
+
+	@Test
+	public void decodesUsageAndSkipsUnknownFields() {
+		List<ChatCompletionChunk> chunks = decode("data: {\"id\":\"1\",\"choices\":[],\"usage\":{\"prompt_tokens\":9,"
+				+ "\"completion_tokens\":12,\"total_tokens\":21,\"prompt_tokens_details\":{\"cached_tokens\":0}},"
+				+ "\"service_tier\":\"default\"}\n\n");
+
+		assertThat(chunks).hasSize(1);
+		assertThat(chunks.get(0).choices()).isEmpty();
+		assertThat(chunks.get(0).usage()).isEqualTo(new Usage(12, 9, 21));
+	}
+
+	@Test
+	public void stopsAtDoneAndSkipsNonDataLines() {
+		List<ChatCompletionChunk> chunks = decode(": keep-alive\nevent: message\n",
+				"data: {\"id\":\"1\",\"choices\":[]}\n\ndata: [DONE]\n\ndata: {\"id\":\"2\",\"choices\":[]}\n\n");
+
+		assertThat(chunks).extracting(ChatCompletionChunk::id).containsExactly("1");
+	}
+
+	@Test
+	public void decodesPlainJsonLinesAndTrailingEvent() {
+		List<ChatCompletionChunk> chunks = decode("{\"id\":\"1\",\"choices\":[]}\n", "{\"id\":\"2\",\"choices\":[]}");
+
+		assertThat(chunks).extracting(ChatCompletionChunk::id).containsExactly("1", "2");
+	}
+
+	private List<ChatCompletionChunk> decode(String... parts) {
+		Flux<DataBuffer> body = Flux.fromIterable(Arrays.asList(parts))
+			.map(part -> DefaultDataBufferFactory.sharedInstance.wrap(part.getBytes(StandardCharsets.UTF_8)));
+		return this.decoder.decode(body).collectList().block();
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author yang
+ */
+public class TtsBinaryProtocolTests {
+
+	@Test
+	public void encodesFullClientRequest() throws IOException {
+		byte[] json = "{\"request\":{\"operation\":\"submit\"}}".getBytes(StandardCharsets.UTF_8);
+
+		byte[] frame = TtsBinaryProtocol.encodeFullClientRequest(json);
+
+		assertThat(Arrays.copyOf(frame, 4)).containsExactly(0x11, 0x10, 0x11, 0x00);
+		int size = ByteBuffer.wrap(frame, 4, 4).getInt();
+		assertThat(size).isEqualTo(frame.length - 8);
+		try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(frame, 8, size))) {
+			assertThat(gzip.readAllBytes()).isEqualTo(json);
+		}
+	}
+
+	@Test
+	public void decodesAudioFrames() {
+		byte[] ack = { 0x11, (byte) 0xB0, 0x00, 0x00 };
+		assertThat(TtsBinaryProtocol.decode(ack).audio()).isEmpty();
+
+		TtsBinaryProtocol.ServerFrame first = TtsBinaryProtocol.decode(audioFrame(1, new byte[] { 1, 2, 3 }));
+		assertThat(first.audio()).containsExactly(1, 2, 3);
+		assertThat(first.isLast()).isFalse();
+
+		TtsBinaryProtocol.ServerFrame last = TtsBinaryProtocol.decode(audioFrame(-2, new byte[] { 4 }));
+		assertThat(last.audio()).containsExactly(4);
+		assertThat(last.isLast()).isTrue();
+	}
+
+	@Test
+	public void slicesAudioWithoutCopying() {
+		DataBuffer frame = DefaultDataBufferFactory.sharedInstance.wrap(audioFrame(-3, new byte[] { 7, 8, 9 }));
+
+		assertThat(TtsBinaryProtocol.sliceAudio(frame)).isEqualTo(-3);
+		assertThat(frame.readableByteCount()).isEqualTo(3);
+		byte[] audio = new byte[3];
+		frame.read(audio);
+		assertThat(audio).containsExactly(7, 8, 9);
+
+		DataBuffer ack = DefaultDataBufferFactory.sharedInstance.wrap(new byte[] { 0x11, (byte) 0xB0, 0x00, 0x00 });
+		assertThat(TtsBinaryProtocol.sliceAudio(ack)).isZero();
+		assertThat(ack.readableByteCount()).isZero();
+	}
+
+	@Test
+	public void decodesLastFrameWithoutSequence() {
+		byte[] frame = ByteBuffer.allocate(10)
+			.put(new byte[] { 0x11, (byte) 0xB2, 0x00, 0x00 })
+			.putInt(2)
+			.put(new byte[] { 5, 6 })
+			.array();
+
+		TtsBinaryProtocol.ServerFrame decoded = TtsBinaryProtocol.decode(frame);
+		assertThat(decoded.audio()).containsExactly(5, 6);
+		assertThat(decoded.isLast()).isTrue();
+
+		DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(frame);
+		assertThat(TtsBinaryProtocol.sliceAudio(buffer)).isEqualTo(TtsBinaryProtocol.LAST_SEQUENCE);
+		byte[] audio = new byte[buffer.readableByteCount()];
+		buffer.read(audio);
+		assertThat(audio).containsExactly(5, 6);
+
+		DataBuffer empty = DefaultDataBufferFactory.sharedInstance.wrap(new byte[] { 0x11, (byte) 0xB2, 0x00, 0x00 });
+		assertThat(TtsBinaryProtocol.sliceAudio(empty)).isNegative();
+		assertThat(empty.readableByteCount()).isZero();
+	}
+
+	@Test
+	public void decodesNegativeSequence() {
+		byte[] frame = audioFrame(-4, new byte[] { 1 });
+		frame[1] = (byte) 0xB3;
+
+		assertThat(TtsBinaryProtocol.decode(frame).sequence()).isEqualTo(-4);
+		DataBuffer buffer = DefaultDataBufferFactory.sharedInstance.wrap(frame);
+		assertThat(TtsBinaryProtocol.sliceAudio(buffer)).isEqualTo(-4);
+		assertThat(buffer.readableByteCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void errorFrameThrows() throws IOException {
+		ByteArrayOutputStream message = new ByteArrayOutputStream();
+		try (GZIPOutputStream gzip = new GZIPOutputStream(message)) {
+			gzip.write("quota exceeded".getBytes(StandardCharsets.UTF_8));
+		}
+		byte[] payload = message.toByteArray();
+		byte[] frame = ByteBuffer.allocate(12 + payload.length)
+			.put(new byte[] { 0x11, (byte) 0xF0, 0x11, 0x00 })
+			.putInt(3050)
+			.putInt(payload.length)
+			.put(payload)
+			.array();
+
+		assertThatThrownBy(() -> TtsBinaryProtocol.decode(frame)).isInstanceOf(ByteDanceApiException.class)
+			.hasMessageContaining("3050")
+			.hasMessageContaining("quota exceeded");
+	}
+
+	private static byte[] audioFrame(int sequence, byte[] audio) {
+		return ByteBuffer.allocate(12 + audio.length)
+			.put(new byte[] { 0x11, (byte) 0xB1, 0x00, 0x00 })
+			.putInt(sequence)
+			.putInt(audio.length)
+			.put(audio)
+			.array();
+	}
+
+}
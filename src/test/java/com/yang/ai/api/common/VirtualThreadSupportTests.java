@@ -0,0 +1,72 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.api.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class VirtualThreadSupportTests {
+
+	@Test
+	public void fallbackQueuesTasksBeyondTheLimitWithoutBlockingTheSubmitter() throws Exception {
+		ThreadPoolTaskExecutor executor = VirtualThreadSupport.createFallbackExecutor("fallback-test-");
+		int queued = 10;
+		CountDownLatch started = new CountDownLatch(VirtualThreadSupport.FALLBACK_CONCURRENCY_LIMIT);
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch completed = new CountDownLatch(VirtualThreadSupport.FALLBACK_CONCURRENCY_LIMIT + queued);
+		try {
+			// Submitted from another thread, so that a blocking execute fails the test instead of hanging it.
+			FutureTask<Void> submitter = new FutureTask<>(() -> {
+				for (int i = 0; i < VirtualThreadSupport.FALLBACK_CONCURRENCY_LIMIT + queued; i++) {
+					executor.execute(() -> {
+						started.countDown();
+						try {
+							release.await(10, TimeUnit.SECONDS);
+						}
+						catch (InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+						completed.countDown();
+					});
+				}
+				return null;
+			});
+			new Thread(submitter, "fallback-test-submitter").start();
+
+			submitter.get(5, TimeUnit.SECONDS);
+			assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+			assertThat(executor.getPoolSize()).isEqualTo(VirtualThreadSupport.FALLBACK_CONCURRENCY_LIMIT);
+			assertThat(executor.getQueueSize()).isEqualTo(queued);
+
+			release.countDown();
+			assertThat(completed.await(5, TimeUnit.SECONDS)).isTrue();
+		}
+		finally {
+			release.countDown();
+			executor.shutdown();
+		}
+	}
+
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.speech;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class AudioStitcherTests {
+
+	@Test
+	public void mergesWavDataChunks() {
+		byte[] stitched = AudioStitcher.stitch("wav", List.of(wav(new byte[] { 1, 2 }), wav(new byte[] { 3, 4, 5, 6 })));
+
+		ByteBuffer buffer = ByteBuffer.wrap(stitched).order(ByteOrder.LITTLE_ENDIAN);
+		assertThat(buffer.getInt(4)).isEqualTo(stitched.length - 8);
+		assertThat(new String(stitched, 36, 4, StandardCharsets.US_ASCII)).isEqualTo("data");
+		assertThat(buffer.getInt(40)).isEqualTo(6);
+		assertThat(Arrays.copyOfRange(stitched, 44, stitched.length)).containsExactly(1, 2, 3, 4, 5, 6);
+	}
+
+	@Test
+	public void dropsId3TagsAndXingFrameBetweenMp3Segments() {
+		byte[] frame = mp3Frame(false);
+		byte[] first = concat(id3v2(), mp3Frame(true), frame);
+		byte[] second = concat(id3v2(), mp3Frame(true), frame);
+
+		byte[] stitched = AudioStitcher.stitch("mp3", List.of(first, second));
+
+		assertThat(stitched).isEqualTo(concat(id3v2(), frame, frame));
+	}
+
+	@Test
+	public void concatenatesPcm() {
+		assertThat(AudioStitcher.stitch(null, List.of(new byte[] { 1 }, new byte[] { 2, 3 }))).containsExactly(1, 2, 3);
+	}
+
+	private static byte[] wav(byte[] samples) {
+		return ByteBuffer.allocate(44 + samples.length)
+			.order(ByteOrder.LITTLE_ENDIAN)
+			.put("RIFF".getBytes(StandardCharsets.US_ASCII))
+			.putInt(36 + samples.length)
+			.put("WAVEfmt ".getBytes(StandardCharsets.US_ASCII))
+			.putInt(16)
+			.putShort((short) 1)
+			.putShort((short) 1)
+			.putInt(24000)
+			.putInt(48000)
+			.putShort((short) 2)
+			.putShort((short) 16)
+			.put("data".getBytes(StandardCharsets.US_ASCII))
+			.putInt(samples.length)
+			.put(samples)
+			.array();
+	}
+
+	private static byte[] id3v2() {
+		return new byte[] { 'I', 'D', '3', 4, 0, 0, 0, 0, 0, 2, 0, 0 };
+	}
+
+	/**
+	 * MPEG-1 layer III, 32 kbit/s, 48 kHz, mono: 96 bytes per frame.
+	 */
+	private static byte[] mp3Frame(boolean xing) {
+		byte[] frame = new byte[96];
+		frame[0] = (byte) 0xFF;
+		frame[1] = (byte) 0xFB;
+		frame[2] = (byte) 0x14;
+		frame[3] = (byte) 0xC0;
+		if (xing) {
+			System.arraycopy("Xing".getBytes(StandardCharsets.US_ASCII), 0, frame, 4 + 17, 4);
+		}
+		else {
+			frame[50] = 7;
+		}
+		return frame;
+	}
+
+	private static byte[] concat(byte[]... parts) {
+		ByteBuffer buffer = ByteBuffer.allocate(Arrays.stream(parts).mapToInt(part -> part.length).sum());
+		for (byte[] part : parts) {
+			buffer.put(part);
+		}
+		return buffer.array();
+	}
+
+}
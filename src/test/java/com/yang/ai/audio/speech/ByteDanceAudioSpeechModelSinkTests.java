@@ -0,0 +1,222 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.speech;
+
+import com.yang.ai.ByteDanceAudioSpeechModel;
+import com.yang.ai.ByteDanceAudioSpeechOptions;
+import com.yang.ai.api.ByteDanceAudioApi;
+import com.yang.ai.api.ByteDanceAudioApi.SpeechApiResponse;
+import com.yang.ai.api.ByteDanceAudioApi.SpeechRequest;
+import com.yang.ai.api.common.ByteDanceApiException;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.stubbing.Answer;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.core.io.buffer.NettyDataBuffer;
+import org.springframework.core.io.buffer.NettyDataBufferFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.retry.support.RetryTemplate;
+import reactor.core.publisher.Flux;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * The channel and file sinks of {@link ByteDanceAudioSpeechModel}.
+ *
+ * @author yang
+ */
+@ExtendWith(MockitoExtension.class)
+public class ByteDanceAudioSpeechModelSinkTests {
+
+	private final NettyDataBufferFactory bufferFactory = new NettyDataBufferFactory(UnpooledByteBufAllocator.DEFAULT);
+
+	@TempDir
+	Path directory;
+
+	private @Mock ByteDanceAudioApi audioApi;
+
+	private ByteDanceAudioSpeechModel speechModel;
+
+	@BeforeEach
+	public void createModel() {
+		ByteDanceAudioSpeechOptions options = ByteDanceAudioSpeechOptions.builder()
+			.withApp(new SpeechRequest.App("app"))
+			.withUser(new SpeechRequest.User("uid"))
+			.withAudio(new SpeechRequest.Audio("BV001_streaming"))
+			.withRequest(new SpeechRequest.Request(null, null, "query"))
+			.build();
+		RetryTemplate retryTemplate = RetryTemplate.builder()
+			.maxAttempts(3)
+			.fixedBackoff(1)
+			.retryOn(ByteDanceApiException.class)
+			.build();
+		this.speechModel = new ByteDanceAudioSpeechModel(this.audioApi, options, retryTemplate);
+	}
+
+	@Test
+	public void retryRewindsAndTruncatesSeekableChannel() throws IOException {
+		Path file = Files.write(this.directory.resolve("speech.mp3"), new byte[] { 'I', 'D', '3' });
+		when(this.audioApi.createSpeech(any(SpeechRequest.class), any(OutputStream.class)))
+			.thenAnswer(writeAndFail(1, 2, 3, 4, 5))
+			.thenAnswer(write(9, 8));
+
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.position(3);
+			this.speechModel.call(new SpeechPrompt("你好"), channel);
+		}
+
+		assertThat(Files.readAllBytes(file)).containsExactly('I', 'D', '3', 9, 8);
+	}
+
+	@Test
+	public void retryFailsOnceAudioWasWrittenToNonSeekableChannel() {
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+		when(this.audioApi.createSpeech(any(SpeechRequest.class), any(OutputStream.class)))
+			.thenAnswer(writeAndFail(1, 2));
+
+		assertThatThrownBy(() -> this.speechModel.call(new SpeechPrompt("你好"), Channels.newChannel(written)))
+			.isInstanceOf(NonTransientAiException.class)
+			.hasCauseInstanceOf(ByteDanceApiException.class);
+		assertThat(written.toByteArray()).containsExactly(1, 2);
+		verify(this.audioApi, times(1)).createSpeech(any(SpeechRequest.class), any(OutputStream.class));
+	}
+
+	@Test
+	public void failedCallKeepsTheFileAndLeavesNoTemporaryFile() throws IOException {
+		Path file = Files.write(this.directory.resolve("speech.mp3"), new byte[] { 7 });
+		when(this.audioApi.createSpeech(any(SpeechRequest.class), any(OutputStream.class)))
+			.thenThrow(new ByteDanceApiException("Synthesis failed"));
+
+		assertThatThrownBy(() -> this.speechModel.call(new SpeechPrompt("你好"), file))
+			.isInstanceOf(ByteDanceApiException.class);
+
+		assertThat(Files.readAllBytes(file)).containsExactly(7);
+		assertThat(filesIn(this.directory)).containsExactly(file);
+	}
+
+	@Test
+	public void callReplacesTheFileAndLeavesNoTemporaryFile() throws IOException {
+		Path file = Files.write(this.directory.resolve("speech.mp3"), new byte[] { 7 });
+		when(this.audioApi.createSpeech(any(SpeechRequest.class), any(OutputStream.class)))
+			.thenAnswer(write(1, 2, 3));
+
+		this.speechModel.call(new SpeechPrompt("你好"), file);
+
+		assertThat(Files.readAllBytes(file)).containsExactly(1, 2, 3);
+		assertThat(filesIn(this.directory)).containsExactly(file);
+	}
+
+	@Test
+	public void streamToChannelReleasesEveryBuffer() {
+		NettyDataBuffer first = buffer(1, 2);
+		NettyDataBuffer second = buffer(3);
+		NettyDataBuffer third = buffer(4, 5, 6);
+		when(this.audioApi.streamAudio(any(SpeechRequest.class))).thenReturn(Flux.just(first, second, third));
+		ByteArrayOutputStream written = new ByteArrayOutputStream();
+
+		this.speechModel.stream(new SpeechPrompt("你好"), Channels.newChannel(written)).block(Duration.ofSeconds(5));
+
+		assertThat(written.toByteArray()).containsExactly(1, 2, 3, 4, 5, 6);
+		assertThat(List.of(first, second, third))
+			.allSatisfy(buffer -> assertThat(buffer.getNativeBuffer().refCnt()).isZero());
+	}
+
+	@Test
+	public void streamToFailingChannelReleasesTheBuffer() {
+		NettyDataBuffer first = buffer(1, 2);
+		when(this.audioApi.streamAudio(any(SpeechRequest.class))).thenReturn(Flux.just(first));
+		WritableByteChannel failing = new WritableByteChannel() {
+
+			@Override
+			public int write(ByteBuffer source) throws IOException {
+				throw new IOException("Disk full");
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public void close() {
+			}
+
+		};
+
+		assertThatThrownBy(() -> this.speechModel.stream(new SpeechPrompt("你好"), failing)
+			.block(Duration.ofSeconds(5))).hasRootCauseInstanceOf(IOException.class);
+		assertThat(first.getNativeBuffer().refCnt()).isZero();
+	}
+
+	private NettyDataBuffer buffer(int... bytes) {
+		NettyDataBuffer buffer = this.bufferFactory.allocateBuffer(bytes.length);
+		for (int b : bytes) {
+			buffer.write((byte) b);
+		}
+		return buffer;
+	}
+
+	private static Answer<ResponseEntity<SpeechApiResponse>> write(int... audio) {
+		return invocation -> {
+			OutputStream output = invocation.getArgument(1);
+			for (int b : audio) {
+				output.write(b);
+			}
+			return ResponseEntity.ok(new SpeechApiResponse("r1", 3000, "Success", -1, null, null));
+		};
+	}
+
+	private static Answer<ResponseEntity<SpeechApiResponse>> writeAndFail(int... audio) {
+		return invocation -> {
+			OutputStream output = invocation.getArgument(1);
+			for (int b : audio) {
+				output.write(b);
+			}
+			throw new ByteDanceApiException("Connection reset while reading the speech");
+		};
+	}
+
+	private static List<Path> filesIn(Path directory) throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.toList();
+		}
+	}
+
+}
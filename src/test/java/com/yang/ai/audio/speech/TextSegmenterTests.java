@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.speech;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class TextSegmenterTests {
+
+	@Test
+	public void packsSentencesUpToTheLimit() {
+		// 3 bytes per CJK character: 21 + 21 + 18 bytes
+		List<String> segments = TextSegmenter.split("今天天气很好。我们去公园吧！好的，走吧？", 45);
+
+		assertThat(segments).containsExactly("今天天气很好。我们去公园吧！", "好的，走吧？");
+	}
+
+	@Test
+	public void keepsDecimalsAndClosingQuotes() {
+		List<String> segments = TextSegmenter.split("Pi is 3.14. He said \"stop.\" Then left.", 20);
+
+		assertThat(segments).containsExactly("Pi is 3.14.", "He said \"stop.\"", "Then left.");
+	}
+
+	@Test
+	public void splitsLongSentenceAtClauseBoundary() {
+		String text = "第一部分的内容，第二部分的内容，第三部分的内容。";
+
+		List<String> segments = TextSegmenter.split(text, 30);
+
+		assertThat(segments).containsExactly("第一部分的内容，", "第二部分的内容，", "第三部分的内容。");
+		assertThat(String.join("", segments)).isEqualTo(text);
+	}
+
+	@Test
+	public void neverExceedsTheLimit() {
+		String text = "没有任何标点符号的一段很长很长很长很长很长很长很长很长的文字";
+
+		List<String> segments = TextSegmenter.split(text, 10);
+
+		assertThat(segments).allSatisfy(
+				segment -> assertThat(segment.getBytes(StandardCharsets.UTF_8).length).isLessThanOrEqualTo(10));
+		assertThat(String.join("", segments)).isEqualTo(text);
+	}
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.transcription;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+/**
+ * @author yang
+ */
+public class AudioSplitterTests {
+
+	private static final int SAMPLE_RATE = 16000;
+
+	private static final int MP3_FRAME_LENGTH = 417;
+
+	@TempDir
+	Path directory;
+
+	private final AudioSplitter splitter = AudioSplitter.builder()
+		.withWindow(Duration.ofSeconds(10))
+		.withOverlap(Duration.ofSeconds(1))
+		.withSilenceSearch(Duration.ofSeconds(3))
+		.build();
+
+	@Test
+	public void cutsWavInSilence() throws IOException {
+		// 25 s of noise with a pause at 8.0 - 8.2 s.
+		short[] samples = new short[25 * SAMPLE_RATE];
+		for (int i = 0; i < samples.length; i++) {
+			boolean pause = i >= 8 * SAMPLE_RATE && i < 8.2 * SAMPLE_RATE;
+			samples[i] = pause ? 0 : (short) ((i * 7919 % 20000) - 10000);
+		}
+		Path file = Files.write(this.directory.resolve("speech.wav"), wav(samples));
+
+		List<AudioWindow> windows = this.splitter.split(file);
+
+		assertThat(windows).hasSizeGreaterThan(2);
+		AudioWindow first = windows.get(0);
+		assertThat(first.start()).isZero();
+		assertThat(first.end()).isBetween(8.0, 8.2);
+		assertThat(windows.get(1).start()).isCloseTo(first.end() - 1, within(0.001));
+		assertThat(windows.get(windows.size() - 1).end()).isEqualTo(25.0);
+
+		byte[] audio = read(first);
+		ByteBuffer header = ByteBuffer.wrap(audio).order(ByteOrder.LITTLE_ENDIAN);
+		assertThat(audio).hasSize((int) first.audio().contentLength());
+		assertThat(header.getInt(4)).isEqualTo(audio.length - 8);
+		assertThat(header.getInt(40)).isEqualTo(audio.length - 44);
+		assertThat(header.getShort(44 + 2 * 100)).isEqualTo(samples[100]);
+		assertThat(first.audio().getFilename()).isEqualTo("speech-0.wav");
+	}
+
+	@Test
+	public void cutsMp3AtFrameBoundaries() throws IOException {
+		int frames = 1000;
+		byte[] id3 = { 'I', 'D', '3', 4, 0, 0, 0, 0, 0, 6, 1, 2, 3, 4, 5, 6 };
+		ByteBuffer mp3 = ByteBuffer.allocate(id3.length + frames * MP3_FRAME_LENGTH).put(id3);
+		for (int i = 0; i < frames; i++) {
+			// MPEG-1 layer III, 128 kbit/s, 44.1 kHz, stereo.
+			mp3.put(new byte[] { (byte) 0xFF, (byte) 0xFB, (byte) 0x90, 0x00 }).put(new byte[MP3_FRAME_LENGTH - 4]);
+		}
+		Path file = Files.write(this.directory.resolve("speech.mp3"), mp3.array());
+
+		List<AudioWindow> windows = this.splitter.split(file);
+
+		double frameDuration = 1152.0 / 44100;
+		assertThat(windows).hasSize(3);
+		assertThat(windows.get(2).end()).isCloseTo(frames * frameDuration, within(0.001));
+		for (int i = 0; i < windows.size(); i++) {
+			AudioWindow window = windows.get(i);
+			byte[] audio = read(window);
+			assertThat(audio.length % MP3_FRAME_LENGTH).isZero();
+			assertThat(audio[0]).isEqualTo((byte) 0xFF);
+			long windowFrames = Math.round((window.end() - window.start()) / frameDuration);
+			assertThat(audio.length).isEqualTo(windowFrames * MP3_FRAME_LENGTH);
+			if (i > 0) {
+				assertThat(window.start()).isCloseTo(windows.get(i - 1).end() - 1, within(frameDuration));
+			}
+		}
+	}
+
+	@Test
+	public void doesNotSplitUnknownFormats() throws IOException {
+		byte[] webm = { 0x1A, 0x45, (byte) 0xDF, (byte) 0xA3 };
+		Path file = Files.write(this.directory.resolve("speech.webm"), webm);
+
+		List<AudioWindow> windows = this.splitter.split(file);
+
+		assertThat(windows).hasSize(1);
+		assertThat(windows.get(0).end()).isNaN();
+		assertThat(read(windows.get(0))).hasSize(4);
+	}
+
+	private static byte[] wav(short[] samples) {
+		ByteBuffer wav = ByteBuffer.allocate(44 + 2 * samples.length).order(ByteOrder.LITTLE_ENDIAN);
+		wav.put("RIFF".getBytes()).putInt(36 + 2 * samples.length).put("WAVE".getBytes());
+		wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 1).putInt(SAMPLE_RATE)
+			.putInt(2 * SAMPLE_RATE).putShort((short) 2).putShort((short) 16);
+		wav.put("data".getBytes()).putInt(2 * samples.length);
+		for (short sample : samples) {
+			wav.putShort(sample);
+		}
+		return wav.array();
+	}
+
+	private static byte[] read(AudioWindow window) throws IOException {
+		try (InputStream in = window.audio().getInputStream()) {
+			return in.readAllBytes();
+		}
+	}
+
+}
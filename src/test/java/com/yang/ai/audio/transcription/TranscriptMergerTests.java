@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.audio.transcription;
+
+import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse;
+import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse.Segment;
+import com.yang.ai.api.ByteDanceAudioApi.StructuredResponse.Word;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ByteArrayResource;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class TranscriptMergerTests {
+
+	private final List<AudioWindow> windows = List.of(window(0, 0, 10), window(1, 8, 20));
+
+	@Test
+	public void shiftsTimestampsAndDropsOverlap() {
+		StructuredResponse first = new StructuredResponse("english", 10f, "Hello there. How are you doing tod",
+				List.of(new Word("Hello", 0f, 0.5f), new Word("tod", 9f, 10f)),
+				List.of(segment(0, 0f, 4f, " Hello there."), segment(1, 4f, 8.5f, " How are you"),
+						segment(2, 8.5f, 10f, " doing tod")));
+		StructuredResponse second = new StructuredResponse("english", 12f, "are you doing today? Fine.",
+				List.of(new Word("today", 1f, 1.5f)), List.of(segment(0, 0f, 1f, " are you"),
+						segment(1, 0.5f, 2.5f, " doing today?"), segment(2, 3f, 5f, " Fine.")));
+
+		StructuredResponse merged = TranscriptMerger.merge(this.windows, List.of(first, second));
+
+		assertThat(merged.text()).isEqualTo("Hello there. How are you doing today? Fine.");
+		assertThat(merged.language()).isEqualTo("english");
+		assertThat(merged.duration()).isEqualTo(20f);
+		assertThat(merged.segments()).extracting(Segment::id).containsExactly(0, 1, 2, 3);
+		assertThat(merged.segments()).extracting(Segment::start).containsExactly(0f, 4f, 8.5f, 11f);
+		assertThat(merged.segments().get(2).seek()).isEqualTo(850);
+		assertThat(merged.words()).extracting(Word::word).containsExactly("Hello", "today");
+		assertThat(merged.words().get(1).start()).isEqualTo(9f);
+	}
+
+	@Test
+	public void joinsPlainTextAtCommonWords() {
+		StructuredResponse first = new StructuredResponse(null, null, "the quick brown fox", null, null);
+		StructuredResponse second = new StructuredResponse(null, null, "Brown fox jumps", null, null);
+
+		StructuredResponse merged = TranscriptMerger.merge(this.windows, List.of(first, second));
+
+		assertThat(merged.text()).isEqualTo("the quick brown fox jumps");
+	}
+
+	@Test
+	public void joinsChineseWithoutSpaces() {
+		StructuredResponse first = new StructuredResponse(null, null, "今天天气很好", null, null);
+		StructuredResponse second = new StructuredResponse(null, null, "我们去公园", null, null);
+
+		StructuredResponse merged = TranscriptMerger.merge(this.windows, List.of(first, second));
+
+		assertThat(merged.text()).isEqualTo("今天天气很好我们去公园");
+	}
+
+	private static AudioWindow window(int index, double start, double end) {
+		return new AudioWindow(index, start, end, new ByteArrayResource(new byte[0]));
+	}
+
+	private static Segment segment(int id, float start, float end, String text) {
+		return new Segment(id, Math.round(start * 100), start, end, text, List.of(), 0f, -0.2f, 1.2f, 0.01f);
+	}
+
+}
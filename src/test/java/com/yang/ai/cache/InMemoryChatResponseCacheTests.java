@@ -0,0 +1,103 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionMessage.Role;
+import com.yang.ai.api.ByteDanceChatApi.ChatCompletionRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class InMemoryChatResponseCacheTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	@Test
+	public void countsHitsAndMisses() {
+		InMemoryChatResponseCache cache = new InMemoryChatResponseCache(10, Duration.ofMinutes(1), this.now::get);
+		ChatResponse response = response("a");
+
+		assertThat(cache.get("a")).isNull();
+		cache.put("a", response);
+		assertThat(cache.get("a")).isSameAs(response);
+
+		assertThat(cache.getStats().hitCount()).isEqualTo(1);
+		assertThat(cache.getStats().missCount()).isEqualTo(1);
+		assertThat(cache.getStats().size()).isEqualTo(1);
+	}
+
+	@Test
+	public void expiresEntries() {
+		InMemoryChatResponseCache cache = new InMemoryChatResponseCache(10, Duration.ofMinutes(1), this.now::get);
+		cache.put("a", response("a"));
+
+		this.now.addAndGet(Duration.ofMinutes(1).toNanos());
+
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.getStats().evictionCount()).isEqualTo(1);
+		assertThat(cache.getStats().size()).isZero();
+	}
+
+	@Test
+	public void keepsFrequentEntryOverOneOffCandidates() {
+		InMemoryChatResponseCache cache = new InMemoryChatResponseCache(2, Duration.ofMinutes(1), this.now::get);
+		lookupAndPut(cache, "hot");
+		for (int i = 0; i < 5; i++) {
+			cache.get("hot");
+		}
+
+		for (int i = 0; i < 10; i++) {
+			lookupAndPut(cache, "cold-" + i);
+		}
+
+		assertThat(cache.get("hot")).isNotNull();
+		assertThat(cache.getStats().rejectionCount()).isPositive();
+		assertThat(cache.getStats().size()).isEqualTo(2);
+	}
+
+	@Test
+	public void keysIgnoreStreamFlagAndMapOrder() {
+		List<ChatCompletionMessage> messages = List.of(new ChatCompletionMessage("Hello", Role.USER));
+
+		String blocking = ChatCompletionRequestKeys.of(new ChatCompletionRequest(messages, "ep-1", 0f, false));
+		String streaming = ChatCompletionRequestKeys.of(new ChatCompletionRequest(messages, "ep-1", 0f, true));
+		String otherModel = ChatCompletionRequestKeys.of(new ChatCompletionRequest(messages, "ep-2", 0f, false));
+
+		assertThat(blocking).isEqualTo(streaming).hasSize(64);
+		assertThat(blocking).isNotEqualTo(otherModel);
+	}
+
+	private static void lookupAndPut(ChatResponseCache cache, String key) {
+		if (cache.get(key) == null) {
+			cache.put(key, response(key));
+		}
+	}
+
+	private static ChatResponse response(String content) {
+		return new ChatResponse(List.of(new Generation(content)));
+	}
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class SingleFlightTests {
+
+	private final SingleFlight singleFlight = new SingleFlight();
+
+	@Test
+	public void concurrentCallsShareOneInvocation() throws Exception {
+		AtomicInteger invocations = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		CompletableFuture<String> leader = CompletableFuture.supplyAsync(() -> this.singleFlight.execute("key", () -> {
+			invocations.incrementAndGet();
+			started.countDown();
+			await(release);
+			return "response";
+		}));
+		assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+		FutureTask<String> follower = new FutureTask<>(() -> this.singleFlight.execute("key", () -> {
+			throw new AssertionError("The follower must join the call in flight");
+		}));
+		Thread followerThread = new Thread(follower, "single-flight-follower");
+		followerThread.start();
+
+		// The follower parks in join only once it found the call in flight.
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (followerThread.getState() != Thread.State.WAITING) {
+			assertThat(System.nanoTime()).isLessThan(deadline);
+			Thread.sleep(1);
+		}
+		release.countDown();
+
+		assertThat(leader.get(5, TimeUnit.SECONDS)).isEqualTo("response");
+		assertThat(follower.get(5, TimeUnit.SECONDS)).isSameAs(leader.get());
+		assertThat(invocations).hasValue(1);
+		assertThat(this.singleFlight.getInFlightCount()).isZero();
+	}
+
+	@Test
+	public void lateSubscribersReplayTheSharedStream() {
+		AtomicInteger subscriptions = new AtomicInteger();
+		Sinks.Many<String> upstream = Sinks.many().unicast().onBackpressureBuffer();
+		Flux<String> source = upstream.asFlux().doOnSubscribe(s -> subscriptions.incrementAndGet());
+
+		List<String> first = new ArrayList<>();
+		this.singleFlight.stream("key", () -> source).subscribe(first::add);
+		upstream.tryEmitNext("Hel");
+
+		List<String> second = new ArrayList<>();
+		this.singleFlight.stream("key", () -> Flux.just("unexpected")).subscribe(second::add);
+		upstream.tryEmitNext("lo");
+		upstream.tryEmitComplete();
+
+		assertThat(first).containsExactly("Hel", "lo");
+		assertThat(second).containsExactly("Hel", "lo");
+		assertThat(subscriptions).hasValue(1);
+		assertThat(this.singleFlight.getInFlightCount()).isZero();
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.cache;
+
+import com.yang.ai.api.ByteDanceAudioApi.SpeechRequest;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class TieredSpeechAudioCacheTests {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void keyIgnoresReqidButNotVoice() {
+		String key = SpeechRequestKeys.of(request("r1", "请稍候", "BV001_streaming"));
+
+		assertThat(SpeechRequestKeys.of(request("r2", "请稍候", "BV001_streaming"))).isEqualTo(key);
+		assertThat(SpeechRequestKeys.of(request("r1", "请稍候", "BV002_streaming"))).isNotEqualTo(key);
+		assertThat(SpeechRequestKeys.of(request("r1", "请稍等", "BV001_streaming"))).isNotEqualTo(key);
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedFromMemory() {
+		TieredSpeechAudioCache cache = new TieredSpeechAudioCache(10);
+		cache.put("a", new byte[4]);
+		cache.put("b", new byte[4]);
+		cache.get("a");
+		cache.put("c", new byte[4]);
+
+		assertThat(cache.get("a")).hasSize(4);
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.getMemorySize()).isEqualTo(8);
+		assertThat(cache.getStats().evictionCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void diskTierSurvivesRestartAndIsBounded() {
+		TieredSpeechAudioCache cache = new TieredSpeechAudioCache(0, this.directory, 10);
+		cache.put("a", new byte[] { 1, 2, 3, 4 });
+		cache.put("b", new byte[] { 5, 6, 7, 8 });
+		cache.put("c", new byte[] { 9, 10, 11, 12 });
+
+		TieredSpeechAudioCache reopened = new TieredSpeechAudioCache(100, this.directory, 10);
+
+		assertThat(reopened.get("a")).isNull();
+		assertThat(reopened.get("c")).containsExactly(9, 10, 11, 12);
+		assertThat(reopened.getMemorySize()).isEqualTo(4);
+		assertThat(reopened.getStats().hitCount()).isEqualTo(1);
+		assertThat(reopened.getStats().missCount()).isEqualTo(1);
+	}
+
+	@Test
+	public void deletesTemporaryFilesLeftByACrash() throws IOException {
+		new TieredSpeechAudioCache(0, this.directory, 10).put("a", new byte[] { 1, 2 });
+		Path orphan = Files.write(this.directory.resolve("b123456789.tmp"), new byte[] { 3 });
+
+		TieredSpeechAudioCache reopened = new TieredSpeechAudioCache(0, this.directory, 10);
+
+		assertThat(orphan).doesNotExist();
+		assertThat(reopened.get("a")).containsExactly(1, 2);
+	}
+
+	@Test
+	public void rejectsAudioLargerThanBothTiers() {
+		TieredSpeechAudioCache cache = new TieredSpeechAudioCache(2, this.directory, 2);
+		cache.put("a", new byte[3]);
+
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.getStats().rejectionCount()).isEqualTo(1);
+	}
+
+	private static SpeechRequest request(String reqid, String text, String voiceType) {
+		return SpeechRequest.builder()
+			.withApp(new SpeechRequest.App("app"))
+			.withUser(new SpeechRequest.User("uid"))
+			.withAudio(new SpeechRequest.Audio(voiceType))
+			.withRequest(new SpeechRequest.Request(reqid, text, "query"))
+			.build();
+	}
+
+}
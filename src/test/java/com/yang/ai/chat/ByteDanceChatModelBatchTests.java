@@ -0,0 +1,75 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.chat;
+
+import com.yang.ai.ByteDanceChatModel;
+import com.yang.ai.ByteDanceChatModel.BatchResult;
+import com.yang.ai.ByteDanceChatOptions;
+import com.yang.ai.api.ByteDanceChatApi;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.http.ResponseEntity;
+
+import java.util.List;
+import java.util.Optional;
+
+import static com.yang.ai.api.ByteDanceChatApi.*;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author yang
+ */
+@ExtendWith(MockitoExtension.class)
+public class ByteDanceChatModelBatchTests {
+
+	private @Mock ByteDanceChatApi byteDanceChatApi;
+
+	@Test
+	public void batchKeepsOrderAndIsolatesFailures() {
+		when(this.byteDanceChatApi.chatCompletionEntity(any(ChatCompletionRequest.class), any()))
+			.thenAnswer(invocation -> {
+				ChatCompletionRequest request = invocation.getArgument(0);
+				String content = (String) request.messages().get(0).rawContent();
+				if (content.equals("fail")) {
+					throw new NonTransientAiException("Bad request");
+				}
+				var choice = new ChatCompletion.Choice(ChatCompletionFinishReason.STOP, 0,
+						new ChatCompletionMessage(content.toUpperCase(), ChatCompletionMessage.Role.ASSISTANT), null);
+				return ResponseEntity.of(Optional.of(new ChatCompletion("id", List.of(choice), 666L, "model", null,
+						new Usage(1, 1, 2))));
+			});
+
+		ByteDanceChatModel chatModel = new ByteDanceChatModel(this.byteDanceChatApi,
+				ByteDanceChatOptions.builder().build(), null, RetryUtils.DEFAULT_RETRY_TEMPLATE);
+
+		List<BatchResult> results = chatModel
+			.callAll(List.of(new Prompt("a"), new Prompt("fail"), new Prompt("c"), new Prompt("d")));
+
+		assertThat(results).extracting(BatchResult::index).containsExactly(0, 1, 2, 3);
+		assertThat(results).extracting(BatchResult::isSuccess).containsExactly(true, false, true, true);
+		assertThat(results.get(0).response().getResult().getOutput().getContent()).isEqualTo("A");
+		assertThat(results.get(1).error()).isInstanceOf(NonTransientAiException.class);
+		assertThat(results.get(3).response().getResult().getOutput().getContent()).isEqualTo("D");
+	}
+
+}
@@ -46,6 +46,7 @@ import static com.yang.ai.api.ByteDanceAudioApi.*;
 import static com.yang.ai.api.ByteDanceChatApi.*;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isA;
 import static org.mockito.Mockito.when;
 
@@ -114,7 +115,7 @@ public class ByteDanceRetryTests {
 		ChatCompletion expectedChatCompletion = new ChatCompletion("id", List.of(choice), 666l, "model", null,
 				new Usage(10, 10, 10));
 
-		when(byteDanceChatApi.chatCompletionEntity(isA(ChatCompletionRequest.class)))
+		when(byteDanceChatApi.chatCompletionEntity(isA(ChatCompletionRequest.class), any()))
 			.thenThrow(new TransientAiException("Transient Error 1"))
 			.thenThrow(new TransientAiException("Transient Error 2"))
 			.thenReturn(ResponseEntity.of(Optional.of(expectedChatCompletion)));
@@ -129,7 +130,7 @@ public class ByteDanceRetryTests {
 
 	@Test
 	public void byteDanceChatNonTransientError() {
-		when(byteDanceChatApi.chatCompletionEntity(isA(ChatCompletionRequest.class)))
+		when(byteDanceChatApi.chatCompletionEntity(isA(ChatCompletionRequest.class), any()))
 				.thenThrow(new RuntimeException("Non Transient Error"));
 		assertThrows(RuntimeException.class, () -> chatModel.call(new Prompt("text")));
 	}
@@ -159,7 +160,7 @@ public class ByteDanceRetryTests {
 	public void byteDanceChatStreamNonTransientError() {
 		when(byteDanceChatApi.chatCompletionStream(isA(ChatCompletionRequest.class)))
 				.thenThrow(new RuntimeException("Non Transient Error"));
-		assertThrows(RuntimeException.class, () -> chatModel.stream(new Prompt("text")));
+		assertThrows(RuntimeException.class, () -> chatModel.stream(new Prompt("text")).blockLast());
 	}
 
 	@Test
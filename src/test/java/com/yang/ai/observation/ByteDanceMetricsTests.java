@@ -0,0 +1,188 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.observation;
+
+import com.yang.ai.ByteDanceChatModel;
+import com.yang.ai.ByteDanceChatOptions;
+import com.yang.ai.api.ByteDanceChatApi;
+import com.yang.ai.metadata.ByteDanceRateLimit;
+import com.yang.ai.resilience.CircuitBreaker;
+import com.yang.ai.resilience.StreamRetryPolicy;
+import com.yang.ai.testutils.MockByteDanceServer;
+import com.yang.ai.testutils.MockByteDanceServer.Fault;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.retry.support.RetryTemplate;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ByteDanceMetricsTests {
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	private final List<Observation.Context> stoppedObservations = new CopyOnWriteArrayList<>();
+
+	private MockByteDanceServer server;
+
+	private ByteDanceChatModel chatModel;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		ObservationRegistry observationRegistry = ObservationRegistry.create();
+		observationRegistry.observationConfig().observationHandler(new ObservationHandler<>() {
+
+			@Override
+			public void onStop(Observation.Context context) {
+				ByteDanceMetricsTests.this.stoppedObservations.add(context);
+			}
+
+			@Override
+			public boolean supportsContext(Observation.Context context) {
+				return true;
+			}
+
+		});
+		this.server = MockByteDanceServer.builder().withTokensPerSecond(1000).start();
+		this.chatModel = new ByteDanceChatModel(new ByteDanceChatApi(this.server.getBaseUrl(), "test-key"),
+				ByteDanceChatOptions.builder().withModel("ep-test").build(), null,
+				RetryTemplate.builder().maxAttempts(3).fixedBackoff(10).retryOn(TransientAiException.class).build())
+			.withStreamRetryPolicy(StreamRetryPolicy.builder().withMinBackoff(Duration.ofMillis(10)).build())
+			.withMetrics(new ByteDanceMetrics(this.meterRegistry, observationRegistry));
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	public void recordsCallsWithRetriesAndUsage() {
+		this.server.enqueue(Fault.SERVER_ERROR);
+
+		this.chatModel.call(new Prompt("Tell me a story"));
+
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.REQUESTS)
+			.tag("operation", "chat")
+			.tag("model", "ep-test")
+			.tag("voice_type", "none")
+			.tag("outcome", "success")
+			.timer()
+			.count()).isEqualTo(1);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.RETRIES).counter().count()).isEqualTo(1);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.ERRORS).tag("status", "5xx").counter().count())
+			.isEqualTo(1);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.TOKENS).tag("token_type", "output").summary().totalAmount())
+			.isPositive();
+		assertThat(this.stoppedObservations).singleElement()
+			.satisfies(context -> assertThat(context.getName()).isEqualTo(ByteDanceMetrics.OBSERVATION_NAME));
+	}
+
+	@Test
+	public void recordsStreamLatencies() {
+		Prompt prompt = new Prompt("Tell me a story", ByteDanceChatOptions.builder()
+			.withStreamOptions(new ByteDanceChatApi.ChatCompletionStreamOption(true))
+			.build());
+
+		this.chatModel.stream(prompt).blockLast();
+
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.TIME_TO_FIRST_TOKEN)
+			.tag("operation", "chat.stream")
+			.timer()
+			.count()).isEqualTo(1);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.INTER_TOKEN_LATENCY).timer().count()).isPositive();
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.TOKENS).tag("token_type", "input").summary().count())
+			.isEqualTo(1);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.REQUESTS)
+			.tag("operation", "chat.stream")
+			.tag("outcome", "success")
+			.timer()
+			.count()).isEqualTo(1);
+	}
+
+	@Test
+	public void startsStreamObservationsPerSubscription() {
+		Flux<ChatResponse> stream = this.chatModel.stream(new Prompt("Tell me a story"));
+
+		assertThat(this.meterRegistry.find(ByteDanceMetrics.REQUESTS).timers()).isEmpty();
+
+		stream.blockLast();
+		stream.blockLast();
+
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.TIME_TO_FIRST_TOKEN).timer().count()).isEqualTo(2);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.REQUESTS).tag("outcome", "success").timer().count())
+			.isEqualTo(2);
+		assertThat(this.stoppedObservations).hasSize(2);
+	}
+
+	@Test
+	public void capsTagValues() {
+		ByteDanceMetrics metrics = new ByteDanceMetrics(this.meterRegistry, ObservationRegistry.NOOP, 2);
+
+		for (String model : List.of("ep-1", "ep-2", "ep-3", "ep-1")) {
+			metrics.start(ByteDanceMetrics.OPERATION_CHAT, model, null).stop();
+		}
+
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.REQUESTS).timers()).extracting(timer -> timer.getId()
+			.getTag("model")).containsExactlyInAnyOrder("ep-1", "ep-2", "other");
+	}
+
+	@Test
+	public void exposesRateLimitHeadroom() {
+		ByteDanceMetrics metrics = new ByteDanceMetrics(this.meterRegistry);
+		ByteDanceObservation observation = metrics.start(ByteDanceMetrics.OPERATION_SPEECH, "volcano_tts", "BV001");
+
+		observation.onRateLimit(new ByteDanceRateLimit(100L, 42L, null, 1000L, 7L, null));
+		observation.stop();
+
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.RATE_LIMIT_REMAINING)
+			.tag("voice_type", "BV001")
+			.tag("limit_type", "requests")
+			.gauge()
+			.value()).isEqualTo(42);
+		assertThat(this.meterRegistry.get(ByteDanceMetrics.RATE_LIMIT_LIMIT).tag("limit_type", "tokens").gauge().value())
+			.isEqualTo(1000);
+	}
+
+	@Test
+	public void classifiesErrors() {
+		assertThat(ByteDanceMetrics.status(new TransientAiException("429 - Too Many Requests"))).isEqualTo("429");
+		assertThat(ByteDanceMetrics.status(new TransientAiException("503 - unavailable"))).isEqualTo("5xx");
+		assertThat(ByteDanceMetrics.status(new NonTransientAiException("400 - bad request"))).isEqualTo("4xx");
+		assertThat(ByteDanceMetrics.status(new CircuitBreaker.CallNotPermittedException("chat/ep-test")))
+			.isEqualTo("circuit_open");
+		assertThat(ByteDanceMetrics.status(new RuntimeException(new IOException("reset")))).isEqualTo("io");
+		assertThat(ByteDanceMetrics.status(new IllegalStateException("unexpected"))).isEqualTo("other");
+	}
+
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import com.yang.ai.metadata.ByteDanceRateLimit;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * @author yang
+ */
+public class ByteDanceRateLimiterTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final ByteDanceRateLimiter limiter = new ByteDanceRateLimiter(Duration.ofSeconds(30), this.now::get);
+
+	@Test
+	public void allowsRequestsBeforeFirstHeaders() {
+		assertThat(this.limiter.reserve(1000)).isZero();
+		assertThat(this.limiter.getRequestsRemaining()).isNull();
+	}
+
+	@Test
+	public void waitsForResetOnceRequestsAreUsedUp() {
+		this.limiter.update(new ByteDanceRateLimit(10L, 1L, Duration.ofSeconds(2), 1000L, 1000L, Duration.ofSeconds(2)));
+
+		assertThat(this.limiter.reserve(10)).isZero();
+		assertThat(this.limiter.reserve(10)).isEqualTo(Duration.ofSeconds(2));
+
+		this.now.addAndGet(Duration.ofSeconds(2).toNanos());
+		assertThat(this.limiter.reserve(10)).isZero();
+	}
+
+	@Test
+	public void waitsWhenTokensAreShort() {
+		this.limiter.update(new ByteDanceRateLimit(10L, 10L, Duration.ofSeconds(1), 1000L, 100L, Duration.ofSeconds(5)));
+
+		assertThat(this.limiter.reserve(80)).isZero();
+		assertThat(this.limiter.getTokensRemaining()).isEqualTo(20L);
+		assertThat(this.limiter.reserve(80)).isEqualTo(Duration.ofSeconds(5));
+	}
+
+	@Test
+	public void givesTheRequestBackWhenTokensAreShort() {
+		this.limiter.update(new ByteDanceRateLimit(10L, 1L, Duration.ofSeconds(1), 1000L, 50L, Duration.ofSeconds(1)));
+
+		assertThat(this.limiter.reserve(80)).isEqualTo(Duration.ofSeconds(1));
+		assertThat(this.limiter.getRequestsRemaining()).isEqualTo(1L);
+		assertThat(this.limiter.reserve(40)).isZero();
+		assertThat(this.limiter.getRequestsRemaining()).isZero();
+	}
+
+	@Test
+	public void releasesOneWindowAtATimeAfterTheReset() {
+		this.limiter.update(new ByteDanceRateLimit(2L, 0L, Duration.ofSeconds(1), null, null, null));
+
+		this.now.addAndGet(Duration.ofSeconds(1).toNanos());
+
+		assertThat(this.limiter.reserve(0)).isZero();
+		assertThat(this.limiter.reserve(0)).isZero();
+		assertThat(this.limiter.reserve(0)).isEqualTo(Duration.ofSeconds(1));
+	}
+
+	@Test
+	public void capsWaitAtMaxWait() {
+		this.limiter.update(new ByteDanceRateLimit(10L, 0L, Duration.ofHours(1), null, null, null));
+
+		assertThat(this.limiter.reserve(0)).isEqualTo(Duration.ofSeconds(30));
+	}
+
+}
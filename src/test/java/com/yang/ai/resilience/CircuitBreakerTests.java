@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import com.yang.ai.resilience.CircuitBreaker.CallNotPermittedException;
+import com.yang.ai.resilience.CircuitBreaker.State;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author yang
+ */
+public class CircuitBreakerTests {
+
+	private final AtomicLong now = new AtomicLong();
+
+	private final CircuitBreaker circuitBreaker = new CircuitBreaker("chat/test", CircuitBreaker.Config.builder()
+		.withWindowSize(10)
+		.withMinimumNumberOfCalls(4)
+		.withSlowCallDuration(Duration.ofSeconds(5))
+		.withOpenDuration(Duration.ofSeconds(30))
+		.withPermittedCallsInHalfOpenState(2)
+		.build(), this.now::get);
+
+	@Test
+	public void opensOnFailureRateAndFailsFast() {
+		succeed();
+		succeed();
+		fail();
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.CLOSED);
+		fail();
+
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.OPEN);
+		assertThatThrownBy(() -> this.circuitBreaker.execute(() -> "unexpected"))
+			.isInstanceOf(CallNotPermittedException.class)
+			.isInstanceOf(NonTransientAiException.class);
+	}
+
+	@Test
+	public void ignoresNonTransientFailures() {
+		for (int i = 0; i < 5; i++) {
+			assertThatThrownBy(() -> this.circuitBreaker.execute(() -> {
+				throw new NonTransientAiException("400");
+			})).isInstanceOf(NonTransientAiException.class);
+		}
+
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	public void opensOnSlowCalls() {
+		for (int i = 0; i < 4; i++) {
+			this.circuitBreaker.execute(() -> this.now.addAndGet(Duration.ofSeconds(6).toNanos()));
+		}
+
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.OPEN);
+	}
+
+	@Test
+	public void closesAfterSuccessfulProbes() {
+		for (int i = 0; i < 4; i++) {
+			fail();
+		}
+		this.now.addAndGet(Duration.ofSeconds(30).toNanos());
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.HALF_OPEN);
+
+		succeed();
+		succeed();
+
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.CLOSED);
+	}
+
+	@Test
+	public void reopensWhenProbeFails() {
+		for (int i = 0; i < 4; i++) {
+			fail();
+		}
+		this.now.addAndGet(Duration.ofSeconds(30).toNanos());
+
+		fail();
+
+		assertThat(this.circuitBreaker.getState()).isEqualTo(State.OPEN);
+	}
+
+	private void succeed() {
+		this.circuitBreaker.execute(() -> "ok");
+	}
+
+	private void fail() {
+		assertThatThrownBy(() -> this.circuitBreaker.execute(() -> {
+			throw new TransientAiException("503");
+		})).isInstanceOf(TransientAiException.class);
+	}
+
+}
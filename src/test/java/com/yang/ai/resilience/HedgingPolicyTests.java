@@ -0,0 +1,128 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author yang
+ */
+public class HedgingPolicyTests {
+
+	private final AtomicInteger attempts = new AtomicInteger();
+
+	private final AtomicInteger cancellations = new AtomicInteger();
+
+	@Test
+	public void hedgeWinsOverSlowRequest() {
+		HedgingPolicy policy = policy(1.0);
+		Mono<String> source = Mono.defer(() -> this.attempts.incrementAndGet() == 1
+				? Mono.delay(Duration.ofSeconds(5)).map(tick -> "slow").doOnCancel(this.cancellations::incrementAndGet)
+				: Mono.just("fast"));
+
+		assertThat(policy.apply(source).block(Duration.ofSeconds(2))).isEqualTo("fast");
+		assertThat(this.cancellations).hasValue(1);
+		assertThat(policy.getStats().hedged()).isEqualTo(1);
+		assertThat(policy.getStats().hedgeWins()).isEqualTo(1);
+	}
+
+	@Test
+	public void hedgeWinsOverFailedRequest() {
+		HedgingPolicy policy = policy(1.0);
+		Mono<String> source = Mono.defer(() -> this.attempts.incrementAndGet() == 1
+				? Mono.delay(Duration.ofMillis(50)).then(Mono.<String>error(new IllegalStateException("primary")))
+				: Mono.delay(Duration.ofMillis(100)).map(tick -> "hedge"));
+
+		assertThat(policy.apply(source).block(Duration.ofSeconds(2))).isEqualTo("hedge");
+		assertThat(policy.getStats().hedgeWins()).isEqualTo(1);
+	}
+
+	@Test
+	public void propagatesErrorOfFirstRequestWhenBothFail() {
+		HedgingPolicy policy = policy(1.0);
+		Flux<String> source = Flux.defer(() -> this.attempts.incrementAndGet() == 1
+				? Mono.delay(Duration.ofMillis(50)).thenMany(Flux.<String>error(new IllegalStateException("primary")))
+				: Mono.delay(Duration.ofMillis(100)).thenMany(Flux.<String>error(new IllegalStateException("hedge"))));
+
+		assertThatThrownBy(() -> policy.apply(source).blockLast(Duration.ofSeconds(2)))
+			.isInstanceOf(IllegalStateException.class)
+			.hasMessage("primary");
+		assertThat(this.attempts).hasValue(2);
+	}
+
+	@Test
+	public void propagatesErrorRightAwayWithoutHedge() {
+		HedgingPolicy policy = policy(1.0);
+		Mono<String> source = Mono.defer(() -> {
+			this.attempts.incrementAndGet();
+			return Mono.error(new IllegalStateException("primary"));
+		});
+
+		assertThatThrownBy(() -> policy.apply(source).block(Duration.ofSeconds(2)))
+			.isInstanceOf(IllegalStateException.class);
+		assertThat(this.attempts).hasValue(1);
+	}
+
+	@Test
+	public void fastRequestIsNotHedged() {
+		HedgingPolicy policy = policy(1.0);
+		Flux<String> source = Flux.defer(() -> {
+			this.attempts.incrementAndGet();
+			return Flux.just("Hel", "lo");
+		});
+
+		assertThat(policy.apply(source).collectList().block()).containsExactly("Hel", "lo");
+		assertThat(this.attempts).hasValue(1);
+		assertThat(policy.getStats().hedged()).isZero();
+	}
+
+	@Test
+	public void exhaustedBudgetSkipsHedge() {
+		HedgingPolicy policy = HedgingPolicy.builder()
+			.withMinDelay(Duration.ofMillis(10))
+			.withMaxDelay(Duration.ofMillis(10))
+			.withBudget(0)
+			.withMaxBurst(1)
+			.build();
+		Mono<String> source = Mono.defer(() -> {
+			this.attempts.incrementAndGet();
+			return Mono.delay(Duration.ofMillis(50)).map(tick -> "slow");
+		});
+
+		assertThat(policy.apply(source).block()).isEqualTo("slow");
+		assertThat(policy.apply(source).block()).isEqualTo("slow");
+
+		assertThat(this.attempts).hasValue(3);
+		assertThat(policy.getStats().budgetExhausted()).isEqualTo(1);
+	}
+
+	private static HedgingPolicy policy(double budget) {
+		return HedgingPolicy.builder()
+			.withMinDelay(Duration.ofMillis(20))
+			.withMaxDelay(Duration.ofMillis(20))
+			.withBudget(budget)
+			.build();
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.resilience;
+
+import com.yang.ai.resilience.StreamRetryPolicy.MidStreamFailure;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.retry.NonTransientAiException;
+import org.springframework.ai.retry.TransientAiException;
+import reactor.core.publisher.Flux;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author yang
+ */
+public class StreamRetryPolicyTests {
+
+	private final AtomicInteger attempts = new AtomicInteger();
+
+	@Test
+	public void retriesFailuresBeforeTheFirstElement() {
+		Flux<String> source = Flux.defer(() -> this.attempts.incrementAndGet() < 3
+				? Flux.error(new TransientAiException("503")) : Flux.just("Hel", "lo"));
+
+		assertThat(policy(MidStreamFailure.ERROR).apply(source).collectList().block()).containsExactly("Hel", "lo");
+	}
+
+	@Test
+	public void doesNotRetryNonTransientFailures() {
+		Flux<String> source = Flux.defer(() -> {
+			this.attempts.incrementAndGet();
+			return Flux.error(new NonTransientAiException("400"));
+		});
+
+		assertThatThrownBy(() -> policy(MidStreamFailure.ERROR).apply(source).blockLast())
+			.isInstanceOf(NonTransientAiException.class);
+		assertThat(this.attempts).hasValue(1);
+	}
+
+	@Test
+	public void propagatesMidStreamFailureByDefault() {
+		List<String> received = new ArrayList<>();
+
+		assertThatThrownBy(() -> policy(MidStreamFailure.ERROR).apply(failingAfterFirstElement())
+			.doOnNext(received::add)
+			.blockLast()).isInstanceOf(TransientAiException.class);
+		assertThat(received).containsExactly("Hel");
+		assertThat(this.attempts).hasValue(1);
+	}
+
+	@Test
+	public void completesWithPartialAnswerOnMidStreamFailure() {
+		assertThat(policy(MidStreamFailure.COMPLETE).apply(failingAfterFirstElement()).collectList().block())
+			.containsExactly("Hel");
+	}
+
+	@Test
+	public void restartsOnMidStreamFailure() {
+		assertThat(policy(MidStreamFailure.RESTART).apply(failingAfterFirstElement()).collectList().block())
+			.containsExactly("Hel", "Hel", "lo");
+	}
+
+	private Flux<String> failingAfterFirstElement() {
+		return Flux.defer(() -> this.attempts.incrementAndGet() == 1
+				? Flux.just("Hel").concatWith(Flux.error(new TransientAiException("connection reset")))
+				: Flux.just("Hel", "lo"));
+	}
+
+	private static StreamRetryPolicy policy(MidStreamFailure midStreamFailure) {
+		return StreamRetryPolicy.builder()
+			.withMinBackoff(Duration.ofMillis(1))
+			.withMaxBackoff(Duration.ofMillis(5))
+			.withMidStreamFailure(midStreamFailure)
+			.build();
+	}
+
+}
@@ -0,0 +1,191 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.testutils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a client call repeatedly from a fixed number of threads and reports throughput,
+ * time to first token and latency percentiles, e.g. against a {@link MockByteDanceServer}:
+ * <pre>
+ * LoadTestHarness.Report report = LoadTestHarness.run(16, 1000,
+ *         probe -> chatModel.stream(prompt).doOnNext(response -> probe.firstToken()).blockLast());
+ * </pre>
+ * A call that does not mark its first token has a time to first token equal to its
+ * latency. Failed calls count as errors and are left out of the percentiles.
+ *
+ * @author yang
+ */
+public final class LoadTestHarness {
+
+	private LoadTestHarness() {
+	}
+
+	/**
+	 * @param concurrency the number of calls in flight at any time.
+	 * @param requests the total number of calls.
+	 * @param call the call, marking its first token on the probe.
+	 * @return the report.
+	 * @throws InterruptedException if interrupted while waiting for the calls.
+	 */
+	public static Report run(int concurrency, int requests, Call call) throws InterruptedException {
+		if (concurrency <= 0 || requests <= 0) {
+			throw new IllegalArgumentException("concurrency and requests must be positive");
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			long start = System.nanoTime();
+			List<Future<Probe>> futures = new ArrayList<>(requests);
+			for (int i = 0; i < requests; i++) {
+				futures.add(executor.submit(() -> {
+					Probe probe = new Probe();
+					try {
+						call.execute(probe);
+						probe.end = System.nanoTime();
+					}
+					catch (Throwable ex) {
+						probe.error = ex;
+					}
+					return probe;
+				}));
+			}
+			List<Probe> probes = new ArrayList<>(requests);
+			for (Future<Probe> future : futures) {
+				try {
+					probes.add(future.get());
+				}
+				catch (ExecutionException ex) {
+					throw new IllegalStateException(ex.getCause());
+				}
+			}
+			return Report.of(probes, System.nanoTime() - start);
+		}
+		finally {
+			executor.shutdownNow();
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+	}
+
+	/**
+	 * A call under test.
+	 */
+	@FunctionalInterface
+	public interface Call {
+
+		void execute(Probe probe) throws Exception;
+
+	}
+
+	/**
+	 * The timings of a single call.
+	 */
+	public static final class Probe {
+
+		private final long start = System.nanoTime();
+
+		private volatile long firstToken;
+
+		private long end;
+
+		private Throwable error;
+
+		/**
+		 * Mark the arrival of the first token, later calls are ignored.
+		 */
+		public void firstToken() {
+			if (this.firstToken == 0) {
+				this.firstToken = System.nanoTime();
+			}
+		}
+
+	}
+
+	/**
+	 * The result of a load test.
+	 *
+	 * @param requests the number of calls.
+	 * @param errors the number of failed calls by exception type.
+	 * @param elapsed the wall clock time of the whole run.
+	 * @param latencyP50 the median latency of the successful calls.
+	 * @param latencyP99 the 99th percentile latency of the successful calls.
+	 * @param timeToFirstTokenP50 the median time to first token of the successful calls.
+	 * @param timeToFirstTokenP99 the 99th percentile time to first token of the successful
+	 * calls.
+	 */
+	public record Report(int requests, Map<String, Integer> errors, Duration elapsed, Duration latencyP50,
+			Duration latencyP99, Duration timeToFirstTokenP50, Duration timeToFirstTokenP99) {
+
+		static Report of(List<Probe> probes, long elapsedNanos) {
+			Map<String, Integer> errors = new TreeMap<>();
+			long[] latencies = new long[probes.size()];
+			long[] timesToFirstToken = new long[probes.size()];
+			int successes = 0;
+			for (Probe probe : probes) {
+				if (probe.error != null) {
+					errors.merge(probe.error.getClass().getSimpleName(), 1, Integer::sum);
+					continue;
+				}
+				latencies[successes] = probe.end - probe.start;
+				timesToFirstToken[successes++] = (probe.firstToken != 0 ? probe.firstToken : probe.end) - probe.start;
+			}
+			return new Report(probes.size(), errors, Duration.ofNanos(elapsedNanos),
+					percentile(latencies, successes, 0.5), percentile(latencies, successes, 0.99),
+					percentile(timesToFirstToken, successes, 0.5), percentile(timesToFirstToken, successes, 0.99));
+		}
+
+		private static Duration percentile(long[] values, int count, double percentile) {
+			if (count == 0) {
+				return Duration.ZERO;
+			}
+			long[] sorted = Arrays.copyOf(values, count);
+			Arrays.sort(sorted);
+			return Duration.ofNanos(sorted[(int) Math.ceil(percentile * count) - 1]);
+		}
+
+		public int errorCount() {
+			return this.errors.values().stream().mapToInt(Integer::intValue).sum();
+		}
+
+		/**
+		 * @return the successful calls per second.
+		 */
+		public double throughput() {
+			return (this.requests - errorCount()) / (this.elapsed.toNanos() / 1e9);
+		}
+
+		@Override
+		public String toString() {
+			return String.format(
+					"%d requests, %d errors %s in %d ms: %.1f req/s, latency p50 %d ms p99 %d ms, "
+							+ "TTFT p50 %d ms p99 %d ms",
+					this.requests, errorCount(), this.errors, this.elapsed.toMillis(), throughput(),
+					this.latencyP50.toMillis(), this.latencyP99.toMillis(), this.timeToFirstTokenP50.toMillis(),
+					this.timeToFirstTokenP99.toMillis());
+		}
+
+	}
+
+}
@@ -0,0 +1,486 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.testutils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An embedded stand-in for the Ark and openspeech endpoints, to run the clients without
+ * credentials, e.g. for load and latency tests:
+ * <ul>
+ * <li>{@code /api/v3/chat/completions}: JSON, or SSE with one chunk per token at the
+ * configured token rate and jitter, including {@code stream_options.include_usage}.</li>
+ * <li>{@code /api/v1/tts}: silent audio, 2 bytes per character of text, Base64 encoded.
+ * </li>
+ * <li>{@code /v1/audio/transcriptions}: a fixed transcript in any response format.</li>
+ * </ul>
+ * Faults are injected either with a probability per request or, deterministically, by
+ * {@link #enqueue(Fault) enqueuing} them for the next requests. A rate limited response is
+ * a {@code 429} with {@code x-ratelimit-*} headers announcing an empty quota.
+ * <pre>
+ * try (MockByteDanceServer server = MockByteDanceServer.builder().withTokensPerSecond(100).start()) {
+ *     ByteDanceChatApi chatApi = new ByteDanceChatApi(server.getBaseUrl(), "test-key");
+ * }
+ * </pre>
+ *
+ * @author yang
+ */
+public final class MockByteDanceServer implements AutoCloseable {
+
+	public static final String CHAT_COMPLETIONS_PATH = "/api/v3/chat/completions";
+
+	public static final String TTS_PATH = "/api/v1/tts";
+
+	public static final String TRANSCRIPTIONS_PATH = "/v1/audio/transcriptions";
+
+	public static final String TRANSCRIPT = "The quick brown fox jumps over the lazy dog.";
+
+	private static final String[] TOKENS = { "The", " quick", " brown", " fox", " jumps", " over", " the", " lazy",
+			" dog", "." };
+
+	private static final Pattern RESPONSE_FORMAT = Pattern
+		.compile("name=\"response_format\"\\r\\n(?:[^\\r\\n]+\\r\\n)*\\r\\n([^\\r\\n]*)");
+
+	/**
+	 * A fault injected into a response.
+	 */
+	public enum Fault {
+
+		/**
+		 * {@code 429} with rate limit headers.
+		 */
+		RATE_LIMITED,
+
+		/**
+		 * {@code 500} or {@code 503}.
+		 */
+		SERVER_ERROR,
+
+		/**
+		 * The stream stalls halfway for the configured stall duration. Non-streaming
+		 * responses are delayed by it.
+		 */
+		SLOW_STREAM
+
+	}
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final Builder config;
+
+	private final Random random;
+
+	private final Queue<Fault> enqueuedFaults = new ConcurrentLinkedQueue<>();
+
+	private final Map<String, AtomicInteger> requestCounts = new ConcurrentHashMap<>();
+
+	private final AtomicInteger completionIds = new AtomicInteger();
+
+	private final ExecutorService executor;
+
+	private final HttpServer server;
+
+	private MockByteDanceServer(Builder config) throws IOException {
+		this.config = config;
+		this.random = new Random(config.seed);
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "mock-bytedance-server");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.server.setExecutor(this.executor);
+		this.server.createContext(CHAT_COMPLETIONS_PATH, exchange -> handle(exchange, this::chatCompletions));
+		this.server.createContext(TTS_PATH, exchange -> handle(exchange, this::speech));
+		this.server.createContext(TRANSCRIPTIONS_PATH, exchange -> handle(exchange, this::transcription));
+		this.server.start();
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * @return the base URL of the server, for both the chat and the audio api.
+	 */
+	public String getBaseUrl() {
+		return "http://" + this.server.getAddress().getHostString() + ":" + this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Inject the given fault into the next request, before any random fault.
+	 * @param fault the fault.
+	 * @return this
+	 */
+	public MockByteDanceServer enqueue(Fault fault) {
+		this.enqueuedFaults.add(fault);
+		return this;
+	}
+
+	/**
+	 * @param path the endpoint path, e.g. {@link #CHAT_COMPLETIONS_PATH}.
+	 * @return the number of requests received on it, including failed ones.
+	 */
+	public int getRequestCount(String path) {
+		AtomicInteger count = this.requestCounts.get(path);
+		return count != null ? count.get() : 0;
+	}
+
+	@Override
+	public void close() {
+		this.server.stop(0);
+		this.executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange, Handler handler) throws IOException {
+		try {
+			this.requestCounts.computeIfAbsent(exchange.getHttpContext().getPath(), path -> new AtomicInteger())
+				.incrementAndGet();
+			byte[] body;
+			try (InputStream in = exchange.getRequestBody()) {
+				body = in.readAllBytes();
+			}
+			Fault fault = nextFault();
+			if (fault == Fault.RATE_LIMITED) {
+				exchange.getResponseHeaders().add("x-ratelimit-limit-requests", "100");
+				exchange.getResponseHeaders().add("x-ratelimit-remaining-requests", "0");
+				exchange.getResponseHeaders().add("x-ratelimit-reset-requests", "1s");
+				exchange.getResponseHeaders().add("x-ratelimit-limit-tokens", "100000");
+				exchange.getResponseHeaders().add("x-ratelimit-remaining-tokens", "0");
+				exchange.getResponseHeaders().add("x-ratelimit-reset-tokens", "1s");
+				sendError(exchange, 429, "RateLimitExceeded", "Too many requests, please retry later.");
+				return;
+			}
+			if (fault == Fault.SERVER_ERROR) {
+				sendError(exchange, this.random.nextBoolean() ? 500 : 503, "InternalServiceError",
+						"The service encountered an unexpected internal error.");
+				return;
+			}
+			// Multipart bodies are not JSON, their fields are read from the raw body.
+			JsonNode request = body.length > 0 && body[0] == '{' ? this.objectMapper.readTree(body)
+					: this.objectMapper.createObjectNode();
+			handler.handle(exchange, request, body, fault == Fault.SLOW_STREAM);
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		}
+		finally {
+			exchange.close();
+		}
+	}
+
+	private Fault nextFault() {
+		Fault fault = this.enqueuedFaults.poll();
+		if (fault != null) {
+			return fault;
+		}
+		double draw;
+		synchronized (this.random) {
+			draw = this.random.nextDouble();
+		}
+		if (draw < this.config.rateLimitProbability) {
+			return Fault.RATE_LIMITED;
+		}
+		draw -= this.config.rateLimitProbability;
+		if (draw < this.config.serverErrorProbability) {
+			return Fault.SERVER_ERROR;
+		}
+		draw -= this.config.serverErrorProbability;
+		return draw < this.config.slowStreamProbability ? Fault.SLOW_STREAM : null;
+	}
+
+	private void chatCompletions(HttpExchange exchange, JsonNode request, byte[] body, boolean slow)
+			throws IOException, InterruptedException {
+		String id = "0217" + this.completionIds.incrementAndGet();
+		String model = request.path("model").asText("doubao-pro-32k");
+		int promptTokens = request.path("messages").size() * 8;
+		int completionTokens = this.config.completionTokens;
+		sleep(this.config.latency);
+		if (!request.path("stream").asBoolean(false)) {
+			for (int i = 0; i < completionTokens; i++) {
+				sleep(tokenInterval());
+			}
+			if (slow) {
+				sleep(this.config.stall);
+			}
+			ObjectNode completion = completion(id, "chat.completion", model);
+			ObjectNode choice = completion.putArray("choices").addObject();
+			choice.put("index", 0).put("finish_reason", "stop");
+			choice.putObject("message").put("role", "assistant").put("content", content(completionTokens));
+			usage(completion.putObject("usage"), promptTokens, completionTokens);
+			send(exchange, 200, "application/json", this.objectMapper.writeValueAsBytes(completion));
+			return;
+		}
+		exchange.getResponseHeaders().add("Content-Type", "text/event-stream");
+		exchange.sendResponseHeaders(200, 0);
+		OutputStream out = exchange.getResponseBody();
+		for (int i = 0; i < completionTokens; i++) {
+			if (slow && i == completionTokens / 2) {
+				sleep(this.config.stall);
+			}
+			ObjectNode chunk = completion(id, "chat.completion.chunk", model);
+			ObjectNode choice = chunk.putArray("choices").addObject();
+			choice.put("index", 0);
+			choice.putObject("delta").put("role", "assistant").put("content", TOKENS[i % TOKENS.length]);
+			choice.putNull("finish_reason");
+			writeEvent(out, chunk);
+			sleep(tokenInterval());
+		}
+		ObjectNode last = completion(id, "chat.completion.chunk", model);
+		ObjectNode choice = last.putArray("choices").addObject();
+		choice.put("index", 0).put("finish_reason", "stop");
+		choice.putObject("delta").put("role", "assistant").put("content", "");
+		writeEvent(out, last);
+		if (request.path("stream_options").path("include_usage").asBoolean(false)) {
+			ObjectNode usage = completion(id, "chat.completion.chunk", model);
+			usage.putArray("choices");
+			usage(usage.putObject("usage"), promptTokens, completionTokens);
+			writeEvent(out, usage);
+		}
+		out.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	private void speech(HttpExchange exchange, JsonNode request, byte[] body, boolean slow)
+			throws IOException, InterruptedException {
+		String text = request.path("request").path("text").asText("");
+		sleep(this.config.latency);
+		if (slow) {
+			sleep(this.config.stall);
+		}
+		ObjectNode response = this.objectMapper.createObjectNode();
+		response.put("reqid", request.path("request").path("reqid").asText(""))
+			.put("code", 3000)
+			.put("operation", request.path("request").path("operation").asText("query"))
+			.put("message", "Success")
+			.put("sequence", -1)
+			.put("data", Base64.getEncoder().encodeToString(new byte[2 * text.length()]));
+		response.putObject("addition").put("duration", String.valueOf(text.length() * 200));
+		send(exchange, 200, "application/json", this.objectMapper.writeValueAsBytes(response));
+	}
+
+	private void transcription(HttpExchange exchange, JsonNode request, byte[] body, boolean slow)
+			throws IOException, InterruptedException {
+		sleep(this.config.latency);
+		if (slow) {
+			sleep(this.config.stall);
+		}
+		Matcher matcher = RESPONSE_FORMAT.matcher(new String(body, StandardCharsets.ISO_8859_1));
+		String format = matcher.find() ? matcher.group(1) : "json";
+		if (!format.equals("json") && !format.equals("verbose_json")) {
+			send(exchange, 200, "text/plain", TRANSCRIPT.getBytes(StandardCharsets.UTF_8));
+			return;
+		}
+		ObjectNode response = this.objectMapper.createObjectNode();
+		response.put("text", TRANSCRIPT);
+		if (format.equals("verbose_json")) {
+			response.put("language", "english").put("duration", 3.0f);
+			ArrayNode segments = response.putArray("segments");
+			segments.addObject()
+				.put("id", 0)
+				.put("seek", 0)
+				.put("start", 0.0f)
+				.put("end", 3.0f)
+				.put("text", " " + TRANSCRIPT);
+		}
+		send(exchange, 200, "application/json", this.objectMapper.writeValueAsBytes(response));
+	}
+
+	private ObjectNode completion(String id, String object, String model) {
+		return this.objectMapper.createObjectNode()
+			.put("id", id)
+			.put("object", object)
+			.put("created", System.currentTimeMillis() / 1000)
+			.put("model", model);
+	}
+
+	private static void usage(ObjectNode usage, int promptTokens, int completionTokens) {
+		usage.put("prompt_tokens", promptTokens)
+			.put("completion_tokens", completionTokens)
+			.put("total_tokens", promptTokens + completionTokens);
+	}
+
+	private static String content(int tokens) {
+		StringBuilder content = new StringBuilder();
+		for (int i = 0; i < tokens; i++) {
+			content.append(TOKENS[i % TOKENS.length]);
+		}
+		return content.toString();
+	}
+
+	private void writeEvent(OutputStream out, JsonNode data) throws IOException {
+		out.write("data: ".getBytes(StandardCharsets.UTF_8));
+		out.write(this.objectMapper.writeValueAsBytes(data));
+		out.write("\n\n".getBytes(StandardCharsets.UTF_8));
+		out.flush();
+	}
+
+	private void sendError(HttpExchange exchange, int status, String code, String message) throws IOException {
+		ObjectNode error = this.objectMapper.createObjectNode();
+		error.putObject("error").put("code", code).put("message", message).put("type", "ServiceError");
+		send(exchange, status, "application/json", this.objectMapper.writeValueAsBytes(error));
+	}
+
+	private static void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().add("Content-Type", contentType);
+		exchange.sendResponseHeaders(status, body.length);
+		exchange.getResponseBody().write(body);
+	}
+
+	private Duration tokenInterval() {
+		double interval = 1.0 / this.config.tokensPerSecond;
+		long jitterNanos = this.config.jitter.toNanos();
+		long nanos = (long) (interval * 1_000_000_000L);
+		if (jitterNanos > 0) {
+			synchronized (this.random) {
+				nanos += (long) ((this.random.nextDouble() * 2 - 1) * jitterNanos);
+			}
+		}
+		return Duration.ofNanos(Math.max(0, nanos));
+	}
+
+	private static void sleep(Duration duration) throws InterruptedException {
+		if (!duration.isZero()) {
+			Thread.sleep(duration.toMillis(), duration.toNanosPart() % 1_000_000);
+		}
+	}
+
+	@FunctionalInterface
+	private interface Handler {
+
+		void handle(HttpExchange exchange, JsonNode request, byte[] body, boolean slow)
+				throws IOException, InterruptedException;
+
+	}
+
+	/**
+	 * Builder for the {@link MockByteDanceServer}.
+	 */
+	public static class Builder {
+
+		private double tokensPerSecond = 1000;
+
+		private Duration jitter = Duration.ZERO;
+
+		private int completionTokens = TOKENS.length;
+
+		private Duration latency = Duration.ZERO;
+
+		private Duration stall = Duration.ofSeconds(1);
+
+		private double rateLimitProbability;
+
+		private double serverErrorProbability;
+
+		private double slowStreamProbability;
+
+		private long seed = 42;
+
+		public Builder withTokensPerSecond(double tokensPerSecond) {
+			this.tokensPerSecond = tokensPerSecond;
+			return this;
+		}
+
+		/**
+		 * @param jitter the maximum deviation of a token interval in either direction.
+		 * @return this
+		 */
+		public Builder withJitter(Duration jitter) {
+			this.jitter = jitter;
+			return this;
+		}
+
+		public Builder withCompletionTokens(int completionTokens) {
+			this.completionTokens = completionTokens;
+			return this;
+		}
+
+		/**
+		 * @param latency the delay before the first byte of every response, i.e. the time
+		 * to the first token of a stream.
+		 * @return this
+		 */
+		public Builder withLatency(Duration latency) {
+			this.latency = latency;
+			return this;
+		}
+
+		public Builder withStall(Duration stall) {
+			this.stall = stall;
+			return this;
+		}
+
+		public Builder withRateLimitProbability(double rateLimitProbability) {
+			this.rateLimitProbability = rateLimitProbability;
+			return this;
+		}
+
+		public Builder withServerErrorProbability(double serverErrorProbability) {
+			this.serverErrorProbability = serverErrorProbability;
+			return this;
+		}
+
+		public Builder withSlowStreamProbability(double slowStreamProbability) {
+			this.slowStreamProbability = slowStreamProbability;
+			return this;
+		}
+
+		public Builder withSeed(long seed) {
+			this.seed = seed;
+			return this;
+		}
+
+		/**
+		 * @return the started server, listening on a free loopback port.
+		 * @throws IOException if the server cannot be started.
+		 */
+		public MockByteDanceServer start() throws IOException {
+			if (this.tokensPerSecond <= 0 || this.completionTokens < 0) {
+				throw new IllegalArgumentException("tokensPerSecond must be positive and completionTokens not negative");
+			}
+			if (this.rateLimitProbability + this.serverErrorProbability + this.slowStreamProbability > 1) {
+				throw new IllegalArgumentException("The fault probabilities must not add up to more than 1");
+			}
+			return new MockByteDanceServer(this);
+		}
+
+	}
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2023 - 2024 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.yang.ai.testutils;
+
+import com.yang.ai.ByteDanceAudioSpeechModel;
+import com.yang.ai.ByteDanceAudioTranscriptionModel;
+import com.yang.ai.ByteDanceChatModel;
+import com.yang.ai.ByteDanceChatOptions;
+import com.yang.ai.api.ByteDanceAudioApi;
+import com.yang.ai.api.ByteDanceChatApi;
+import com.yang.ai.metadata.ByteDanceChatResponseMetadata;
+import com.yang.ai.resilience.ByteDanceRateLimiter;
+import com.yang.ai.resilience.StreamRetryPolicy;
+import com.yang.ai.testutils.MockByteDanceServer.Fault;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.retry.RetryUtils;
+import org.springframework.ai.retry.TransientAiException;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.retry.support.RetryTemplate;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * @author yang
+ */
+public class MockByteDanceServerTests {
+
+	private static final Logger logger = LoggerFactory.getLogger(MockByteDanceServerTests.class);
+
+	private final RetryTemplate retryTemplate = RetryTemplate.builder()
+		.maxAttempts(3)
+		.fixedBackoff(10)
+		.retryOn(TransientAiException.class)
+		.build();
+
+	private MockByteDanceServer server;
+
+	private ByteDanceChatModel chatModel;
+
+	@BeforeEach
+	public void setUp() throws IOException {
+		this.server = MockByteDanceServer.builder()
+			.withTokensPerSecond(500)
+			.withJitter(Duration.ofMillis(1))
+			.withLatency(Duration.ofMillis(20))
+			.start();
+		this.chatModel = new ByteDanceChatModel(new ByteDanceChatApi(this.server.getBaseUrl(), "test-key"),
+				ByteDanceChatOptions.builder().withModel("ep-test").build(), null, this.retryTemplate)
+			.withStreamRetryPolicy(StreamRetryPolicy.builder()
+				.withMinBackoff(Duration.ofMillis(10))
+				.withMaxBackoff(Duration.ofMillis(50))
+				.build());
+	}
+
+	@AfterEach
+	public void tearDown() {
+		this.server.close();
+	}
+
+	@Test
+	public void completesChat() {
+		ChatResponse response = this.chatModel.call(new Prompt("Tell me a story"));
+
+		assertThat(response.getResult().getOutput().getContent()).isEqualTo(MockByteDanceServer.TRANSCRIPT);
+	}
+
+	@Test
+	public void streamsOneChunkPerToken() {
+		var responses = this.chatModel.stream(new Prompt("Tell me a story")).collectList().block();
+
+		assertThat(responses).hasSizeGreaterThanOrEqualTo(10);
+		assertThat(responses.stream()
+			.flatMap(response -> response.getResults().stream())
+			.map(generation -> generation.getOutput().getContent())
+			.filter(Objects::nonNull)
+			.collect(Collectors.joining())).isEqualTo(MockByteDanceServer.TRANSCRIPT);
+	}
+
+	@Test
+	public void reportsUsageOfStreams() {
+		var responses = this.chatModel.stream(new Prompt("Tell me a story")).collectList().block();
+
+		ChatResponse last = responses.get(responses.size() - 1);
+		assertThat(last.getResults()).isEmpty();
+		assertThat(last.getMetadata().getUsage().getPromptTokens()).isPositive();
+		assertThat(last.getMetadata().getUsage().getGenerationTokens()).isPositive();
+		assertThat(responses).allSatisfy(response -> assertThat(
+				((ByteDanceChatResponseMetadata) response.getMetadata()).getId()).isNotNull());
+	}
+
+	@Test
+	public void aggregatesStreams() {
+		ByteDanceChatModel.AggregatedStream stream = this.chatModel.streamAndAggregate(new Prompt("Tell me a story"));
+
+		stream.responses().blockLast();
+		ChatResponse response = stream.aggregate().block();
+
+		assertThat(response.getResult().getOutput().getContent()).isEqualTo(MockByteDanceServer.TRANSCRIPT);
+		assertThat(response.getResult().getMetadata().getFinishReason()).isEqualTo("STOP");
+		assertThat(response.getMetadata().getUsage().getGenerationTokens()).isPositive();
+	}
+
+	@Test
+	public void retriesServerErrors() {
+		this.server.enqueue(Fault.SERVER_ERROR);
+
+		ChatResponse response = this.chatModel.call(new Prompt("Tell me a story"));
+
+		assertThat(response.getResult().getOutput().getContent()).isEqualTo(MockByteDanceServer.TRANSCRIPT);
+		assertThat(this.server.getRequestCount(MockByteDanceServer.CHAT_COMPLETIONS_PATH)).isEqualTo(2);
+	}
+
+	@Test
+	public void retriesRateLimitedStreams() {
+		this.server.enqueue(Fault.RATE_LIMITED);
+
+		var responses = this.chatModel.stream(new Prompt("Tell me a story")).collectList().block();
+
+		assertThat(responses).isNotEmpty();
+		assertThat(this.server.getRequestCount(MockByteDanceServer.CHAT_COMPLETIONS_PATH)).isEqualTo(2);
+	}
+
+	@Test
+	public void updatesTheRateLimiterFromRateLimitedCalls() {
+		ByteDanceRateLimiter limiter = new ByteDanceRateLimiter();
+		this.server.enqueue(Fault.RATE_LIMITED);
+
+		assertThatThrownBy(() -> withoutRetries(limiter).call(new Prompt("Tell me a story")))
+			.isInstanceOf(RuntimeException.class);
+
+		assertThat(limiter.getRequestsRemaining()).isZero();
+		assertThat(limiter.getTokensRemaining()).isZero();
+	}
+
+	@Test
+	public void updatesTheRateLimiterFromRateLimitedStreams() {
+		ByteDanceRateLimiter limiter = new ByteDanceRateLimiter();
+		this.server.enqueue(Fault.RATE_LIMITED);
+
+		assertThatThrownBy(() -> withoutRetries(limiter).stream(new Prompt("Tell me a story")).blockLast())
+			.isInstanceOf(RuntimeException.class);
+
+		assertThat(limiter.getRequestsRemaining()).isZero();
+		assertThat(limiter.getTokensRemaining()).isZero();
+	}
+
+	@Test
+	public void servesAudio() {
+		ByteDanceAudioApi audioApi = new ByteDanceAudioApi(this.server.getBaseUrl(), "test-token",
+				RestClient.builder(), RetryUtils.DEFAULT_RESPONSE_ERROR_HANDLER);
+
+		byte[] speech = new ByteDanceAudioSpeechModel(audioApi, "test-app", "BV001_streaming").call("你好世界");
+		String transcript = new ByteDanceAudioTranscriptionModel(audioApi)
+			.call(new ByteArrayResource(new byte[1024]));
+
+		assertThat(speech).hasSize(8);
+		assertThat(transcript).isEqualTo(MockByteDanceServer.TRANSCRIPT);
+	}
+
+	@Test
+	public void reportsLoad() throws InterruptedException {
+		Prompt prompt = new Prompt("Tell me a story");
+
+		LoadTestHarness.Report report = LoadTestHarness.run(4, 20,
+				probe -> this.chatModel.stream(prompt).doOnNext(response -> probe.firstToken()).blockLast());
+
+		logger.info("Streaming chat: {}", report);
+		assertThat(report.requests()).isEqualTo(20);
+		assertThat(report.errorCount()).isZero();
+		assertThat(report.throughput()).isPositive();
+		assertThat(report.timeToFirstTokenP50()).isGreaterThanOrEqualTo(Duration.ofMillis(20))
+			.isLessThanOrEqualTo(report.latencyP50());
+		assertThat(report.latencyP99()).isGreaterThanOrEqualTo(report.latencyP50());
+	}
+
+	private ByteDanceChatModel withoutRetries(ByteDanceRateLimiter limiter) {
+		return new ByteDanceChatModel(new ByteDanceChatApi(this.server.getBaseUrl(), "test-key"),
+				ByteDanceChatOptions.builder().withModel("ep-test").build(), null,
+				RetryTemplate.builder().maxAttempts(1).build())
+			.withStreamRetryPolicy(StreamRetryPolicy.none())
+			.withRateLimiter(limiter);
+	}
+
+}